@@ -0,0 +1,120 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.PixelType;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapOps;
+
+/**
+ * The {@link BitmapOps} conversions on a square tile of random pixels, on the Vector API and on
+ * the plain loops.
+ * <p>
+ * JMH runs each {@code path} in its own JVM, and the path is chosen when {@code BitmapOps} is
+ * first used, so setup sets the system property before touching it. The vector path needs a
+ * CPU with 256-bit vectors; setup fails rather than report scalar numbers under its name.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BitmapOpsBenchmark {
+
+    @Param({"vector", "scalar"})
+    public String path;
+
+    @Param({"1024"})
+    public int tileSize;
+
+    private BitmapData gray8;
+    private BitmapData gray16;
+    private BitmapData bgr48;
+    private BitmapData gray32Float;
+
+    @Setup
+    public void setup() {
+        System.setProperty(BitmapOps.SCALAR_PROPERTY, Boolean.toString(path.equals("scalar")));
+        if (BitmapOps.isVectorized() != path.equals("vector")) {
+            throw new IllegalStateException("The " + path + " path is not available on this JVM and CPU");
+        }
+        gray8 = random(PixelType.Gray8);
+        gray16 = random(PixelType.Gray16);
+        bgr48 = random(PixelType.Bgr48);
+        float[] floats = new float[tileSize * tileSize];
+        Random random = new Random(1);
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = (float) random.nextGaussian();
+        }
+        gray32Float = BitmapData.copyOf(new BitmapInfo(tileSize, tileSize, PixelType.Gray32Float), tileSize * 4,
+            MemorySegment.ofArray(floats));
+    }
+
+    private BitmapData random(PixelType pixelType) {
+        byte[] pixels = new byte[tileSize * tileSize * pixelType.bytesPerPixel()];
+        new Random(pixelType.ordinal()).nextBytes(pixels);
+        return BitmapData.copyOf(new BitmapInfo(tileSize, tileSize, pixelType), tileSize * pixelType.bytesPerPixel(),
+            MemorySegment.ofArray(pixels));
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        gray8.close();
+        gray16.close();
+        bgr48.close();
+        gray32Float.close();
+    }
+
+    @Benchmark
+    public long windowGray16() throws Exception {
+        try (BitmapData result = BitmapOps.toEightBit(gray16, 1000, 40000)) {
+            return result.size();
+        }
+    }
+
+    @Benchmark
+    public long bgr48ToBgr24() throws Exception {
+        try (BitmapData result = BitmapOps.toBgr24(bgr48)) {
+            return result.size();
+        }
+    }
+
+    @Benchmark
+    public long floatToGray8() throws Exception {
+        try (BitmapData result = BitmapOps.toGray8(gray32Float)) {
+            return result.size();
+        }
+    }
+
+    @Benchmark
+    public long downsampleGray8() throws Exception {
+        try (BitmapData result = BitmapOps.downsample2x(gray8)) {
+            return result.size();
+        }
+    }
+
+    @Benchmark
+    public long downsampleGray16() throws Exception {
+        try (BitmapData result = BitmapOps.downsample2x(gray16)) {
+            return result.size();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.BlockCache;
+import uk.ac.ed.eci.libCZI.BlockCacheOptions;
+import uk.ac.ed.eci.libCZI.CZIInputStream;
+import uk.ac.ed.eci.libCZI.CziStreamReader;
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.SingleChannelTileAccessor;
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * Replays the reads libCZI makes while opening the test image and fetching a row of tiles,
+ * against the file directly and through a {@link BlockCache}.
+ * <p>
+ * {@code latencyMicros} adds a fixed cost to every source read to stand in for a remote
+ * channel such as HTTP range requests, which is where the cache is meant to help.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlockCacheReplayBenchmark {
+    private static final Path TEST_IMAGE_PATH = Paths.get("test-images", "test-image.czi");
+
+    @Param({"0", "200"})
+    public long latencyMicros;
+
+    private final List<long[]> trace = new ArrayList<>();
+    private FileChannel channel;
+    private BlockCache cache;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        recordTrace();
+        channel = FileChannel.open(TEST_IMAGE_PATH);
+        cache = new BlockCache(BlockCacheOptions.builder().build(), this::readSource);
+        int largest = trace.stream().mapToInt(read -> (int) read[1]).max().orElse(0);
+        buffer = ByteBuffer.allocateDirect(largest);
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        cache.close();
+        channel.close();
+    }
+
+    @Benchmark
+    public long uncached() throws IOException {
+        long total = 0;
+        for (long[] read : trace) {
+            buffer.clear().limit((int) read[1]);
+            total += readSource(read[0], buffer);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long cached() throws IOException {
+        cache.clear();
+        long total = 0;
+        for (long[] read : trace) {
+            buffer.clear().limit((int) read[1]);
+            total += cache.read(read[0], buffer);
+        }
+        return total;
+    }
+
+    private long readSource(long offset, ByteBuffer dst) throws IOException {
+        if (latencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+        long total = 0;
+        while (dst.hasRemaining()) {
+            int bytesRead = channel.read(dst, offset + total);
+            if (bytesRead < 0) {
+                break;
+            }
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    private void recordTrace() throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromJavaStream(
+                    new RecordingChannel(FileChannel.open(TEST_IMAGE_PATH), trace));
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader)) {
+            IntRect bounds = reader.simpleReaderStatistics().boundingBoxLayer0();
+            for (int i = 0; i < 8; i++) {
+                IntRect tile = new IntRect(bounds.x() + i * 1024, bounds.y(), 1024, 1024);
+                try (Bitmap bitmap = accessor.getBitmapRaw(tile, 1.0f)) {
+                    bitmap.getBitmapInfo();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hides the FileChannel type, so the bridge seeks before each read, and records each
+     * read as an offset and length.
+     */
+    private static class RecordingChannel implements SeekableByteChannel {
+        private final FileChannel delegate;
+        private final List<long[]> trace;
+
+        RecordingChannel(FileChannel delegate, List<long[]> trace) {
+            this.delegate = delegate;
+            this.trace = trace;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            synchronized (trace) {
+                trace.add(new long[] { delegate.position(), dst.remaining() });
+            }
+            return delegate.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
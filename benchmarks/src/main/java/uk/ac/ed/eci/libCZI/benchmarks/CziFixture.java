@@ -0,0 +1,47 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.ac.ed.eci.libCZI.SyntheticCzi;
+
+/**
+ * The CZI file the suites run against.
+ * <p>
+ * By default a synthetic 8192 x 8192 Gray8 mosaic with a three-layer pyramid and an attachment
+ * is written to a temporary file, so the benchmarks need nothing outside the build. Set the
+ * system property {@code libczi.benchmark.file} to measure a real slide instead.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class CziFixture {
+    public static final String FILE_PROPERTY = "libczi.benchmark.file";
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String configured = System.getProperty(FILE_PROPERTY);
+        if (configured != null) {
+            path = Paths.get(configured);
+            return;
+        }
+        path = SyntheticCzi.builder()
+            .size(8192, 8192)
+            .tileSize(512)
+            .pyramidLayers(3)
+            .attachment("Thumbnail", "JPG", new byte[64 * 1024])
+            .build()
+            .writeTempFile();
+    }
+
+    public Path path() {
+        return path;
+    }
+}
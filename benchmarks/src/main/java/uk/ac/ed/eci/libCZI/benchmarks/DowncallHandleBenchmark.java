@@ -0,0 +1,68 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.LibCziFFM;
+import uk.ac.ed.eci.libCZI.metadata.LibraryVersion;
+
+/**
+ * Per-call latency of a trivial libCZIAPI downcall, comparing the old pattern of
+ * looking up and linking the symbol on every call with the pre-linked handles held
+ * by {@link LibCziFFM}.
+ * <p>
+ * {@code libCZI_GetLibCZIVersionInfo} is used because it does almost no work on the
+ * native side, so the measurement is dominated by the cost of reaching it.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DowncallHandleBenchmark {
+    private Arena arena;
+    private MemorySegment pVersion;
+
+    @Setup
+    public void setup() {
+        arena = Arena.ofConfined();
+        pVersion = arena.allocate(LibraryVersion.LAYOUT);
+    }
+
+    @TearDown
+    public void teardown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public int relinkPerCall() throws Throwable {
+        MethodHandle getVersion = LibCziFFM.getMethodHandle("libCZI_GetLibCZIVersionInfo",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        return (int) getVersion.invokeExact(pVersion);
+    }
+
+    @Benchmark
+    public int preLinkedHandle() throws Throwable {
+        return (int) LibCziFFM.GET_LIBCZI_VERSION_INFO.invokeExact(pVersion);
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.AttachmentInfo;
+import uk.ac.ed.eci.libCZI.AttachmentReader;
+import uk.ac.ed.eci.libCZI.ScenePyramidStatistics;
+import uk.ac.ed.eci.libCZI.document.GeneralDocumentInfo;
+import uk.ac.ed.eci.libCZI.document.ScalingInfo;
+
+/**
+ * Metadata and attachment access on an open reader. The general document info and pyramid
+ * statistics are returned by libCZI as JSON and parsed with Jackson, so those two include the
+ * JSON parsing cost.
+ * <p>
+ * The attachment data suites read the fixture's 64 KB attachment into the global auto arena,
+ * which only GC frees, into a confined arena closed straight away, and out to a channel.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetadataBenchmark {
+    private static final WritableByteChannel NULL_CHANNEL = Channels.newChannel(OutputStream.nullOutputStream());
+
+    @Benchmark
+    public GeneralDocumentInfo generalDocumentInfo(OpenReader open) {
+        return open.reader.metadata().documentInfo().generalDocumentInfo();
+    }
+
+    @Benchmark
+    public ScalingInfo scalingInfo(OpenReader open) {
+        return open.reader.metadata().documentInfo().scalingInfo();
+    }
+
+    @Benchmark
+    public ScenePyramidStatistics pyramidStatistics(OpenReader open) {
+        return open.reader.pyramidStatistics();
+    }
+
+    @Benchmark
+    public AttachmentInfo[] attachmentDirectory(OpenReader open) {
+        return open.reader.getAttachments();
+    }
+
+    @Benchmark
+    public Object readAttachment(OpenReader open) throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(open.reader, 0)) {
+            return attachment;
+        }
+    }
+
+    @Benchmark
+    public long attachmentDataGlobalArena(OpenReader open) throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(open.reader, 0)) {
+            return attachment.getAttachmentRawData().byteSize();
+        }
+    }
+
+    @Benchmark
+    public long attachmentDataCallerArena(OpenReader open) throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(open.reader, 0);
+                Arena arena = Arena.ofConfined()) {
+            return attachment.readInto(arena).byteSize();
+        }
+    }
+
+    @Benchmark
+    public long attachmentDataToChannel(OpenReader open) throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(open.reader, 0)) {
+            return attachment.transferTo(NULL_CHANNEL);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import uk.ac.ed.eci.libCZI.CZIInputStream;
+import uk.ac.ed.eci.libCZI.CziStreamReader;
+import uk.ac.ed.eci.libCZI.SingleChannelTileAccessor;
+
+/**
+ * A reader and tile accessor held open on the fixture for the whole trial, for suites that
+ * measure calls on an already open file.
+ */
+@State(Scope.Thread)
+public class OpenReader {
+    CZIInputStream stream;
+    CziStreamReader reader;
+    SingleChannelTileAccessor accessor;
+
+    @Setup(Level.Trial)
+    public void setup(CziFixture fixture) {
+        stream = CZIInputStream.createInputStreamFromFileUTF8(fixture.path().toString());
+        reader = CziStreamReader.fromStream(stream);
+        accessor = new SingleChannelTileAccessor(reader);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        accessor.close();
+        reader.close();
+        stream.close();
+    }
+}
@@ -0,0 +1,97 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.CZIInputStream;
+import uk.ac.ed.eci.libCZI.CziStreamReader;
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.LibCziFFM;
+import uk.ac.ed.eci.libCZI.NativeUtils;
+import uk.ac.ed.eci.libCZI.SingleChannelTileAccessor;
+import uk.ac.ed.eci.libCZI.SyntheticCzi;
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+/**
+ * Time to first tile in a new JVM: loading and linking libCZIAPI, opening a file and composing
+ * one tile, measured once per fork.
+ * <p>
+ * {@code extraction} chooses where the bundled library is extracted: {@code fresh} uses a new
+ * cache directory in every fork, as before the extraction cache, and {@code cached} reuses one
+ * that the warm-up fork fills. {@code firstTileAfterWarmUp} calls {@link LibCziFFM#warmUp()}
+ * during setup, as a service would before taking traffic, so it shows what the first request
+ * still pays; {@code warmUp} times the warm-up itself. Setup must not touch {@code LibCziFFM}
+ * otherwise, or the library would be loaded before the measurement starts.
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 10, warmups = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+
+    @Param({"cached", "fresh"})
+    public String extraction;
+
+    private Path path;
+
+    @Setup
+    public void setup() throws IOException {
+        Path cacheDir = extraction.equals("fresh")
+            ? Files.createTempDirectory("libczi-native-")
+            : Paths.get(System.getProperty("java.io.tmpdir"), "libczi-startup-benchmark");
+        System.setProperty(NativeUtils.CACHE_DIR_PROPERTY, cacheDir.toString());
+        path = SyntheticCzi.builder().size(2048, 2048).tileSize(512).build().writeTempFile();
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmedUp {
+        @Setup
+        public void setup(StartupBenchmark benchmark) {
+            LibCziFFM.warmUp();
+        }
+    }
+
+    @Benchmark
+    public long firstTile() throws Exception {
+        return readTile();
+    }
+
+    @Benchmark
+    public long firstTileAfterWarmUp(WarmedUp warmedUp) throws Exception {
+        return readTile();
+    }
+
+    @Benchmark
+    public long warmUp() {
+        return LibCziFFM.warmUp().toNanos();
+    }
+
+    private long readTile() throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+                Bitmap bitmap = accessor.getBitmapRaw(new IntRect(512, 512, 512, 512), 1.0f);
+                BitmapData data = bitmap.getBitmapData()) {
+            return data.size();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.eci.libCZI.CZIInputStream;
+import uk.ac.ed.eci.libCZI.CziStreamReader;
+import uk.ac.ed.eci.libCZI.SubBlockStatistics;
+
+/**
+ * Cost of opening a CZI file: creating the input stream by each route, then opening a reader
+ * on it, which parses the file header and sub-block directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StreamOpenBenchmark {
+
+    @Benchmark
+    public int fileStream(CziFixture fixture) throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(fixture.path().toString())) {
+            return stream.errorCode();
+        }
+    }
+
+    @Benchmark
+    public int channelStream(CziFixture fixture) throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromJavaStream(FileChannel.open(fixture.path()))) {
+            return stream.errorCode();
+        }
+    }
+
+    @Benchmark
+    public int fileStreamAndReader(CziFixture fixture) throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(fixture.path().toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            return stream.errorCode();
+        }
+    }
+
+    @Benchmark
+    public int channelStreamAndReader(CziFixture fixture) throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromJavaStream(FileChannel.open(fixture.path()));
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            return stream.errorCode();
+        }
+    }
+
+    @Benchmark
+    public int memoryMappedStreamAndReader(CziFixture fixture) throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createMemoryMappedInputStream(fixture.path());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            return stream.errorCode();
+        }
+    }
+
+    @Benchmark
+    public SubBlockStatistics simpleReaderStatistics(OpenReader open) {
+        return open.reader.simpleReaderStatistics();
+    }
+}
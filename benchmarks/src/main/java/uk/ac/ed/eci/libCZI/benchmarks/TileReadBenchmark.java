@@ -0,0 +1,100 @@
+package uk.ac.ed.eci.libCZI.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.IntSize;
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+
+/**
+ * The tile path on an open reader: sizing a request, compositing the bitmap, and getting its
+ * pixels out as a copy, as a byte array, or as a borrowed view.
+ * <p>
+ * {@code tileSize} is the output size in pixels; the region read from the plane is scaled up by
+ * the zoom so every zoom level produces the same amount of output.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TileReadBenchmark {
+
+    @Param({"1.0", "0.5", "0.25"})
+    public float zoom;
+
+    @Param({"256", "1024"})
+    public int tileSize;
+
+    private IntRect roi;
+
+    @Setup
+    public void setup(OpenReader open) {
+        IntRect bounds = open.reader.simpleReaderStatistics().boundingBoxLayer0();
+        int planeSize = (int) (tileSize / zoom);
+        roi = new IntRect(bounds.x() + (bounds.w() - planeSize) / 2, bounds.y() + (bounds.h() - planeSize) / 2,
+            planeSize, planeSize);
+    }
+
+    @Benchmark
+    public IntSize calcTileSize(OpenReader open) {
+        return open.accessor.calcTileSize(roi, zoom);
+    }
+
+    @Benchmark
+    public Object getBitmapRaw(OpenReader open) {
+        Bitmap bitmap = open.accessor.getBitmapRaw(roi, zoom);
+        try {
+            return bitmap.handle();
+        } finally {
+            bitmap.release();
+        }
+    }
+
+    @Benchmark
+    public long getBitmapData(OpenReader open) throws Exception {
+        Bitmap bitmap = open.accessor.getBitmapRaw(roi, zoom);
+        try (BitmapData data = bitmap.getBitmapData()) {
+            return data.size();
+        } finally {
+            bitmap.release();
+        }
+    }
+
+    @Benchmark
+    public byte[] getBytes(OpenReader open) throws Exception {
+        Bitmap bitmap = open.accessor.getBitmapRaw(roi, zoom);
+        try (BitmapData data = bitmap.getBitmapData()) {
+            return data.getBytes();
+        } finally {
+            bitmap.release();
+        }
+    }
+
+    @Benchmark
+    public void lockedView(OpenReader open, Blackhole blackhole) throws Exception {
+        Bitmap bitmap = open.accessor.getBitmapRaw(roi, zoom);
+        try (LockedBitmapView view = bitmap.lockData()) {
+            blackhole.consume(view.data());
+        } finally {
+            bitmap.release();
+        }
+    }
+}
@@ -7,6 +7,8 @@ module uk.ac.ed.eci.libczi.wrapper {
     exports uk.ac.ed.eci.libCZI;
     exports uk.ac.ed.eci.libCZI.bitmaps;
     exports uk.ac.ed.eci.libCZI.document;
+    exports uk.ac.ed.eci.libCZI.export;
+    exports uk.ac.ed.eci.libCZI.jfr;
     exports uk.ac.ed.eci.libCZI.metadata;
 
     // Required for JSON processing with Jackson.
@@ -18,6 +20,16 @@ module uk.ac.ed.eci.libczi.wrapper {
     requires transitive com.fasterxml.jackson.annotation;
     requires transitive com.fasterxml.jackson.core;
 
+    // Flight recorder events for native calls, stream reads, tiles and copies.
+    requires jdk.jfr;
+
+    // LibCziMetrics is published over JMX.
+    requires java.management;
+
+    // Optional: BitmapOps uses the Vector API when the application adds this module, and plain
+    // loops otherwise.
+    requires static jdk.incubator.vector;
+
 
     // The 'opens' directive allows the Jackson databind library to use reflection
     // on the classes within the uk.ac.ed.eci.libCZI package at runtime.
@@ -9,6 +9,7 @@ import java.lang.foreign.Arena;
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemoryLayout.PathElement;
 import java.lang.foreign.MemorySegment;
+import java.util.Objects;
 
 /**
  * A class representing options for accessing CZI files.
@@ -169,4 +170,27 @@ public class AccessorOptions implements IInterop {
     public String additionalParameters() {
         return additionalParameters;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AccessorOptions)) {
+            return false;
+        }
+        AccessorOptions other = (AccessorOptions) o;
+        return Float.compare(backGroundColorR, other.backGroundColorR) == 0
+            && Float.compare(backGroundColorG, other.backGroundColorG) == 0
+            && Float.compare(backGroundColorB, other.backGroundColorB) == 0
+            && sortByM == other.sortByM
+            && useVisibilityCheckOptimization == other.useVisibilityCheckOptimization
+            && Objects.equals(additionalParameters, other.additionalParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(backGroundColorR, backGroundColorG, backGroundColorB, sortByM,
+            useVisibilityCheckOptimization, additionalParameters);
+    }
 }
@@ -0,0 +1,312 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+
+/**
+ * Composes tiles of one open slide on a few platform threads of its own, and returns each as a
+ * {@link CompletableFuture}.
+ * <p>
+ * This is for callers on virtual threads. A virtual thread in a native call is pinned to its
+ * carrier for the whole call, so composing tiles directly would tie up the carriers the rest
+ * of the application needs. Here every worker is a platform thread that owns its own
+ * {@link SingleChannelTileAccessor}; a virtual thread waiting on the future parks and frees its
+ * carrier. The tiles are made with {@link BitmapData#sharedCopyOf}, so they can be read and
+ * closed on the caller's thread.
+ * </p>
+ * <p>
+ * The number of workers is the most tiles composed at once from this slide. Requests beyond
+ * that wait in a queue, bounded by {@link Builder#maxQueuedRequests(int)}. Cancelling the
+ * future of a queued request removes it, so no work is done for it. Cancelling one that is
+ * being composed lets the tile finish and then frees it.
+ * </p>
+ * <p>
+ * Closing cancels the requests still queued, waits for those being composed and closes the
+ * workers' tile accessors. Close this before the reader.
+ * </p>
+ *
+ * <pre>{@code
+ * try (AsyncTileAccessor accessor = AsyncTileAccessor.builder(reader).maxConcurrency(4).build()) {
+ *     try (BitmapData tile = accessor.getBitmapData(roi, 0.5f).join()) {
+ *         draw(tile);
+ *     }
+ * }
+ * }</pre>
+ */
+public class AsyncTileAccessor implements AutoCloseable {
+    private static final System.Logger LOGGER = System.getLogger(AsyncTileAccessor.class.getName());
+    private static final Request STOP = new Request(null, 0, null, null, null);
+
+    private final BlockingQueue<Request> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final NativeResourceTracker.Registration registration;
+
+    private AsyncTileAccessor(Builder builder) {
+        this.queue = new LinkedBlockingQueue<>(builder.maxQueuedRequests);
+        for (int i = 0; i < builder.maxConcurrency; i++) {
+            Thread worker = new Thread(() -> work(builder.composers), "libczi-async-tile-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        this.registration = NativeResourceTracker.track(this, "AsyncTileAccessor");
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Composes a tile; each worker has its own and closes it when it stops.
+     */
+    interface TileComposer extends AutoCloseable {
+        BitmapData compose(IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions,
+            BitmapBufferPool pool);
+    }
+
+    public static class Builder {
+        private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+        private int maxQueuedRequests = Integer.MAX_VALUE;
+        private Supplier<TileComposer> composers;
+
+        private Builder(CziStreamReader reader) {
+            this.composers = () -> {
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+                return new TileComposer() {
+                    @Override
+                    public BitmapData compose(IntRect roi, float zoom, Coordinate coordinate,
+                            AccessorOptions accessorOptions, BitmapBufferPool pool) {
+                        try (Bitmap bitmap = accessor.getBitmapRaw(roi, zoom, coordinate, accessorOptions);
+                                LockedBitmapView view = bitmap.lockData()) {
+                            return BitmapData.sharedCopyOf(new BitmapInfo(view.width(), view.height(),
+                                view.pixelType()), view.stride(), view.data(), pool);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new CziReaderException("Failed to copy tile", e);
+                        }
+                    }
+
+                    @Override
+                    public void close() throws Exception {
+                        accessor.close();
+                    }
+                };
+            };
+        }
+
+        public AsyncTileAccessor build() {
+            return new AsyncTileAccessor(this);
+        }
+
+        /**
+         * @param max the most tiles composed at once, which is also the number of worker threads
+         */
+        public Builder maxConcurrency(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("An async tile accessor needs at least one worker");
+            }
+            this.maxConcurrency = max;
+
+            return this;
+        }
+        /**
+         * @param max the most requests waiting for a worker; further requests fail with
+         * {@link RejectedExecutionException}
+         */
+        public Builder maxQueuedRequests(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("The request queue must hold at least one request");
+            }
+            this.maxQueuedRequests = max;
+
+            return this;
+        }
+
+        Builder composers(Supplier<TileComposer> composers) {
+            this.composers = composers;
+
+            return this;
+        }
+    }
+
+    /**
+     * @param reader the open slide to compose tiles from
+     */
+    public static Builder builder(CziStreamReader reader) {
+        return new Builder(reader);
+    }
+
+    /**
+     * Gets a region of channel 0, composed with the default accessor options.
+     *
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @return the tile, owned by the caller once the future completes
+     */
+    public CompletableFuture<BitmapData> getBitmapData(IntRect roi, float zoom) {
+        return getBitmapData(roi, zoom, Coordinate.createC0(), AccessorOptions.builder().build(), null);
+    }
+
+    /**
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @return the tile, owned by the caller once the future completes
+     */
+    public CompletableFuture<BitmapData> getBitmapData(IntRect roi, float zoom, Coordinate coordinate,
+            AccessorOptions accessorOptions) {
+        return getBitmapData(roi, zoom, coordinate, accessorOptions, null);
+    }
+
+    /**
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @param pool the pool to take the tile's buffer from, or null to allocate one
+     * @return the tile, owned by the caller once the future completes; it fails with
+     * {@link RejectedExecutionException} if the queue is full or this is closed
+     */
+    public CompletableFuture<BitmapData> getBitmapData(IntRect roi, float zoom, Coordinate coordinate,
+            AccessorOptions accessorOptions, BitmapBufferPool pool) {
+        Request request = new Request(roi, zoom, coordinate, accessorOptions, pool);
+        if (registration.isReleased()) {
+            request.future.completeExceptionally(new RejectedExecutionException("Async tile accessor has been closed"));
+        } else if (!queue.offer(request)) {
+            request.future.completeExceptionally(new RejectedExecutionException("Too many tile requests queued"));
+        } else {
+            request.future.whenComplete((tile, failure) -> {
+                if (request.future.isCancelled()) {
+                    queue.remove(request);
+                }
+            });
+            if (registration.isReleased() && queue.remove(request)) {
+                // Raced with close(), which may have drained the queue before this was added.
+                request.future.cancel(false);
+            }
+        }
+        return request.future;
+    }
+
+    /**
+     * @return the requests waiting for a worker
+     */
+    public int queuedRequests() {
+        return queue.size();
+    }
+
+    private void work(Supplier<TileComposer> composers) {
+        TileComposer composer;
+        try {
+            composer = composers.get();
+        } catch (RuntimeException e) {
+            // Without a tile accessor this worker can only fail the requests it takes.
+            for (Request request = take(); request != STOP; request = take()) {
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+        try (composer) {
+            for (Request request = take(); request != STOP; request = take()) {
+                request.run(composer);
+            }
+        } catch (Exception e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to close tile accessor", e);
+        }
+    }
+
+    /**
+     * Workers are only stopped by {@link #STOP}, never interrupted: an interrupt during a read
+     * would close a file channel the reader shares.
+     */
+    private Request take() {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // Not ours to act on; keep serving until close() stops this worker.
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!registration.release()) {
+            return;
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.future.cancel(false);
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < workers.size(); i++) {
+            while (true) {
+                try {
+                    queue.put(STOP);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Request {
+        final IntRect roi;
+        final float zoom;
+        final Coordinate coordinate;
+        final AccessorOptions accessorOptions;
+        final BitmapBufferPool pool;
+        final CompletableFuture<BitmapData> future = new CompletableFuture<>();
+
+        Request(IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions, BitmapBufferPool pool) {
+            this.roi = roi;
+            this.zoom = zoom;
+            this.coordinate = coordinate;
+            this.accessorOptions = accessorOptions;
+            this.pool = pool;
+        }
+
+        void run(TileComposer composer) {
+            if (future.isDone()) {
+                return;
+            }
+            BitmapData tile;
+            try {
+                tile = composer.compose(roi, zoom, coordinate, accessorOptions, pool);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            if (!future.complete(tile)) {
+                // Cancelled while it was being composed; nobody will close it.
+                try {
+                    tile.close();
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
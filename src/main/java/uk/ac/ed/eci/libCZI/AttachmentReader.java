@@ -1,9 +1,12 @@
 package uk.ac.ed.eci.libCZI;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.foreign.Arena;
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
 
 import static java.lang.foreign.ValueLayout.*;
 
@@ -20,6 +23,12 @@ import static java.lang.foreign.ValueLayout.*;
  * static method.  The reader should be closed after use to relase native resources
  * idelly using a try-with-resources statement.
  * </p>
+ * <p>
+ * libCZI copies an attachment out in one piece, so reading one always needs a buffer of its
+ * full {@link #size()}. {@link #readInto(Arena)} puts that buffer in the caller's arena, and
+ * {@link #transferTo(WritableByteChannel)} and {@link #openStream()} use one owned by this
+ * reader, which is filled once and freed when it is closed. None of them has a size limit.
+ * </p>
  * 
  * @see CziStreamReader
  * @author Paul Mitchell
@@ -29,6 +38,9 @@ public class AttachmentReader implements AutoCloseable {
     private MemorySegment readerHandle;
     private int index;
     private static int MAX_SIZE = 33554432; //(2^25)
+    private static final long CHANNEL_CHUNK = 1 << 30;
+    private Arena bufferArena;
+    private MemorySegment buffer;
 
 
 	public static AttachmentReader fromReader(CziStreamReader reader, int i) {
@@ -45,28 +57,37 @@ public class AttachmentReader implements AutoCloseable {
         if (attachmentHandle == null || attachmentHandle.address() == 0) {
             return;
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.ofVoid(ADDRESS);
-        MethodHandle releaseAttachment = LibCziFFM.getMethodHandle("libCZI_ReleaseAttachment", descriptor);
         try {
-            releaseAttachment.invokeExact(attachmentHandle);
+            LibCziFFM.RELEASE_ATTACHMENT.invokeExact(attachmentHandle);
+            attachmentHandle = MemorySegment.NULL;
         } catch (Throwable e) {
             throw new RuntimeException("Failed to call native function libCZI_ReleaseAttachment", e);
         }
     }
     @Override
     public void close() throws Exception {
+        synchronized (this) {
+            if (bufferArena != null) {
+                bufferArena.close();
+                bufferArena = null;
+                buffer = null;
+            }
+        }
         closeHandle();
     }
 
+    /**
+     * Copies the attachment into memory that lives until the next GC finds it unreachable,
+     * refusing attachments over 32 MB.
+     *
+     * @see #readInto(Arena) to choose when the memory is freed, with no size limit
+     */
     public MemorySegment getAttachmentRawData() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
-        MethodHandle getRawData = LibCziFFM.getMethodHandle("libCZI_AttachmentGetRawData", descriptor);
-
         long size;
         // First, call the native function with a NULL buffer to get the required size.
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pSize = arena.allocate(JAVA_LONG);
-            int errorCode = (int) getRawData.invokeExact(attachmentHandle, pSize, MemorySegment.NULL);
+            int errorCode = (int) LibCziFFM.ATTACHMENT_GET_RAW_DATA.invokeExact(attachmentHandle, pSize, MemorySegment.NULL);
             if (errorCode != 0) {
                 throw new AttachmentReaderException("Failed to get attachment raw data buffer size. Error code: " + errorCode);
             }
@@ -79,7 +100,7 @@ public class AttachmentReader implements AutoCloseable {
                 return MemorySegment.NULL; // Or an empty segment if preferred
             }
             MemorySegment data = LibCziFFM.GLOBAL_ARENA.allocate(size);
-            errorCode = (int) getRawData.invokeExact(attachmentHandle, pSize, data);
+            errorCode = (int) LibCziFFM.ATTACHMENT_GET_RAW_DATA.invokeExact(attachmentHandle, pSize, data);
             if (errorCode != 0) {
                 throw new AttachmentReaderException("Failed to get attachment raw data. Error code: " + errorCode);
             }
@@ -92,12 +113,176 @@ public class AttachmentReader implements AutoCloseable {
         }
     }
     
+    /**
+     * @return the size of the attachment's data in bytes
+     */
+    public long size() {
+        if (attachmentHandle == null || attachmentHandle.address() == 0) {
+            throw new AttachmentReaderException("Attachment reader has been closed");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pSize = arena.allocate(JAVA_LONG);
+            int errorCode = (int) LibCziFFM.ATTACHMENT_GET_RAW_DATA.invokeExact(attachmentHandle, pSize, MemorySegment.NULL);
+            if (errorCode != 0) {
+                throw new AttachmentReaderException("Failed to get attachment raw data buffer size. Error code: " + errorCode);
+            }
+            return pSize.get(JAVA_LONG, 0);
+        } catch (Throwable e) {
+            if (e instanceof AttachmentReaderException) {
+                throw (AttachmentReaderException) e;
+            }
+            throw new AttachmentReaderException("Failed to query attachment data size", e);
+        }
+    }
+
+    /**
+     * Copies the attachment into memory allocated from the given arena, which is freed when the
+     * arena is closed.
+     *
+     * @param arena the arena to allocate from
+     * @return the attachment's data, empty if it has none
+     */
+    public MemorySegment readInto(Arena arena) {
+        long size = size();
+        if (size == 0) {
+            return MemorySegment.NULL;
+        }
+        MemorySegment data = arena.allocate(size);
+        try (Arena local = Arena.ofConfined()) {
+            MemorySegment pSize = local.allocate(JAVA_LONG);
+            pSize.set(JAVA_LONG, 0, size);
+            int errorCode = (int) LibCziFFM.ATTACHMENT_GET_RAW_DATA.invokeExact(attachmentHandle, pSize, data);
+            if (errorCode != 0) {
+                throw new AttachmentReaderException("Failed to get attachment raw data. Error code: " + errorCode);
+            }
+            return data;
+        } catch (Throwable e) {
+            if (e instanceof AttachmentReaderException) {
+                throw (AttachmentReaderException) e;
+            }
+            throw new AttachmentReaderException("Failed to call native function libCZI_AttachmentGetRawData", e);
+        }
+    }
+
+    /**
+     * Writes the attachment's data to a channel, for example a file or a socket.
+     *
+     * @param channel the channel to write to; it is not closed
+     * @return the number of bytes written
+     * @throws IOException if the channel cannot be written
+     */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        MemorySegment data = buffer();
+        for (long offset = 0; offset < data.byteSize(); offset += CHANNEL_CHUNK) {
+            ByteBuffer chunk = data.asSlice(offset, Math.min(CHANNEL_CHUNK, data.byteSize() - offset)).asByteBuffer();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        }
+        return data.byteSize();
+    }
+
+    /**
+     * Opens a stream over the attachment's data. Every stream opened from this reader shares
+     * one copy of the data, which is freed when the reader is closed; streams cannot be read
+     * after that.
+     *
+     * @return a stream of the attachment's data; closing it does not close this reader
+     */
+    public InputStream openStream() {
+        return new SegmentInputStream(buffer());
+    }
+
+    /**
+     * @return this reader's copy of the attachment, made on first use
+     */
+    private synchronized MemorySegment buffer() {
+        if (buffer == null) {
+            Arena arena = Arena.ofShared();
+            try {
+                buffer = readInto(arena);
+            } catch (RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+            bufferArena = arena;
+        }
+        return buffer;
+    }
+
+    private static final class SegmentInputStream extends InputStream {
+        private final MemorySegment data;
+        private long position;
+        private long mark;
+
+        SegmentInputStream(MemorySegment data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= data.byteSize()) {
+                return -1;
+            }
+            try {
+                return data.get(JAVA_BYTE, position++) & 0xFF;
+            } catch (IllegalStateException e) {
+                throw new IOException("Attachment reader has been closed", e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            long remaining = data.byteSize() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            try {
+                MemorySegment.copy(data, JAVA_BYTE, position, b, off, count);
+            } catch (IllegalStateException e) {
+                throw new IOException("Attachment reader has been closed", e);
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, data.byteSize() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, data.byteSize() - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public void reset() {
+            position = mark;
+        }
+    }
+
     private MemorySegment getAttachmentHandle(){
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS);
-        MethodHandle readAttachment = LibCziFFM.getMethodHandle("libCZI_ReaderReadAttachment", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pAttachment = arena.allocate(ADDRESS);
-            int errorCode = (int) readAttachment.invokeExact(readerHandle, index, pAttachment);
+            int errorCode = (int) LibCziFFM.READER_READ_ATTACHMENT.invokeExact(readerHandle, index, pAttachment);
             if (errorCode != 0) {
                 throw new AttachmentReaderException("Failed to read attachment. Error code: " + errorCode);
             }
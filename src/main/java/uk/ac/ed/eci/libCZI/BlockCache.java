@@ -0,0 +1,320 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read cache of fixed-size, aligned blocks held off-heap, used by {@link InputStreamBridge}
+ * to turn libCZI's many small directory and sub-block header reads into a few block reads.
+ * <p>
+ * Blocks live in a single slab allocated from a shared {@link Arena} and are replaced with the
+ * CLOCK algorithm once the byte budget is used. The buffers misses are read into come from the
+ * same arena and are reused, so closing the cache frees all of its memory. When consecutive reads continue where the
+ * previous one ended, misses also fetch the configured number of following blocks in the same
+ * source read.
+ * </p>
+ * <p>
+ * Lookups and copies out of the slab are done under a lock, but reads from the source are not,
+ * so a slow source does not block hits on other threads.
+ * </p>
+ *
+ * @see BlockCacheOptions
+ * @see BlockCacheStatistics
+ */
+public class BlockCache implements AutoCloseable {
+
+    /**
+     * The uncached data the blocks are read from.
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * Reads from the offset until the buffer is full or the end of the data is reached.
+         *
+         * @return the number of bytes read, 0 at the end of the data
+         */
+        long read(long offset, ByteBuffer dst) throws IOException;
+    }
+
+    private static final long EMPTY = -1;
+
+    private final Source source;
+    private final int blockSize;
+    private final int blockShift;
+    private final int readAheadBlocks;
+    private final int slotCount;
+    private final Arena arena;
+    private final MemorySegment slab;
+    private final int scratchSize;
+    private final ConcurrentLinkedQueue<MemorySegment> freeScratch = new ConcurrentLinkedQueue<>();
+
+    // CLOCK state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] slotBlock;
+    private final int[] slotLength;
+    private final boolean[] referenced;
+    private final BlockTable slotByBlock;
+    private int clockHand;
+    private long nextSequentialOffset = EMPTY;
+    private long cachedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder readAhead = new LongAdder();
+
+    public BlockCache(BlockCacheOptions options, Source source) {
+        this.source = source;
+        this.blockSize = options.blockSize();
+        this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+        this.readAheadBlocks = options.readAheadBlocks();
+        this.slotCount = (int) Math.min(Integer.MAX_VALUE, options.capacityBytes() / blockSize);
+        this.arena = Arena.ofShared();
+        this.slab = arena.allocate((long) slotCount * blockSize, blockSize);
+        this.slotBlock = new long[slotCount];
+        this.slotLength = new int[slotCount];
+        this.referenced = new boolean[slotCount];
+        this.slotByBlock = new BlockTable(slotCount);
+        Arrays.fill(slotBlock, EMPTY);
+        this.scratchSize = (readAheadBlocks + 1) * blockSize;
+    }
+
+    /**
+     * Reads from the offset until the buffer is full or the end of the data is reached,
+     * serving whole blocks from the cache where possible.
+     *
+     * @param offset the offset to read from
+     * @param dst the buffer to fill
+     * @return the number of bytes read, 0 at the end of the data
+     * @throws IOException if the source fails
+     */
+    public long read(long offset, ByteBuffer dst) throws IOException {
+        boolean sequential = isSequential(offset, dst.remaining());
+        long total = 0;
+        while (dst.hasRemaining()) {
+            int copied = readFromBlock(offset + total, dst, sequential);
+            if (copied == 0) {
+                break;
+            }
+            total += copied;
+        }
+        return total;
+    }
+
+    /**
+     * Drops every cached block. Counters are kept.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            Arrays.fill(slotBlock, EMPTY);
+            Arrays.fill(slotLength, 0);
+            Arrays.fill(referenced, false);
+            slotByBlock.clear();
+            cachedBytes = 0;
+            nextSequentialOffset = EMPTY;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BlockCacheStatistics statistics() {
+        long bytes;
+        lock.lock();
+        try {
+            bytes = cachedBytes;
+        } finally {
+            lock.unlock();
+        }
+        return new BlockCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), readAhead.sum(),
+            bytes, (long) slotCount * blockSize);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private boolean isSequential(long offset, int length) {
+        lock.lock();
+        try {
+            boolean sequential = offset == nextSequentialOffset;
+            nextSequentialOffset = offset + length;
+            return sequential;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies as much of the block containing the position as fits into dst, loading it first
+     * if needed.
+     *
+     * @return the number of bytes copied, 0 if the position is at or past the end of the data
+     */
+    private int readFromBlock(long position, ByteBuffer dst, boolean sequential) throws IOException {
+        long block = position >>> blockShift;
+        int within = (int) (position & (blockSize - 1));
+
+        lock.lock();
+        try {
+            int slot = slotByBlock.get(block);
+            if (slot >= 0) {
+                hits.increment();
+                referenced[slot] = true;
+                return copyOut(slot, within, dst);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        misses.increment();
+        // Cover the rest of the request, plus the read-ahead window when the reader is sequential.
+        int requestBlocks = (int) Math.min(readAheadBlocks + 1L,
+            ((long) within + dst.remaining() + blockSize - 1) >>> blockShift);
+        int extraBlocks = sequential ? readAheadBlocks + 1 - requestBlocks : 0;
+        int blockCount = requestBlocks + extraBlocks;
+
+        MemorySegment data = freeScratch.poll();
+        if (data == null) {
+            // One per concurrent miss at most; they are freed with the slab.
+            data = arena.allocate(scratchSize, blockSize);
+        }
+        try {
+            long bytesRead = source.read(block << blockShift, data.asByteBuffer().limit(blockCount * blockSize));
+            if (bytesRead <= within) {
+                return 0;
+            }
+            readAhead.add(Math.max(0, Math.min(extraBlocks, (bytesRead - 1) / blockSize + 1 - requestBlocks)));
+
+            lock.lock();
+            try {
+                for (int i = 0; i < blockCount && (long) i * blockSize < bytesRead; i++) {
+                    int length = (int) Math.min(blockSize, bytesRead - (long) i * blockSize);
+                    insert(block + i, data, (long) i * blockSize, length, i < requestBlocks);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            int length = (int) Math.min(dst.remaining(), bytesRead - within);
+            MemorySegment.copy(data, within, MemorySegment.ofBuffer(dst), 0, length);
+            dst.position(dst.position() + length);
+            return length;
+        } finally {
+            freeScratch.offer(data);
+        }
+    }
+
+    private int copyOut(int slot, int within, ByteBuffer dst) {
+        int available = slotLength[slot] - within;
+        if (available <= 0) {
+            return 0;
+        }
+        int length = Math.min(available, dst.remaining());
+        MemorySegment.copy(slab, (long) slot * blockSize + within, MemorySegment.ofBuffer(dst), 0, length);
+        dst.position(dst.position() + length);
+        return length;
+    }
+
+    private void insert(long block, MemorySegment data, long offset, int length, boolean demanded) {
+        if (slotByBlock.get(block) >= 0) {
+            return;
+        }
+        int slot = nextVictim();
+        if (slotBlock[slot] != EMPTY) {
+            slotByBlock.remove(slotBlock[slot]);
+            cachedBytes -= slotLength[slot];
+            evictions.increment();
+        }
+        MemorySegment.copy(data, offset, slab, (long) slot * blockSize, length);
+        slotBlock[slot] = block;
+        slotLength[slot] = length;
+        referenced[slot] = demanded;
+        slotByBlock.put(block, slot);
+        cachedBytes += length;
+    }
+
+    private int nextVictim() {
+        while (true) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % slotCount;
+            if (slotBlock[slot] == EMPTY || !referenced[slot]) {
+                return slot;
+            }
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * Maps block numbers to slots with open addressing and linear probing, so lookups neither
+     * box nor allocate. Kept at most half full.
+     */
+    private static final class BlockTable {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        BlockTable(int entries) {
+            int capacity = (int) Math.min(1 << 30, Long.highestOneBit(Math.max(1, entries) * 2L - 1) << 1);
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /**
+         * @return the slot holding the block, or -1 if it is not cached
+         */
+        int get(long block) {
+            for (int i = home(block); keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == block) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long block, int slot) {
+            int i = home(block);
+            while (keys[i] != EMPTY && keys[i] != block) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = block;
+            values[i] = slot;
+        }
+
+        void remove(long block) {
+            int i = home(block);
+            while (keys[i] != block) {
+                if (keys[i] == EMPTY) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the run back, so no lookup stops early at the gap.
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+        }
+
+        void clear() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private int home(long block) {
+            return (int) ((block * 0x9E3779B97F4A7C15L) >>> 34) & mask;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.ac.ed.eci.libCZI;
+
+/**
+ * Options for the optional read cache in {@link InputStreamBridge}.
+ * <p>
+ * Defaults are 64 KiB blocks, a 32 MiB budget and 4 blocks of read-ahead once
+ * sequential reading is detected.
+ * </p>
+ *
+ * @see BlockCache
+ */
+public class BlockCacheOptions {
+    private final int blockSize;
+    private final long capacityBytes;
+    private final int readAheadBlocks;
+
+    private BlockCacheOptions(Builder builder) {
+        this.blockSize = builder.blockSize;
+        this.capacityBytes = builder.capacityBytes;
+        this.readAheadBlocks = builder.readAheadBlocks;
+    }
+
+    public static class Builder {
+        private int blockSize = 64 * 1024;
+        private long capacityBytes = 32L * 1024 * 1024;
+        private int readAheadBlocks = 4;
+
+        private Builder() {}
+
+        public BlockCacheOptions build() {
+            if (capacityBytes / blockSize < 2L * (readAheadBlocks + 1)) {
+                throw new IllegalArgumentException("Cache capacity must hold at least twice the read-ahead window");
+            }
+            return new BlockCacheOptions(this);
+        }
+
+        /**
+         * @param bytes the size of a cached block, a power of two of at least 512 bytes
+         */
+        public Builder blockSize(int bytes) {
+            if (bytes < 512 || Integer.bitCount(bytes) != 1) {
+                throw new IllegalArgumentException("Block size must be a power of two of at least 512 bytes");
+            }
+            this.blockSize = bytes;
+
+            return this;
+        }
+        /**
+         * @param bytes the off-heap memory budget for cached blocks
+         */
+        public Builder capacityBytes(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacityBytes = bytes;
+
+            return this;
+        }
+        /**
+         * @param blocks the number of blocks to fetch beyond a request once reads are sequential, 0 to disable
+         */
+        public Builder readAheadBlocks(int blocks) {
+            if (blocks < 0) {
+                throw new IllegalArgumentException("Read-ahead must not be negative");
+            }
+            this.readAheadBlocks = blocks;
+
+            return this;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public long capacityBytes() {
+        return capacityBytes;
+    }
+
+    public int readAheadBlocks() {
+        return readAheadBlocks;
+    }
+}
@@ -0,0 +1,28 @@
+package uk.ac.ed.eci.libCZI;
+
+/**
+ * A snapshot of the counters of a {@link BlockCache}.
+ *
+ * @param hits The number of block lookups served from the cache.
+ * @param misses The number of block lookups that had to read from the source.
+ * @param evictions The number of cached blocks replaced to make room.
+ * @param readAheadBlocks The number of blocks fetched ahead of a sequential reader.
+ * @param cachedBytes The number of bytes currently held.
+ * @param capacityBytes The configured budget in bytes.
+ */
+public record BlockCacheStatistics(
+    long hits,
+    long misses,
+    long evictions,
+    long readAheadBlocks,
+    long cachedBytes,
+    long capacityBytes) {
+
+    /**
+     * @return the fraction of block lookups served from the cache, 0 if there were none
+     */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
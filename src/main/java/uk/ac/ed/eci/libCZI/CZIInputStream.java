@@ -1,9 +1,13 @@
 package uk.ac.ed.eci.libCZI;
 
-import java.lang.foreign.FunctionDescriptor;
+import java.io.IOException;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
 
 import static java.lang.foreign.ValueLayout.*;
 
@@ -41,7 +45,7 @@ public class CZIInputStream implements AutoCloseable {
     
 
     protected CZIInputStream(InputStreamResult streamResult) {
-        this.classArena = Arena.ofConfined();
+        this.classArena = Arena.ofShared();
         this.streamResult = streamResult;
         this.bridge = null;
     }
@@ -52,7 +56,7 @@ public class CZIInputStream implements AutoCloseable {
      * lifecycle.
      */
     private CZIInputStream(InputStreamResult streamResult, InputStreamBridge bridge) {
-        this.classArena = Arena.ofConfined();
+        this.classArena = Arena.ofShared();
         this.streamResult = streamResult;
         this.bridge = bridge;
 
@@ -60,12 +64,10 @@ public class CZIInputStream implements AutoCloseable {
     }
 
     private void connectBridge() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle inputStreamFromExternal = LibCziFFM.getMethodHandle("libCZI_CreateInputStreamFromExternal", descriptor);
         try {
             MemorySegment externalStreamStruct = bridge.createExternalInputStreamStruct(0, 0);
             MemorySegment pStream = classArena.allocate(ADDRESS);
-            int errorCode = (int) inputStreamFromExternal.invokeExact(externalStreamStruct, pStream);
+            int errorCode = (int) LibCziFFM.CREATE_INPUT_STREAM_FROM_EXTERNAL.invokeExact(externalStreamStruct, pStream);
             if (errorCode != 0) { // Non-zero indicates an error
                 throw new CziStreamException("Failed to create CZI input stream from external stream. Error code: " + errorCode);
             }
@@ -91,12 +93,10 @@ public class CZIInputStream implements AutoCloseable {
      * @author Paul Mitchell
      */
     public static CZIInputStream createInputStreamFromFileUTF8(String string) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle createInputStream = LibCziFFM.getMethodHandle("libCZI_CreateInputStreamFromFileUTF8", descriptor);
         try (Arena tempArena = Arena.ofConfined()) {
             MemorySegment filenameSegment = tempArena.allocateFrom(string);
             MemorySegment pStream = LibCziFFM.GLOBAL_ARENA.allocate(ADDRESS);
-            int errorCode = (int) createInputStream.invokeExact(filenameSegment, pStream);
+            int errorCode = (int) LibCziFFM.CREATE_INPUT_STREAM_FROM_FILE_UTF8.invokeExact(filenameSegment, pStream);
             if (errorCode != 0) { // Non-zero indicates an error
                 throw new CziStreamException("Failed to create CZI input stream from file. Error code: " + errorCode);
             }
@@ -115,6 +115,75 @@ public class CZIInputStream implements AutoCloseable {
         return new CZIInputStream(null, bridge);
     }
 
+    /**
+     * Creates a stream whose reads go through a block cache with read-ahead. This suits
+     * channels where each read has a high fixed cost, such as HTTP range requests or object
+     * storage, since libCZI makes many small reads while parsing the file.
+     *
+     * @param stream the channel to read from; it is closed with the stream
+     * @param cacheOptions the block size, capacity and read-ahead of the cache
+     * @return A {@link CZIInputStream} object representing the opened stream.
+     * @see BlockCache
+     */
+    public static CZIInputStream createInputStreamFromJavaStream(SeekableByteChannel stream, BlockCacheOptions cacheOptions) {
+        InputStreamBridge bridge = new InputStreamBridge(stream, cacheOptions);
+        return new CZIInputStream(null, bridge);
+    }
+
+    /**
+     * Creates a stream that reads through several channels open on the same CZI data.
+     * Concurrent libCZI reads are spread over the channels, so a single open slide can serve
+     * several tile requests at once even when the channels do not support positional reads.
+     *
+     * @param streams channels open on the same data; all are closed with the stream
+     * @return A {@link CZIInputStream} object representing the opened stream.
+     * @see InputStreamBridge
+     */
+    public static CZIInputStream createInputStreamFromJavaStreams(List<? extends SeekableByteChannel> streams) {
+        InputStreamBridge bridge = new InputStreamBridge(streams);
+        return new CZIInputStream(null, bridge);
+    }
+
+    /**
+     * Opens a local CZI file by mapping it into memory once. Every read libCZI makes is then
+     * served by a single copy from the mapped region, without a shared file position, so
+     * reads are lock-free and many threads can read the same slide concurrently.
+     *
+     * @param path The path to a local CZI file.
+     * @return A {@link CZIInputStream} object representing the opened stream.
+     * @throws CziStreamException If the file cannot be opened or mapped.
+     * @see MemoryMappedInputStreamBridge
+     */
+    public static CZIInputStream createMemoryMappedInputStream(Path path) {
+        FileChannel channel = null;
+        MemoryMappedInputStreamBridge bridge = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            bridge = new MemoryMappedInputStreamBridge(channel);
+            return new CZIInputStream(null, bridge);
+        } catch (IOException e) {
+            closeQuietly(bridge);
+            closeQuietly(channel);
+            throw new CziStreamException("Failed to memory map CZI file: " + path, e);
+        } catch (RuntimeException e) {
+            // libCZI rejected the stream, so it will never call back to close the channel.
+            closeQuietly(bridge);
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Already failing, keep the original exception.
+        }
+    }
+
     public Integer errorCode() {
         return streamResult.errorCode();
     }
@@ -123,6 +192,13 @@ public class CZIInputStream implements AutoCloseable {
         return streamResult.stream();
     }
 
+    /**
+     * @return the block cache counters, or empty if the stream was not created with a cache
+     */
+    public Optional<BlockCacheStatistics> cacheStatistics() {
+        return bridge == null ? Optional.empty() : bridge.cacheStatistics();
+    }
+
     @Override
     public void close() throws Exception {
         // If this stream was created from a Java stream, we also need to close the
@@ -0,0 +1,153 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+/**
+ * A tile accessor that serves repeated requests from a {@link TileCache} instead of composing
+ * the tile again.
+ * <p>
+ * Misses are composed through tile accessors kept by this object, one per thread composing at
+ * that moment, so it can be used from many threads at once. Tiles are returned as
+ * {@link BitmapData} copies, which the caller must close.
+ * </p>
+ * <p>
+ * Closing releases the tile accessors but not the cache, which may be shared with other
+ * readers; the cache's lifetime is the caller's to manage. Close this before the reader.
+ * </p>
+ *
+ * <pre>{@code
+ * TileCache cache = TileCache.builder().capacityBytes(512L << 20).build();
+ * try (CachingTileAccessor accessor = new CachingTileAccessor(reader, cache, path);
+ *         BitmapData tile = accessor.getBitmapData(new IntRect(0, 0, 512, 512), 0.5f)) {
+ *     draw(tile);
+ * }
+ * }</pre>
+ */
+public class CachingTileAccessor implements AutoCloseable {
+    private final CziStreamReader reader;
+    private final TileCache cache;
+    private final Object file;
+    private final boolean privateFile;
+    private final ConcurrentLinkedDeque<SingleChannelTileAccessor> idle = new ConcurrentLinkedDeque<>();
+    private final NativeResourceTracker.Registration registration;
+
+    /**
+     * Caches tiles under a key of this accessor's own, so they are not shared with other
+     * readers and are dropped from the cache when this is closed. The key does not refer to the
+     * reader, so a shared cache does not keep it reachable.
+     *
+     * @param reader the reader to compose tiles from
+     * @param cache the cache to use
+     */
+    public CachingTileAccessor(CziStreamReader reader, TileCache cache) {
+        this(reader, cache, new Object(), true);
+    }
+
+    /**
+     * @param reader the reader to compose tiles from
+     * @param cache the cache to use
+     * @param file identifies the file in the cache, for example its path, so readers of the same file share tiles;
+     * the cache keeps it until the tiles are evicted, so it should not be the reader
+     */
+    public CachingTileAccessor(CziStreamReader reader, TileCache cache, Object file) {
+        this(reader, cache, Objects.requireNonNull(file, "file"), false);
+    }
+
+    private CachingTileAccessor(CziStreamReader reader, TileCache cache, Object file, boolean privateFile) {
+        this.reader = reader;
+        this.cache = cache;
+        this.file = file;
+        this.privateFile = privateFile;
+        this.registration = NativeResourceTracker.track(this, "CachingTileAccessor");
+    }
+
+    public TileCache cache() {
+        return cache;
+    }
+
+    /**
+     * Gets a region of channel 0, composed with the default accessor options.
+     *
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @return a copy of the tile, owned by the caller
+     */
+    public BitmapData getBitmapData(IntRect roi, float zoom) {
+        return getBitmapData(roi, zoom, Coordinate.createC0(), AccessorOptions.builder().build(), null);
+    }
+
+    /**
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @return a copy of the tile, owned by the caller
+     */
+    public BitmapData getBitmapData(IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
+        return getBitmapData(roi, zoom, coordinate, accessorOptions, null);
+    }
+
+    /**
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @param pool the pool to take the copy's buffer from, or null to allocate one
+     * @return a copy of the tile, owned by the caller
+     */
+    public BitmapData getBitmapData(IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions,
+            BitmapBufferPool pool) {
+        if (registration.isReleased()) {
+            throw new CziReaderException("Caching tile accessor has already been closed");
+        }
+        TileKey key = TileKey.of(file, roi, zoom, coordinate, accessorOptions);
+        return cache.get(key, () -> {
+            SingleChannelTileAccessor accessor = borrow();
+            try {
+                return accessor.getBitmapRaw(roi, zoom, coordinate, accessorOptions);
+            } finally {
+                giveBack(accessor);
+            }
+        }, pool);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!registration.release()) {
+            return;
+        }
+        if (privateFile) {
+            // Nothing else can ask for these tiles again.
+            cache.invalidate(file);
+        }
+        closeIdle();
+    }
+
+    private SingleChannelTileAccessor borrow() {
+        SingleChannelTileAccessor accessor = idle.pollFirst();
+        return accessor != null ? accessor : new SingleChannelTileAccessor(reader);
+    }
+
+    private void giveBack(SingleChannelTileAccessor accessor) {
+        idle.offerFirst(accessor);
+        if (registration.isReleased()) {
+            // Raced with close(); make sure the accessor is not stranded.
+            closeIdle();
+        }
+    }
+
+    private void closeIdle() {
+        SingleChannelTileAccessor accessor;
+        while ((accessor = idle.pollFirst()) != null) {
+            try {
+                accessor.close();
+            } catch (Exception e) {
+                throw new CziReaderException("Failed to close tile accessor", e);
+            }
+        }
+    }
+}
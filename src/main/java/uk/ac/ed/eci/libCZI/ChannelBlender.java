@@ -0,0 +1,133 @@
+package uk.ac.ed.eci.libCZI;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import uk.ac.ed.eci.libCZI.document.CompositionChannelInfo;
+import uk.ac.ed.eci.libCZI.internal.Access;
+
+/**
+ * Adds one channel's rows into a colour composite.
+ * <p>
+ * Each pixel goes through a look-up table to a display intensity from 0 to 255, which is
+ * scaled by fixed-point blue, green and red factors and added to separate accumulators for
+ * each colour. The look-up runs as a plain loop; the scaling and adding runs in one pass over
+ * all three colours, on the Vector API when {@link uk.ac.ed.eci.libCZI.bitmaps.BitmapOps} uses
+ * it. A blender keeps scratch rows and is for one thread at a time.
+ * </p>
+ */
+final class ChannelBlender {
+    static final int SHIFT = 8;
+    private static final Access.Bitmaps KERNELS = Access.bitmaps();
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final PixelType pixelType;
+    private final int[] lookUpTable;
+    private final int factorB;
+    private final int factorG;
+    private final int factorR;
+    private byte[] bytes = new byte[0];
+    private short[] shorts = new short[0];
+    private int[] intensities = new int[0];
+
+    ChannelBlender(CompositionChannelInfo info, PixelType pixelType) {
+        if (pixelType != PixelType.Gray8 && pixelType != PixelType.Gray16) {
+            throw new CziReaderException("Pixel type " + pixelType + " cannot be composited");
+        }
+        this.pixelType = pixelType;
+        this.lookUpTable = lookUpTable(info, pixelType == PixelType.Gray8 ? 256 : 65536);
+        int r = info.tinted() ? info.tintR() : 255;
+        int g = info.tinted() ? info.tintG() : 255;
+        int b = info.tinted() ? info.tintB() : 255;
+        this.factorR = factor(info.weight(), r);
+        this.factorG = factor(info.weight(), g);
+        this.factorB = factor(info.weight(), b);
+    }
+
+    PixelType pixelType() {
+        return pixelType;
+    }
+
+    /**
+     * Adds one row of the channel into the accumulators.
+     *
+     * @param row the row's pixels
+     * @param width the number of pixels to add
+     */
+    void accumulate(MemorySegment row, int width, int[] accB, int[] accG, int[] accR) {
+        if (intensities.length < width) {
+            intensities = new int[width];
+        }
+        int[] values = intensities;
+        int[] table = lookUpTable;
+        if (pixelType == PixelType.Gray8) {
+            if (bytes.length < width) {
+                bytes = new byte[width];
+            }
+            MemorySegment.copy(row, JAVA_BYTE, 0, bytes, 0, width);
+            byte[] pixels = bytes;
+            for (int x = 0; x < width; x++) {
+                values[x] = table[pixels[x] & 0xFF];
+            }
+        } else {
+            if (shorts.length < width) {
+                shorts = new short[width];
+            }
+            MemorySegment.copy(row, SHORT, 0, shorts, 0, width);
+            short[] pixels = shorts;
+            for (int x = 0; x < width; x++) {
+                values[x] = table[pixels[x] & 0xFFFF];
+            }
+        }
+        KERNELS.accumulate(values, width, factorB, factorG, factorR, accB, accG, accR);
+    }
+
+    /**
+     * Writes accumulated rows as Bgr24 pixels, saturating at 255.
+     */
+    static void store(int[] accB, int[] accG, int[] accR, int width, MemorySegment destination, long offset) {
+        for (int x = 0; x < width; x++) {
+            long o = offset + 3L * x;
+            destination.set(JAVA_BYTE, o, (byte) Math.min(255, accB[x] >> SHIFT));
+            destination.set(JAVA_BYTE, o + 1, (byte) Math.min(255, accG[x] >> SHIFT));
+            destination.set(JAVA_BYTE, o + 2, (byte) Math.min(255, accR[x] >> SHIFT));
+        }
+    }
+
+    private static int factor(float weight, int colour) {
+        // Scaled so that full intensity at weight 1 in a full colour adds 255 << SHIFT.
+        return Math.round(Math.max(0, weight) * colour * (1 << SHIFT) / 255f);
+    }
+
+    /**
+     * @return a table from each of {@code size} input intensities to 0..255
+     */
+    static int[] lookUpTable(CompositionChannelInfo info, int size) {
+        int[] table = new int[size];
+        byte[] given = info.lookUpTable();
+        if (given.length > 0) {
+            // Resample if the table was built for the other bit depth.
+            for (int i = 0; i < size; i++) {
+                int index = given.length == size ? i : (int) ((long) i * (given.length - 1) / (size - 1));
+                table[i] = given[index] & 0xFF;
+            }
+            return table;
+        }
+        float black = info.blackPoint();
+        float white = info.whitePoint();
+        for (int i = 0; i < size; i++) {
+            float value = (float) i / (size - 1);
+            float scaled;
+            if (white > black) {
+                scaled = (value - black) / (white - black);
+            } else {
+                scaled = value >= black ? 1 : 0;
+            }
+            table[i] = Math.round(Math.max(0, Math.min(1, scaled)) * 255);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.ed.eci.libCZI;
+
+/**
+ * Represents the compression modes a sub-block can be stored with.
+ * This enum corresponds to the `CompressionMode` enum in libCZI; values libCZI does not
+ * recognise map to {@link #Invalid}.
+ */
+public enum CompressionMode {
+    Invalid(-1),
+    UnCompressed(0),
+    Jpg(1),
+    JpgXr(4),
+    Zstd0(5),
+    Zstd1(6);
+
+    private final int value;
+
+    CompressionMode(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public static CompressionMode fromValue(int value) {
+        for (CompressionMode mode : CompressionMode.values()) {
+            if (mode.value == value) {
+                return mode;
+            }
+        }
+        return Invalid;
+    }
+}
@@ -67,6 +67,66 @@ public class Coordinate {
         return new Coordinate(2, value);
     }
 
+    public static Coordinate createFromMemorySegment(MemorySegment segment) {
+        int dimensionsValid = segment.get(JAVA_INT, 0);
+        int[] value = segment.asSlice(4, 4L * LibCziFFM.K_MAX_DIMENSION_COUNT).toArray(JAVA_INT);
+        return new Coordinate(dimensionsValid, value);
+    }
+
+    /**
+     * @param dimension the bit for the dimension, as listed for {@link #dimensionsValid()}
+     * @return whether this coordinate gives a value for the dimension
+     */
+    public boolean isValid(int dimension) {
+        return (dimensionsValid & dimension) != 0;
+    }
+
+    /**
+     * Gets the value for one dimension. Values are stored only for valid dimensions, in bit order.
+     *
+     * @param dimension the bit for the dimension, as listed for {@link #dimensionsValid()}
+     * @return the value for the dimension
+     */
+    public int get(int dimension) {
+        if (Integer.bitCount(dimension) != 1 || !isValid(dimension)) {
+            throw new IllegalArgumentException("Dimension " + dimension + " is not valid in this coordinate");
+        }
+        return value[Integer.bitCount(dimensionsValid & (dimension - 1))];
+    }
+
+    /**
+     * @param dimension the bit for the dimension, as listed for {@link #dimensionsValid()}
+     * @param dimensionValue the value to give the dimension
+     * @return a copy of this coordinate with the dimension set, added if it was not valid
+     */
+    public Coordinate with(int dimension, int dimensionValue) {
+        if (Integer.bitCount(dimension) != 1) {
+            throw new IllegalArgumentException("Dimension " + dimension + " is not a single dimension");
+        }
+        int valid = dimensionsValid | dimension;
+        int[] result = new int[LibCziFFM.K_MAX_DIMENSION_COUNT];
+        int position = 0;
+        for (int remaining = valid; remaining != 0; remaining &= remaining - 1) {
+            int bit = Integer.lowestOneBit(remaining);
+            result[position++] = bit == dimension ? dimensionValue : get(bit);
+        }
+        return new Coordinate(valid, result);
+    }
+
+    /**
+     * @param other another coordinate
+     * @return whether this coordinate has the same value as the other for every dimension the other gives
+     */
+    public boolean matches(Coordinate other) {
+        for (int remaining = other.dimensionsValid; remaining != 0; remaining &= remaining - 1) {
+            int dimension = Integer.lowestOneBit(remaining);
+            if (!isValid(dimension) || get(dimension) != other.get(dimension)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public MemorySegment toMemorySegment(Arena arena) {
         MemorySegment segment = arena.allocate(layout());
         segment.set(JAVA_INT, 0, dimensionsValid);
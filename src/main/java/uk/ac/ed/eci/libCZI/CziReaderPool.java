@@ -0,0 +1,436 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A pool of open readers, so a service can share a CZI file across many request threads
+ * without opening a new stream and reader for every request.
+ * <p>
+ * Each file gets up to {@code maxReadersPerFile} stream, reader and tile accessor sets. A
+ * caller borrows one with {@link #acquire(Path)} and gives it back by closing the
+ * {@link Lease}, normally in a try-with-resources statement. A lease is for one thread at a
+ * time, but it can be taken and returned on different threads. When every set for a file is
+ * lent out, callers wait for one to be returned, up to the configured timeout.
+ * </p>
+ * <p>
+ * Sets left idle for longer than the idle timeout are closed by {@link #evictIdle()}, which
+ * {@link #acquire(Path)} runs over every file at most once per idle timeout, so files that are
+ * no longer read do not keep readers open while the pool is in use elsewhere.
+ * </p>
+ *
+ * <pre>{@code
+ * try (CziReaderPool pool = CziReaderPool.builder().maxReadersPerFile(4).build();
+ *      CziReaderPool.Lease lease = pool.acquire(path)) {
+ *     Bitmap bitmap = lease.accessor().getBitmapRaw(roi, zoom);
+ * }
+ * }</pre>
+ *
+ * @see PoolStatistics
+ */
+public class CziReaderPool implements AutoCloseable {
+    private final int maxReadersPerFile;
+    private final long idleTimeoutNanos;
+    private final long acquireTimeoutNanos;
+    private final Function<Path, CZIInputStream> streamFactory;
+    private final Map<Path, FilePool> pools = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private CziReaderPool(Builder builder) {
+        this.maxReadersPerFile = builder.maxReadersPerFile;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.acquireTimeoutNanos = builder.acquireTimeout.toNanos();
+        this.streamFactory = builder.streamFactory;
+    }
+
+    public static class Builder {
+        private int maxReadersPerFile = Runtime.getRuntime().availableProcessors();
+        private Duration idleTimeout = Duration.ofMinutes(5);
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+        private Function<Path, CZIInputStream> streamFactory =
+            path -> CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+
+        private Builder() {}
+
+        public CziReaderPool build() {
+            return new CziReaderPool(this);
+        }
+
+        /**
+         * @param max the most readers open at once on any one file
+         */
+        public Builder maxReadersPerFile(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("A pool needs at least one reader per file");
+            }
+            this.maxReadersPerFile = max;
+
+            return this;
+        }
+        /**
+         * @param timeout how long a returned reader may stay unused before it is closed
+         */
+        public Builder idleTimeout(Duration timeout) {
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("Idle timeout must not be negative");
+            }
+            this.idleTimeout = timeout;
+
+            return this;
+        }
+        /**
+         * @param timeout how long {@link CziReaderPool#acquire(Path)} waits when every reader is lent out
+         */
+        public Builder acquireTimeout(Duration timeout) {
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("Acquire timeout must not be negative");
+            }
+            this.acquireTimeout = timeout;
+
+            return this;
+        }
+        /**
+         * @param factory opens a stream for a file, for example {@link CZIInputStream#createMemoryMappedInputStream(Path)}
+         */
+        public Builder streamFactory(Function<Path, CZIInputStream> factory) {
+            this.streamFactory = factory;
+
+            return this;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A reader, with its stream and a tile accessor, borrowed from the pool. Closing the lease
+     * returns them; they must not be used afterwards.
+     */
+    public final class Lease implements AutoCloseable {
+        private final FilePool pool;
+        private Entry entry;
+
+        private Lease(FilePool pool, Entry entry) {
+            this.pool = pool;
+            this.entry = entry;
+        }
+
+        public CziStreamReader reader() {
+            return current().reader;
+        }
+
+        public SingleChannelTileAccessor accessor() {
+            return current().accessor;
+        }
+
+        public Path path() {
+            return pool.path;
+        }
+
+        private Entry current() {
+            if (entry == null) {
+                throw new IllegalStateException("Lease has already been returned to the pool");
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() {
+            if (entry != null) {
+                pool.release(entry);
+                entry = null;
+            }
+        }
+    }
+
+    /**
+     * Borrows a reader on the file, opening one if fewer than the maximum are open and none
+     * are idle, or waiting for one to be returned otherwise.
+     *
+     * @param path the CZI file
+     * @return the lease, to be closed when the caller is done
+     * @throws CziReaderException if no reader becomes free before the acquire timeout, or the file cannot be opened
+     */
+    public Lease acquire(Path path) {
+        if (closed) {
+            throw new IllegalStateException("Reader pool is closed");
+        }
+        acquisitions.increment();
+        sweepIfDue();
+        Path key = path.toAbsolutePath().normalize();
+        while (true) {
+            FilePool pool = pools.computeIfAbsent(key, FilePool::new);
+            Entry entry = pool.acquire();
+            if (entry != null) {
+                return new Lease(pool, entry);
+            }
+            // Its last reader was closed and it was removed from the map; use a new one.
+        }
+    }
+
+    /**
+     * Closes every reader that has been idle for longer than the idle timeout.
+     */
+    public void evictIdle() {
+        for (FilePool pool : pools.values()) {
+            pool.evictIdle();
+        }
+    }
+
+    /**
+     * Runs {@link #evictIdle()} on one caller once an idle timeout has passed since the last
+     * sweep, so readers on files nobody acquires any more are still closed.
+     */
+    private void sweepIfDue() {
+        long last = lastSweep.get();
+        long now = System.nanoTime();
+        if (now - last >= idleTimeoutNanos && lastSweep.compareAndSet(last, now)) {
+            evictIdle();
+        }
+    }
+
+    public PoolStatistics statistics() {
+        int open = 0;
+        int idle = 0;
+        for (FilePool pool : pools.values()) {
+            pool.lock.lock();
+            try {
+                open += pool.open;
+                idle += pool.idle.size();
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+        return new PoolStatistics(pools.size(), open, idle, open - idle, acquisitions.sum(), hits.sum(),
+            misses.sum(), waits.sum(), Duration.ofNanos(waitNanos.sum()), evictions.sum());
+    }
+
+    /**
+     * Closes every idle reader. Readers that are lent out are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (FilePool pool : pools.values()) {
+            pool.closeIdle();
+        }
+    }
+
+    private static final class Entry {
+        final CZIInputStream stream;
+        final CziStreamReader reader;
+        final SingleChannelTileAccessor accessor;
+        long idleSince;
+
+        Entry(CZIInputStream stream, CziStreamReader reader, SingleChannelTileAccessor accessor) {
+            this.stream = stream;
+            this.reader = reader;
+            this.accessor = accessor;
+        }
+
+        void close() {
+            closeQuietly(accessor);
+            closeQuietly(reader);
+            closeQuietly(stream);
+        }
+    }
+
+    private final class FilePool {
+        final Path path;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition returned = lock.newCondition();
+        // Most recently returned first, so the oldest idle entries sit at the tail.
+        final Deque<Entry> idle = new ArrayDeque<>();
+        int open;
+        // Set, under the lock, once open falls to zero and this is removed from the map.
+        boolean retired;
+
+        FilePool(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return the entry, or null if this pool has been retired
+         */
+        Entry acquire() {
+            List<Entry> expired = new ArrayList<>();
+            lock.lock();
+            try {
+                collectExpired(expired);
+                long waitStart = 0;
+                long remaining = acquireTimeoutNanos;
+                while (true) {
+                    if (closed) {
+                        if (waitStart != 0) {
+                            waitNanos.add(System.nanoTime() - waitStart);
+                        }
+                        throw new IllegalStateException("Reader pool is closed");
+                    }
+                    // A failed open or an eviction may have retired this while we waited.
+                    if (retired) {
+                        if (waitStart != 0) {
+                            waitNanos.add(System.nanoTime() - waitStart);
+                        }
+                        return null;
+                    }
+                    if (!idle.isEmpty() || open < maxReadersPerFile) {
+                        break;
+                    }
+                    if (waitStart == 0) {
+                        waitStart = System.nanoTime();
+                        waits.increment();
+                    }
+                    if (remaining <= 0) {
+                        waitNanos.add(System.nanoTime() - waitStart);
+                        throw new CziReaderException("Timed out waiting for a reader on " + path);
+                    }
+                    try {
+                        remaining = returned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        waitNanos.add(System.nanoTime() - waitStart);
+                        throw new CziReaderException("Interrupted waiting for a reader on " + path, e);
+                    }
+                }
+                if (waitStart != 0) {
+                    waitNanos.add(System.nanoTime() - waitStart);
+                }
+                if (!idle.isEmpty()) {
+                    hits.increment();
+                    return idle.pollFirst();
+                }
+                // Reserve the slot, then open outside the lock so other files' callers are not held up.
+                open++;
+            } finally {
+                lock.unlock();
+                expired.forEach(Entry::close);
+            }
+            misses.increment();
+            try {
+                return openEntry();
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    open--;
+                    retireIfUnused();
+                    returned.signal();
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+
+        Entry openEntry() {
+            CZIInputStream stream = streamFactory.apply(path);
+            CziStreamReader reader = null;
+            try {
+                reader = CziStreamReader.fromStream(stream);
+                return new Entry(stream, reader, new SingleChannelTileAccessor(reader));
+            } catch (RuntimeException e) {
+                closeQuietly(reader);
+                closeQuietly(stream);
+                throw e;
+            }
+        }
+
+        void release(Entry entry) {
+            boolean discard;
+            lock.lock();
+            try {
+                discard = closed;
+                if (discard) {
+                    open--;
+                    retireIfUnused();
+                } else {
+                    entry.idleSince = System.nanoTime();
+                    idle.addFirst(entry);
+                }
+                returned.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (discard) {
+                entry.close();
+            }
+        }
+
+        void evictIdle() {
+            List<Entry> expired = new ArrayList<>();
+            lock.lock();
+            try {
+                collectExpired(expired);
+                retireIfUnused();
+            } finally {
+                lock.unlock();
+            }
+            expired.forEach(Entry::close);
+        }
+
+        void closeIdle() {
+            List<Entry> all;
+            lock.lock();
+            try {
+                all = new ArrayList<>(idle);
+                open -= idle.size();
+                idle.clear();
+                retireIfUnused();
+                returned.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            all.forEach(Entry::close);
+        }
+
+        /**
+         * Removes this from the map once it has no open readers, so files that are no longer
+         * read do not accumulate. Callers holding it see it is retired and take a new one.
+         */
+        private void retireIfUnused() {
+            if (open == 0 && !retired) {
+                retired = true;
+                pools.remove(path, this);
+            }
+        }
+
+        private void collectExpired(List<Entry> expired) {
+            long now = System.nanoTime();
+            while (!idle.isEmpty() && now - idle.peekLast().idleSince > idleTimeoutNanos) {
+                expired.add(idle.pollLast());
+                open--;
+                evictions.increment();
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Closing is best effort; there is nothing useful the caller can do.
+        }
+    }
+}
@@ -19,22 +19,24 @@
  */
 package uk.ac.ed.eci.libCZI;
 
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
-import java.lang.invoke.MethodHandle;
 
 import uk.ac.ed.eci.libCZI.metadata.Metadata;
 
 import static java.lang.foreign.ValueLayout.*;
 
 import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CziStreamReader implements AutoCloseable {
     private MemorySegment readerHandle;
     private final Arena classArena;
+    private final NativeResourceTracker.Registration registration;
     private Metadata metadata = null;
+    private volatile SubBlockIndex subBlockIndex;
 
 
     public static CziStreamReader fromStream(CZIInputStream streamResult) {
@@ -42,12 +44,9 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     public SubBlockStatistics simpleReaderStatistics() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-
-        MethodHandle getStats = LibCziFFM.getMethodHandle("libCZI_ReaderGetStatisticsSimple", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment simpleStatsStruct = arena.allocate(SubBlockStatistics.layout());
-            int errorCode = (int) getStats.invokeExact(readerHandle, simpleStatsStruct);
+            int errorCode = (int) LibCziFFM.READER_GET_STATISTICS_SIMPLE.invokeExact(readerHandle, simpleStatsStruct);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to get simple reader statistics. Error code: " + errorCode);
             }
@@ -61,11 +60,9 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     public int attachmentCount() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getAttachmentCount = LibCziFFM.getMethodHandle("libCZI_ReaderGetAttachmentCount", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pCount = arena.allocate(JAVA_INT);
-            int errorCode = (int) getAttachmentCount.invokeExact(readerHandle, pCount);
+            int errorCode = (int) LibCziFFM.READER_GET_ATTACHMENT_COUNT.invokeExact(readerHandle, pCount);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to get attachment count. Error code: " + errorCode);
             }
@@ -76,11 +73,9 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     public ScenePyramidStatistics pyramidStatistics() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getPyramidStatistics = LibCziFFM.getMethodHandle("libCZI_ReaderGetPyramidStatistics", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pSegment = arena.allocate(ValueLayout.ADDRESS);
-            int errorCode = (int) getPyramidStatistics.invokeExact(readerHandle, pSegment);
+            int errorCode = (int) LibCziFFM.READER_GET_PYRAMID_STATISTICS.invokeExact(readerHandle, pSegment);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to get pyramid statistics. Error code: " + errorCode);
             }
@@ -109,6 +104,81 @@ public class CziStreamReader implements AutoCloseable {
         return attachments;
     }
 
+    /**
+     * Reads one entry of the sub-block directory.
+     *
+     * @param index the index of the sub-block, from 0 to {@code subBlockCount - 1}
+     * @return the directory entry
+     */
+    public SubBlockInfo subBlockInfo(int index) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pInfo = arena.allocate(SubBlockInfo.layout());
+            int errorCode = (int) LibCziFFM.READER_TRY_GET_SUBBLOCK_INFO_FOR_INDEX.invokeExact(readerHandle, index, pInfo);
+            if (errorCode != 0) {
+                throw new CziReaderException("Failed to get sub-block info for index " + index + ". Error code: " + errorCode);
+            }
+            return SubBlockInfo.createFromMemorySegment(index, pInfo);
+        } catch (Throwable e) {
+            if (e instanceof CziReaderException) {
+                throw (CziReaderException) e;
+            }
+            throw new CziReaderException("Failed to call native function libCZI_ReaderTryGetSubBlockInfoForIndex", e);
+        }
+    }
+
+    /**
+     * Reads one sub-block as stored, without composing it. Close the result when done.
+     *
+     * @param index the index of the sub-block, from 0 to {@code subBlockCount - 1}
+     * @return the sub-block
+     * @see #subBlockIndex() to find the sub-blocks covering a region
+     */
+    public SubBlock readSubBlock(int index) {
+        return new SubBlock(readerHandle, index);
+    }
+
+    /**
+     * Gets a spatial index of the sub-block directory. The directory is read the first time
+     * this is called, with one struct reused for every entry, and the index is kept for the
+     * life of the reader.
+     *
+     * @return the index
+     */
+    public SubBlockIndex subBlockIndex() {
+        SubBlockIndex index = subBlockIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = subBlockIndex;
+                if (index == null) {
+                    index = SubBlockIndex.of(readSubBlockDirectory());
+                    subBlockIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private List<SubBlockInfo> readSubBlockDirectory() {
+        int count = simpleReaderStatistics().subBlockCount();
+        List<SubBlockInfo> subBlocks = new ArrayList<>(count);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pInfo = arena.allocate(SubBlockInfo.layout());
+            for (int index = 0; index < count; index++) {
+                int errorCode = (int) LibCziFFM.READER_TRY_GET_SUBBLOCK_INFO_FOR_INDEX.invokeExact(readerHandle, index, pInfo);
+                if (errorCode != 0) {
+                    throw new CziReaderException("Failed to get sub-block info for index " + index + ". Error code: " + errorCode);
+                }
+                subBlocks.add(SubBlockInfo.createFromMemorySegment(index, pInfo));
+            }
+        } catch (Throwable e) {
+            if (e instanceof CziReaderException) {
+                throw (CziReaderException) e;
+            }
+            throw new CziReaderException("Failed to call native function libCZI_ReaderTryGetSubBlockInfoForIndex", e);
+        }
+        return subBlocks;
+    }
+
     public Metadata metadata() {
         if (metadata == null) {
             metadata = new Metadata(readerHandle);
@@ -122,6 +192,9 @@ public class CziStreamReader implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        if (!registration.release()) {
+            return;
+        }
         releaseReader();
         if (metadata != null) {
             metadata.close();
@@ -130,7 +203,8 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     private CziStreamReader(CZIInputStream inputStream) {
-        classArena = Arena.ofConfined();
+        // Shared, so the reader can be handed between threads, as CziReaderPool does.
+        classArena = Arena.ofShared();
         readerHandle = createReader();
         try {
             openReaderWithStream(inputStream);
@@ -139,18 +213,17 @@ public class CziStreamReader implements AutoCloseable {
             classArena.close();
             throw e;
         }
+        registration = NativeResourceTracker.track(this, "CziStreamReader");
     }
 
     private void openReaderWithStream(CZIInputStream inputStream) {
         MemoryLayout readerOpenInfoLayout = MemoryLayout.structLayout(
                 ADDRESS.withName("stream_object"));
 
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle openReader = LibCziFFM.getMethodHandle("libCZI_ReaderOpen", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment openInfoStruct = arena.allocate(readerOpenInfoLayout);
             openInfoStruct.set(ADDRESS, 0, inputStream.stream());
-            int errorCode = (int) openReader.invokeExact(readerHandle, openInfoStruct);
+            int errorCode = (int) LibCziFFM.READER_OPEN.invokeExact(readerHandle, openInfoStruct);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to open CZI stream with reader. Error code: " + errorCode);
             }
@@ -163,11 +236,9 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     private MemorySegment createReader() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle createReader = LibCziFFM.getMethodHandle("libCZI_CreateReader", descriptor);
         try  {
             MemorySegment pReader = classArena.allocate(ADDRESS);
-            int errorCode = (int) createReader.invokeExact(pReader);
+            int errorCode = (int) LibCziFFM.CREATE_READER.invokeExact(pReader);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to create CZI reader. Error code: " + errorCode);
             } else {
@@ -180,12 +251,9 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     private AttachmentInfo getAttachmentInfo(int index) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS);
-        MethodHandle getAttachmentInfo = LibCziFFM.getMethodHandle("libCZI_ReaderGetAttachmentInfoFromDirectory",
-                descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment attachmentInfoStruct = arena.allocate(AttachmentInfo.layout());
-            int errorCode = (int) getAttachmentInfo.invokeExact(readerHandle, index, attachmentInfoStruct);
+            int errorCode = (int) LibCziFFM.READER_GET_ATTACHMENT_INFO_FROM_DIRECTORY.invokeExact(readerHandle, index, attachmentInfoStruct);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to get attachment info. Error code: " + errorCode);
             }
@@ -196,10 +264,8 @@ public class CziStreamReader implements AutoCloseable {
     }
 
     private void releaseReader() {
-        FunctionDescriptor descriptor = FunctionDescriptor.ofVoid(ADDRESS);
-        MethodHandle release = LibCziFFM.getMethodHandle("libCZI_ReleaseReader", descriptor);
         try {
-            release.invokeExact(readerHandle);
+            LibCziFFM.RELEASE_READER.invokeExact(readerHandle);
         } catch (Throwable e) {
             throw new RuntimeException("Failed to call native function libCZI_ReleaseReader", e);
         } finally {
@@ -0,0 +1,11 @@
+package uk.ac.ed.eci.libCZI;
+
+public class CziSubBlockException extends RuntimeException {
+    public CziSubBlockException(String message) {
+        super(message);
+    }
+
+    public CziSubBlockException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
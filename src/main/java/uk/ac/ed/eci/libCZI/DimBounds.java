@@ -12,7 +12,7 @@ import static java.lang.foreign.ValueLayout.*;
  * It provides information about the valid dimensions, and the start and size
  * for each dimension.
  *
- * @param dimensionsValid The number of valid dimensions.
+ * @param dimensionsValid A bit for each valid dimension, as for {@link Coordinate#dimensionsValid()}.
  * @param start An array containing the start index for each dimension.
  * @param size An array containing the size for each dimension.
  * @see <a href="https://zeiss.github.io/libczi/api/struct_dim_bounds_interop.html">DimBoundsInterop</a>
@@ -36,4 +36,33 @@ public record DimBounds(int dimensionsValid, int[] start, int[] size) {
 
             return new DimBounds(dimensionsValid, start, size);        
     }
+
+    /**
+     * @param dimension the bit for the dimension, as listed for {@link Coordinate#dimensionsValid()}
+     * @return whether the file has the dimension
+     */
+    public boolean isValid(int dimension) {
+        return (dimensionsValid & dimension) != 0;
+    }
+
+    /**
+     * @param dimension the bit for the dimension, as listed for {@link Coordinate#dimensionsValid()}
+     * @return the first index of the dimension, or 0 if the file does not have it
+     */
+    public int start(int dimension) {
+        return isValid(dimension) ? start[position(dimension)] : 0;
+    }
+
+    /**
+     * @param dimension the bit for the dimension, as listed for {@link Coordinate#dimensionsValid()}
+     * @return the number of indices of the dimension, or 1 if the file does not have it
+     */
+    public int size(int dimension) {
+        return isValid(dimension) ? size[position(dimension)] : 1;
+    }
+
+    // Bounds are stored only for valid dimensions, in bit order.
+    private int position(int dimension) {
+        return Integer.bitCount(dimensionsValid & (dimension - 1));
+    }
 }
@@ -10,42 +10,193 @@ import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
+import uk.ac.ed.eci.libCZI.jfr.StreamReadEvent;
+
+/**
+ * Connects a Java {@link SeekableByteChannel} to libCZI as an external input stream.
+ * <p>
+ * libCZI may call the read callback from several threads at once. When the channel is a
+ * {@link FileChannel} each read is a positional read, which does not touch the channel's
+ * position and is safe to run concurrently. Other channels share a single position, so each
+ * one serves one read at a time; passing several channels open on the same source spreads
+ * concurrent reads over them instead of queueing on one lock.
+ * </p>
+ * <p>
+ * A {@link BlockCache} can be placed in front of the channels, which helps when reads are
+ * expensive, such as channels over network or object storage.
+ * </p>
+ */
 public class InputStreamBridge implements AutoCloseable {
-    private final SeekableByteChannel channel;
+    private final List<SeekableByteChannel> channels;
+    private final FileChannel positionalChannel;
+    private final ReentrantLock[] channelLocks;
     private final Arena externalStreamArena;
-
+    private final BlockCache blockCache;
 
     public InputStreamBridge(SeekableByteChannel channel) {
-        this.channel = channel;
-        this.externalStreamArena = Arena.ofConfined();
+        this(List.of(channel));
+    }
+
+    /**
+     * Creates a bridge that serves reads through a block cache.
+     *
+     * @param channel the channel to read from
+     * @param cacheOptions the block size, capacity and read-ahead of the cache
+     */
+    public InputStreamBridge(SeekableByteChannel channel, BlockCacheOptions cacheOptions) {
+        this(List.of(channel), cacheOptions);
+    }
+
+    /**
+     * Creates a bridge over one or more channels that are all open on the same data.
+     *
+     * @param channels the channels to read from, tried in turn by concurrent reads
+     */
+    public InputStreamBridge(List<? extends SeekableByteChannel> channels) {
+        this(channels, null);
+    }
+
+    /**
+     * Creates a bridge over one or more channels that are all open on the same data,
+     * optionally serving reads through a block cache.
+     *
+     * @param channels the channels to read from, tried in turn by concurrent reads
+     * @param cacheOptions the cache to use, or null to read the channels directly
+     */
+    public InputStreamBridge(List<? extends SeekableByteChannel> channels, BlockCacheOptions cacheOptions) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is required");
+        }
+        this.channels = List.copyOf(channels);
+        this.positionalChannel = this.channels.stream()
+            .filter(FileChannel.class::isInstance)
+            .map(FileChannel.class::cast)
+            .findFirst()
+            .orElse(null);
+        this.channelLocks = new ReentrantLock[this.channels.size()];
+        for (int i = 0; i < channelLocks.length; i++) {
+            channelLocks[i] = new ReentrantLock();
+        }
+        // Shared, so the bridge can be closed from a different thread to the one that opened it.
+        this.externalStreamArena = Arena.ofShared();
+        this.blockCache = cacheOptions == null ? null : new BlockCache(cacheOptions, this::readChannels);
+    }
+
+    /**
+     * @return the block cache counters, or empty if the bridge has no cache
+     */
+    public Optional<BlockCacheStatistics> cacheStatistics() {
+        return Optional.ofNullable(blockCache).map(BlockCache::statistics);
     }
 
     public int readFunctionImplementation(long opaque_handle1, long opaque_handle2, long offset, 
                                             MemorySegment pv, long size, MemorySegment ptrBytesRead, 
                                             MemorySegment error_info) {
-        
-        
+        StreamReadEvent event = LibCziEvents.beginStreamRead(offset, size);
+        long start = System.nanoTime();
         try {
-            MemorySegment correctlySizedSegment = pv.reinterpret(size);
-            channel.position((int) offset);
-            ByteBuffer bufferToRead = correctlySizedSegment.asByteBuffer().slice(0, (int) size);            
-            int bytesRead = channel.read(bufferToRead);
-            if (bytesRead == -1) {
-                bytesRead = 0;
-            }
-            ptrBytesRead.set(ValueLayout.JAVA_LONG, 0, (long) bytesRead);
+            ByteBuffer bufferToRead = pv.reinterpret(size).asByteBuffer();
+            long bytesRead = readAt(offset, bufferToRead);
+            ptrBytesRead.set(ValueLayout.JAVA_LONG, 0, bytesRead);
+            LibCziMetrics.recordBridgeRead(bytesRead, System.nanoTime() - start);
+            LibCziEvents.endStreamRead(event, bytesRead);
             return 0;
-        } catch (IOException e) {
-            return -1;
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IOException | RuntimeException e) {
+            // An exception must not escape an upcall.
+            LibCziMetrics.recordBridgeReadFailure(System.nanoTime() - start);
+            LibCziEvents.end(event);
             return -1;
         }
     }
 
+    /**
+     * Reads from the given 64-bit offset until the buffer is full or the end of the data is reached.
+     *
+     * @param offset the offset to read from
+     * @param dst the buffer to fill
+     * @return the number of bytes read, 0 at the end of the data
+     * @throws IOException if the underlying channel fails
+     */
+    protected long readAt(long offset, ByteBuffer dst) throws IOException {
+        if (offset < 0) {
+            throw new IOException("Negative read offset: " + offset);
+        }
+        if (blockCache != null) {
+            return blockCache.read(offset, dst);
+        }
+        return readChannels(offset, dst);
+    }
+
+    private long readChannels(long offset, ByteBuffer dst) throws IOException {
+        if (positionalChannel != null) {
+            return readFully(positionalChannel, offset, dst);
+        }
+        ReentrantLock lock = null;
+        int stripe = (int) (Thread.currentThread().threadId() % channelLocks.length);
+        for (int i = 0; i < channelLocks.length; i++) {
+            int candidate = (stripe + i) % channelLocks.length;
+            if (channelLocks[candidate].tryLock()) {
+                lock = channelLocks[candidate];
+                stripe = candidate;
+                break;
+            }
+        }
+        if (lock == null) {
+            lock = channelLocks[stripe];
+            lock.lock();
+        }
+        try {
+            SeekableByteChannel channel = channels.get(stripe);
+            channel.position(offset);
+            return readFully(channel, dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long readFully(FileChannel channel, long offset, ByteBuffer dst) throws IOException {
+        long total = 0;
+        while (dst.hasRemaining()) {
+            int bytesRead = channel.read(dst, offset + total);
+            if (bytesRead < 0) {
+                break;
+            }
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    private static long readFully(SeekableByteChannel channel, ByteBuffer dst) throws IOException {
+        long total = 0;
+        while (dst.hasRemaining()) {
+            int bytesRead = channel.read(dst);
+            if (bytesRead < 0) {
+                break;
+            }
+            total += bytesRead;
+        }
+        return total;
+    }
+
     public void closeFunctionImplementation(long opaque_handle1, long opaque_handle2) throws IOException {
-        channel.close();
+        IOException failure = null;
+        for (SeekableByteChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     public MemorySegment createExternalInputStreamStruct(long opaque_handle1, long opaque_handle2) {
@@ -103,5 +254,8 @@ public class InputStreamBridge implements AutoCloseable {
     @Override
     public void close() throws Exception {
         this.externalStreamArena.close();
+        if (blockCache != null) {
+            blockCache.close();
+        }
     }
 }
@@ -37,11 +37,21 @@ public record IntRect(int x, int y, int w, int h) {
     }
     public MemorySegment toMemorySegment(Arena arena) {
         MemorySegment segment = arena.allocate(layout());
+        writeTo(segment);
+
+        return segment;
+    }
+
+    /**
+     * Writes this rectangle into an existing segment laid out as {@link #layout()}, so one
+     * native struct can be reused for many calls.
+     *
+     * @param segment the segment to overwrite
+     */
+    public void writeTo(MemorySegment segment) {
         segment.set(JAVA_INT, 0, x);
         segment.set(JAVA_INT, 4, y);
         segment.set(JAVA_INT, 8, w);
         segment.set(JAVA_INT, 12, h);
-
-        return segment;
     }
 }
@@ -0,0 +1,97 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets, cheap enough to record every call from many threads.
+ * <p>
+ * Buckets go up in 1-2-5 steps from 1 microsecond to 10 seconds, with a last bucket for
+ * anything slower. Percentiles are therefore approximate: they report the upper bound of the
+ * bucket the percentile falls in.
+ * </p>
+ */
+public final class LatencyHistogram {
+    private static final long[] UPPER_BOUNDS_NANOS = upperBounds();
+
+    private final LongAdder[] buckets = new LongAdder[UPPER_BOUNDS_NANOS.length + 1];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    private static long[] upperBounds() {
+        long[] bounds = new long[22];
+        long decade = 1_000;
+        for (int i = 0; i < bounds.length; i += 3) {
+            bounds[i] = decade;
+            if (i + 1 < bounds.length) {
+                bounds[i + 1] = 2 * decade;
+                bounds[i + 2] = 5 * decade;
+            }
+            decade *= 10;
+        }
+        return bounds;
+    }
+
+    /**
+     * @param nanos the duration of one call
+     */
+    public void record(long nanos) {
+        int index = Arrays.binarySearch(UPPER_BOUNDS_NANOS, nanos);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        totalNanos.add(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(UPPER_BOUNDS_NANOS.clone(), counts, count, totalNanos.sum());
+    }
+
+    /**
+     * The counts at one moment. Taken while calls are being recorded, the total and the counts
+     * may be a few calls apart.
+     *
+     * @param upperBoundsNanos the inclusive upper bound of each bucket but the last, which is unbounded
+     * @param counts the calls in each bucket, one more than there are bounds
+     * @param count the calls recorded
+     * @param totalNanos the time taken by all of them
+     */
+    public record Snapshot(long[] upperBoundsNanos, long[] counts, long count, long totalNanos) {
+
+        /**
+         * @return the mean duration in nanoseconds, 0 if nothing was recorded
+         */
+        public double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return the upper bound of the bucket holding that percentile, in nanoseconds; 0 if
+         * nothing was recorded and {@code Long.MAX_VALUE} for the last bucket
+         */
+        public long percentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i < upperBoundsNanos.length ? upperBoundsNanos[i] : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
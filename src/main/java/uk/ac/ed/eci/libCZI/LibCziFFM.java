@@ -8,8 +8,15 @@ import java.lang.foreign.SymbolLookup;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.UUID;
 
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
+import uk.ac.ed.eci.libCZI.jfr.NativeCallEvent;
 import uk.ac.ed.eci.libCZI.metadata.BuildInformation;
 import uk.ac.ed.eci.libCZI.metadata.LibraryVersion;
 
@@ -34,6 +41,132 @@ public class LibCziFFM {
         }
     }
 
+    // Downcall handles for every libCZIAPI symbol used by the wrapper. They are linked once, when
+    // this class is initialised, and held in static final fields so the JIT can treat them as
+    // constants and inline the call instead of looking up and re-linking the symbol on every call.
+    // Each is wrapped to record a JFR event, which costs next to nothing while the event is off,
+    // and to count the call in LibCziMetrics.
+
+    // Library, memory management
+    public static final MethodHandle ALLOCATE_MEMORY = link("libCZI_AllocateMemory",
+            FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS));
+    public static final MethodHandle FREE = link("libCZI_Free",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    public static final MethodHandle GET_LIBCZI_VERSION_INFO = link("libCZI_GetLibCZIVersionInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    public static final MethodHandle GET_LIBCZI_BUILD_INFORMATION = link("libCZI_GetLibCZIBuildInformation",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    // Input streams
+    public static final MethodHandle CREATE_INPUT_STREAM_FROM_FILE_UTF8 = link("libCZI_CreateInputStreamFromFileUTF8",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle CREATE_INPUT_STREAM_FROM_EXTERNAL = link("libCZI_CreateInputStreamFromExternal",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+
+    // Reader
+    public static final MethodHandle CREATE_READER = link("libCZI_CreateReader",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    public static final MethodHandle READER_OPEN = link("libCZI_ReaderOpen",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle READER_GET_STATISTICS_SIMPLE = link("libCZI_ReaderGetStatisticsSimple",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle READER_GET_PYRAMID_STATISTICS = link("libCZI_ReaderGetPyramidStatistics",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle READER_TRY_GET_SUBBLOCK_INFO_FOR_INDEX = link("libCZI_ReaderTryGetSubBlockInfoForIndex",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle READER_GET_ATTACHMENT_COUNT = link("libCZI_ReaderGetAttachmentCount",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle READER_GET_ATTACHMENT_INFO_FROM_DIRECTORY = link("libCZI_ReaderGetAttachmentInfoFromDirectory",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle READER_READ_ATTACHMENT = link("libCZI_ReaderReadAttachment",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle READER_GET_METADATA_SEGMENT = link("libCZI_ReaderGetMetadataSegment",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle RELEASE_READER = link("libCZI_ReleaseReader",
+            FunctionDescriptor.ofVoid(ADDRESS));
+
+    // Sub-blocks
+    public static final MethodHandle READER_READ_SUBBLOCK = link("libCZI_ReaderReadSubBlock",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle SUBBLOCK_CREATE_BITMAP = link("libCZI_SubBlockCreateBitmap",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle SUBBLOCK_GET_INFO = link("libCZI_SubBlockGetInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle SUBBLOCK_GET_RAW_DATA = link("libCZI_SubBlockGetRawData",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle RELEASE_SUBBLOCK = link("libCZI_ReleaseSubBlock",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    // Attachments
+    public static final MethodHandle ATTACHMENT_GET_RAW_DATA = link("libCZI_AttachmentGetRawData",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    public static final MethodHandle RELEASE_ATTACHMENT = link("libCZI_ReleaseAttachment",
+            FunctionDescriptor.ofVoid(ADDRESS));
+
+    // Single channel tile accessor
+    public static final MethodHandle CREATE_SINGLE_CHANNEL_TILE_ACCESSOR = link("libCZI_CreateSingleChannelTileAccessor",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle SINGLE_CHANNEL_TILE_ACCESSOR_CALC_SIZE = link("libCZI_SingleChannelTileAccessorCalcSize",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_FLOAT, ADDRESS));
+    public static final MethodHandle SINGLE_CHANNEL_TILE_ACCESSOR_GET = link("libCZI_SingleChannelTileAccessorGet",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_FLOAT, ADDRESS, ADDRESS));
+    public static final MethodHandle RELEASE_SINGLE_CHANNEL_TILE_ACCESSOR = link("libCZI_ReleaseCreateSingleChannelTileAccessor",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    // Bitmaps
+    public static final MethodHandle BITMAP_GET_INFO = link("libCZI_BitmapGetInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle BITMAP_LOCK = link("libCZI_BitmapLock",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle BITMAP_UNLOCK = link("libCZI_BitmapUnlock",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    public static final MethodHandle RELEASE_BITMAP = link("libCZI_ReleaseBitmap",
+            FunctionDescriptor.ofVoid(ADDRESS));
+
+    // Metadata and document info
+    public static final MethodHandle RELEASE_METADATA_SEGMENT = link("libCZI_ReleaseMetadataSegment",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    public static final MethodHandle METADATA_SEGMENT_GET_CZI_DOCUMENT_INFO = link("libCZI_MetadataSegmentGetCziDocumentInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle CZI_DOCUMENT_INFO_GET_GENERAL_DOCUMENT_INFO = link("libCZI_CziDocumentInfoGetGeneralDocumentInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle CZI_DOCUMENT_INFO_GET_SCALING_INFO = link("libCZI_CziDocumentInfoGetScalingInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle CZI_DOCUMENT_INFO_GET_AVAILABLE_DIMENSION = link("libCZI_CziDocumentInfoGetAvailableDimension",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle CZI_DOCUMENT_INFO_GET_DIMENSION_INFO = link("libCZI_CziDocumentInfoGetDimensionInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+    public static final MethodHandle RELEASE_CZI_DOCUMENT_INFO = link("libCZI_ReleaseCziDocumentInfo",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    public static final MethodHandle CZI_DOCUMENT_INFO_GET_DISPLAY_SETTINGS = link("libCZI_CziDocumentInfoGetDisplaySettings",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    public static final MethodHandle RELEASE_DISPLAY_SETTINGS = link("libCZI_ReleaseDisplaySettings",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    // Compositor
+    public static final MethodHandle COMPOSITOR_FILL_OUT_COMPOSITION_CHANNEL_INFO = link("libCZI_CompositorFillOutCompositionChannelInfoInterop",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_BOOLEAN, ADDRESS));
+    public static final MethodHandle COMPOSITOR_RELEASE_COMPOSITION_CHANNEL_INFO = link("libCZI_CompositorReleaseCompositionChannelInfoInterop",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    /**
+     * Links a symbol for one of the fields above, counting each call in {@link LibCziMetrics} and
+     * recording a JFR event around it when {@link NativeCallEvent} is enabled.
+     */
+    private static MethodHandle link(String methodName, FunctionDescriptor descriptor) {
+        MethodHandle counted = LibCziMetrics.instrument(methodName, getMethodHandle(methodName, descriptor));
+        return LibCziEvents.instrument(methodName, counted);
+    }
+
+    /**
+     * Looks up and links a libCZIAPI symbol. Linking is comparatively expensive, so wrapper code
+     * should use the pre-linked handles held in the static fields of this class rather than
+     * calling this per invocation.
+     *
+     * @param methodName the exported symbol name
+     * @param descriptor the native signature of the symbol
+     * @return a downcall handle for the symbol
+     */
     public static MethodHandle getMethodHandle(final String methodName, FunctionDescriptor descriptor) {
         return Linker
                 .nativeLinker()
@@ -79,11 +212,9 @@ public class LibCziFFM {
     }
 
     public static MemorySegment allocate(long size) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS);
-        MethodHandle allocate = getMethodHandle("libCZI_AllocateMemory", descriptor);
         MemorySegment pointer = GLOBAL_ARENA.allocate(ADDRESS);
         try {
-            int errorCode = (int) allocate.invokeExact(size, pointer);
+            int errorCode = (int) ALLOCATE_MEMORY.invokeExact(size, pointer);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to allocate memory. Error code: " + errorCode);
             }
@@ -97,21 +228,17 @@ public class LibCziFFM {
         if (segment == null || segment.address() == 0) {
             return;
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.ofVoid(ADDRESS);
-        MethodHandle free = getMethodHandle("libCZI_Free", descriptor);
         try {
-            free.invokeExact(segment);
+            FREE.invokeExact(segment);
         } catch (Throwable e) {
             throw new RuntimeException("Failed to call native function libCZI_Free", e);
         }
     }
 
     public static LibraryVersion getLibraryVersion() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle getLibraryVersion = getMethodHandle("libCZI_GetLibCZIVersionInfo", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pVersion = arena.allocate(LibraryVersion.LAYOUT);
-            int errorCode = (int) getLibraryVersion.invokeExact(pVersion);
+            int errorCode = (int) GET_LIBCZI_VERSION_INFO.invokeExact(pVersion);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get library version. Error code: " + errorCode);
             }
@@ -122,11 +249,9 @@ public class LibCziFFM {
     }
 
     public static BuildInformation getLibraryBuildInformation() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle getLibraryVersion = getMethodHandle("libCZI_GetLibCZIBuildInformation", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pBuild = arena.allocate(BuildInformation.LAYOUT);
-            int errorCode = (int) getLibraryVersion.invokeExact(pBuild);
+            int errorCode = (int) GET_LIBCZI_BUILD_INFORMATION.invokeExact(pBuild);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get library version. Error code: " + errorCode);
             }
@@ -135,4 +260,43 @@ public class LibCziFFM {
             throw new RuntimeException("Failed to call native function libCZI_GetLibCZIVersionInfo", e);
         }         
     }
-}
\ No newline at end of file
+
+    /**
+     * Does at startup what the first request would otherwise pay for: loads the library, links
+     * every handle above (initialising this class does that), and opens a small synthetic CZI
+     * file, composes a tile from it, copies the tile and releases everything. Call it before a
+     * service takes traffic.
+     *
+     * @return how long it took
+     */
+    public static Duration warmUp() {
+        long start = System.nanoTime();
+        Path path = null;
+        try {
+            path = Files.createTempFile("libczi-warmup-", ".czi");
+            WarmUpCzi.writeTo(path);
+            try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                    CziStreamReader reader = CziStreamReader.fromStream(stream);
+                    SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+                    Bitmap bitmap = accessor.getBitmapRaw(new IntRect(0, 0, WarmUpCzi.SIZE, WarmUpCzi.SIZE), 1.0f);
+                    BitmapData data = bitmap.getBitmapData()) {
+                if (data.getUnsignedByte(10, 20, 0) != WarmUpCzi.pixelValue(10, 20)) {
+                    throw new CziReaderException("Warm-up tile has unexpected pixels");
+                }
+            }
+        } catch (CziReaderException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CziReaderException("Failed to warm up libCZI", e);
+        } finally {
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Only a small temporary file is left behind.
+                }
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
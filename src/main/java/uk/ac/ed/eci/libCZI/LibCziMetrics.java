@@ -0,0 +1,288 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import uk.ac.ed.eci.libCZI.internal.Access;
+
+/**
+ * Counters for what the wrapper does: tiles served and how long they took, bytes decoded, calls
+ * to each libCZIAPI function, reads through input stream bridges, the native objects open now
+ * and the memory held by {@link uk.ac.ed.eci.libCZI.bitmaps.BitmapData}.
+ * <p>
+ * The counters are always on. Each is a {@link LongAdder}, so threads reading tiles in parallel
+ * do not contend on them. Read them all at once with {@link #snapshot()}, or over JMX once
+ * {@link #registerMBean()} has been called or the system property {@value #JMX_PROPERTY} is
+ * {@code true}.
+ * </p>
+ * <p>
+ * The {@code record} methods are for the wrapper's own use.
+ * </p>
+ */
+public final class LibCziMetrics {
+    /**
+     * The name the {@link LibCziMetricsMXBean} is registered under.
+     */
+    public static final String OBJECT_NAME = "uk.ac.ed.eci.libCZI:type=Metrics";
+
+    /**
+     * Set to {@code true} to register the MBean as soon as the wrapper is first used.
+     */
+    public static final String JMX_PROPERTY = "libczi.metrics.jmx";
+
+    private static final System.Logger LOGGER = System.getLogger(LibCziMetrics.class.getName());
+
+    private static final LongAdder TILES_SERVED = new LongAdder();
+    private static final LongAdder TILE_FAILURES = new LongAdder();
+    private static final LatencyHistogram TILE_LATENCY = new LatencyHistogram();
+    private static final LongAdder BYTES_DECODED = new LongAdder();
+    private static final Map<String, LongAdder> NATIVE_CALLS = new ConcurrentHashMap<>();
+    private static final LongAdder BRIDGE_READS = new LongAdder();
+    private static final LongAdder BRIDGE_READ_FAILURES = new LongAdder();
+    private static final LongAdder BRIDGE_BYTES_READ = new LongAdder();
+    private static final LatencyHistogram BRIDGE_READ_LATENCY = new LatencyHistogram();
+    private static final Map<String, LongAdder> OPEN_OBJECTS = new ConcurrentHashMap<>();
+    private static final LongAdder BITMAP_DATA_BYTES = new LongAdder();
+
+    private static final MethodHandle INCREMENT;
+
+    static {
+        Access.setMetrics(new Access.Metrics() {
+            @Override
+            public void recordBytesDecoded(long bytes) {
+                LibCziMetrics.recordBytesDecoded(bytes);
+            }
+
+            @Override
+            public void recordBitmapDataBytes(long bytes) {
+                LibCziMetrics.recordBitmapDataBytes(bytes);
+            }
+        });
+        try {
+            INCREMENT = MethodHandles.lookup().findVirtual(LongAdder.class, "increment",
+                MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        if (Boolean.getBoolean(JMX_PROPERTY)) {
+            try {
+                registerMBean();
+            } catch (IllegalStateException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to register " + OBJECT_NAME, e);
+            }
+        }
+    }
+
+    private LibCziMetrics() {}
+
+    /**
+     * All the counters at one moment. Taken while the wrapper is busy, counters read a little
+     * apart may disagree by a few calls.
+     *
+     * @param tilesServed tiles composed by tile accessors
+     * @param tileFailures tiles libCZI failed to compose
+     * @param tileLatency the time libCZI took to compose each tile served
+     * @param bytesDecoded bytes of pixels in the bitmaps libCZI produced, each counted when first read
+     * @param nativeCalls calls to each libCZIAPI function, by symbol
+     * @param bridgeReads reads libCZI made through input stream bridges
+     * @param bridgeReadFailures those reads that failed
+     * @param bridgeBytesRead bytes those reads returned
+     * @param bridgeReadLatency the time each read took
+     * @param openObjects native objects open now, by kind
+     * @param bitmapDataBytes bytes of pixels held by open {@code BitmapData}
+     * @param leaks objects garbage collected without being closed
+     */
+    public record Snapshot(long tilesServed, long tileFailures, LatencyHistogram.Snapshot tileLatency,
+            long bytesDecoded, Map<String, Long> nativeCalls, long bridgeReads, long bridgeReadFailures,
+            long bridgeBytesRead, LatencyHistogram.Snapshot bridgeReadLatency, Map<String, Long> openObjects,
+            long bitmapDataBytes, long leaks) {
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(TILES_SERVED.sum(), TILE_FAILURES.sum(), TILE_LATENCY.snapshot(), BYTES_DECODED.sum(),
+            sums(NATIVE_CALLS), BRIDGE_READS.sum(), BRIDGE_READ_FAILURES.sum(), BRIDGE_BYTES_READ.sum(),
+            BRIDGE_READ_LATENCY.snapshot(), sums(OPEN_OBJECTS), BITMAP_DATA_BYTES.sum(),
+            NativeResourceTracker.leakCount());
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        return result;
+    }
+
+    /**
+     * Registers the {@link LibCziMetricsMXBean} with the platform MBean server, if it is not
+     * registered already.
+     *
+     * @return the name it is registered under
+     */
+    public static synchronized ObjectName registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MXBean(), name);
+            }
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    public static synchronized void unregisterMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Wraps a downcall handle so that each call counts towards its symbol. The handle keeps its type.
+     */
+    static MethodHandle instrument(String symbol, MethodHandle downcall) {
+        LongAdder counter = NATIVE_CALLS.computeIfAbsent(symbol, s -> new LongAdder());
+        return MethodHandles.foldArguments(downcall, INCREMENT.bindTo(counter));
+    }
+
+    static void recordTile(long nanos) {
+        TILES_SERVED.increment();
+        TILE_LATENCY.record(nanos);
+    }
+
+    static void recordTileFailure() {
+        TILE_FAILURES.increment();
+    }
+
+    static void recordBridgeRead(long bytes, long nanos) {
+        BRIDGE_READS.increment();
+        BRIDGE_BYTES_READ.add(bytes);
+        BRIDGE_READ_LATENCY.record(nanos);
+    }
+
+    static void recordBridgeReadFailure(long nanos) {
+        BRIDGE_READS.increment();
+        BRIDGE_READ_FAILURES.increment();
+        BRIDGE_READ_LATENCY.record(nanos);
+    }
+
+    /**
+     * @return the gauge of open objects of one kind, for {@link NativeResourceTracker}
+     */
+    static LongAdder openObjects(String kind) {
+        return OPEN_OBJECTS.computeIfAbsent(kind, k -> new LongAdder());
+    }
+
+    static void recordBytesDecoded(long bytes) {
+        BYTES_DECODED.add(bytes);
+    }
+
+    /**
+     * @param bytes allocated (positive) or freed (negative) by a {@code BitmapData}
+     */
+    static void recordBitmapDataBytes(long bytes) {
+        BITMAP_DATA_BYTES.add(bytes);
+    }
+
+    private static double micros(double nanos) {
+        return nanos / 1_000;
+    }
+
+    private static final class MXBean implements LibCziMetricsMXBean {
+
+        @Override
+        public long getTilesServed() {
+            return TILES_SERVED.sum();
+        }
+
+        @Override
+        public long getTileFailures() {
+            return TILE_FAILURES.sum();
+        }
+
+        @Override
+        public long getBytesDecoded() {
+            return BYTES_DECODED.sum();
+        }
+
+        @Override
+        public double getTileLatencyMeanMicros() {
+            return micros(TILE_LATENCY.snapshot().meanNanos());
+        }
+
+        @Override
+        public double getTileLatencyP50Micros() {
+            return micros(TILE_LATENCY.snapshot().percentileNanos(50));
+        }
+
+        @Override
+        public double getTileLatencyP99Micros() {
+            return micros(TILE_LATENCY.snapshot().percentileNanos(99));
+        }
+
+        @Override
+        public Map<String, Long> getNativeCalls() {
+            return sums(NATIVE_CALLS);
+        }
+
+        @Override
+        public long getBridgeReads() {
+            return BRIDGE_READS.sum();
+        }
+
+        @Override
+        public long getBridgeReadFailures() {
+            return BRIDGE_READ_FAILURES.sum();
+        }
+
+        @Override
+        public long getBridgeBytesRead() {
+            return BRIDGE_BYTES_READ.sum();
+        }
+
+        @Override
+        public double getBridgeReadLatencyMeanMicros() {
+            return micros(BRIDGE_READ_LATENCY.snapshot().meanNanos());
+        }
+
+        @Override
+        public double getBridgeReadLatencyP50Micros() {
+            return micros(BRIDGE_READ_LATENCY.snapshot().percentileNanos(50));
+        }
+
+        @Override
+        public double getBridgeReadLatencyP99Micros() {
+            return micros(BRIDGE_READ_LATENCY.snapshot().percentileNanos(99));
+        }
+
+        @Override
+        public Map<String, Long> getOpenObjects() {
+            return sums(OPEN_OBJECTS);
+        }
+
+        @Override
+        public long getBitmapDataBytes() {
+            return BITMAP_DATA_BYTES.sum();
+        }
+
+        @Override
+        public long getLeaks() {
+            return NativeResourceTracker.leakCount();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link LibCziMetrics}, registered as {@value LibCziMetrics#OBJECT_NAME}.
+ * Latencies are in microseconds; percentiles are the upper bound of a {@link LatencyHistogram}
+ * bucket.
+ */
+public interface LibCziMetricsMXBean {
+
+    long getTilesServed();
+
+    long getTileFailures();
+
+    long getBytesDecoded();
+
+    double getTileLatencyMeanMicros();
+
+    double getTileLatencyP50Micros();
+
+    double getTileLatencyP99Micros();
+
+    /**
+     * @return the calls made to each libCZIAPI function, by symbol
+     */
+    Map<String, Long> getNativeCalls();
+
+    long getBridgeReads();
+
+    long getBridgeReadFailures();
+
+    long getBridgeBytesRead();
+
+    double getBridgeReadLatencyMeanMicros();
+
+    double getBridgeReadLatencyP50Micros();
+
+    double getBridgeReadLatencyP99Micros();
+
+    /**
+     * @return the readers, accessors, bitmaps and other native objects open now, by kind
+     */
+    Map<String, Long> getOpenObjects();
+
+    long getBitmapDataBytes();
+
+    long getLeaks();
+}
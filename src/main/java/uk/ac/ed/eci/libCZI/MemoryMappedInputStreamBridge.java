@@ -0,0 +1,68 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link InputStreamBridge} for local files that maps the whole file into memory once
+ * and satisfies each libCZI read callback with a single {@link MemorySegment#copy}
+ * out of the mapped region.
+ * <p>
+ * Unlike the channel based bridge there is no shared file position, so reads need no
+ * locking and any number of libCZI threads may read the same slide at the same time.
+ * The mapping is held in a shared {@link Arena} and is unmapped when the bridge is closed.
+ * </p>
+ *
+ * @see CZIInputStream#createMemoryMappedInputStream(java.nio.file.Path)
+ */
+public class MemoryMappedInputStreamBridge extends InputStreamBridge {
+    private final Arena mappingArena;
+    private final MemorySegment mapping;
+
+    public MemoryMappedInputStreamBridge(FileChannel channel) throws IOException {
+        super(channel);
+        this.mappingArena = Arena.ofShared();
+        try {
+            this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), mappingArena);
+        } catch (IOException | RuntimeException e) {
+            mappingArena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies straight out of the mapping; the caller's buffer wraps libCZI's, so this is the
+     * only copy. A read after the mapping is closed throws, and fails the callback.
+     */
+    @Override
+    protected long readAt(long offset, ByteBuffer dst) throws IOException {
+        if (offset < 0) {
+            throw new IOException("Negative read offset: " + offset);
+        }
+        int bytesToCopy = (int) Math.min(dst.remaining(), Math.max(0, mapping.byteSize() - offset));
+        if (bytesToCopy > 0) {
+            MemorySegment.copy(mapping, offset, MemorySegment.ofBuffer(dst), 0, bytesToCopy);
+            dst.position(dst.position() + bytesToCopy);
+        }
+        return bytesToCopy;
+    }
+
+    /**
+     * @return the size in bytes of the mapped file
+     */
+    public long mappedSize() {
+        return mapping.byteSize();
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            super.close();
+        } finally {
+            mappingArena.close();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+import uk.ac.ed.eci.libCZI.document.CompositionChannelInfo;
+import uk.ac.ed.eci.libCZI.document.DisplaySettings;
+import uk.ac.ed.eci.libCZI.internal.Access;
+
+/**
+ * Renders several channels of a region as one Bgr24 colour image, as a viewer would show a
+ * fluorescence image.
+ * <p>
+ * How each channel is drawn, its tint, black and white points and gamma, comes from the
+ * display settings stored in the document unless given to the builder. For each request the
+ * channels are read at the same time, each through its own tile accessor, and then blended
+ * row by row into the output in a single pass.
+ * </p>
+ * <p>
+ * An accessor is for one thread at a time. Close it to release its tile accessors and, if it
+ * started them, its threads; it must be closed before the reader is.
+ * </p>
+ *
+ * <pre>{@code
+ * try (MultiChannelCompositeAccessor accessor = MultiChannelCompositeAccessor.builder(reader).build();
+ *         BitmapData rgb = accessor.getBitmapData(new IntRect(0, 0, 1024, 1024), 0.25f)) {
+ *     display(rgb);
+ * }
+ * }</pre>
+ */
+public class MultiChannelCompositeAccessor implements AutoCloseable {
+    private static final int DIMENSION_C = 2;
+
+    private final int[] channels;
+    private final CompositionChannelInfo[] channelInfo;
+    private final Coordinate coordinate;
+    private final AccessorOptions accessorOptions;
+    private final SingleChannelTileAccessor[] accessors;
+    private final ChannelBlender[] blenders;
+    private final ExecutorService executor;
+    private final ExecutorService ownExecutor;
+    private final NativeResourceTracker.Registration registration;
+
+    private MultiChannelCompositeAccessor(Builder builder) {
+        CziStreamReader reader = builder.reader;
+        this.channels = builder.channels != null ? builder.channels.clone() : allChannels(reader);
+        this.coordinate = builder.coordinate;
+        this.accessorOptions = builder.accessorOptions;
+        this.channelInfo = channelInfo(reader, channels, builder.channelInfo);
+        this.blenders = new ChannelBlender[channels.length];
+        this.accessors = new SingleChannelTileAccessor[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            accessors[i] = new SingleChannelTileAccessor(reader);
+        }
+        if (builder.executor != null) {
+            this.ownExecutor = null;
+            this.executor = builder.executor;
+        } else {
+            this.ownExecutor = Executors.newFixedThreadPool(Math.max(1, channels.length), task -> {
+                Thread thread = new Thread(task, "libczi-composite");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownExecutor;
+        }
+        this.registration = NativeResourceTracker.track(this, "MultiChannelCompositeAccessor");
+    }
+
+    public static class Builder {
+        private final CziStreamReader reader;
+        private int[] channels;
+        private final Map<Integer, CompositionChannelInfo> channelInfo = new HashMap<>();
+        private Coordinate coordinate = new Coordinate(0, new int[LibCziFFM.K_MAX_DIMENSION_COUNT]);
+        // Black, so regions without data add nothing to the composite.
+        private AccessorOptions accessorOptions = AccessorOptions.builder().background(0).build();
+        private ExecutorService executor;
+
+        private Builder(CziStreamReader reader) {
+            this.reader = reader;
+        }
+
+        public MultiChannelCompositeAccessor build() {
+            if (channels != null && channels.length == 0) {
+                throw new IllegalArgumentException("At least one channel must be composited");
+            }
+            return new MultiChannelCompositeAccessor(this);
+        }
+
+        /**
+         * @param channels the channels to composite, by C index; defaults to every channel in the file
+         */
+        public Builder channels(int... channels) {
+            this.channels = channels.clone();
+
+            return this;
+        }
+        /**
+         * @param channel the channel, by C index
+         * @param info how to draw the channel, in place of the document's display settings
+         */
+        public Builder channelInfo(int channel, CompositionChannelInfo info) {
+            this.channelInfo.put(channel, info);
+
+            return this;
+        }
+        /**
+         * @param coordinate the plane to read, for example the Z, T and scene; any C it gives is replaced per channel
+         */
+        public Builder coordinate(Coordinate coordinate) {
+            this.coordinate = coordinate;
+
+            return this;
+        }
+        public Builder accessorOptions(AccessorOptions accessorOptions) {
+            this.accessorOptions = accessorOptions;
+
+            return this;
+        }
+        /**
+         * @param executor reads the channels; by default the accessor starts, and stops, a thread per channel
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+
+            return this;
+        }
+    }
+
+    /**
+     * @param reader the reader to composite from; it must stay open until the accessor is closed
+     */
+    public static Builder builder(CziStreamReader reader) {
+        return new Builder(reader);
+    }
+
+    /**
+     * @return the composited channels, by C index
+     */
+    public int[] channels() {
+        return channels.clone();
+    }
+
+    /**
+     * @param channel the position of the channel in {@link #channels()}
+     * @return how the channel is drawn
+     */
+    public CompositionChannelInfo channelInfo(int channel) {
+        return channelInfo[channel];
+    }
+
+    /**
+     * Reads a region of every channel and blends them.
+     *
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @return the composite, as Bgr24 pixels
+     */
+    public BitmapData getBitmapData(IntRect roi, float zoom) {
+        return getBitmapData(roi, zoom, null);
+    }
+
+    /**
+     * Reads a region of every channel and blends them into a pooled buffer.
+     *
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param pool the pool to take the output buffer from, or null to allocate one
+     * @return the composite, as Bgr24 pixels
+     */
+    public BitmapData getBitmapData(IntRect roi, float zoom, BitmapBufferPool pool) {
+        if (registration.isReleased()) {
+            throw new CziReaderException("Composite accessor has already been closed");
+        }
+        Bitmap[] bitmaps = fetch(roi, zoom);
+        List<LockedBitmapView> views = new ArrayList<>(bitmaps.length);
+        try {
+            int width = Integer.MAX_VALUE;
+            int height = Integer.MAX_VALUE;
+            for (Bitmap bitmap : bitmaps) {
+                LockedBitmapView view = bitmap.lockData();
+                views.add(view);
+                width = Math.min(width, view.width());
+                height = Math.min(height, view.height());
+            }
+            return blend(views, width, height, pool);
+        } finally {
+            closeAll(views, bitmaps);
+        }
+    }
+
+    /**
+     * Blends straight into the output bitmap's rows, so each pixel is written once.
+     */
+    private BitmapData blend(List<LockedBitmapView> views, int width, int height, BitmapBufferPool pool) {
+        ChannelBlender[] channelBlenders = new ChannelBlender[views.size()];
+        for (int i = 0; i < views.size(); i++) {
+            channelBlenders[i] = blender(i, views.get(i).pixelType());
+        }
+        BitmapData result = Access.bitmaps().allocate(new BitmapInfo(width, height, PixelType.Bgr24), pool);
+        try {
+            MemorySegment pixels = Access.bitmaps().writableSegment(result);
+            long stride = result.stride();
+            int[] accB = new int[width];
+            int[] accG = new int[width];
+            int[] accR = new int[width];
+            for (int y = 0; y < height; y++) {
+                Arrays.fill(accB, 0);
+                Arrays.fill(accG, 0);
+                Arrays.fill(accR, 0);
+                for (int i = 0; i < views.size(); i++) {
+                    channelBlenders[i].accumulate(views.get(i).row(y), width, accB, accG, accR);
+                }
+                ChannelBlender.store(accB, accG, accR, width, pixels, y * stride);
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            try {
+                result.close();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Blenders keep their look-up tables between requests, and are rebuilt only if a
+     * channel's pixel type changes.
+     */
+    private ChannelBlender blender(int channel, PixelType pixelType) {
+        ChannelBlender blender = blenders[channel];
+        if (blender == null || blender.pixelType() != pixelType) {
+            blender = new ChannelBlender(channelInfo[channel], pixelType);
+            blenders[channel] = blender;
+        }
+        return blender;
+    }
+
+    private Bitmap[] fetch(IntRect roi, float zoom) {
+        List<Future<Bitmap>> futures = new ArrayList<>(channels.length);
+        AtomicBoolean[] started = new AtomicBoolean[channels.length];
+        Throwable failure = null;
+        for (int i = 0; i < channels.length; i++) {
+            SingleChannelTileAccessor accessor = accessors[i];
+            Coordinate plane = coordinate.with(DIMENSION_C, channels[i]);
+            AtomicBoolean channelStarted = new AtomicBoolean();
+            started[i] = channelStarted;
+            try {
+                futures.add(executor.submit(() -> channelStarted.compareAndSet(false, true)
+                    ? accessor.getBitmapRaw(roi, zoom, plane, accessorOptions)
+                    : null));
+            } catch (RejectedExecutionException e) {
+                failure = e;
+                break;
+            }
+        }
+        // Reads are never interrupted: an interrupt during a read would close a file channel
+        // the reader shares. Wait for every running read, so its bitmap is released if another
+        // failed, and cancel only those that have not started.
+        Bitmap[] bitmaps = new Bitmap[channels.length];
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            while (true) {
+                try {
+                    bitmaps[i] = futures.get(i).get();
+                    break;
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    failure = failure == null ? e : failure;
+                    for (int j = i; j < futures.size(); j++) {
+                        if (started[j].compareAndSet(false, true)) {
+                            futures.get(j).cancel(false);
+                        }
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            closeAll(List.of(), bitmaps);
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new CziReaderException("Failed to read channels", failure);
+        }
+        return bitmaps;
+    }
+
+    private static void closeAll(List<LockedBitmapView> views, Bitmap[] bitmaps) {
+        for (LockedBitmapView view : views) {
+            try {
+                view.close();
+            } catch (Exception e) {
+                // Still release the rest.
+            }
+        }
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                bitmap.release();
+            }
+        }
+    }
+
+    private static int[] allChannels(CziStreamReader reader) {
+        DimBounds bounds = reader.simpleReaderStatistics().dimBounds();
+        int[] channels = new int[bounds.size(DIMENSION_C)];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = bounds.start(DIMENSION_C) + i;
+        }
+        return channels;
+    }
+
+    /**
+     * Takes each channel's information from the builder if given, and otherwise from the
+     * document, with a look-up table for the channel's pixel depth.
+     */
+    private static CompositionChannelInfo[] channelInfo(CziStreamReader reader, int[] channels,
+            Map<Integer, CompositionChannelInfo> given) {
+        CompositionChannelInfo[] result = new CompositionChannelInfo[channels.length];
+        DisplaySettings displaySettings = null;
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                result[i] = given.get(channels[i]);
+                if (result[i] == null) {
+                    if (displaySettings == null) {
+                        displaySettings = reader.metadata().documentInfo().displaySettings();
+                    }
+                    result[i] = displaySettings.compositionChannelInfo(channels[i], isSixteenBit(reader, channels[i]));
+                }
+            }
+        } finally {
+            if (displaySettings != null) {
+                try {
+                    displaySettings.close();
+                } catch (Exception e) {
+                    throw new CziReaderException("Failed to release display settings", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSixteenBit(CziStreamReader reader, int channel) {
+        for (SubBlockInfo info : reader.subBlockIndex().all()) {
+            Coordinate coordinate = info.coordinate();
+            if (!coordinate.isValid(DIMENSION_C) || coordinate.get(DIMENSION_C) == channel) {
+                return info.pixelType() == PixelType.Gray16 || info.pixelType() == PixelType.Bgr48;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!registration.release()) {
+            return;
+        }
+        if (ownExecutor != null) {
+            // Not shutdownNow(): interrupting a read would close the reader's file channel.
+            ownExecutor.shutdown();
+            awaitTermination(ownExecutor);
+        }
+        Exception failure = null;
+        for (SingleChannelTileAccessor accessor : accessors) {
+            try {
+                accessor.close();
+            } catch (Exception e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the native objects the wrapper hands out, so each is released exactly once
+ * and the ones that never are can be found.
+ * <p>
+ * Every bitmap, reader and tile accessor registers here when it is created and deregisters
+ * when it is closed; {@link LibCziMetrics} counts the ones open of each kind. If one is garbage
+ * collected without being closed, a warning is logged through {@link System.Logger}. Bitmaps
+ * are then released on the cleaner thread as a safety net; readers and accessors are only
+ * reported, since their streams may already be gone.
+ * </p>
+ * <p>
+ * Setting the system property {@value #DEBUG_PROPERTY} to {@code true} also records where each
+ * object was created, includes that in the warnings, and logs every object still open when the
+ * JVM shuts down. Recording a stack trace per object is slow, so leave it off in production.
+ * </p>
+ */
+public final class NativeResourceTracker {
+    /**
+     * Set to {@code true} to record allocation sites and report open objects at shutdown.
+     */
+    public static final String DEBUG_PROPERTY = "libczi.debugLeaks";
+
+    private static final System.Logger LOGGER = System.getLogger(NativeResourceTracker.class.getName());
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final boolean DEBUG = Boolean.getBoolean(DEBUG_PROPERTY);
+    private static final Set<State> OPEN = ConcurrentHashMap.newKeySet();
+    private static final LongAdder LEAKS = new LongAdder();
+
+    static {
+        if (DEBUG) {
+            Runtime.getRuntime().addShutdownHook(new Thread(NativeResourceTracker::reportOpen, "libczi-leak-report"));
+        }
+    }
+
+    private NativeResourceTracker() {}
+
+    /**
+     * A registration for one native object. Call {@link #release()} from the owner's close method.
+     */
+    public static final class Registration {
+        private final State state;
+        private final Cleaner.Cleanable cleanable;
+
+        private Registration(Object owner, State state) {
+            this.state = state;
+            this.cleanable = CLEANER.register(owner, state);
+        }
+
+        /**
+         * Releases the native object if it has not been already.
+         *
+         * @return true if this call released it, false if it had already been released
+         */
+        public boolean release() {
+            if (!state.released.compareAndSet(false, true)) {
+                return false;
+            }
+            OPEN.remove(state);
+            state.open.decrement();
+            cleanable.clean();
+            if (state.release != null) {
+                state.release.run();
+            }
+            return true;
+        }
+
+        public boolean isReleased() {
+            return state.released.get();
+        }
+    }
+
+    /**
+     * Registers a native object that is released when its owner is closed or, failing that,
+     * when the owner is garbage collected.
+     *
+     * @param owner the Java object that holds the native handle
+     * @param kind a short name for the kind of object, used in warnings
+     * @param release frees the native object; it must not refer to the owner, or the owner is never collected
+     */
+    public static Registration register(Object owner, String kind, Runnable release) {
+        return register(owner, kind, release, true);
+    }
+
+    /**
+     * Registers a native object that is only reported, not released, if its owner is garbage
+     * collected without being closed.
+     *
+     * @param owner the Java object that holds the native handle
+     * @param kind a short name for the kind of object, used in warnings
+     */
+    public static Registration track(Object owner, String kind) {
+        return register(owner, kind, null, false);
+    }
+
+    private static Registration register(Object owner, String kind, Runnable release, boolean releaseWhenCollected) {
+        State state = new State(kind, release, releaseWhenCollected,
+            DEBUG ? new Throwable(kind + " created here") : null);
+        if (DEBUG) {
+            OPEN.add(state);
+        }
+        state.open.increment();
+        return new Registration(owner, state);
+    }
+
+    /**
+     * @return whether allocation sites are being recorded
+     */
+    public static boolean isDebugEnabled() {
+        return DEBUG;
+    }
+
+    /**
+     * @return the number of objects garbage collected without being closed since the JVM started
+     */
+    public static long leakCount() {
+        return LEAKS.sum();
+    }
+
+    /**
+     * @return a description of each object still open, with where it was created; empty unless
+     * {@link #DEBUG_PROPERTY} is set
+     */
+    public static List<String> openResources() {
+        List<String> result = new ArrayList<>();
+        for (State state : OPEN) {
+            result.add(state.describe());
+        }
+        return result;
+    }
+
+    private static void reportOpen() {
+        List<String> open = openResources();
+        if (!open.isEmpty()) {
+            LOGGER.log(System.Logger.Level.WARNING, "{0} libCZI objects were not closed before shutdown:\n{1}",
+                open.size(), String.join("\n", open));
+        }
+    }
+
+    /**
+     * The cleaning action. It runs once, either from {@link Registration#release()}, where the
+     * flag is already set and it does nothing, or from the cleaner thread after a leak.
+     */
+    private static final class State implements Runnable {
+        final AtomicBoolean released = new AtomicBoolean();
+        final String kind;
+        final Runnable release;
+        final boolean releaseWhenCollected;
+        final Throwable allocationSite;
+        final LongAdder open;
+
+        State(String kind, Runnable release, boolean releaseWhenCollected, Throwable allocationSite) {
+            this.kind = kind;
+            this.open = LibCziMetrics.openObjects(kind);
+            this.release = release;
+            this.releaseWhenCollected = releaseWhenCollected;
+            this.allocationSite = allocationSite;
+        }
+
+        @Override
+        public void run() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            OPEN.remove(this);
+            open.decrement();
+            LEAKS.increment();
+            String action = releaseWhenCollected ? "; it has been released now" : "; its native memory is lost";
+            if (allocationSite != null) {
+                LOGGER.log(System.Logger.Level.WARNING, kind + " was garbage collected without being closed" + action,
+                    allocationSite);
+            } else {
+                LOGGER.log(System.Logger.Level.WARNING, kind + " was garbage collected without being closed" + action
+                    + ". Set -D" + DEBUG_PROPERTY + "=true to see where it was created.");
+            }
+            if (releaseWhenCollected && release != null) {
+                try {
+                    release.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Failed to release " + kind, e);
+                }
+            }
+        }
+
+        String describe() {
+            if (allocationSite == null) {
+                return kind;
+            }
+            StringBuilder builder = new StringBuilder(kind);
+            for (StackTraceElement element : allocationSite.getStackTrace()) {
+                builder.append("\n\tat ").append(element);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package uk.ac.ed.eci.libCZI;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
 
 
 import static uk.ac.ed.eci.libCZI.NativeUtils.Architecture.AARCH64;
@@ -15,9 +24,27 @@ import static uk.ac.ed.eci.libCZI.NativeUtils.OS.MACOS;
 import static uk.ac.ed.eci.libCZI.NativeUtils.OS.WINDOWS;
 
 
+/**
+ * Loads the libCZIAPI shared library, from the library path if it is there and otherwise from
+ * the copy bundled in the jar.
+ * <p>
+ * The bundled copy is extracted once into a cache directory, keyed by its SHA-256, and reused
+ * by every later JVM, including ones started at the same time. The default is
+ * {@code ~/.cache/libczi}; set {@value #CACHE_DIR_PROPERTY} to choose the directory, for example
+ * a volume that outlives a container's restarts. On POSIX systems the directories are created
+ * readable only by their owner, and a cache directory owned by another user or writable by
+ * anyone else is not used, so nobody else can swap the library between its hash check and
+ * loading it.
+ * </p>
+ */
 public class NativeUtils {
+    /**
+     * The directory bundled libraries are extracted to.
+     */
+    public static final String CACHE_DIR_PROPERTY = "libczi.nativeCacheDir";
 
     private static final String RESOURCE_PREFIX = getPrefix();
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
 
     enum OS {
         LINUX,
@@ -74,17 +101,106 @@ public class NativeUtils {
             if (resourcePath.startsWith("/")) {
                 resourcePath = resourcePath.substring(1);
             }
-            // Prepare a destination file
-            Path tempDir = Files.createTempDirectory("native-libs");
-            File tempLib = tempDir.resolve(libname).toFile();
-            tempLib.deleteOnExit(); // Delete the file when JVM exits (optional, for cleanup)
             try (InputStream in = loader.getResourceAsStream(resourcePath)) {
                 if (in == null) {
                     throw new IOException("Library not found in JAR: " + libname);
                 }
-                Files.copy(in, tempLib.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.load(extract(in, libname, cacheDirectory()).toAbsolutePath().toString());
             }
-            System.load(tempLib.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return the directory set by {@value #CACHE_DIR_PROPERTY}, or {@code ~/.cache/libczi}
+     */
+    static Path cacheDirectory() {
+        String configured = System.getProperty(CACHE_DIR_PROPERTY);
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("user.home"), ".cache", "libczi");
+    }
+
+    /**
+     * Extracts a library into a subdirectory of the cache named after the SHA-256 of its
+     * contents, unless an earlier run already has. The file is written under a temporary name
+     * and renamed into place, so a JVM never loads a half-written copy from another, and an
+     * existing copy is only used if its hash matches. If the cache cannot be written, or is
+     * not private to this user, the library goes to a new temporary directory as before.
+     *
+     * @return the extracted library
+     */
+    static Path extract(InputStream in, String libname, Path cacheDir) throws IOException {
+        byte[] library = in.readAllBytes();
+        String hash = sha256(library);
+        Path target = cacheDir.resolve(hash).resolve(libname);
+        try {
+            createPrivateDirectory(cacheDir);
+            createPrivateDirectory(target.getParent());
+            if (isComplete(target, hash)) {
+                return target;
+            }
+            Path partial = Files.createTempFile(target.getParent(), libname, ".partial");
+            try {
+                Files.write(partial, library);
+                Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(partial);
+                // Another JVM may have won the race, and on Windows its copy cannot be replaced
+                // while it is loaded.
+                if (!isComplete(target, hash)) {
+                    throw e;
+                }
+            }
+            return target;
+        } catch (IOException e) {
+            Path tempDir = Files.createTempDirectory("native-libs");
+            Path tempLib = tempDir.resolve(libname);
+            tempLib.toFile().deleteOnExit();
+            Files.write(tempLib, library);
+            return tempLib;
+        }
+    }
+
+    /**
+     * Creates a directory, if need be, that only its owner can use, and checks that an existing
+     * one is owned by this user and cannot be written by anyone else.
+     */
+    private static void createPrivateDirectory(Path dir) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir);
+            return;
+        }
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(dir + " is not a directory");
+        }
+        UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+            throw new IOException(dir + " is owned by another user");
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS);
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(dir + " can be written by other users");
+        }
+    }
+
+    private static boolean isComplete(Path library, String hash) {
+        try {
+            return Files.isRegularFile(library, LinkOption.NOFOLLOW_LINKS)
+                && sha256(Files.readAllBytes(library)).equals(hash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 
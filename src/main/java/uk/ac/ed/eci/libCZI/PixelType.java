@@ -33,6 +33,69 @@ public enum PixelType {
         return value;
     }
 
+    /**
+     * @return the number of bytes used by one pixel of this type
+     */
+    public int bytesPerPixel() {
+        switch (this) {
+            case Gray8:
+                return 1;
+            case Gray16:
+                return 2;
+            case Bgr24:
+                return 3;
+            case Gray32Float:
+            case Bgra32:
+            case Gray32:
+                return 4;
+            case Bgr48:
+                return 6;
+            case Gray64ComplexFloat:
+            case Gray64Float:
+                return 8;
+            case Bgr96Float:
+                return 12;
+            case Bgr192ComplexFloat:
+                return 24;
+            default:
+                throw new UnsupportedOperationException("Unsupported pixel type: " + this);
+        }
+    }
+
+    /**
+     * @return the number of scalar values in one pixel, counting the real and imaginary parts
+     * of complex types separately
+     */
+    public int samplesPerPixel() {
+        switch (this) {
+            case Gray8:
+            case Gray16:
+            case Gray32Float:
+            case Gray32:
+            case Gray64Float:
+                return 1;
+            case Gray64ComplexFloat:
+                return 2;
+            case Bgr24:
+            case Bgr48:
+            case Bgr96Float:
+                return 3;
+            case Bgra32:
+                return 4;
+            case Bgr192ComplexFloat:
+                return 6;
+            default:
+                throw new UnsupportedOperationException("Unsupported pixel type: " + this);
+        }
+    }
+
+    /**
+     * @return the number of bytes in one sample
+     */
+    public int bytesPerSample() {
+        return bytesPerPixel() / samplesPerPixel();
+    }
+
     public static PixelType fromValue(int value) {
         for (PixelType type : PixelType.values()) {
             if (type.value == value) {
@@ -0,0 +1,23 @@
+package uk.ac.ed.eci.libCZI;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * One tile of a plane read by a {@link PlaneTiler}. Closing the tile releases its bitmap.
+ *
+ * @param index The position of the tile in the grid, counting row by row from the top left.
+ * @param column The column of the tile in the grid.
+ * @param row The row of the tile in the grid.
+ * @param region The region the tile covers, in layer-0 coordinates.
+ * @param bitmap The tile, composed at the tiler's zoom.
+ */
+public record PlaneTile(int index, int column, int row, IntRect region, Bitmap bitmap) implements AutoCloseable {
+
+    /**
+     * Releases the bitmap.
+     */
+    @Override
+    public void close() {
+        bitmap.release();
+    }
+}
@@ -0,0 +1,505 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * Reads every tile of a plane, in parallel, as a stream.
+ * <p>
+ * The region, by default the bounding box of the file, is cut into a grid of square tiles of
+ * {@code tileSize} layer-0 pixels, neighbours sharing {@code overlap} pixels. Each tile is
+ * composed at the configured zoom. Worker tasks, each with its own tile accessor on the
+ * reader, take the next outstanding tile until none are left, so the work spreads over
+ * {@code parallelism} cores.
+ * </p>
+ * <p>
+ * At most {@code maxTilesInFlight} tiles are read but not yet taken from the stream, so a slow
+ * consumer holds the workers back rather than filling memory. Tiles are delivered in grid order
+ * when {@code ordered} is set, and as soon as they are read otherwise.
+ * </p>
+ * <p>
+ * Each tile must be closed to release its bitmap, and the stream must be closed, normally in a
+ * try-with-resources statement, to stop the workers and release tiles that were never taken.
+ * The stream must be closed before the reader is.
+ * </p>
+ *
+ * <pre>{@code
+ * PlaneTiler tiler = PlaneTiler.builder(reader).tileSize(1024).overlap(64).zoom(0.5f).build();
+ * try (Stream<PlaneTile> tiles = tiler.stream()) {
+ *     tiles.forEach(tile -> {
+ *         try (tile) {
+ *             extractFeatures(tile.bitmap());
+ *         }
+ *     });
+ * }
+ * }</pre>
+ */
+public class PlaneTiler {
+    private static final int DIMENSION_S = 16;
+
+    private final CziStreamReader reader;
+    private final Coordinate coordinate;
+    private final AccessorOptions accessorOptions;
+    private final float zoom;
+    private final List<IntRect> regions;
+    private final int columns;
+    private final int parallelism;
+    private final int maxTilesInFlight;
+    private final boolean ordered;
+    private final ExecutorService executor;
+
+    private PlaneTiler(Builder builder) {
+        this.reader = builder.reader;
+        this.coordinate = builder.coordinate;
+        this.accessorOptions = builder.accessorOptions;
+        this.zoom = builder.zoom;
+        IntRect region = builder.region != null ? builder.region : defaultRegion(reader, coordinate);
+        this.columns = gridSize(region.w(), builder.tileSize, builder.overlap);
+        this.regions = grid(region, builder.tileSize, builder.overlap, builder.clipToRegion);
+        this.parallelism = builder.parallelism;
+        this.maxTilesInFlight = builder.maxTilesInFlight > 0 ? builder.maxTilesInFlight : 2 * builder.parallelism;
+        this.ordered = builder.ordered;
+        this.executor = builder.executor;
+    }
+
+    public static class Builder {
+        private final CziStreamReader reader;
+        private Coordinate coordinate = Coordinate.createC0();
+        private AccessorOptions accessorOptions = AccessorOptions.builder().build();
+        private IntRect region;
+        private int tileSize = 1024;
+        private int overlap = 0;
+        private float zoom = 1.0f;
+        private boolean clipToRegion = false;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int maxTilesInFlight = 0;
+        private boolean ordered = true;
+        private ExecutorService executor;
+
+        private Builder(CziStreamReader reader) {
+            this.reader = reader;
+        }
+
+        public PlaneTiler build() {
+            if (overlap >= tileSize) {
+                throw new IllegalArgumentException("Overlap must be smaller than the tile size");
+            }
+            return new PlaneTiler(this);
+        }
+
+        /**
+         * @param coordinate the plane to read, for example the channel and scene
+         */
+        public Builder coordinate(Coordinate coordinate) {
+            this.coordinate = coordinate;
+
+            return this;
+        }
+        public Builder accessorOptions(AccessorOptions accessorOptions) {
+            this.accessorOptions = accessorOptions;
+
+            return this;
+        }
+        /**
+         * @param region the part of the plane to tile, in layer-0 coordinates; defaults to the layer-0 bounds
+         * of the scene the coordinate selects, or to the file's bounding box if it selects none
+         */
+        public Builder region(IntRect region) {
+            this.region = region;
+
+            return this;
+        }
+        /**
+         * @param tileSize the width and height of each tile, in layer-0 pixels
+         */
+        public Builder tileSize(int tileSize) {
+            if (tileSize < 1) {
+                throw new IllegalArgumentException("Tile size must be at least 1");
+            }
+            this.tileSize = tileSize;
+
+            return this;
+        }
+        /**
+         * @param overlap the number of layer-0 pixels neighbouring tiles share
+         */
+        public Builder overlap(int overlap) {
+            if (overlap < 0) {
+                throw new IllegalArgumentException("Overlap must not be negative");
+            }
+            this.overlap = overlap;
+
+            return this;
+        }
+        /**
+         * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+         */
+        public Builder zoom(float zoom) {
+            if (zoom <= 0 || zoom > 1) {
+                throw new IllegalArgumentException("Zoom factor must be between 0 and 1");
+            }
+            this.zoom = zoom;
+
+            return this;
+        }
+        /**
+         * @param clip whether tiles on the right and bottom edges are cut to the region, rather
+         * than keeping the full tile size and reading past it
+         */
+        public Builder clipToRegion(boolean clip) {
+            this.clipToRegion = clip;
+
+            return this;
+        }
+        /**
+         * @param parallelism the number of tiles read at once
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+
+            return this;
+        }
+        /**
+         * @param max the most tiles read but not yet taken from the stream; defaults to twice the parallelism
+         */
+        public Builder maxTilesInFlight(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("At least one tile must be allowed in flight");
+            }
+            this.maxTilesInFlight = max;
+
+            return this;
+        }
+        /**
+         * @param ordered whether tiles are delivered in grid order, rather than as they are read
+         */
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+
+            return this;
+        }
+        /**
+         * @param executor runs the workers; by default each stream starts, and stops, its own threads
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+
+            return this;
+        }
+    }
+
+    /**
+     * @param reader the reader to tile; it must stay open until every stream is closed
+     */
+    public static Builder builder(CziStreamReader reader) {
+        return new Builder(reader);
+    }
+
+    /**
+     * @return the region of each tile, in grid order
+     */
+    public List<IntRect> regions() {
+        return regions;
+    }
+
+    public int tileCount() {
+        return regions.size();
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return regions.isEmpty() ? 0 : regions.size() / columns;
+    }
+
+    /**
+     * Starts reading the tiles. Each call starts a new pass over the plane.
+     *
+     * @return the tiles, to be closed as they are used; close the stream when done
+     */
+    public Stream<PlaneTile> stream() {
+        Producer producer = new Producer();
+        producer.start();
+        int characteristics = Spliterator.NONNULL | Spliterator.SIZED | (ordered ? Spliterator.ORDERED : 0);
+        Spliterator<PlaneTile> spliterator = new Spliterators.AbstractSpliterator<>(regions.size(), characteristics) {
+            @Override
+            public boolean tryAdvance(Consumer<? super PlaneTile> action) {
+                PlaneTile tile = producer.take();
+                if (tile == null) {
+                    return false;
+                }
+                action.accept(tile);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(producer::close);
+    }
+
+    /**
+     * Runs the workers for one stream and hands their tiles to the consumer.
+     */
+    private final class Producer {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition tileReady = lock.newCondition();
+        private final Semaphore inFlight = new Semaphore(maxTilesInFlight);
+        private final AtomicInteger next = new AtomicInteger();
+        // Ordered delivery waits on the slot of the next tile; unordered takes whatever is done.
+        private final PlaneTile[] slots = ordered ? new PlaneTile[regions.size()] : null;
+        private final Deque<PlaneTile> done = ordered ? null : new ArrayDeque<>();
+        private final List<Future<?>> workers = new ArrayList<>();
+        private ExecutorService ownExecutor;
+        private int delivered;
+        private RuntimeException failure;
+        private volatile boolean closed;
+
+        void start() {
+            int count = Math.min(parallelism, regions.size());
+            ExecutorService runner = executor;
+            if (runner == null && count > 0) {
+                ownExecutor = Executors.newFixedThreadPool(count, task -> {
+                    Thread thread = new Thread(task, "libczi-plane-tiler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                runner = ownExecutor;
+            }
+            for (int i = 0; i < count; i++) {
+                workers.add(runner.submit(this::work));
+            }
+        }
+
+        private Void work() throws Exception {
+            try (SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader)) {
+                while (!closed) {
+                    inFlight.acquire();
+                    int index = next.getAndIncrement();
+                    if (closed || index >= regions.size()) {
+                        inFlight.release();
+                        break;
+                    }
+                    IntRect region = regions.get(index);
+                    Bitmap bitmap = accessor.getBitmapRaw(region, zoom, coordinate, accessorOptions);
+                    publish(new PlaneTile(index, index % columns, index / columns, region, bitmap));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!closed) {
+                    fail(new CziReaderException("Interrupted while reading tiles", e));
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } catch (Error e) {
+                fail(new CziReaderException("Failed to read tile", e));
+                throw e;
+            }
+            return null;
+        }
+
+        private void publish(PlaneTile tile) {
+            lock.lock();
+            try {
+                if (!closed) {
+                    if (ordered) {
+                        slots[tile.index()] = tile;
+                    } else {
+                        done.add(tile);
+                    }
+                    tileReady.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            tile.bitmap().release();
+        }
+
+        private void fail(RuntimeException e) {
+            lock.lock();
+            try {
+                if (failure == null) {
+                    failure = e;
+                }
+                // Stop the other workers claiming more tiles.
+                next.set(regions.size());
+                tileReady.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the next tile, or null once every tile has been delivered
+         */
+        PlaneTile take() {
+            lock.lock();
+            try {
+                while (true) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (closed) {
+                        throw new IllegalStateException("Tile stream has been closed");
+                    }
+                    if (delivered == regions.size()) {
+                        return null;
+                    }
+                    PlaneTile tile = ordered ? slots[delivered] : done.poll();
+                    if (tile != null) {
+                        if (ordered) {
+                            slots[delivered] = null;
+                        }
+                        delivered++;
+                        inFlight.release();
+                        return tile;
+                    }
+                    tileReady.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CziReaderException("Interrupted while waiting for a tile", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Stops the workers, waits for them to finish with their accessors and releases any
+         * tile that was read but never taken.
+         */
+        void close() {
+            List<PlaneTile> undelivered = new ArrayList<>();
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (ordered) {
+                    for (int i = 0; i < slots.length; i++) {
+                        if (slots[i] != null) {
+                            undelivered.add(slots[i]);
+                            slots[i] = null;
+                        }
+                    }
+                } else {
+                    undelivered.addAll(done);
+                    done.clear();
+                }
+                tileReady.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            // Wake any worker waiting for room; it sees the flag and stops.
+            inFlight.release(workers.size());
+            boolean interrupted = false;
+            // Never stop waiting early: a running worker is still reading through the caller's reader.
+            for (Future<?> worker : workers) {
+                while (true) {
+                    try {
+                        worker.get();
+                        break;
+                    } catch (ExecutionException e) {
+                        // Already recorded as the failure.
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+            undelivered.forEach(tile -> tile.bitmap().release());
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static int gridSize(int length, int tileSize, int overlap) {
+        if (length <= 0) {
+            return 0;
+        }
+        int step = tileSize - overlap;
+        return Math.max(1, (length - overlap + step - 1) / step);
+    }
+
+    /**
+     * On a slide with several scenes the file's bounding box takes in the space between them,
+     * so a coordinate that selects a scene is tiled over that scene alone.
+     */
+    private static IntRect defaultRegion(CziStreamReader reader, Coordinate coordinate) {
+        if (!coordinate.isValid(DIMENSION_S)) {
+            return reader.simpleReaderStatistics().boundingBox();
+        }
+        int scene = coordinate.get(DIMENSION_S);
+        IntRect bounds = sceneBounds(reader.subBlockIndex(), scene);
+        if (bounds == null) {
+            throw new CziReaderException("The file has no sub-blocks in scene " + scene);
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the smallest rectangle covering the scene's layer-0 sub-blocks, or null if it has none
+     */
+    static IntRect sceneBounds(SubBlockIndex index, int scene) {
+        Coordinate plane = new Coordinate(0, new int[LibCziFFM.K_MAX_DIMENSION_COUNT]).with(DIMENSION_S, scene);
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (SubBlockInfo info : index.subBlocks(index.boundingBox(), plane, true)) {
+            IntRect rect = info.logicalRect();
+            minX = Math.min(minX, rect.x());
+            minY = Math.min(minY, rect.y());
+            maxX = Math.max(maxX, (long) rect.x() + rect.w());
+            maxY = Math.max(maxY, (long) rect.y() + rect.h());
+        }
+        if (minX == Long.MAX_VALUE) {
+            return null;
+        }
+        return new IntRect((int) minX, (int) minY, (int) (maxX - minX), (int) (maxY - minY));
+    }
+
+    static List<IntRect> grid(IntRect region, int tileSize, int overlap, boolean clipToRegion) {
+        int columns = gridSize(region.w(), tileSize, overlap);
+        int rows = gridSize(region.h(), tileSize, overlap);
+        int step = tileSize - overlap;
+        List<IntRect> regions = new ArrayList<>(columns * rows);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int x = region.x() + column * step;
+                int y = region.y() + row * step;
+                int w = tileSize;
+                int h = tileSize;
+                if (clipToRegion) {
+                    w = Math.min(w, region.x() + region.w() - x);
+                    h = Math.min(h, region.y() + region.h() - y);
+                }
+                regions.add(new IntRect(x, y, w, h));
+            }
+        }
+        return Collections.unmodifiableList(regions);
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the size and counters of a {@link CziReaderPool}.
+ *
+ * @param files The number of files the pool has readers open on.
+ * @param open The number of readers currently open, lent out or idle.
+ * @param idle The number of open readers waiting to be borrowed.
+ * @param leased The number of readers currently lent out.
+ * @param acquisitions The number of calls to acquire.
+ * @param hits The number of acquisitions served by an idle reader.
+ * @param misses The number of acquisitions that opened a new reader.
+ * @param waits The number of acquisitions that had to wait for a reader to be returned.
+ * @param totalWait The total time spent waiting across all acquisitions.
+ * @param evictions The number of idle readers closed after the idle timeout.
+ */
+public record PoolStatistics(
+    int files,
+    int open,
+    int idle,
+    int leased,
+    long acquisitions,
+    long hits,
+    long misses,
+    long waits,
+    Duration totalWait,
+    long evictions) {
+
+    /**
+     * @return the fraction of acquisitions served by an idle reader, 0 if there were none
+     */
+    public double hitRate() {
+        long served = hits + misses;
+        return served == 0 ? 0 : (double) hits / served;
+    }
+
+    /**
+     * @return the mean wait of the acquisitions that had to wait, zero if none did
+     */
+    public Duration averageWait() {
+        return waits == 0 ? Duration.ZERO : totalWait.dividedBy(waits);
+    }
+}
@@ -0,0 +1,20 @@
+package uk.ac.ed.eci.libCZI;
+
+/**
+ * A stored resolution layer of an image pyramid.
+ *
+ * @param layerNo The pyramid layer number, 0 for the full-resolution layer.
+ * @param minificationFactor The factor each layer is reduced by from the one below, 0 for layer 0.
+ * @param zoom The zoom at which the layer is stored, {@code 1 / minificationFactor^layerNo}.
+ * @param subBlockCount The number of sub-blocks stored for the layer, across the scenes considered.
+ * @see ScenePyramidStatistics
+ */
+public record PyramidLayer(int layerNo, int minificationFactor, double zoom, int subBlockCount) {
+
+    static PyramidLayer fromLayerInfo(LayerInfo layerInfo, int subBlockCount) {
+        int layerNo = layerInfo.getPyramidLayerNo();
+        int factor = layerInfo.getMinificationFactor();
+        double zoom = layerNo == 0 ? 1.0 : 1.0 / Math.pow(factor, layerNo);
+        return new PyramidLayer(layerNo, factor, zoom, subBlockCount);
+    }
+}
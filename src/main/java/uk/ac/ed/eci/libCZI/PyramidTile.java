@@ -0,0 +1,29 @@
+package uk.ac.ed.eci.libCZI;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * A tile read by a {@link PyramidTileAccessor}, with the pyramid layer that served it.
+ *
+ * @param bitmap The tile, at the zoom of the layer that served it.
+ * @param layer The pyramid layer the tile was read from.
+ * @param requestedZoom The zoom that was asked for.
+ */
+public record PyramidTile(Bitmap bitmap, PyramidLayer layer, float requestedZoom) implements AutoCloseable {
+
+    /**
+     * @return the zoom the bitmap was composed at, which is the zoom of its layer
+     */
+    public float zoom() {
+        return (float) layer.zoom();
+    }
+
+    /**
+     * Releases the bitmap. Unlike {@link AutoCloseable#close()} this throws no checked
+     * exception, so tiles can be closed in a lambda.
+     */
+    @Override
+    public void close() {
+        bitmap.release();
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * A tile accessor that snaps requested zooms to the resolution layers stored in the file.
+ * <p>
+ * The layers are read once from {@link CziStreamReader#pyramidStatistics()}. For each request,
+ * every layer stored at or above the requested zoom can serve it without losing detail; of
+ * those, the layer with the fewest sub-blocks is used, since the number of sub-blocks covering
+ * a region, and so the number of decodes, scales with the layer's sub-block count. The tile is
+ * composed at that layer's own zoom, so libCZI does not resample it, and the result reports
+ * which layer served it.
+ * </p>
+ * <p>
+ * Files without a pyramid have a single full-resolution layer, which serves every request.
+ * </p>
+ *
+ * @see SingleChannelTileAccessor
+ */
+public class PyramidTileAccessor implements AutoCloseable {
+    // Allows for zooms computed in float, such as 1/3, to match the layer stored at that zoom.
+    private static final double ZOOM_TOLERANCE = 1e-4;
+
+    private final SingleChannelTileAccessor accessor;
+    private final List<PyramidLayer> layers;
+
+    public PyramidTileAccessor(CziStreamReader reader) {
+        this.layers = layersFromStatistics(reader.pyramidStatistics());
+        this.accessor = new SingleChannelTileAccessor(reader);
+    }
+
+    @Override
+    public void close() throws Exception {
+        accessor.close();
+    }
+
+    /**
+     * @return the stored layers, from the full-resolution layer down
+     */
+    public List<PyramidLayer> layers() {
+        return layers;
+    }
+
+    /**
+     * Chooses the layer that would serve a request at the given zoom.
+     *
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @return the layer with the fewest sub-blocks among those stored at or above the zoom
+     */
+    public PyramidLayer chooseLayer(float zoom) {
+        if (zoom <= 0 || zoom > 1) {
+            throw new IllegalArgumentException("Zoom factor must be between 0 and 1");
+        }
+        return chooseLayer(layers, zoom);
+    }
+
+    /**
+     * Gets the region of interest for channel 0 from the cheapest adequate layer, with the
+     * default accessor options.
+     *
+     * @param rawRoi The region of interest, in layer-0 coordinates.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @return the tile, composed at the zoom of the layer that served it
+     */
+    public PyramidTile getTile(IntRect rawRoi, float zoom) {
+        return getTile(rawRoi, zoom, Coordinate.createC0(), AccessorOptions.builder().build());
+    }
+
+    /**
+     * Gets the region of interest from the cheapest adequate layer.
+     *
+     * @param rawRoi The region of interest, in layer-0 coordinates.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @return the tile, composed at the zoom of the layer that served it
+     */
+    public PyramidTile getTile(IntRect rawRoi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
+        PyramidLayer layer = chooseLayer(zoom);
+        Bitmap bitmap = accessor.getBitmapRaw(rawRoi, (float) layer.zoom(), coordinate, accessorOptions);
+        return new PyramidTile(bitmap, layer, zoom);
+    }
+
+    static PyramidLayer chooseLayer(List<PyramidLayer> layers, float zoom) {
+        double minimumZoom = zoom * (1 - ZOOM_TOLERANCE);
+        return layers.stream()
+            .filter(layer -> layer.zoom() >= minimumZoom)
+            .min(Comparator.comparingInt(PyramidLayer::subBlockCount)
+                .thenComparingDouble(PyramidLayer::zoom))
+            .orElseThrow(() -> new IllegalStateException("No pyramid layer can serve zoom " + zoom));
+    }
+
+    /**
+     * Merges the per-scene statistics into one list of layers, summing the sub-block counts of
+     * layers that appear in several scenes.
+     */
+    static List<PyramidLayer> layersFromStatistics(ScenePyramidStatistics statistics) {
+        Map<Integer, LayerInfo> infoByLayer = new TreeMap<>();
+        Map<Integer, Integer> countByLayer = new TreeMap<>();
+        if (statistics != null && statistics.getStatsByScene() != null) {
+            for (List<PyramidLayerStats> sceneLayers : statistics.getStatsByScene().values()) {
+                for (PyramidLayerStats stats : sceneLayers) {
+                    LayerInfo info = stats.getLayerInfo();
+                    if (info.getPyramidLayerNo() != 0 && info.getMinificationFactor() < 2) {
+                        // Sub-blocks libCZI could not place in a pyramid layer.
+                        continue;
+                    }
+                    infoByLayer.putIfAbsent(info.getPyramidLayerNo(), info);
+                    countByLayer.merge(info.getPyramidLayerNo(), stats.getCount(), Integer::sum);
+                }
+            }
+        }
+        List<PyramidLayer> layers = new ArrayList<>();
+        for (Map.Entry<Integer, LayerInfo> entry : infoByLayer.entrySet()) {
+            layers.add(PyramidLayer.fromLayerInfo(entry.getValue(), countByLayer.get(entry.getKey())));
+        }
+        if (layers.isEmpty() || layers.get(0).layerNo() != 0) {
+            layers.add(0, new PyramidLayer(0, 0, 1.0, Integer.MAX_VALUE));
+        }
+        return List.copyOf(layers);
+    }
+}
@@ -1,41 +1,56 @@
 package uk.ac.ed.eci.libCZI;
 
 import static java.lang.foreign.ValueLayout.ADDRESS;
-import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
-import static java.lang.foreign.ValueLayout.JAVA_INT;
 
 import java.lang.foreign.Arena;
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
 
 import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
 import uk.ac.ed.eci.libCZI.bitmaps.Roi;
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
+import uk.ac.ed.eci.libCZI.jfr.TileReadEvent;
 
 public class SingleChannelTileAccessor implements AutoCloseable {
     private final CziStreamReader reader;
     private final MemorySegment accessorHandle;
     private final Arena classArena;
+    private final NativeResourceTracker.Registration registration;
     
     public SingleChannelTileAccessor(CziStreamReader reader) {
         this.reader = reader;
-        this.classArena = Arena.ofConfined();
+        // Shared, so a pooled accessor can be used and closed on any thread.
+        this.classArena = Arena.ofShared();
         this.accessorHandle = createAccessor();
+        this.registration = NativeResourceTracker.track(this, "SingleChannelTileAccessor");
     }
 
     @Override
     public void close() throws Exception {
+        if (!registration.release()) {
+            return;
+        }
         free();
         this.classArena.close();
     }
 
     private MemorySegment createAccessor() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle createAccessor = LibCziFFM.getMethodHandle("libCZI_CreateSingleChannelTileAccessor", descriptor);
         try {
             MemorySegment pAccessor = classArena.allocate(ADDRESS);
 
-            int errorCode = (int) createAccessor.invokeExact(reader.readerHandle(), pAccessor);
+            int errorCode = (int) LibCziFFM.CREATE_SINGLE_CHANNEL_TILE_ACCESSOR.invokeExact(reader.readerHandle(), pAccessor);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to create single channel tile accessor. Error code: " + errorCode);
             }
@@ -59,12 +74,10 @@ public class SingleChannelTileAccessor implements AutoCloseable {
         if (zoom < 0 || zoom > 1) {
             throw new IllegalArgumentException("Zoom factor must be between 0 and 1");
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_FLOAT, ADDRESS);
-        MethodHandle calcTileSize = LibCziFFM.getMethodHandle("libCZI_SingleChannelTileAccessorCalcSize", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pSize = arena.allocate(IntSize.layout());
             MemorySegment pRoi = roi.toMemorySegment(arena);
-            int errorCode = (int) calcTileSize.invokeExact(accessorHandle, pRoi, zoom, pSize);
+            int errorCode = (int) LibCziFFM.SINGLE_CHANNEL_TILE_ACCESSOR_CALC_SIZE.invokeExact(accessorHandle, pRoi, zoom, pSize);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to calculate tile size. Error code: " + errorCode);
             }
@@ -123,32 +136,268 @@ public class SingleChannelTileAccessor implements AutoCloseable {
      * @return The bitmap of the specified region of interest.
     */
     public Bitmap getBitmapRaw(IntRect rawRoi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_FLOAT, ADDRESS, ADDRESS);
-        MethodHandle getBitmap = LibCziFFM.getMethodHandle("libCZI_SingleChannelTileAccessorGet", descriptor);
+        TileReadEvent event = LibCziEvents.beginTileRead(rawRoi.x(), rawRoi.y(), rawRoi.w(), rawRoi.h(), zoom);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pCoordinate = coordinate.toMemorySegment(arena);
             MemorySegment pRoi = rawRoi.toMemorySegment(arena);
             MemorySegment pOptions = accessorOptions.toMemorySegment(arena);
             MemorySegment pBitmap = arena.allocate(ADDRESS);
-            int errorCode = (int) getBitmap.invokeExact(accessorHandle, pCoordinate, pRoi, zoom, pOptions, pBitmap);
+            long start = System.nanoTime();
+            int errorCode = (int) LibCziFFM.SINGLE_CHANNEL_TILE_ACCESSOR_GET.invokeExact(accessorHandle, pCoordinate, pRoi, zoom, pOptions, pBitmap);
             if (errorCode != 0) {
+                LibCziMetrics.recordTileFailure();
+                LibCziEvents.end(event);
                 throw new CziReaderException("Failed to get bitmap. Error code: " + errorCode);
             }
+            LibCziMetrics.recordTile(System.nanoTime() - start);
             MemorySegment bitmapHandle = pBitmap.get(ADDRESS, 0).asReadOnly();
-            return new Bitmap(bitmapHandle);
+            return endTileRead(event, new Bitmap(bitmapHandle));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to call native function libCZI_SingleChannelTileAcessorGet", e);
+        }
+    }
+
+    /**
+     * Composes a region of channel 0 with the default accessor options straight into a
+     * caller's buffer.
+     *
+     * @param rawRoi The region of interest.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param dest the buffer to write to
+     * @param destOffset the byte offset in {@code dest} of the first row
+     * @param destStride the number of bytes from one row to the next in {@code dest}
+     * @return the size and pixel type of what was written
+     */
+    public BitmapInfo getBitmapRawInto(IntRect rawRoi, float zoom, MemorySegment dest, long destOffset, int destStride) {
+        return getBitmapRawInto(rawRoi, zoom, Coordinate.createC0(), AccessorOptions.builder().build(), dest,
+            destOffset, destStride);
+    }
+
+    /**
+     * Composes a region straight into a caller's buffer, copying each row once from the native
+     * bitmap, which is released before returning.
+     *
+     * @param rawRoi The region of interest.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @param dest the buffer to write to
+     * @param destOffset the byte offset in {@code dest} of the first row
+     * @param destStride the number of bytes from one row to the next in {@code dest}
+     * @return the size and pixel type of what was written
+     * @see Bitmap#copyTo(MemorySegment, long, int)
+     */
+    public BitmapInfo getBitmapRawInto(IntRect rawRoi, float zoom, Coordinate coordinate,
+            AccessorOptions accessorOptions, MemorySegment dest, long destOffset, int destStride) {
+        Bitmap bitmap = getBitmapRaw(rawRoi, zoom, coordinate, accessorOptions);
+        try (LockedBitmapView view = bitmap.lockData()) {
+            view.copyTo(dest, destOffset, destStride);
+            return new BitmapInfo(view.width(), view.height(), view.pixelType());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CziBitmapException("Failed to unlock bitmap", e);
+        } finally {
+            bitmap.release();
+        }
+    }
+
+    /**
+     * Composes a region into a larger image in a caller's buffer, such as a mosaic, placing
+     * it at {@code (x, y)} and leaving out any part outside the image.
+     *
+     * @param rawRoi The region of interest.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @param dest the buffer holding the image
+     * @param destOffset the byte offset in {@code dest} of the image's first row
+     * @param destStride the number of bytes from one row of the image to the next
+     * @param destSize the size of the image in pixels
+     * @param x where the left edge of the region goes in the image; may be negative
+     * @param y where the top edge of the region goes in the image; may be negative
+     * @return the part of the image written, empty if none
+     */
+    public IntRect getBitmapRawInto(IntRect rawRoi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions,
+            MemorySegment dest, long destOffset, int destStride, IntSize destSize, int x, int y) {
+        Bitmap bitmap = getBitmapRaw(rawRoi, zoom, coordinate, accessorOptions);
+        try {
+            return bitmap.copyTo(dest, destOffset, destStride, destSize, x, y);
+        } finally {
+            bitmap.release();
+        }
+    }
+
+    /**
+     * Gets the bitmaps of several regions of interest in one call. The coordinate, accessor
+     * options and output structs are marshalled once and reused for every region.
+     *
+     * @param rawRois The regions of interest.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @return The bitmaps, in the same order as the regions.
+     */
+    public List<Bitmap> getBitmaps(List<IntRect> rawRois, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
+        Bitmap[] results = new Bitmap[rawRois.size()];
+        int[] next = { 0 };
+        try {
+            fetchBitmaps(rawRois, zoom, coordinate, accessorOptions, results,
+                () -> next[0] < results.length ? next[0]++ : -1);
+        } catch (RuntimeException e) {
+            releaseAll(results);
+            throw e;
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Gets the bitmaps of several regions of interest, spreading the work over up to
+     * {@code parallelism} tasks on the executor. Each task opens its own accessor on the same
+     * reader and takes the next outstanding region until none are left.
+     *
+     * @param rawRois The regions of interest.
+     * @param zoom A floating-point value representing the zoom factor. Between 0 and 1
+     * @param coordinate The coordinate of the channel.
+     * @param accessorOptions The options for accessing the CZI file.
+     * @param executor The executor to run the tasks on.
+     * @param parallelism The maximum number of tasks to run at once.
+     * @return The bitmaps, in the same order as the regions.
+     */
+    public List<Bitmap> getBitmaps(List<IntRect> rawRois, float zoom, Coordinate coordinate, AccessorOptions accessorOptions,
+            ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        Bitmap[] results = new Bitmap[rawRois.size()];
+        AtomicInteger next = new AtomicInteger();
+        IntSupplier claim = () -> {
+            int index = next.getAndIncrement();
+            return index < results.length ? index : -1;
+        };
+        int workers = Math.min(parallelism, results.length);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(workers);
+        List<AtomicBoolean> started = new ArrayList<>(workers);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            AtomicBoolean taskStarted = new AtomicBoolean();
+            started.add(taskStarted);
+            try {
+                futures.add(executor.submit(() -> {
+                    if (!taskStarted.compareAndSet(false, true)) {
+                        return; // Cancelled before it ran.
+                    }
+                    try (SingleChannelTileAccessor worker = new SingleChannelTileAccessor(reader)) {
+                        worker.fetchBitmaps(rawRois, zoom, coordinate, accessorOptions, results, claim);
+                    } catch (Exception e) {
+                        // Stop the remaining tasks taking further regions.
+                        next.set(results.length);
+                        failure.compareAndSet(null, e instanceof RuntimeException
+                            ? (RuntimeException) e
+                            : new CziReaderException("Failed to get bitmaps", e));
+                    } finally {
+                        finished.countDown();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                next.set(results.length);
+                failure.compareAndSet(null, e);
+                for (int j = i; j < workers; j++) {
+                    finished.countDown();
+                }
+                break;
+            }
+        }
+        // Tasks are never interrupted: an interrupt during a read would close a file channel
+        // the reader shares. Wait for every running task, so none writes a bitmap after this
+        // returns, and cancel only those that have not started.
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                next.set(results.length);
+                failure.compareAndSet(null, new CziReaderException("Interrupted while getting bitmaps", e));
+                for (int i = 0; i < futures.size(); i++) {
+                    if (started.get(i).compareAndSet(false, true)) {
+                        futures.get(i).cancel(false);
+                        finished.countDown();
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            releaseAll(results);
+            throw failure.get();
+        }
+        return Arrays.asList(results);
+    }
+
+    private void fetchBitmaps(List<IntRect> rawRois, float zoom, Coordinate coordinate, AccessorOptions accessorOptions,
+            Bitmap[] results, IntSupplier nextIndex) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pCoordinate = coordinate.toMemorySegment(arena);
+            MemorySegment pOptions = accessorOptions.toMemorySegment(arena);
+            MemorySegment pRoi = arena.allocate(IntRect.layout());
+            MemorySegment pBitmap = arena.allocate(ADDRESS);
+            for (int index = nextIndex.getAsInt(); index >= 0; index = nextIndex.getAsInt()) {
+                IntRect roi = rawRois.get(index);
+                TileReadEvent event = LibCziEvents.beginTileRead(roi.x(), roi.y(), roi.w(), roi.h(), zoom);
+                roi.writeTo(pRoi);
+                long start = System.nanoTime();
+                int errorCode = (int) LibCziFFM.SINGLE_CHANNEL_TILE_ACCESSOR_GET.invokeExact(accessorHandle, pCoordinate, pRoi, zoom, pOptions, pBitmap);
+                if (errorCode != 0) {
+                    LibCziMetrics.recordTileFailure();
+                    LibCziEvents.end(event);
+                    throw new CziReaderException("Failed to get bitmap for " + roi + ". Error code: " + errorCode);
+                }
+                LibCziMetrics.recordTile(System.nanoTime() - start);
+                results[index] = endTileRead(event, new Bitmap(pBitmap.get(ADDRESS, 0).asReadOnly()));
+            }
         } catch (Throwable e) {
+            if (e instanceof CziReaderException) {
+                throw (CziReaderException) e;
+            }
             throw new RuntimeException("Failed to call native function libCZI_SingleChannelTileAcessorGet", e);
         }
     }
 
+    /**
+     * Records the tile's size, which costs another native call, so only if the event is on. A
+     * failure there ends the event without a size rather than failing the read.
+     */
+    private static Bitmap endTileRead(TileReadEvent event, Bitmap bitmap) {
+        if (event != null) {
+            try {
+                BitmapInfo info = bitmap.getBitmapInfo();
+                LibCziEvents.endTileRead(event, (long) info.width() * info.height() * info.pixelType().bytesPerPixel());
+            } catch (RuntimeException e) {
+                LibCziEvents.end(event);
+            }
+        }
+        return bitmap;
+    }
+
+    private static void releaseAll(Bitmap[] bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                bitmap.release();
+            }
+        }
+    }
+
     private void free() {
         if (accessorHandle == null || accessorHandle.address() == 0) {
             return; // it has already gone!
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle free = LibCziFFM.getMethodHandle("libCZI_ReleaseCreateSingleChannelTileAccessor", descriptor);
         try {
-            int errorCode = (int) free.invokeExact(accessorHandle);
+            int errorCode = (int) LibCziFFM.RELEASE_SINGLE_CHANNEL_TILE_ACCESSOR.invokeExact(accessorHandle);
             if (errorCode != 0) {
                 throw new CziReaderException("Failed to free single channel tile accessor. Error code: " + errorCode);
             }
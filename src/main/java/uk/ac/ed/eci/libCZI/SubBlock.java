@@ -0,0 +1,212 @@
+package uk.ac.ed.eci.libCZI;
+
+import static java.lang.foreign.ValueLayout.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+
+/**
+ * A sub-block read straight from the file, without going through a tile accessor.
+ * <p>
+ * This gives the data exactly as stored: the compressed payload, the sub-block's own metadata
+ * and, decoded on request, its bitmap at its physical size. Nothing is composed, scaled or
+ * filled with background, so it suits pipelines that work on native-resolution tiles and do
+ * their own decoding or placement.
+ * </p>
+ * <p>
+ * The payload and metadata segments are copied out of libCZI once, on first use, and stay
+ * valid until the sub-block is closed. A bitmap from {@link #createBitmap()} is independent of
+ * the sub-block and must be closed separately. A sub-block is for one thread at a time, though
+ * it can be handed between threads.
+ * </p>
+ *
+ * @see CziStreamReader#readSubBlock(int)
+ * @see SubBlockInfo
+ */
+public class SubBlock implements AutoCloseable {
+    private static final int RAW_DATA = 0;
+    private static final int RAW_METADATA = 1;
+
+    private final int index;
+    private final MemorySegment subBlockHandle;
+    private final Arena arena;
+    private final NativeResourceTracker.Registration registration;
+    private SubBlockInfo info;
+    private MemorySegment data;
+    private MemorySegment metadata;
+
+    SubBlock(MemorySegment readerHandle, int index) {
+        this.index = index;
+        this.subBlockHandle = readSubBlock(readerHandle, index);
+        // Shared, so a sub-block read on one thread can be decoded and closed on another.
+        Arena payloadArena = Arena.ofShared();
+        this.arena = payloadArena;
+        MemorySegment handle = subBlockHandle;
+        this.registration = NativeResourceTracker.register(this, "SubBlock", () -> {
+            payloadArena.close();
+            releaseSubBlock(handle);
+        });
+    }
+
+    /**
+     * @return the index of the sub-block in the directory
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * @return the directory entry of the sub-block
+     */
+    public SubBlockInfo info() {
+        if (info == null) {
+            MemorySegment handle = liveHandle();
+            try (Arena call = Arena.ofConfined()) {
+                MemorySegment pInfo = call.allocate(SubBlockInfo.layout());
+                int errorCode = (int) LibCziFFM.SUBBLOCK_GET_INFO.invokeExact(handle, pInfo);
+                if (errorCode != 0) {
+                    throw new CziSubBlockException("Failed to get sub-block info. Error code: " + errorCode);
+                }
+                info = SubBlockInfo.createFromMemorySegment(index, pInfo);
+            } catch (Throwable e) {
+                if (e instanceof CziSubBlockException) {
+                    throw (CziSubBlockException) e;
+                }
+                throw new CziSubBlockException("Failed to call native function libCZI_SubBlockGetInfo", e);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * @return the payload as stored in the file, still compressed if the sub-block is;
+     * read-only and valid until the sub-block is closed
+     */
+    public MemorySegment rawData() {
+        if (data == null) {
+            data = copyRawData(RAW_DATA);
+        }
+        return data;
+    }
+
+    /**
+     * @return the sub-block's metadata segment, read-only and valid until the sub-block is
+     * closed; empty if it has none
+     */
+    public MemorySegment metadataSegment() {
+        if (metadata == null) {
+            metadata = copyRawData(RAW_METADATA);
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the sub-block's metadata as XML, or an empty string if it has none
+     */
+    public String metadataXml() {
+        MemorySegment segment = metadataSegment();
+        return new String(segment.toArray(JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the sub-block. The bitmap is at the sub-block's physical size and is owned by the
+     * caller.
+     *
+     * @return the decoded bitmap
+     */
+    public Bitmap createBitmap() {
+        MemorySegment handle = liveHandle();
+        try (Arena call = Arena.ofConfined()) {
+            MemorySegment pBitmap = call.allocate(ADDRESS);
+            int errorCode = (int) LibCziFFM.SUBBLOCK_CREATE_BITMAP.invokeExact(handle, pBitmap);
+            if (errorCode != 0) {
+                throw new CziSubBlockException("Failed to decode sub-block " + index + ". Error code: " + errorCode);
+            }
+            return new Bitmap(pBitmap.get(ADDRESS, 0).asReadOnly());
+        } catch (Throwable e) {
+            if (e instanceof CziSubBlockException) {
+                throw (CziSubBlockException) e;
+            }
+            throw new CziSubBlockException("Failed to call native function libCZI_SubBlockCreateBitmap", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        registration.release();
+    }
+
+    private MemorySegment copyRawData(int type) {
+        MemorySegment handle = liveHandle();
+        try (Arena call = Arena.ofConfined()) {
+            // Ask for the size first, then copy into memory owned by this sub-block.
+            MemorySegment pSize = call.allocate(JAVA_LONG);
+            int errorCode = (int) LibCziFFM.SUBBLOCK_GET_RAW_DATA.invokeExact(handle, type, pSize, MemorySegment.NULL);
+            if (errorCode != 0) {
+                throw new CziSubBlockException("Failed to get sub-block raw data size. Error code: " + errorCode);
+            }
+            long size = pSize.get(JAVA_LONG, 0);
+            if (size == 0) {
+                return MemorySegment.ofArray(new byte[0]).asReadOnly();
+            }
+            MemorySegment buffer = arena.allocate(size);
+            errorCode = (int) LibCziFFM.SUBBLOCK_GET_RAW_DATA.invokeExact(handle, type, pSize, buffer);
+            if (errorCode != 0) {
+                throw new CziSubBlockException("Failed to get sub-block raw data. Error code: " + errorCode);
+            }
+            return buffer.asSlice(0, Math.min(size, pSize.get(JAVA_LONG, 0))).asReadOnly();
+        } catch (Throwable e) {
+            if (e instanceof CziSubBlockException) {
+                throw (CziSubBlockException) e;
+            }
+            throw new CziSubBlockException("Failed to call native function libCZI_SubBlockGetRawData", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    private MemorySegment liveHandle() {
+        if (registration.isReleased()) {
+            throw new CziSubBlockException("Sub-block has already been closed");
+        }
+        return subBlockHandle;
+    }
+
+    private static MemorySegment readSubBlock(MemorySegment readerHandle, int index) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pSubBlock = arena.allocate(ADDRESS);
+            int errorCode = (int) LibCziFFM.READER_READ_SUBBLOCK.invokeExact(readerHandle, index, pSubBlock);
+            if (errorCode != 0) {
+                throw new CziSubBlockException("Failed to read sub-block " + index + ". Error code: " + errorCode);
+            }
+            return pSubBlock.get(ADDRESS, 0);
+        } catch (Throwable e) {
+            if (e instanceof CziSubBlockException) {
+                throw (CziSubBlockException) e;
+            }
+            throw new CziSubBlockException("Failed to call native function libCZI_ReaderReadSubBlock", e);
+        }
+    }
+
+    private static void releaseSubBlock(MemorySegment subBlockHandle) {
+        try {
+            int errorCode = (int) LibCziFFM.RELEASE_SUBBLOCK.invokeExact(subBlockHandle);
+            if (errorCode != 0) {
+                throw new CziSubBlockException("Failed to release sub-block. Error code: " + errorCode);
+            }
+        } catch (Throwable e) {
+            if (e instanceof CziSubBlockException) {
+                throw (CziSubBlockException) e;
+            }
+            throw new CziSubBlockException("Failed to call native function libCZI_ReleaseSubBlock", e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A spatial index over a CZI file's sub-block directory, for finding the sub-blocks that cover
+ * a region without asking libCZI to compose it.
+ * <p>
+ * The entries are packed into one {@code int} array, and their logical rectangles are bucketed
+ * into a uniform grid whose cells are about the size of a typical sub-block. A query visits
+ * only the cells the region touches. A sub-block spanning several cells is listed in each, but
+ * is reported only from the first cell where it meets the region, so results need no
+ * de-duplication. The index is immutable and safe to query from any thread.
+ * </p>
+ *
+ * @see CziStreamReader#subBlockIndex()
+ */
+public final class SubBlockIndex {
+    // Packed layout of one entry.
+    private static final int INDEX = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int W = 3;
+    private static final int H = 4;
+    private static final int PHYSICAL_W = 5;
+    private static final int PHYSICAL_H = 6;
+    private static final int M_INDEX = 7;
+    private static final int COMPRESSION = 8;
+    private static final int PIXEL_TYPE = 9;
+    private static final int DIMENSIONS_VALID = 10;
+    private static final int COORDINATE = 11;
+    private static final int STRIDE = COORDINATE + LibCziFFM.K_MAX_DIMENSION_COUNT;
+
+    // Keeps the grid from growing far beyond the number of entries for sparse files.
+    private static final int MAX_CELLS_PER_ENTRY = 4;
+
+    private final int[] entries;
+    private final int count;
+    private final IntRect boundingBox;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellEntries;
+
+    private SubBlockIndex(List<SubBlockInfo> subBlocks) {
+        this.count = subBlocks.size();
+        this.entries = new int[count * STRIDE];
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            SubBlockInfo info = subBlocks.get(i);
+            int base = i * STRIDE;
+            IntRect rect = info.logicalRect();
+            entries[base + INDEX] = info.index();
+            entries[base + X] = rect.x();
+            entries[base + Y] = rect.y();
+            entries[base + W] = rect.w();
+            entries[base + H] = rect.h();
+            entries[base + PHYSICAL_W] = info.physicalSize().w();
+            entries[base + PHYSICAL_H] = info.physicalSize().h();
+            entries[base + M_INDEX] = info.mIndex();
+            entries[base + COMPRESSION] = info.compressionModeRaw();
+            entries[base + PIXEL_TYPE] = info.pixelType().getValue();
+            entries[base + DIMENSIONS_VALID] = info.coordinate().dimensionsValid();
+            System.arraycopy(info.coordinate().value(), 0, entries, base + COORDINATE, LibCziFFM.K_MAX_DIMENSION_COUNT);
+            minX = Math.min(minX, rect.x());
+            minY = Math.min(minY, rect.y());
+            maxX = Math.max(maxX, (long) rect.x() + rect.w());
+            maxY = Math.max(maxY, (long) rect.y() + rect.h());
+            widths[i] = Math.max(1, rect.w());
+            heights[i] = Math.max(1, rect.h());
+        }
+        if (count == 0) {
+            this.boundingBox = new IntRect(0, 0, 0, 0);
+            this.cellWidth = 1;
+            this.cellHeight = 1;
+            this.columns = 0;
+            this.rows = 0;
+            this.cellStart = new int[1];
+            this.cellEntries = new int[0];
+            return;
+        }
+        this.boundingBox = new IntRect((int) minX, (int) minY, (int) (maxX - minX), (int) (maxY - minY));
+
+        // Size cells like the median sub-block, which is a layer-0 tile in most files.
+        Arrays.sort(widths);
+        Arrays.sort(heights);
+        long cellW = widths[count / 2];
+        long cellH = heights[count / 2];
+        long cols = ceilDiv(Math.max(1, boundingBox.w()), cellW);
+        long rws = ceilDiv(Math.max(1, boundingBox.h()), cellH);
+        long maxCells = (long) count * MAX_CELLS_PER_ENTRY;
+        if (cols * rws > maxCells) {
+            double scale = Math.sqrt((double) (cols * rws) / maxCells);
+            cellW = (long) Math.ceil(cellW * scale);
+            cellH = (long) Math.ceil(cellH * scale);
+            cols = ceilDiv(Math.max(1, boundingBox.w()), cellW);
+            rws = ceilDiv(Math.max(1, boundingBox.h()), cellH);
+        }
+        this.cellWidth = (int) cellW;
+        this.cellHeight = (int) cellH;
+        this.columns = (int) cols;
+        this.rows = (int) rws;
+
+        // Counting sort of entries into cells, in compressed sparse row form.
+        int cells = columns * rows;
+        this.cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            forEachCell(i, cell -> cellStart[cell + 1]++);
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        this.cellEntries = new int[cellStart[cells]];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < count; i++) {
+            int entry = i;
+            forEachCell(i, cell -> cellEntries[fill[cell]++] = entry);
+        }
+    }
+
+    private void forEachCell(int entry, IntConsumer action) {
+        int base = entry * STRIDE;
+        int c0 = column(entries[base + X]);
+        int c1 = column(lastPixel(entries[base + X], entries[base + W]));
+        int r0 = row(entries[base + Y]);
+        int r1 = row(lastPixel(entries[base + Y], entries[base + H]));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                action.accept(r * columns + c);
+            }
+        }
+    }
+
+    /**
+     * Builds an index over the given directory entries.
+     *
+     * @param subBlocks the entries, normally every entry of a file's directory
+     * @return the index
+     */
+    public static SubBlockIndex of(List<SubBlockInfo> subBlocks) {
+        return new SubBlockIndex(subBlocks);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the smallest rectangle covering every sub-block's logical rectangle
+     */
+    public IntRect boundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * @param position a position in the index, from 0 to {@code size() - 1}
+     * @return the entry at that position
+     */
+    public SubBlockInfo get(int position) {
+        int base = Objects.checkIndex(position, count) * STRIDE;
+        return new SubBlockInfo(
+            entries[base + INDEX],
+            entries[base + COMPRESSION],
+            PixelType.fromValue(entries[base + PIXEL_TYPE]),
+            new Coordinate(entries[base + DIMENSIONS_VALID],
+                Arrays.copyOfRange(entries, base + COORDINATE, base + STRIDE)),
+            new IntRect(entries[base + X], entries[base + Y], entries[base + W], entries[base + H]),
+            new IntSize(entries[base + PHYSICAL_W], entries[base + PHYSICAL_H]),
+            entries[base + M_INDEX]);
+    }
+
+    /**
+     * @return every entry, in directory order
+     */
+    public List<SubBlockInfo> all() {
+        List<SubBlockInfo> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(get(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Finds the positions of the sub-blocks whose logical rectangles overlap the region.
+     *
+     * @param region the region, in layer-0 coordinates
+     * @return the positions, in ascending order; pass them to {@link #get(int)}
+     */
+    public int[] query(IntRect region) {
+        if (count == 0 || region.w() <= 0 || region.h() <= 0 || !overlaps(boundingBox, region)) {
+            return new int[0];
+        }
+        int c0 = column(region.x());
+        int c1 = column(lastPixel(region.x(), region.w()));
+        int r0 = row(region.y());
+        int r1 = row(lastPixel(region.y(), region.h()));
+        int[] found = new int[16];
+        int size = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = cellEntries[k];
+                    int base = i * STRIDE;
+                    int x = entries[base + X];
+                    int y = entries[base + Y];
+                    if (!overlaps(x, y, entries[base + W], entries[base + H], region)) {
+                        continue;
+                    }
+                    // Report each entry once, from the cell holding the top-left corner of its overlap.
+                    if (column(Math.max(x, region.x())) != c || row(Math.max(y, region.y())) != r) {
+                        continue;
+                    }
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = i;
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(found, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @param region the region, in layer-0 coordinates
+     * @return the sub-blocks whose logical rectangles overlap the region, in directory order
+     */
+    public List<SubBlockInfo> subBlocks(IntRect region) {
+        int[] positions = query(region);
+        List<SubBlockInfo> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(get(position));
+        }
+        return result;
+    }
+
+    /**
+     * @param region the region, in layer-0 coordinates
+     * @param plane the plane to keep, for example a channel; dimensions it does not give are not checked
+     * @param layer0Only whether to leave out sub-blocks stored at reduced resolution
+     * @return the matching sub-blocks whose logical rectangles overlap the region, in directory order
+     */
+    public List<SubBlockInfo> subBlocks(IntRect region, Coordinate plane, boolean layer0Only) {
+        int[] positions = query(region);
+        List<SubBlockInfo> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            int base = position * STRIDE;
+            if (layer0Only && (entries[base + PHYSICAL_W] != entries[base + W]
+                    || entries[base + PHYSICAL_H] != entries[base + H])) {
+                continue;
+            }
+            SubBlockInfo info = get(position);
+            if (plane == null || info.coordinate().matches(plane)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    private int column(int x) {
+        long c = Math.floorDiv((long) x - boundingBox.x(), cellWidth);
+        return (int) Math.max(0, Math.min(columns - 1, c));
+    }
+
+    private int row(int y) {
+        long r = Math.floorDiv((long) y - boundingBox.y(), cellHeight);
+        return (int) Math.max(0, Math.min(rows - 1, r));
+    }
+
+    private static int lastPixel(int start, int length) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) start + Math.max(1, length) - 1);
+    }
+
+    private static boolean overlaps(IntRect a, IntRect b) {
+        return overlaps(a.x(), a.y(), a.w(), a.h(), b);
+    }
+
+    private static boolean overlaps(int x, int y, int w, int h, IntRect region) {
+        return x < (long) region.x() + region.w() && region.x() < (long) x + w
+            && y < (long) region.y() + region.h() && region.y() < (long) y + h;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+}
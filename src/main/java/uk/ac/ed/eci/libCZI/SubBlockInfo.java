@@ -0,0 +1,84 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Represents one entry of a CZI file's sub-block directory.
+ * This record corresponds to the `SubBlockInfoInterop` structure in the libCZI C API.
+ * <p>
+ * The directory does not say which pyramid layer a sub-block belongs to, but a sub-block
+ * stored at lower resolution covers a larger logical rectangle than its physical size, so
+ * {@link #zoom()} and {@link #isLayer0()} are derived from the two.
+ * </p>
+ *
+ * @param index The index of the sub-block in the directory.
+ * @param compressionModeRaw The compression mode as stored in the file.
+ * @param pixelType The pixel type of the sub-block.
+ * @param coordinate The plane coordinate of the sub-block.
+ * @param logicalRect The region the sub-block covers, in layer-0 coordinates.
+ * @param physicalSize The stored width and height of the sub-block, in pixels.
+ * @param mIndex The M-index of the sub-block, if {@link #hasMIndex()}.
+ */
+public record SubBlockInfo(
+    int index,
+    int compressionModeRaw,
+    PixelType pixelType,
+    Coordinate coordinate,
+    IntRect logicalRect,
+    IntSize physicalSize,
+    int mIndex) {
+
+    public static MemoryLayout layout() {
+        return MemoryLayout.structLayout(
+                JAVA_INT.withName("compression_mode_raw"),
+                JAVA_INT.withName("pixel_type"),
+                Coordinate.layout().withName("coordinate"),
+                IntRect.layout().withName("logical_rect"),
+                IntSize.layout().withName("physical_size"),
+                JAVA_INT.withName("m_index"));
+    }
+
+    public static SubBlockInfo createFromMemorySegment(int index, MemorySegment segment) {
+        MemoryLayout layout = layout();
+        return new SubBlockInfo(
+                index,
+                segment.get(JAVA_INT, layout.byteOffset(PathElement.groupElement("compression_mode_raw"))),
+                PixelType.fromValue(segment.get(JAVA_INT, layout.byteOffset(PathElement.groupElement("pixel_type")))),
+                Coordinate.createFromMemorySegment(
+                    segment.asSlice(layout.byteOffset(PathElement.groupElement("coordinate")))),
+                IntRect.createFromMemorySegment(
+                    segment.asSlice(layout.byteOffset(PathElement.groupElement("logical_rect")))),
+                IntSize.createFromMemorySegment(
+                    segment.asSlice(layout.byteOffset(PathElement.groupElement("physical_size")))),
+                segment.get(JAVA_INT, layout.byteOffset(PathElement.groupElement("m_index"))));
+    }
+
+    public CompressionMode compressionMode() {
+        return CompressionMode.fromValue(compressionModeRaw);
+    }
+
+    /**
+     * @return whether the M-index is set; libCZI marks a missing one with the minimum or maximum int
+     */
+    public boolean hasMIndex() {
+        return mIndex != Integer.MIN_VALUE && mIndex != Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the ratio of the stored width to the logical width, 1 for a full-resolution sub-block
+     */
+    public double zoom() {
+        return logicalRect.w() == 0 ? 1.0 : (double) physicalSize.w() / logicalRect.w();
+    }
+
+    /**
+     * @return whether the sub-block is stored at full resolution, rather than as part of a pyramid layer
+     */
+    public boolean isLayer0() {
+        return physicalSize.w() == logicalRect.w() && physicalSize.h() == logicalRect.h();
+    }
+}
@@ -0,0 +1,433 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+
+/**
+ * A thread-safe cache of composed tiles, held off-heap within a byte budget, for serving the
+ * tiles a viewer asks for again and again while panning and zooming.
+ * <p>
+ * Eviction is segmented LRU. A new tile enters the probation segment; a second request moves
+ * it to the protected segment, which may hold up to {@code protectedFraction} of the budget
+ * and pushes its least recently used tiles back to probation when full. Tiles are evicted from
+ * probation first, so a burst of tiles seen once, such as a fast pan, does not flush the tiles
+ * in regular use.
+ * </p>
+ * <p>
+ * When several threads ask for the same missing tile, one composes it and the others wait for
+ * its result. Each request gets its own {@link BitmapData} copy, made outside the lock; a tile
+ * being copied is freed only once the copy is done, even if it is evicted meanwhile. One cache
+ * can be shared by the readers of several files, as the file is part of the key.
+ * </p>
+ * <p>
+ * Tiles are held in buffers from a {@link BitmapBufferPool} owned by the cache, so an evicted
+ * tile's buffer is reused for the next one rather than freed. The budget counts the bytes of
+ * each tile; the buffers holding them are rounded up to a power of two.
+ * </p>
+ *
+ * @see CachingTileAccessor
+ * @see TileCacheStatistics
+ */
+public class TileCache implements AutoCloseable {
+    // Small enough that thumbnails and edge tiles do not take a 64 KiB buffer each.
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+    private static final int BUFFERS_PER_SIZE_CLASS = 16;
+
+    private final long capacityBytes;
+    private final long protectedCapacityBytes;
+    private final BitmapBufferPool buffers;
+
+    // Guarded by lock. Both segments are in access order, least recently used first.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<TileKey, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<TileKey, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<TileKey, CompletableFuture<Entry>> loading = new HashMap<>();
+    private long probationBytes;
+    private long protectedBytes;
+    private boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private TileCache(Builder builder) {
+        this.capacityBytes = builder.capacityBytes;
+        this.protectedCapacityBytes = (long) (builder.capacityBytes * builder.protectedFraction);
+        this.buffers = BitmapBufferPool.builder()
+            .minBufferSize(MIN_BUFFER_SIZE)
+            .buffersPerSizeClass(BUFFERS_PER_SIZE_CLASS)
+            .build();
+    }
+
+    public static class Builder {
+        private long capacityBytes = 256L * 1024 * 1024;
+        private double protectedFraction = 0.8;
+
+        private Builder() {}
+
+        public TileCache build() {
+            return new TileCache(this);
+        }
+
+        /**
+         * @param bytes the off-heap memory budget for cached tiles
+         */
+        public Builder capacityBytes(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacityBytes = bytes;
+
+            return this;
+        }
+        /**
+         * @param fraction the share of the budget for tiles requested more than once, from 0 to 1
+         */
+        public Builder protectedFraction(double fraction) {
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException("Protected fraction must be between 0 and 1");
+            }
+            this.protectedFraction = fraction;
+
+            return this;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A composed tile's pixels, in a buffer from the cache's pool.
+     */
+    private static final class Entry {
+        final TileKey key;
+        final BitmapData data;
+        // Guarded by the cache's lock.
+        int references;
+        boolean resident;
+        boolean freed;
+
+        Entry(TileKey key, LockedBitmapView view, BitmapBufferPool buffers) {
+            this.key = key;
+            // Shared, so whichever thread drops the last reference can free it.
+            this.data = BitmapData.sharedCopyOf(new BitmapInfo(view.width(), view.height(), view.pixelType()),
+                view.stride(), view.data(), buffers);
+        }
+
+        long size() {
+            return data.size();
+        }
+
+        void free() {
+            try {
+                data.close();
+            } catch (Exception e) {
+                throw new CziBitmapException("Failed to return cached tile buffer", e);
+            }
+        }
+    }
+
+    /**
+     * Gets a tile, composing it with the loader if it is not cached.
+     *
+     * @param key identifies the tile
+     * @param loader composes the tile; the bitmap it returns is released by the cache
+     * @return a copy of the tile, owned by the caller
+     */
+    public BitmapData get(TileKey key, Supplier<Bitmap> loader) {
+        return get(key, loader, null);
+    }
+
+    /**
+     * Gets a tile, composing it with the loader if it is not cached, and copies it into a
+     * pooled buffer.
+     *
+     * @param key identifies the tile
+     * @param loader composes the tile; the bitmap it returns is released by the cache
+     * @param pool the pool to take the copy's buffer from, or null to allocate one
+     * @return a copy of the tile, owned by the caller
+     */
+    public BitmapData get(TileKey key, Supplier<Bitmap> loader, BitmapBufferPool pool) {
+        Entry entry = acquire(key, loader);
+        try {
+            BitmapData data = entry.data;
+            return BitmapData.copyOf(new BitmapInfo(data.width(), data.height(), data.pixelType()), data.stride(),
+                data.segment(), pool);
+        } finally {
+            release(entry);
+        }
+    }
+
+    /**
+     * @return whether the tile is cached; does not count as a request or change its recency
+     */
+    public boolean contains(TileKey key) {
+        lock.lock();
+        try {
+            return probation.containsKey(key) || protectedSegment.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every tile of a file, for example after it has changed on disk.
+     *
+     * @param file the file, as given to {@link TileKey#of}
+     */
+    public void invalidate(Object file) {
+        List<Entry> toFree = new ArrayList<>();
+        lock.lock();
+        try {
+            removeIf(probation, file, toFree);
+            removeIf(protectedSegment, file, toFree);
+        } finally {
+            lock.unlock();
+        }
+        free(toFree);
+    }
+
+    /**
+     * Drops every tile. Counters are kept.
+     */
+    public void clear() {
+        invalidate(null);
+    }
+
+    public TileCacheStatistics statistics() {
+        lock.lock();
+        try {
+            return new TileCacheStatistics(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(),
+                probation.size() + protectedSegment.size(), probationBytes + protectedBytes, capacityBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees every tile not being copied; the rest are freed when their copies finish.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        clear();
+        // Buffers of tiles still being copied go back to the closed pool, which frees them.
+        buffers.close();
+    }
+
+    /**
+     * @return the tile, with a reference held for the caller
+     */
+    private Entry acquire(TileKey key, Supplier<Bitmap> loader) {
+        while (true) {
+            CompletableFuture<Entry> pending;
+            boolean owner = false;
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Tile cache is closed");
+                }
+                Entry entry = lookup(key);
+                if (entry != null) {
+                    hits.increment();
+                    entry.references++;
+                    return entry;
+                }
+                pending = loading.get(key);
+                if (pending == null) {
+                    pending = new CompletableFuture<>();
+                    loading.put(key, pending);
+                    owner = true;
+                    misses.increment();
+                } else {
+                    coalesced.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (owner) {
+                return load(key, loader, pending);
+            }
+            Entry entry = await(pending);
+            lock.lock();
+            try {
+                if (!entry.freed) {
+                    entry.references++;
+                    return entry;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // Evicted and freed before this thread got to it; ask again.
+        }
+    }
+
+    private Entry load(TileKey key, Supplier<Bitmap> loader, CompletableFuture<Entry> pending) {
+        Entry entry;
+        try (Bitmap bitmap = loader.get(); LockedBitmapView view = bitmap.lockData()) {
+            entry = new Entry(key, view, buffers);
+        } catch (Throwable e) {
+            lock.lock();
+            try {
+                loading.remove(key);
+            } finally {
+                lock.unlock();
+            }
+            pending.completeExceptionally(e);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new CziReaderException("Failed to compose tile " + key, e);
+        }
+        List<Entry> toFree = new ArrayList<>();
+        lock.lock();
+        try {
+            loading.remove(key);
+            entry.references = 1;
+            if (!closed && entry.size() <= capacityBytes) {
+                entry.resident = true;
+                probation.put(key, entry);
+                probationBytes += entry.size();
+                evict(toFree);
+            }
+        } finally {
+            lock.unlock();
+        }
+        free(toFree);
+        pending.complete(entry);
+        return entry;
+    }
+
+    private Entry await(CompletableFuture<Entry> pending) {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CziReaderException("Interrupted while waiting for a tile", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CziReaderException("Failed to compose tile", cause);
+        }
+    }
+
+    private void release(Entry entry) {
+        boolean free;
+        lock.lock();
+        try {
+            entry.references--;
+            free = entry.references == 0 && !entry.resident && !entry.freed;
+            if (free) {
+                entry.freed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (free) {
+            entry.free();
+        }
+    }
+
+    /**
+     * Finds a cached tile and records the request, promoting it out of probation.
+     */
+    private Entry lookup(TileKey key) {
+        Entry entry = protectedSegment.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        entry = probation.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        probationBytes -= entry.size();
+        protectedSegment.put(key, entry);
+        protectedBytes += entry.size();
+        // Demote the least recently used protected tiles to make room.
+        Iterator<Entry> oldest = protectedSegment.values().iterator();
+        while (protectedBytes > protectedCapacityBytes && oldest.hasNext()) {
+            Entry demoted = oldest.next();
+            if (demoted == entry) {
+                break;
+            }
+            oldest.remove();
+            protectedBytes -= demoted.size();
+            probation.put(demoted.key, demoted);
+            probationBytes += demoted.size();
+        }
+        return entry;
+    }
+
+    private void evict(List<Entry> toFree) {
+        while (probationBytes + protectedBytes > capacityBytes) {
+            boolean fromProbation = !probation.isEmpty();
+            Iterator<Entry> oldest = (fromProbation ? probation : protectedSegment).values().iterator();
+            Entry victim = oldest.next();
+            oldest.remove();
+            if (fromProbation) {
+                probationBytes -= victim.size();
+            } else {
+                protectedBytes -= victim.size();
+            }
+            evictions.increment();
+            drop(victim, toFree);
+        }
+    }
+
+    private void removeIf(LinkedHashMap<TileKey, Entry> segment, Object file, List<Entry> toFree) {
+        Iterator<Entry> entries = segment.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (file == null || file.equals(entry.key.file())) {
+                entries.remove();
+                if (segment == probation) {
+                    probationBytes -= entry.size();
+                } else {
+                    protectedBytes -= entry.size();
+                }
+                drop(entry, toFree);
+            }
+        }
+    }
+
+    private static void drop(Entry entry, List<Entry> toFree) {
+        entry.resident = false;
+        if (entry.references == 0) {
+            entry.freed = true;
+            toFree.add(entry);
+        }
+    }
+
+    private static void free(List<Entry> entries) {
+        for (Entry entry : entries) {
+            entry.free();
+        }
+    }
+}
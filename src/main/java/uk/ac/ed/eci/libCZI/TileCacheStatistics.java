@@ -0,0 +1,30 @@
+package uk.ac.ed.eci.libCZI;
+
+/**
+ * A snapshot of the counters of a {@link TileCache}.
+ *
+ * @param hits The number of requests served from the cache.
+ * @param misses The number of requests that composed the tile.
+ * @param coalesced The number of requests that waited for another thread composing the same tile.
+ * @param evictions The number of tiles dropped to keep within the budget.
+ * @param entries The number of tiles currently held.
+ * @param cachedBytes The number of bytes currently held.
+ * @param capacityBytes The configured budget in bytes.
+ */
+public record TileCacheStatistics(
+    long hits,
+    long misses,
+    long coalesced,
+    long evictions,
+    long entries,
+    long cachedBytes,
+    long capacityBytes) {
+
+    /**
+     * @return the fraction of requests that did not compose the tile themselves, 0 if there were none
+     */
+    public double hitRate() {
+        long requests = hits + misses + coalesced;
+        return requests == 0 ? 0 : (double) (hits + coalesced) / requests;
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Identifies a composed tile for a {@link TileCache}: the file it comes from and every input
+ * to the tile accessor call that produced it.
+ * <p>
+ * Only the values of the coordinate's valid dimensions are compared, and the coordinate is
+ * copied, so changing it afterwards does not change the key.
+ * </p>
+ */
+public final class TileKey {
+    private final Object file;
+    private final int dimensionsValid;
+    private final int[] values;
+    private final IntRect roi;
+    private final float zoom;
+    private final AccessorOptions accessorOptions;
+    private final int hash;
+
+    private TileKey(Object file, IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
+        this.file = Objects.requireNonNull(file, "file");
+        this.dimensionsValid = coordinate.dimensionsValid();
+        this.values = Arrays.copyOf(coordinate.value(), Integer.bitCount(dimensionsValid));
+        this.roi = roi;
+        this.zoom = zoom;
+        this.accessorOptions = accessorOptions;
+        this.hash = Objects.hash(file, dimensionsValid, Arrays.hashCode(values), roi, Float.floatToIntBits(zoom),
+            accessorOptions);
+    }
+
+    /**
+     * @param file identifies the file, for example its path; equal for every reader of the same file
+     * @param roi the region, in layer-0 coordinates
+     * @param zoom the zoom factor
+     * @param coordinate the plane
+     * @param accessorOptions the options the tile is composed with
+     * @return the key
+     */
+    public static TileKey of(Object file, IntRect roi, float zoom, Coordinate coordinate, AccessorOptions accessorOptions) {
+        return new TileKey(file, roi, zoom, coordinate, accessorOptions);
+    }
+
+    public Object file() {
+        return file;
+    }
+
+    public IntRect roi() {
+        return roi;
+    }
+
+    public float zoom() {
+        return zoom;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) o;
+        return hash == other.hash
+            && dimensionsValid == other.dimensionsValid
+            && Float.floatToIntBits(zoom) == Float.floatToIntBits(other.zoom)
+            && roi.equals(other.roi)
+            && Arrays.equals(values, other.values)
+            && file.equals(other.file)
+            && accessorOptions.equals(other.accessorOptions);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "TileKey[" + file + ", " + roi + ", zoom " + zoom + ", dimensions " + dimensionsValid
+            + " " + Arrays.toString(values) + "]";
+    }
+}
@@ -0,0 +1,119 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Writes the smallest CZI file {@link LibCziFFM#warmUp()} needs: one uncompressed Gray8
+ * sub-block of {@value #SIZE} pixels square at the origin, with minimal metadata. Pixel (x, y)
+ * has the value {@link #pixelValue(int, int)}.
+ */
+final class WarmUpCzi {
+    static final int SIZE = 256;
+
+    private static final int SEGMENT_HEADER_SIZE = 32;
+    private static final int SEGMENT_ALIGNMENT = 32;
+    private static final int FILE_HEADER_SIZE = 512;
+    private static final int SUBBLOCK_HEADER_SIZE = 256;
+    private static final int DIRECTORY_ENTRY_SIZE = 32 + 3 * 20;
+
+    private WarmUpCzi() {}
+
+    static int pixelValue(int x, int y) {
+        return (x + y) & 0xFF;
+    }
+
+    static void writeTo(Path path) throws IOException {
+        byte[] xml = ("<?xml version=\"1.0\" encoding=\"utf-8\"?><ImageDocument><Metadata><Information><Image>"
+            + "<SizeX>" + SIZE + "</SizeX><SizeY>" + SIZE + "</SizeY><SizeC>1</SizeC><PixelType>Gray8</PixelType>"
+            + "</Image></Information></Metadata></ImageDocument>").getBytes(StandardCharsets.UTF_8);
+        long metadataPosition = SEGMENT_HEADER_SIZE + FILE_HEADER_SIZE;
+        long subBlockPosition = metadataPosition + segmentSize(256 + xml.length);
+        long directoryPosition = subBlockPosition + segmentSize(SUBBLOCK_HEADER_SIZE + SIZE * SIZE);
+        ByteBuffer file = ByteBuffer.allocate((int) (directoryPosition + segmentSize(128 + DIRECTORY_ENTRY_SIZE)))
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        startSegment(file, 0, "ZISRAWFILE", FILE_HEADER_SIZE);
+        file.putInt(1).putInt(0).putInt(0).putInt(0);   // major, minor, reserved
+        UUID guid = UUID.randomUUID();
+        putGuid(file, guid);                            // primary file guid
+        putGuid(file, guid);                            // file guid
+        file.putInt(0);                                 // file part
+        file.putLong(directoryPosition);
+        file.putLong(metadataPosition);
+        file.putInt(0);                                 // update pending
+        file.putLong(0);                                // no attachment directory
+
+        startSegment(file, metadataPosition, "ZISRAWMETADATA", 256 + xml.length);
+        file.putInt(xml.length);
+        file.position(file.position() + 252).put(xml);
+
+        startSegment(file, subBlockPosition, "ZISRAWSUBBLOCK", SUBBLOCK_HEADER_SIZE + SIZE * SIZE);
+        int header = file.position();
+        file.putInt(0).putInt(0).putLong((long) SIZE * SIZE);  // metadata, attachment and data sizes
+        putDirectoryEntry(file, subBlockPosition);
+        file.position(header + SUBBLOCK_HEADER_SIZE);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                file.put((byte) pixelValue(x, y));
+            }
+        }
+
+        startSegment(file, directoryPosition, "ZISRAWDIRECTORY", 128 + DIRECTORY_ENTRY_SIZE);
+        file.putInt(1);
+        file.position(file.position() + 124);
+        putDirectoryEntry(file, subBlockPosition);
+
+        Files.write(path, file.array());
+    }
+
+    private static long segmentSize(int usedSize) {
+        return SEGMENT_HEADER_SIZE + (usedSize + SEGMENT_ALIGNMENT - 1) / SEGMENT_ALIGNMENT * SEGMENT_ALIGNMENT;
+    }
+
+    private static void startSegment(ByteBuffer file, long position, String id, int usedSize) {
+        file.position((int) position);
+        byte[] name = new byte[16];
+        System.arraycopy(id.getBytes(StandardCharsets.US_ASCII), 0, name, 0, id.length());
+        file.put(name);
+        file.putLong(segmentSize(usedSize) - SEGMENT_HEADER_SIZE);
+        file.putLong(usedSize);
+    }
+
+    private static void putDirectoryEntry(ByteBuffer file, long subBlockPosition) {
+        file.put((byte) 'D').put((byte) 'V');
+        file.putInt(0);                                 // Gray8
+        file.putLong(subBlockPosition);
+        file.putInt(0);                                 // file part
+        file.putInt(0);                                 // uncompressed
+        file.put(new byte[6]);                          // not a pyramid tile, spare
+        file.putInt(3);                                 // dimension count
+        putDimension(file, 'X', SIZE);
+        putDimension(file, 'Y', SIZE);
+        putDimension(file, 'C', 1);
+    }
+
+    private static void putDimension(ByteBuffer file, char dimension, int size) {
+        file.put(new byte[] { (byte) dimension, 0, 0, 0 });
+        file.putInt(0);                                 // start
+        file.putInt(size);
+        file.putFloat(0f);                              // start coordinate
+        file.putInt(size);                              // stored size
+    }
+
+    /**
+     * Writes a GUID in the Windows layout, with the first three fields little-endian.
+     */
+    private static void putGuid(ByteBuffer file, UUID guid) {
+        long msb = guid.getMostSignificantBits();
+        file.putInt((int) (msb >>> 32));
+        file.putShort((short) (msb >>> 16));
+        file.putShort((short) msb);
+        file.order(ByteOrder.BIG_ENDIAN).putLong(guid.getLeastSignificantBits()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
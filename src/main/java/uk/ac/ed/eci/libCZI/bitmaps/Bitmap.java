@@ -1,68 +1,209 @@
 package uk.ac.ed.eci.libCZI.bitmaps;
 
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
 
 import uk.ac.ed.eci.libCZI.CziBitmapException;
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.IntSize;
 import uk.ac.ed.eci.libCZI.LibCziFFM;
+import uk.ac.ed.eci.libCZI.NativeResourceTracker;
+import uk.ac.ed.eci.libCZI.internal.Access;
 
 import static java.lang.foreign.ValueLayout.*;
 
 import java.lang.foreign.Arena;
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * A bitmap owned by libCZI, such as a tile composed by an accessor.
+ * <p>
+ * The native bitmap is released when this is closed, so use it in a try-with-resources
+ * statement. Closing or releasing more than once is harmless. A bitmap that is never closed is
+ * released when it is garbage collected, with a warning; see {@link NativeResourceTracker}.
+ * </p>
+ */
 public class Bitmap implements AutoCloseable {
 
     private final MemorySegment bitmapHandle;
+    private final NativeResourceTracker.Registration registration;
+    private final AtomicBoolean counted = new AtomicBoolean();
 
     public Bitmap(MemorySegment bitmapHandle) {
         this.bitmapHandle = bitmapHandle;
+        if (bitmapHandle == null || bitmapHandle.address() == 0) {
+            this.registration = null;
+        } else {
+            this.registration = NativeResourceTracker.register(this, "Bitmap", () -> releaseBitmap(bitmapHandle));
+        }
     }
 
     public MemorySegment handle() {
         return bitmapHandle;
     }
 
+    /**
+     * Releases the native bitmap. Only the first call has any effect; after it the bitmap
+     * must not be used.
+     */
     public void release() {
-        if (bitmapHandle == null || bitmapHandle.address() == 0) {
-            return;
+        if (registration != null) {
+            registration.release();
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.ofVoid(ADDRESS);
+    }
+
+    /**
+     * @return whether the native bitmap has been released
+     */
+    public boolean isReleased() {
+        return registration == null || registration.isReleased();
+    }
+
+    private static void releaseBitmap(MemorySegment bitmapHandle) {
         try {
-            LibCziFFM.getMethodHandle("libCZI_ReleaseBitmap", descriptor).invokeExact(bitmapHandle);
+            LibCziFFM.RELEASE_BITMAP.invokeExact(bitmapHandle);
         } catch(Throwable e) {
-            throw new RuntimeException("Failed to call native function libCZI_ReleaseBitmap");
+            throw new RuntimeException("Failed to call native function libCZI_ReleaseBitmap", e);
+        }
+    }
+
+    private MemorySegment liveHandle() {
+        if (isReleased()) {
+            throw new CziBitmapException("Bitmap has already been released");
         }
+        return bitmapHandle;
     }
 
     public BitmapInfo getBitmapInfo() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
+        MemorySegment bitmapHandle = liveHandle();
         try (Arena arena = Arena.ofConfined()) {
-            MethodHandle getBitmapInfo = LibCziFFM.getMethodHandle("libCZI_BitmapGetInfo", descriptor);
             MemorySegment pBitmapInfo = arena.allocate(BitmapInfo.layout());
-            int errorCode = (int) getBitmapInfo.invokeExact(bitmapHandle, pBitmapInfo);
+            int errorCode = (int) LibCziFFM.BITMAP_GET_INFO.invokeExact(bitmapHandle, pBitmapInfo);
             if (errorCode != 0) {
                 throw new CziBitmapException("Failed to get bitmap info. Error code: " + errorCode);
             }
-            return BitmapInfo.createFromMemorySegment(pBitmapInfo);
+            BitmapInfo info = BitmapInfo.createFromMemorySegment(pBitmapInfo);
+            countDecoded(info);
+            return info;
         } catch (Throwable e) {
             throw new RuntimeException("Failed to call native function libCZI_BitmapGetInfo", e);
+        } finally {
+            // Keep the cleaner from releasing the bitmap while the native call is using it.
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Counts the bitmap's pixels as decoded the first time they are looked at, which every
+     * lock and copy does through {@link #getBitmapInfo()}, rather than on every lock.
+     */
+    private void countDecoded(BitmapInfo info) {
+        if (counted.compareAndSet(false, true)) {
+            Access.metrics().recordBytesDecoded(
+                (long) info.width() * info.height() * info.pixelType().bytesPerPixel());
         }
     }
 
     public BitmapData getBitmapData() {
-        try (BitmapLock lock = new BitmapLock(bitmapHandle)){                        
+        try (BitmapLock lock = new BitmapLock(liveHandle())){                        
             BitmapInfo info = getBitmapInfo();
             BitmapData data = new BitmapData(info, lock);
             return data;
         }
         catch(Throwable e) {
             throw new RuntimeException("Failed to copy bitmap data", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Copies the bitmap's pixels into a buffer taken from the pool. The buffer goes back to the
+     * pool when the returned data is closed.
+     *
+     * @param pool the pool to take the buffer from
+     * @return a copy of the pixels
+     */
+    public BitmapData getBitmapData(BitmapBufferPool pool) {
+        try (BitmapLock lock = new BitmapLock(liveHandle())) {
+            return new BitmapData(getBitmapInfo(), lock, pool);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to copy bitmap data", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Locks the bitmap and returns a view of its pixels without copying them. The bitmap
+     * stays locked until the view is closed, so use it in a try-with-resources statement.
+     *
+     * @return a view of the locked pixel data
+     * @see #getBitmapData() for a copy that outlives the lock
+     */
+    public LockedBitmapView lockData() {
+        BitmapLock lock = new BitmapLock(liveHandle());
+        try {
+            return new LockedBitmapView(this, getBitmapInfo(), lock);
+        } catch (RuntimeException e) {
+            try {
+                lock.close();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Locks the bitmap, passes a view of its pixels to the consumer, then unlocks it.
+     * The view must not be kept after the consumer returns.
+     *
+     * @param consumer the code to run against the locked pixels
+     */
+    public void withLockedData(Consumer<LockedBitmapView> consumer) {
+        try (LockedBitmapView view = lockData()) {
+            consumer.accept(view);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CziBitmapException("Failed to unlock bitmap", e);
+        }
+    }
+
+    /**
+     * Copies the pixels from the locked native buffer straight into a caller's buffer, one row
+     * every {@code destStride} bytes, with no intermediate copy.
+     *
+     * @param dest the buffer to write to: off-heap, a mapped file or a heap array
+     * @param destOffset the byte offset in {@code dest} of the first row
+     * @param destStride the number of bytes from one row to the next in {@code dest}
+     * @see LockedBitmapView#copyTo(MemorySegment, long, int)
+     */
+    public void copyTo(MemorySegment dest, long destOffset, int destStride) {
+        withLockedData(view -> view.copyTo(dest, destOffset, destStride));
+    }
+
+    /**
+     * Copies the pixels into a larger image in a caller's buffer, such as a mosaic, placing
+     * them at {@code (x, y)} and leaving out any part outside the image.
+     *
+     * @return the part of the image written, empty if none
+     * @see LockedBitmapView#copyTo(MemorySegment, long, int, IntSize, int, int)
+     */
+    public IntRect copyTo(MemorySegment dest, long destOffset, int destStride, IntSize destSize, int x, int y) {
+        try (LockedBitmapView view = lockData()) {
+            return view.copyTo(dest, destOffset, destStride, destSize, x, y);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CziBitmapException("Failed to unlock bitmap", e);
         }
     }
 
     @Override
     public void close() throws Exception {
-      //release();
+        release();
     }
 }
@@ -0,0 +1,276 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe pool of off-heap buffers for {@link BitmapData} copies, so reading many tiles
+ * does not allocate and free native memory for each one.
+ * <p>
+ * Buffers come in power-of-two size classes between the minimum and maximum buffer size, and
+ * each class keeps up to {@code buffersPerSizeClass} returned buffers for reuse. Requests above
+ * the maximum size are allocated and freed directly, as are buffers returned to a full class.
+ * </p>
+ * <p>
+ * A buffer that is never returned, because its {@code BitmapData} was not closed, is reported
+ * as a leak through {@link System.Logger} once it is garbage collected, and its memory is freed
+ * rather than reused.
+ * </p>
+ * <p>
+ * A pooled {@code BitmapData} borrows its buffer for its whole life and returns it when closed,
+ * with no arena or cleaner registration of its own, so views of its pixels must not be kept
+ * past {@code close()}.
+ * </p>
+ *
+ * @see Bitmap#getBitmapData(BitmapBufferPool)
+ * @see BufferPoolStatistics
+ */
+public class BitmapBufferPool implements AutoCloseable {
+    private static final System.Logger LOGGER = System.getLogger(BitmapBufferPool.class.getName());
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int minShift;
+    private final int maxShift;
+    private final int buffersPerSizeClass;
+    private final ConcurrentLinkedDeque<Buffer>[] free;
+    private final AtomicInteger[] freeCounts;
+    private volatile boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder outstanding = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    private BitmapBufferPool(Builder builder) {
+        this.minShift = Integer.numberOfTrailingZeros(builder.minBufferSize);
+        this.maxShift = Integer.numberOfTrailingZeros(builder.maxBufferSize);
+        this.buffersPerSizeClass = builder.buffersPerSizeClass;
+        int classes = maxShift - minShift + 1;
+        this.free = new ConcurrentLinkedDeque[classes];
+        this.freeCounts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            free[i] = new ConcurrentLinkedDeque<>();
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static class Builder {
+        private int minBufferSize = 64 * 1024;
+        private int maxBufferSize = 64 * 1024 * 1024;
+        private int buffersPerSizeClass = 8;
+
+        private Builder() {}
+
+        public BitmapBufferPool build() {
+            if (minBufferSize > maxBufferSize) {
+                throw new IllegalArgumentException("Minimum buffer size must not exceed the maximum");
+            }
+            return new BitmapBufferPool(this);
+        }
+
+        /**
+         * @param bytes the smallest size class, a power of two
+         */
+        public Builder minBufferSize(int bytes) {
+            this.minBufferSize = requirePowerOfTwo(bytes);
+
+            return this;
+        }
+        /**
+         * @param bytes the largest size class, a power of two; larger requests are not pooled
+         */
+        public Builder maxBufferSize(int bytes) {
+            this.maxBufferSize = requirePowerOfTwo(bytes);
+
+            return this;
+        }
+        /**
+         * @param count the number of returned buffers kept for reuse in each size class
+         */
+        public Builder buffersPerSizeClass(int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Buffers per size class must not be negative");
+            }
+            this.buffersPerSizeClass = count;
+
+            return this;
+        }
+
+        private static int requirePowerOfTwo(int bytes) {
+            if (bytes <= 0 || Integer.bitCount(bytes) != 1) {
+                throw new IllegalArgumentException("Buffer size must be a power of two");
+            }
+            return bytes;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A buffer lent out by the pool, and kept by it between loans. Each loan must be released
+     * exactly once.
+     * <p>
+     * The buffer is registered with the cleaner once, when it is allocated, rather than for
+     * each loan. If it becomes unreachable while lent out, the borrower dropped it without
+     * releasing it, and the cleaner reports the leak; either way the cleaner frees the memory.
+     * </p>
+     */
+    final class Buffer {
+        private final MemorySegment segment;
+        private final int sizeClass;
+        private final LeakWatch watch;
+        private final Cleaner.Cleanable cleanable;
+
+        private Buffer(long capacity, int sizeClass) {
+            // Shared, so a buffer taken on one thread can be freed by whichever thread returns it.
+            Arena arena = Arena.ofShared();
+            this.segment = arena.allocate(capacity, 64);
+            this.sizeClass = sizeClass;
+            this.watch = new LeakWatch(arena, leaks, outstanding);
+            this.cleanable = CLEANER.register(this, watch);
+        }
+
+        MemorySegment segment() {
+            return segment;
+        }
+
+        void release() {
+            if (!watch.lent.compareAndSet(true, false)) {
+                return;
+            }
+            outstanding.decrement();
+            giveBack(this);
+        }
+
+        private Buffer lend(long requestedSize) {
+            watch.requestedSize = requestedSize;
+            watch.lent.set(true);
+            return this;
+        }
+
+        private void free() {
+            watch.freed = true;
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * Frees a buffer's memory, when the pool discards it or when it becomes unreachable. Only
+     * becoming unreachable while lent out is a leak.
+     */
+    private static final class LeakWatch implements Runnable {
+        private final Arena arena;
+        private final LongAdder leaks;
+        private final LongAdder outstanding;
+        final AtomicBoolean lent = new AtomicBoolean();
+        volatile long requestedSize;
+        volatile boolean freed;
+
+        LeakWatch(Arena arena, LongAdder leaks, LongAdder outstanding) {
+            this.arena = arena;
+            this.leaks = leaks;
+            this.outstanding = outstanding;
+        }
+
+        @Override
+        public void run() {
+            if (!freed && lent.get()) {
+                leaks.increment();
+                outstanding.decrement();
+                LOGGER.log(System.Logger.Level.WARNING,
+                    "Bitmap buffer of {0} bytes was not returned to the pool; close BitmapData when done with it",
+                    requestedSize);
+            }
+            arena.close();
+        }
+    }
+
+    /**
+     * Takes a buffer of at least the given size, reusing a returned one where possible.
+     */
+    Buffer acquire(long size) {
+        if (closed) {
+            throw new IllegalStateException("Buffer pool is closed");
+        }
+        outstanding.increment();
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            unpooled.increment();
+            return new Buffer(size, -1).lend(size);
+        }
+        Buffer buffer = free[sizeClass].pollFirst();
+        if (buffer != null) {
+            freeCounts[sizeClass].decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+            buffer = new Buffer(1L << (sizeClass + minShift), sizeClass);
+        }
+        return buffer.lend(size);
+    }
+
+    private void giveBack(Buffer buffer) {
+        int sizeClass = buffer.sizeClass;
+        if (closed || sizeClass < 0) {
+            buffer.free();
+            return;
+        }
+        if (freeCounts[sizeClass].incrementAndGet() > buffersPerSizeClass) {
+            freeCounts[sizeClass].decrementAndGet();
+            discards.increment();
+            buffer.free();
+            return;
+        }
+        free[sizeClass].offerFirst(buffer);
+        if (closed) {
+            // Raced with close(); make sure the buffer is not stranded.
+            drain(sizeClass);
+        }
+    }
+
+    private int sizeClass(long size) {
+        if (size > (1L << maxShift)) {
+            return -1;
+        }
+        int shift = size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, minShift) - minShift;
+    }
+
+    public BufferPoolStatistics statistics() {
+        long retained = 0;
+        for (int i = 0; i < free.length; i++) {
+            retained += (long) Math.max(0, freeCounts[i].get()) << (i + minShift);
+        }
+        return new BufferPoolStatistics(hits.sum(), misses.sum(), unpooled.sum(), discards.sum(), leaks.sum(),
+            outstanding.sum(), retained);
+    }
+
+    /**
+     * Frees every buffer held for reuse. Buffers still lent out are freed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (int i = 0; i < free.length; i++) {
+            drain(i);
+        }
+    }
+
+    private void drain(int sizeClass) {
+        Buffer buffer;
+        while ((buffer = free[sizeClass].pollFirst()) != null) {
+            freeCounts[sizeClass].decrementAndGet();
+            buffer.free();
+        }
+    }
+}
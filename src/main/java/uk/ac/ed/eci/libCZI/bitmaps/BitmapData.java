@@ -5,55 +5,174 @@ import static java.lang.foreign.ValueLayout.JAVA_BYTE;
 
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.IntSize;
 import uk.ac.ed.eci.libCZI.PixelType;
+import uk.ac.ed.eci.libCZI.internal.Access;
+import uk.ac.ed.eci.libCZI.jfr.BitmapCopyEvent;
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
 
+/**
+ * A copy of a bitmap's pixels, with typed accessors for each pixel type.
+ * <p>
+ * Pixels are stored row by row, {@link #stride()} bytes apart, with the samples of a pixel
+ * adjacent and little-endian, in the order libCZI uses (blue, green, red for the Bgr types).
+ * The typed accessors read straight from the off-heap copy; {@code x} and {@code y} are pixel
+ * positions and {@code sample} picks a value within the pixel.
+ * </p>
+ */
 public class BitmapData implements AutoCloseable {
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final Set<PixelType> BYTE_TYPES = EnumSet.of(PixelType.Gray8, PixelType.Bgr24, PixelType.Bgra32);
+    private static final Set<PixelType> SHORT_TYPES = EnumSet.of(PixelType.Gray16, PixelType.Bgr48);
+    private static final Set<PixelType> INT_TYPES = EnumSet.of(PixelType.Gray32);
+    private static final Set<PixelType> FLOAT_TYPES = EnumSet.of(PixelType.Gray32Float, PixelType.Bgr96Float,
+        PixelType.Gray64ComplexFloat, PixelType.Bgr192ComplexFloat);
+    private static final Set<PixelType> DOUBLE_TYPES = EnumSet.of(PixelType.Gray64Float);
+
+    static {
+        Access.setBitmaps(new Access.Bitmaps() {
+            @Override
+            public BitmapData allocate(BitmapInfo info, BitmapBufferPool pool) {
+                return BitmapData.allocate(info, pool);
+            }
+
+            @Override
+            public MemorySegment writableSegment(BitmapData data) {
+                return data.writableSegment();
+            }
+
+            @Override
+            public void accumulate(int[] values, int count, int factorB, int factorG, int factorR, int[] accB,
+                    int[] accG, int[] accR) {
+                BitmapOps.kernels().accumulate(values, count, factorB, factorG, factorR, accB, accG, accR);
+            }
+        });
+    }
 
     private final MemorySegment data;
     private final Arena arena;
+    private BitmapBufferPool.Buffer buffer;
+    private volatile boolean closed;
     private final int stride;
     private final long size;
+    private final int width;
+    private final int height;
     private final PixelType pixelType;
 
-    BitmapData(BitmapInfo bitmapInfo, BitmapLock lock) {        
-        this.arena = Arena.ofConfined();
-        this.stride = lock.stride();
-        this.size = lock.size();
+    BitmapData(BitmapInfo bitmapInfo, BitmapLock lock) {
+        this(bitmapInfo, lock.stride(), lock.ptrDataRoi(), lock.size(), null, Arena::ofConfined);
+    }
+
+    BitmapData(BitmapInfo bitmapInfo, BitmapLock lock, BitmapBufferPool pool) {
+        this(bitmapInfo, lock.stride(), lock.ptrDataRoi(), lock.size(), pool, Arena::ofConfined);
+    }
+
+    private BitmapData(BitmapInfo bitmapInfo, int stride, MemorySegment source, long size, BitmapBufferPool pool,
+            Supplier<Arena> arena) {
+        this.stride = stride;
+        this.size = size;
+        this.width = bitmapInfo.width();
+        this.height = bitmapInfo.height();
         this.pixelType = bitmapInfo.pixelType();
-        this.data = arena.allocate(this.size); 
-        MemorySegment.copy(lock.ptrDataRoi(), 0, this.data, 0, this.size);       
+        if (pool == null) {
+            this.arena = arena.get();
+        } else {
+            // The pooled buffer outlives this instance, so views of it must not be kept past close().
+            this.arena = null;
+            this.buffer = pool.acquire(size);
+        }
+        try {
+            this.data = this.arena != null ? this.arena.allocate(this.size) : buffer.segment().asSlice(0, size);
+            if (source != null) {
+                BitmapCopyEvent event = LibCziEvents.beginBitmapCopy(width, height, size, false);
+                MemorySegment.copy(source, 0, this.data, 0, this.size);
+                LibCziEvents.end(event);
+            }
+        } catch (RuntimeException | Error e) {
+            if (this.arena != null) {
+                this.arena.close();
+            } else {
+                buffer.release();
+            }
+            throw e;
+        }
+        Access.metrics().recordBitmapDataBytes(size);
     }
 
-    public int pixelSize() {
-        switch (pixelType) {
-            case Gray8:
-                return 1;
-            case Gray16:
-                return 2;
-            case Gray32Float:
-                return 4;
-            case Bgr24:
-                return 3;
-            case Bgr48:
-                return 4;
-            case Bgr96Float:
-                return 8;
-            case Bgra32:
-                return 4;
-            case Gray64ComplexFloat:
-                return 8;
-            case Bgr192ComplexFloat:
-                return 16;
-            case Gray32:
-                return 4;
-            case Gray64Float:
-                return 8;
-            default:
-                throw new UnsupportedOperationException("Unsupported pixel type: " + pixelType);                
+    /**
+     * Copies pixels laid out as described by the bitmap info and stride.
+     *
+     * @param bitmapInfo The width, height and pixel type of the pixels.
+     * @param stride The number of bytes from the start of one row to the next.
+     * @param pixels At least {@code stride * height} bytes of pixels.
+     * @return a copy of the pixels
+     */
+    public static BitmapData copyOf(BitmapInfo bitmapInfo, int stride, MemorySegment pixels) {
+        return copyOf(bitmapInfo, stride, pixels, null);
+    }
+
+    /**
+     * Copies pixels laid out as described by the bitmap info and stride into a pooled buffer.
+     *
+     * @param bitmapInfo The width, height and pixel type of the pixels.
+     * @param stride The number of bytes from the start of one row to the next.
+     * @param pixels At least {@code stride * height} bytes of pixels.
+     * @param pool The pool to take the buffer from, or null to allocate one.
+     * @return a copy of the pixels
+     */
+    public static BitmapData copyOf(BitmapInfo bitmapInfo, int stride, MemorySegment pixels, BitmapBufferPool pool) {
+        if (stride < bitmapInfo.width() * bitmapInfo.pixelType().bytesPerPixel()) {
+            throw new IllegalArgumentException("Stride is smaller than a row of pixels");
+        }
+        return new BitmapData(bitmapInfo, stride, pixels, (long) stride * bitmapInfo.height(), pool,
+            Arena::ofConfined);
+    }
+
+    /**
+     * Like {@link #copyOf(BitmapInfo, int, MemorySegment, BitmapBufferPool)}, but the copy may be
+     * read and closed on any thread, not just the one that made it, so it can be handed from a
+     * worker thread to another. Closing it is slower, as every thread must be checked.
+     *
+     * @param bitmapInfo The width, height and pixel type of the pixels.
+     * @param stride The number of bytes from the start of one row to the next.
+     * @param pixels At least {@code stride * height} bytes of pixels.
+     * @param pool The pool to take the buffer from, or null to allocate one.
+     * @return a copy of the pixels
+     */
+    public static BitmapData sharedCopyOf(BitmapInfo bitmapInfo, int stride, MemorySegment pixels,
+            BitmapBufferPool pool) {
+        if (stride < bitmapInfo.width() * bitmapInfo.pixelType().bytesPerPixel()) {
+            throw new IllegalArgumentException("Stride is smaller than a row of pixels");
         }
+        return new BitmapData(bitmapInfo, stride, pixels, (long) stride * bitmapInfo.height(), pool,
+            Arena::ofShared);
     }
 
+    /**
+     * Allocates a bitmap with packed rows for an operation in this package to fill. Pooled
+     * buffers are not cleared.
+     */
+    static BitmapData allocate(BitmapInfo bitmapInfo, BitmapBufferPool pool) {
+        int stride = bitmapInfo.width() * bitmapInfo.pixelType().bytesPerPixel();
+        return new BitmapData(bitmapInfo, stride, null, (long) stride * bitmapInfo.height(), pool,
+            Arena::ofConfined);
+    }
+
+    public int pixelSize() {
+        return pixelType.bytesPerPixel();
+    }
 
     public int stride() {
         return stride;
@@ -63,12 +182,217 @@ public class BitmapData implements AutoCloseable {
         return size;
     }
 
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public PixelType pixelType() {
+        return pixelType;
+    }
+
+    /**
+     * Returns a read-only view of the pixels, which must not be used once this is closed.
+     * <p>
+     * For a copy in its own memory, using the view after {@code close()} throws. For a copy in
+     * a {@link BitmapBufferPool} buffer it does not: the buffer goes back to the pool on close,
+     * and a view taken earlier reads whatever tile is copied into it next. Copy out anything
+     * that must outlive this, for example with {@link #getBytes()}. The accessors on this class
+     * throw after {@code close()} either way.
+     * </p>
+     *
+     * @return a read-only view of the pixels
+     */
+    public MemorySegment segment() {
+        return pixels().asReadOnly();
+    }
+
+    MemorySegment writableSegment() {
+        return pixels();
+    }
+
+    /**
+     * A pooled buffer is not invalidated when it goes back to the pool, so every read checks
+     * the flag rather than relying on the arena.
+     */
+    private MemorySegment pixels() {
+        if (closed) {
+            throw new IllegalStateException("Bitmap data is closed");
+        }
+        return data;
+    }
+
     public byte[] getBytes() {
-        return data.toArray(JAVA_BYTE);
+        return pixels().toArray(JAVA_BYTE);
+    }
+
+    /**
+     * @return the first sample of a pixel of a Gray8, Bgr24 or Bgra32 bitmap, as an unsigned value
+     */
+    public int getUnsignedByte(int x, int y) {
+        return getUnsignedByte(x, y, 0);
+    }
+
+    public int getUnsignedByte(int x, int y, int sample) {
+        requireType(BYTE_TYPES);
+        return Byte.toUnsignedInt(pixels().get(JAVA_BYTE, offset(x, y, sample)));
+    }
+
+    /**
+     * @return the first sample of a pixel of a Gray16 or Bgr48 bitmap; use
+     * {@link Short#toUnsignedInt(short)} for the unsigned value
+     */
+    public short getShort(int x, int y) {
+        return getShort(x, y, 0);
+    }
+
+    public short getShort(int x, int y, int sample) {
+        requireType(SHORT_TYPES);
+        return pixels().get(SHORT, offset(x, y, sample));
+    }
+
+    /**
+     * @return a pixel of a Gray32 bitmap
+     */
+    public int getInt(int x, int y) {
+        requireType(INT_TYPES);
+        return pixels().get(INT, offset(x, y, 0));
+    }
+
+    /**
+     * @return the first sample of a pixel of a Gray32Float, Bgr96Float or complex bitmap
+     */
+    public float getFloat(int x, int y) {
+        return getFloat(x, y, 0);
+    }
+
+    public float getFloat(int x, int y, int sample) {
+        requireType(FLOAT_TYPES);
+        return pixels().get(FLOAT, offset(x, y, sample));
+    }
+
+    /**
+     * @return a pixel of a Gray64Float bitmap
+     */
+    public double getDouble(int x, int y) {
+        requireType(DOUBLE_TYPES);
+        return pixels().get(DOUBLE, offset(x, y, 0));
+    }
+
+    /**
+     * Copies the samples of one row, without the stride padding, into the start of the array.
+     *
+     * @param y the row index
+     * @param dst an array of at least {@code width() * samplesPerPixel} elements
+     */
+    public void copyRowTo(int y, byte[] dst) {
+        requireType(BYTE_TYPES);
+        MemorySegment.copy(pixels(), JAVA_BYTE, rowOffset(y), dst, 0, rowSamples());
+    }
+
+    public void copyRowTo(int y, short[] dst) {
+        requireType(SHORT_TYPES);
+        MemorySegment.copy(pixels(), SHORT, rowOffset(y), dst, 0, rowSamples());
+    }
+
+    public void copyRowTo(int y, int[] dst) {
+        requireType(INT_TYPES);
+        MemorySegment.copy(pixels(), INT, rowOffset(y), dst, 0, rowSamples());
+    }
+
+    public void copyRowTo(int y, float[] dst) {
+        requireType(FLOAT_TYPES);
+        MemorySegment.copy(pixels(), FLOAT, rowOffset(y), dst, 0, rowSamples());
+    }
+
+    /**
+     * @return every sample of a Gray16 or Bgr48 bitmap, row by row without stride padding
+     */
+    public short[] toShortArray() {
+        requireType(SHORT_TYPES);
+        int rowSamples = rowSamples();
+        short[] result = new short[Math.multiplyExact(rowSamples, height)];
+        MemorySegment pixels = pixels();
+        for (int y = 0; y < height; y++) {
+            MemorySegment.copy(pixels, SHORT, (long) y * stride, result, y * rowSamples, rowSamples);
+        }
+        return result;
+    }
+
+    /**
+     * @return every sample of a Gray32Float, Bgr96Float or complex bitmap, row by row without stride padding
+     */
+    public float[] toFloatArray() {
+        requireType(FLOAT_TYPES);
+        int rowSamples = rowSamples();
+        float[] result = new float[Math.multiplyExact(rowSamples, height)];
+        MemorySegment pixels = pixels();
+        for (int y = 0; y < height; y++) {
+            MemorySegment.copy(pixels, FLOAT, (long) y * stride, result, y * rowSamples, rowSamples);
+        }
+        return result;
+    }
+
+    private void requireType(Set<PixelType> supported) {
+        if (!supported.contains(pixelType)) {
+            throw new UnsupportedOperationException("Accessor does not support pixel type " + pixelType);
+        }
+    }
+
+    private int rowSamples() {
+        return width * pixelType.samplesPerPixel();
+    }
+
+    private long rowOffset(int y) {
+        Objects.checkIndex(y, height);
+        return (long) y * stride;
+    }
+
+    private long offset(int x, int y, int sample) {
+        Objects.checkIndex(x, width);
+        Objects.checkIndex(sample, pixelType.samplesPerPixel());
+        return rowOffset(y) + (long) x * pixelType.bytesPerPixel() + (long) sample * pixelType.bytesPerSample();
+    }
+
+    /**
+     * Copies the pixels into a caller's buffer, one row every {@code destStride} bytes.
+     *
+     * @param dest the buffer to write to
+     * @param destOffset the byte offset in {@code dest} of the first row
+     * @param destStride the number of bytes from one row to the next in {@code dest}
+     * @see LockedBitmapView#copyTo(MemorySegment, long, int)
+     */
+    public void copyTo(MemorySegment dest, long destOffset, int destStride) {
+        PixelCopy.copy(pixels(), stride, width, height, pixelSize(), dest, destOffset, destStride);
+    }
+
+    /**
+     * Copies the pixels into a larger image in a caller's buffer, placing them at
+     * {@code (x, y)} and leaving out any part outside the image.
+     *
+     * @return the part of the image written, empty if none
+     * @see LockedBitmapView#copyTo(MemorySegment, long, int, IntSize, int, int)
+     */
+    public IntRect copyTo(MemorySegment dest, long destOffset, int destStride, IntSize destSize, int x, int y) {
+        return PixelCopy.copyClipped(pixels(), stride, width, height, pixelSize(), dest, destOffset, destStride,
+            destSize, x, y);
     }
 
     @Override
     public void close() throws Exception {
-        arena.close();
+        if (arena != null) {
+            arena.close();
+            closed = true;
+        } else if (buffer != null) {
+            closed = true;
+            buffer.release();
+            buffer = null;
+        } else {
+            throw new IllegalStateException("Already closed");
+        }
+        Access.metrics().recordBitmapDataBytes(-size);
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,7 @@
 package uk.ac.ed.eci.libCZI.bitmaps;
 
-import static java.lang.foreign.ValueLayout.ADDRESS;
-import static java.lang.foreign.ValueLayout.JAVA_INT;
-
 import java.lang.foreign.Arena;
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
 
 import uk.ac.ed.eci.libCZI.CziBitmapException;
 import uk.ac.ed.eci.libCZI.LibCziFFM;
@@ -39,11 +34,9 @@ public class BitmapLock implements AutoCloseable {
         if (bitmapHandle == null || bitmapHandle.address() == 0) {
             return null;
         }
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
         try {
             MemorySegment pBitmapLockInfo = arena.allocate(BitmapLockInfo.layout());
-            MethodHandle bitmapLock = LibCziFFM.getMethodHandle("libCZI_BitmapLock", descriptor);
-            int errorCode = (int) bitmapLock.invokeExact(bitmapHandle, pBitmapLockInfo);
+            int errorCode = (int) LibCziFFM.BITMAP_LOCK.invokeExact(bitmapHandle, pBitmapLockInfo);
             if (errorCode != 0) {
                 throw new CziBitmapException("Failed to lock bitmap. Error code: " + errorCode);
             }
@@ -56,9 +49,8 @@ public class BitmapLock implements AutoCloseable {
     }
 
     void unlock() {
-        FunctionDescriptor descriptor = FunctionDescriptor.ofVoid(ADDRESS);
         try {
-            LibCziFFM.getMethodHandle("libCZI_BitmapUnlock", descriptor).invokeExact(bitmapHandle);
+            LibCziFFM.BITMAP_UNLOCK.invokeExact(bitmapHandle);
         } catch (Throwable e) {
             throw new RuntimeException("Failed to call native function libCZI_UnlockBitmap", e);
         }
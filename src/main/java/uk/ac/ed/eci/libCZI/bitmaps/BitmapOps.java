@@ -0,0 +1,286 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.MemorySegment;
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.ac.ed.eci.libCZI.PixelType;
+
+/**
+ * Pixel conversions for display and for building reduced images: window/level to 8 bits, Bgr48
+ * to Bgr24, float to Gray8 and 2x2 downsampling.
+ * <p>
+ * The loops use the incubating Vector API when the {@code jdk.incubator.vector} module is in
+ * the boot layer, for example with {@code --add-modules jdk.incubator.vector}, and the CPU has
+ * vectors of at least 256 bits. Otherwise they run as plain Java. Both give the same results;
+ * setting the system property {@value #SCALAR_PROPERTY} to {@code true} forces the plain
+ * loops, for comparison.
+ * </p>
+ * <p>
+ * Every operation returns a new {@link BitmapData} with packed rows, owned by the caller, and
+ * leaves its input unchanged.
+ * </p>
+ *
+ * <pre>{@code
+ * try (BitmapData raw = BitmapData.copyOf(info, stride, pixels);
+ *         BitmapData display = BitmapOps.toEightBit(raw, 100, 4000);
+ *         BitmapData half = BitmapOps.downsample2x(display)) {
+ *     show(half);
+ * }
+ * }</pre>
+ */
+public final class BitmapOps {
+    /**
+     * Set to {@code true} to use the plain Java loops even when the Vector API is available.
+     */
+    public static final String SCALAR_PROPERTY = "libczi.scalarBitmapOps";
+
+    private static final PixelKernels KERNELS = selectKernels();
+    private static final Set<PixelType> WINDOW_TYPES = EnumSet.of(PixelType.Gray16, PixelType.Bgr48,
+        PixelType.Gray32Float);
+    private static final Set<PixelType> DOWNSAMPLE_TYPES = EnumSet.of(PixelType.Gray8, PixelType.Gray16,
+        PixelType.Bgr24, PixelType.Bgr48, PixelType.Gray32Float);
+
+    private BitmapOps() {}
+
+    /**
+     * @return whether the operations run on the Vector API
+     */
+    public static boolean isVectorized() {
+        return KERNELS instanceof VectorKernels;
+    }
+
+    /**
+     * Maps each sample linearly from {@code low..high} to {@code 0..255}, clamping outside it.
+     * Gray16 and Gray32Float become Gray8, and Bgr48 becomes Bgr24.
+     *
+     * @param source a Gray16, Bgr48 or Gray32Float bitmap
+     * @param low the value shown as black
+     * @param high the value shown as white
+     * @return the 8-bit bitmap
+     */
+    public static BitmapData toEightBit(BitmapData source, double low, double high) {
+        return toEightBit(source, low, high, null);
+    }
+
+    /**
+     * As {@link #toEightBit(BitmapData, double, double)}, into a pooled buffer.
+     *
+     * @param pool the pool to take the output buffer from, or null to allocate one
+     */
+    public static BitmapData toEightBit(BitmapData source, double low, double high, BitmapBufferPool pool) {
+        requireType(source, WINDOW_TYPES, "window");
+        if (!(high > low)) {
+            throw new IllegalArgumentException("High must be greater than low");
+        }
+        float lowValue = (float) low;
+        float scale = (float) (255.0 / (high - low));
+        boolean isFloat = source.pixelType() == PixelType.Gray32Float;
+        PixelType target = source.pixelType() == PixelType.Bgr48 ? PixelType.Bgr24 : PixelType.Gray8;
+        BitmapData result = BitmapData.allocate(new BitmapInfo(source.width(), source.height(), target), pool);
+        return fill(source, result, (src, srcOffset, dst, dstOffset, samples) -> {
+            if (isFloat) {
+                KERNELS.windowFloat(src, srcOffset, dst, dstOffset, samples, lowValue, scale);
+            } else {
+                KERNELS.window16(src, srcOffset, dst, dstOffset, samples, lowValue, scale);
+            }
+        });
+    }
+
+    /**
+     * Window/level as set in a viewer: {@link #toEightBit} from {@code level - window / 2} to
+     * {@code level + window / 2}.
+     *
+     * @param source a Gray16, Bgr48 or Gray32Float bitmap
+     * @param window the width of the range shown
+     * @param level the centre of the range shown
+     * @return the 8-bit bitmap
+     */
+    public static BitmapData windowLevel(BitmapData source, double window, double level) {
+        return toEightBit(source, level - window / 2, level + window / 2, null);
+    }
+
+    /**
+     * Converts Bgr48 to Bgr24 by keeping the high byte of each sample.
+     *
+     * @param source a Bgr48 bitmap
+     * @return the Bgr24 bitmap
+     */
+    public static BitmapData toBgr24(BitmapData source) {
+        return toBgr24(source, null);
+    }
+
+    /**
+     * As {@link #toBgr24(BitmapData)}, into a pooled buffer.
+     *
+     * @param pool the pool to take the output buffer from, or null to allocate one
+     */
+    public static BitmapData toBgr24(BitmapData source, BitmapBufferPool pool) {
+        requireType(source, EnumSet.of(PixelType.Bgr48), "convert to Bgr24");
+        BitmapData result = BitmapData.allocate(new BitmapInfo(source.width(), source.height(), PixelType.Bgr24), pool);
+        return fill(source, result, KERNELS::highByte16);
+    }
+
+    /**
+     * Converts Gray32Float to Gray8, stretching the bitmap's own range of values to 0..255.
+     *
+     * @param source a Gray32Float bitmap
+     * @return the Gray8 bitmap
+     */
+    public static BitmapData toGray8(BitmapData source) {
+        return toGray8(source, null);
+    }
+
+    /**
+     * As {@link #toGray8(BitmapData)}, into a pooled buffer.
+     *
+     * @param pool the pool to take the output buffer from, or null to allocate one
+     */
+    public static BitmapData toGray8(BitmapData source, BitmapBufferPool pool) {
+        float[] range = minMax(source);
+        float low = range[0] <= range[1] ? range[0] : 0;
+        float high = range[1] > low ? range[1] : low + 1;
+        return toEightBit(source, low, high, pool);
+    }
+
+    /**
+     * @param source a Gray32Float bitmap
+     * @return the smallest and largest values, ignoring NaN; {@code {+Inf, -Inf}} if there are none
+     */
+    public static float[] minMax(BitmapData source) {
+        requireType(source, EnumSet.of(PixelType.Gray32Float), "find the range of");
+        float[] range = { Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+        MemorySegment src = source.segment();
+        for (int y = 0; y < source.height(); y++) {
+            KERNELS.minMaxFloat(src, (long) y * source.stride(), source.width(), range);
+        }
+        return range;
+    }
+
+    /**
+     * Halves a bitmap in each direction, averaging each 2x2 block of pixels. An odd last row
+     * or column is averaged with itself, so the result is {@code ceil(width / 2)} by
+     * {@code ceil(height / 2)}. Integer samples are rounded half up.
+     *
+     * @param source a Gray8, Gray16, Bgr24, Bgr48 or Gray32Float bitmap
+     * @return the reduced bitmap, of the same pixel type
+     */
+    public static BitmapData downsample2x(BitmapData source) {
+        return downsample2x(source, null);
+    }
+
+    /**
+     * As {@link #downsample2x(BitmapData)}, into a pooled buffer.
+     *
+     * @param pool the pool to take the output buffer from, or null to allocate one
+     */
+    public static BitmapData downsample2x(BitmapData source, BitmapBufferPool pool) {
+        requireType(source, DOWNSAMPLE_TYPES, "downsample");
+        PixelType pixelType = source.pixelType();
+        int width = source.width();
+        int height = source.height();
+        int channels = pixelType.samplesPerPixel();
+        int pixelSize = pixelType.bytesPerPixel();
+        BitmapData result = BitmapData.allocate(new BitmapInfo((width + 1) / 2, (height + 1) / 2, pixelType), pool);
+        try {
+            MemorySegment src = source.segment();
+            MemorySegment dst = result.writableSegment();
+            int pairs = width / 2;
+            for (int y = 0; y < result.height(); y++) {
+                long row0 = (long) 2 * y * source.stride();
+                long row1 = (long) Math.min(2 * y + 1, height - 1) * source.stride();
+                long out = (long) y * result.stride();
+                downsample(pixelType, src, row0, row1, dst, out, pairs, channels);
+                if (width % 2 != 0) {
+                    // Pair the last column with itself.
+                    long last = (long) (width - 1) * pixelSize;
+                    MemorySegment edge = edgeColumn(src, row0 + last, row1 + last, pixelSize);
+                    downsample(pixelType, edge, 0, 2L * pixelSize, dst, out + (long) pairs * pixelSize, 1, channels);
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            closeQuietly(result);
+            throw e;
+        }
+    }
+
+    private static void downsample(PixelType pixelType, MemorySegment src, long row0, long row1, MemorySegment dst,
+            long dstOffset, int pairs, int channels) {
+        switch (pixelType) {
+            case Gray8, Bgr24 -> KERNELS.downsample8(src, row0, row1, dst, dstOffset, pairs, channels);
+            case Gray16, Bgr48 -> KERNELS.downsample16(src, row0, row1, dst, dstOffset, pairs, channels);
+            default -> KERNELS.downsampleFloat(src, row0, row1, dst, dstOffset, pairs, channels);
+        }
+    }
+
+    /**
+     * @return the pixels at the two offsets, each twice, as two rows of two pixels
+     */
+    private static MemorySegment edgeColumn(MemorySegment src, long top, long bottom, int pixelSize) {
+        MemorySegment edge = MemorySegment.ofArray(new byte[4 * pixelSize]);
+        MemorySegment.copy(src, top, edge, 0, pixelSize);
+        MemorySegment.copy(src, top, edge, pixelSize, pixelSize);
+        MemorySegment.copy(src, bottom, edge, 2L * pixelSize, pixelSize);
+        MemorySegment.copy(src, bottom, edge, 3L * pixelSize, pixelSize);
+        return edge;
+    }
+
+    private interface RowOperation {
+        void apply(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples);
+    }
+
+    /**
+     * Runs a sample-for-sample operation over each row.
+     */
+    private static BitmapData fill(BitmapData source, BitmapData result, RowOperation operation) {
+        try {
+            MemorySegment src = source.segment();
+            MemorySegment dst = result.writableSegment();
+            int samples = source.width() * source.pixelType().samplesPerPixel();
+            for (int y = 0; y < source.height(); y++) {
+                operation.apply(src, (long) y * source.stride(), dst, (long) y * result.stride(), samples);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            closeQuietly(result);
+            throw e;
+        }
+    }
+
+    private static void requireType(BitmapData source, Set<PixelType> supported, String operation) {
+        if (!supported.contains(source.pixelType())) {
+            throw new UnsupportedOperationException("Cannot " + operation + " pixel type " + source.pixelType());
+        }
+    }
+
+    private static void closeQuietly(BitmapData data) {
+        try {
+            data.close();
+        } catch (Exception e) {
+            // The original failure is more useful.
+        }
+    }
+
+    /**
+     * @return the loops in use, for the channel blender behind the composite accessor
+     */
+    static PixelKernels kernels() {
+        return KERNELS;
+    }
+
+    private static PixelKernels selectKernels() {
+        if (Boolean.getBoolean(SCALAR_PROPERTY)
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarKernels.INSTANCE;
+        }
+        try {
+            if (VectorKernels.isSupported()) {
+                return new VectorKernels();
+            }
+        } catch (LinkageError | RuntimeException e) {
+            // The module is present but not readable from here, or this CPU has no usable shape.
+        }
+        return ScalarKernels.INSTANCE;
+    }
+}
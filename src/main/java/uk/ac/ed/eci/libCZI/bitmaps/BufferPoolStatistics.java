@@ -0,0 +1,30 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+/**
+ * A snapshot of the counters of a {@link BitmapBufferPool}.
+ *
+ * @param hits The number of requests served by a returned buffer.
+ * @param misses The number of pooled requests that had to allocate a new buffer.
+ * @param unpooled The number of requests above the largest size class, allocated directly.
+ * @param discards The number of returned buffers freed because their size class was full.
+ * @param leaks The number of buffers garbage collected without being returned.
+ * @param outstanding The number of buffers currently lent out.
+ * @param retainedBytes The bytes held in the pool for reuse.
+ */
+public record BufferPoolStatistics(
+    long hits,
+    long misses,
+    long unpooled,
+    long discards,
+    long leaks,
+    long outstanding,
+    long retainedBytes) {
+
+    /**
+     * @return the fraction of pooled requests served by a returned buffer, 0 if there were none
+     */
+    public double hitRate() {
+        long pooled = hits + misses;
+        return pooled == 0 ? 0 : (double) hits / pooled;
+    }
+}
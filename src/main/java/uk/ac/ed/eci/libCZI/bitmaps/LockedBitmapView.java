@@ -0,0 +1,117 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Reference;
+
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.IntSize;
+import uk.ac.ed.eci.libCZI.PixelType;
+
+/**
+ * A read-only view of a bitmap's pixels that borrows the native buffer instead of copying it.
+ * <p>
+ * The bitmap stays locked for as long as the view is open. The segment returned by
+ * {@link #data()} is only valid until the view is closed; after that any access to it throws
+ * an {@link IllegalStateException} rather than reading freed memory. The view is confined to
+ * the thread that created it.
+ * </p>
+ * <p>
+ * Rows are {@link #stride()} bytes apart, which can be more than
+ * {@code width() * pixelSize()}.
+ * </p>
+ *
+ * @see Bitmap#lockData()
+ * @see Bitmap#withLockedData(java.util.function.Consumer)
+ */
+public class LockedBitmapView implements AutoCloseable {
+    // Holds the bitmap so it cannot be collected, and released, while it is locked.
+    private final Bitmap bitmap;
+    private final BitmapLock lock;
+    private final BitmapInfo info;
+    private final Arena arena;
+    private final MemorySegment data;
+
+    LockedBitmapView(Bitmap bitmap, BitmapInfo info, BitmapLock lock) {
+        this.bitmap = bitmap;
+        this.info = info;
+        this.lock = lock;
+        this.arena = Arena.ofConfined();
+        this.data = lock.ptrDataRoi().reinterpret(lock.size(), arena, null).asReadOnly();
+    }
+
+    /**
+     * @return the locked pixel data, read-only and valid until the view is closed
+     */
+    public MemorySegment data() {
+        return data;
+    }
+
+    public int width() {
+        return info.width();
+    }
+
+    public int height() {
+        return info.height();
+    }
+
+    public PixelType pixelType() {
+        return info.pixelType();
+    }
+
+    public int stride() {
+        return lock.stride();
+    }
+
+    public long size() {
+        return lock.size();
+    }
+
+    /**
+     * @param y the row index
+     * @return the pixels of one row, without any padding at the end of the stride
+     */
+    public MemorySegment row(int y) {
+        return data.asSlice((long) y * stride(), (long) width() * info.pixelType().bytesPerPixel());
+    }
+
+    /**
+     * Copies the pixels straight from the locked buffer into a caller's buffer, one row every
+     * {@code destStride} bytes. The destination is taken to hold pixels of the same type.
+     *
+     * @param dest the buffer to write to: off-heap, a mapped file or a heap array
+     * @param destOffset the byte offset in {@code dest} of the first row
+     * @param destStride the number of bytes from one row to the next in {@code dest}
+     */
+    public void copyTo(MemorySegment dest, long destOffset, int destStride) {
+        PixelCopy.copy(data, stride(), width(), height(), info.pixelType().bytesPerPixel(), dest, destOffset,
+            destStride);
+    }
+
+    /**
+     * Copies the pixels into a larger image in a caller's buffer, such as a mosaic, placing
+     * them at {@code (x, y)} and leaving out any part outside the image.
+     *
+     * @param dest the buffer holding the image
+     * @param destOffset the byte offset in {@code dest} of the image's first row
+     * @param destStride the number of bytes from one row of the image to the next
+     * @param destSize the size of the image in pixels
+     * @param x where the left edge of these pixels goes in the image; may be negative
+     * @param y where the top edge of these pixels goes in the image; may be negative
+     * @return the part of the image written, empty if none
+     */
+    public IntRect copyTo(MemorySegment dest, long destOffset, int destStride, IntSize destSize, int x, int y) {
+        return PixelCopy.copyClipped(data, stride(), width(), height(), info.pixelType().bytesPerPixel(), dest,
+            destOffset, destStride, destSize, x, y);
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            arena.close();
+            lock.close();
+        } finally {
+            Reference.reachabilityFence(bitmap);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.MemorySegment;
+
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.IntSize;
+import uk.ac.ed.eci.libCZI.jfr.BitmapCopyEvent;
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
+
+/**
+ * Row-by-row copies from a bitmap's pixels into a caller's buffer with its own stride.
+ */
+final class PixelCopy {
+
+    private PixelCopy() {}
+
+    /**
+     * Copies every pixel, to {@code destOffset + y * destStride} for row {@code y}.
+     */
+    static void copy(MemorySegment src, int srcStride, int width, int height, int pixelSize, MemorySegment dest,
+            long destOffset, int destStride) {
+        int rowBytes = width * pixelSize;
+        requireStride(destStride, rowBytes);
+        BitmapCopyEvent event = LibCziEvents.beginBitmapCopy(width, height, (long) rowBytes * height, true);
+        if (srcStride == rowBytes && destStride == rowBytes) {
+            MemorySegment.copy(src, 0, dest, destOffset, (long) rowBytes * height);
+        } else {
+            for (int y = 0; y < height; y++) {
+                MemorySegment.copy(src, (long) y * srcStride, dest, destOffset + (long) y * destStride, rowBytes);
+            }
+        }
+        LibCziEvents.end(event);
+    }
+
+    /**
+     * Copies the pixels placed at {@code (x, y)} in a destination image of {@code destSize},
+     * leaving out any part that falls outside it.
+     *
+     * @return the part of the destination image written, empty if none
+     */
+    static IntRect copyClipped(MemorySegment src, int srcStride, int width, int height, int pixelSize,
+            MemorySegment dest, long destOffset, int destStride, IntSize destSize, int x, int y) {
+        requireStride(destStride, destSize.w() * pixelSize);
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = (int) Math.min(destSize.w(), (long) x + width);
+        int bottom = (int) Math.min(destSize.h(), (long) y + height);
+        if (right <= left || bottom <= top) {
+            return new IntRect(left, top, 0, 0);
+        }
+        long rowBytes = (long) (right - left) * pixelSize;
+        BitmapCopyEvent event = LibCziEvents.beginBitmapCopy(right - left, bottom - top, rowBytes * (bottom - top),
+            true);
+        for (int row = top; row < bottom; row++) {
+            long from = (long) (row - y) * srcStride + (long) (left - x) * pixelSize;
+            long to = destOffset + (long) row * destStride + (long) left * pixelSize;
+            MemorySegment.copy(src, from, dest, to, rowBytes);
+        }
+        LibCziEvents.end(event);
+        return new IntRect(left, top, right - left, bottom - top);
+    }
+
+    private static void requireStride(int destStride, int rowBytes) {
+        if (destStride < rowBytes) {
+            throw new IllegalArgumentException("Destination stride " + destStride + " is smaller than a row of "
+                + rowBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * The per-row loops behind {@link BitmapOps}. Offsets are in bytes and counts in samples;
+ * multi-byte samples are little-endian.
+ */
+interface PixelKernels {
+
+    /**
+     * Maps unsigned 16-bit samples to {@code clamp((v - low) * scale + 0.5)} as unsigned bytes.
+     */
+    void window16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples, float low,
+        float scale);
+
+    /**
+     * Maps float samples to {@code clamp((v - low) * scale + 0.5)} as unsigned bytes; NaN maps to 0.
+     */
+    void windowFloat(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples, float low,
+        float scale);
+
+    /**
+     * Keeps the high byte of each unsigned 16-bit sample.
+     */
+    void highByte16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples);
+
+    /**
+     * Widens {@code range}, holding the minimum and maximum so far, to cover the float samples,
+     * ignoring NaN.
+     */
+    void minMaxFloat(MemorySegment src, long offset, int samples, float[] range);
+
+    /**
+     * Adds {@code values[x] * factor} for each colour to that colour's accumulator, for the
+     * first {@code count} values, in one pass.
+     */
+    void accumulate(int[] values, int count, int factorB, int factorG, int factorR, int[] accB, int[] accG,
+        int[] accR);
+
+    /**
+     * Averages 2x2 blocks of unsigned bytes from two rows, rounding half up.
+     *
+     * @param pairs the number of output pixels
+     * @param channels the samples per pixel
+     */
+    void downsample8(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+        int channels);
+
+    /**
+     * Averages 2x2 blocks of unsigned 16-bit samples from two rows, rounding half up.
+     */
+    void downsample16(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+        int channels);
+
+    /**
+     * Averages 2x2 blocks of float samples from two rows.
+     */
+    void downsampleFloat(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+        int channels);
+}
@@ -0,0 +1,120 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Plain loops, used when the Vector API is not available and for the tails of rows that do
+ * not fill a vector.
+ */
+final class ScalarKernels implements PixelKernels {
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private ScalarKernels() {}
+
+    @Override
+    public void window16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples, float low,
+            float scale) {
+        for (int i = 0; i < samples; i++) {
+            int value = src.get(SHORT, srcOffset + 2L * i) & 0xFFFF;
+            dst.set(JAVA_BYTE, dstOffset + i, toByte(value, low, scale));
+        }
+    }
+
+    @Override
+    public void windowFloat(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples,
+            float low, float scale) {
+        for (int i = 0; i < samples; i++) {
+            dst.set(JAVA_BYTE, dstOffset + i, toByte(src.get(FLOAT, srcOffset + 4L * i), low, scale));
+        }
+    }
+
+    @Override
+    public void accumulate(int[] values, int count, int factorB, int factorG, int factorR, int[] accB, int[] accG,
+            int[] accR) {
+        accumulate(values, 0, count, factorB, factorG, factorR, accB, accG, accR);
+    }
+
+    void accumulate(int[] values, int from, int count, int factorB, int factorG, int factorR, int[] accB,
+            int[] accG, int[] accR) {
+        for (int x = from; x < count; x++) {
+            int value = values[x];
+            accB[x] += value * factorB;
+            accG[x] += value * factorG;
+            accR[x] += value * factorR;
+        }
+    }
+
+    @Override
+    public void highByte16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            dst.set(JAVA_BYTE, dstOffset + i, (byte) ((src.get(SHORT, srcOffset + 2L * i) & 0xFFFF) >>> 8));
+        }
+    }
+
+    @Override
+    public void minMaxFloat(MemorySegment src, long offset, int samples, float[] range) {
+        float min = range[0];
+        float max = range[1];
+        for (int i = 0; i < samples; i++) {
+            float value = src.get(FLOAT, offset + 4L * i);
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        range[0] = min;
+        range[1] = max;
+    }
+
+    @Override
+    public void downsample8(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+            int channels) {
+        int samples = pairs * channels;
+        for (int i = 0; i < samples; i++) {
+            long left = (long) (i / channels) * 2 * channels + i % channels;
+            int sum = (src.get(JAVA_BYTE, row0 + left) & 0xFF) + (src.get(JAVA_BYTE, row0 + left + channels) & 0xFF)
+                + (src.get(JAVA_BYTE, row1 + left) & 0xFF) + (src.get(JAVA_BYTE, row1 + left + channels) & 0xFF);
+            dst.set(JAVA_BYTE, dstOffset + i, (byte) ((sum + 2) >>> 2));
+        }
+    }
+
+    @Override
+    public void downsample16(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+            int channels) {
+        int samples = pairs * channels;
+        for (int i = 0; i < samples; i++) {
+            long left = 2 * ((long) (i / channels) * 2 * channels + i % channels);
+            long right = left + 2L * channels;
+            int sum = (src.get(SHORT, row0 + left) & 0xFFFF) + (src.get(SHORT, row0 + right) & 0xFFFF)
+                + (src.get(SHORT, row1 + left) & 0xFFFF) + (src.get(SHORT, row1 + right) & 0xFFFF);
+            dst.set(SHORT, dstOffset + 2L * i, (short) ((sum + 2) >>> 2));
+        }
+    }
+
+    @Override
+    public void downsampleFloat(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset,
+            int pairs, int channels) {
+        int samples = pairs * channels;
+        for (int i = 0; i < samples; i++) {
+            long left = 4 * ((long) (i / channels) * 2 * channels + i % channels);
+            long right = left + 4L * channels;
+            float sum = src.get(FLOAT, row0 + left) + src.get(FLOAT, row0 + right)
+                + src.get(FLOAT, row1 + left) + src.get(FLOAT, row1 + right);
+            dst.set(FLOAT, dstOffset + 4L * i, sum * 0.25f);
+        }
+    }
+
+    static byte toByte(float value, float low, float scale) {
+        // The same operations, in the same order, as the vector path, so both give equal results.
+        return (byte) (int) Math.min(255f, Math.max(0f, (value - low) * scale + 0.5f));
+    }
+}
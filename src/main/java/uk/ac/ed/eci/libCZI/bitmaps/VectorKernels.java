@@ -0,0 +1,163 @@
+package uk.ac.ed.eci.libCZI.bitmaps;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Loops on the incubating Vector API. Only loaded once {@link BitmapOps} has found the
+ * {@code jdk.incubator.vector} module, and only used on hardware with vectors of at least 256
+ * bits, as narrowing from there to bytes still leaves a supported vector shape.
+ * <p>
+ * Each loop handles whole vectors and passes the rest of the row to {@link ScalarKernels}.
+ * Downsampling is vectorised for single-channel 8 and 16-bit pixels, by loading each pair of
+ * neighbouring samples as one lane of twice the width; other layouts use the scalar loops.
+ * </p>
+ */
+final class VectorKernels implements PixelKernels {
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final ScalarKernels SCALAR = ScalarKernels.INSTANCE;
+
+    // N lanes of each type, for widening samples to float and narrowing back.
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final int BITS = FLOATS.vectorBitSize();
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(BITS / 2));
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(BITS / 4));
+    // 2N lanes, each holding a pair of bytes, for downsampling Gray8.
+    private static final VectorSpecies<Short> BYTE_PAIRS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> HALF_BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(BITS / 2));
+
+    VectorKernels() {}
+
+    static boolean isSupported() {
+        return FLOATS.vectorBitSize() >= 256 && INTS.vectorBitSize() == BITS && BYTE_PAIRS.vectorBitSize() == BITS;
+    }
+
+    @Override
+    public void window16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples, float low,
+            float scale) {
+        int bound = FLOATS.loopBound(samples);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            ShortVector values = ShortVector.fromMemorySegment(SHORTS, src, srcOffset + 2L * i, ORDER);
+            FloatVector widened = (FloatVector) values.convertShape(VectorOperators.ZERO_EXTEND_S2I, INTS, 0)
+                .convert(VectorOperators.I2F, 0);
+            store(widened, low, scale, dst, dstOffset + i);
+        }
+        SCALAR.window16(src, srcOffset + 2L * i, dst, dstOffset + i, samples - i, low, scale);
+    }
+
+    @Override
+    public void windowFloat(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples,
+            float low, float scale) {
+        int bound = FLOATS.loopBound(samples);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            store(FloatVector.fromMemorySegment(FLOATS, src, srcOffset + 4L * i, ORDER), low, scale, dst, dstOffset + i);
+        }
+        SCALAR.windowFloat(src, srcOffset + 4L * i, dst, dstOffset + i, samples - i, low, scale);
+    }
+
+    private static void store(FloatVector values, float low, float scale, MemorySegment dst, long dstOffset) {
+        FloatVector mapped = values.sub(low).mul(scale).add(0.5f).max(0f).min(255f);
+        ((ByteVector) mapped.convertShape(VectorOperators.F2B, BYTES, 0)).intoMemorySegment(dst, dstOffset, ORDER);
+    }
+
+    @Override
+    public void highByte16(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int samples) {
+        int bound = BYTE_PAIRS.loopBound(samples);
+        int i = 0;
+        for (; i < bound; i += BYTE_PAIRS.length()) {
+            ShortVector values = ShortVector.fromMemorySegment(BYTE_PAIRS, src, srcOffset + 2L * i, ORDER);
+            ((ByteVector) values.lanewise(VectorOperators.LSHR, 8).convertShape(VectorOperators.S2B, HALF_BYTES, 0))
+                .intoMemorySegment(dst, dstOffset + i, ORDER);
+        }
+        SCALAR.highByte16(src, srcOffset + 2L * i, dst, dstOffset + i, samples - i);
+    }
+
+    @Override
+    public void accumulate(int[] values, int count, int factorB, int factorG, int factorR, int[] accB, int[] accG,
+            int[] accR) {
+        int bound = INTS.loopBound(count);
+        int x = 0;
+        for (; x < bound; x += INTS.length()) {
+            IntVector value = IntVector.fromArray(INTS, values, x);
+            IntVector.fromArray(INTS, accB, x).add(value.mul(factorB)).intoArray(accB, x);
+            IntVector.fromArray(INTS, accG, x).add(value.mul(factorG)).intoArray(accG, x);
+            IntVector.fromArray(INTS, accR, x).add(value.mul(factorR)).intoArray(accR, x);
+        }
+        SCALAR.accumulate(values, x, count, factorB, factorG, factorR, accB, accG, accR);
+    }
+
+    @Override
+    public void minMaxFloat(MemorySegment src, long offset, int samples, float[] range) {
+        int bound = FLOATS.loopBound(samples);
+        int i = 0;
+        FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector values = FloatVector.fromMemorySegment(FLOATS, src, offset + 4L * i, ORDER);
+            VectorMask<Float> nan = values.test(VectorOperators.IS_NAN);
+            min = min.min(values.blend(Float.POSITIVE_INFINITY, nan));
+            max = max.max(values.blend(Float.NEGATIVE_INFINITY, nan));
+        }
+        range[0] = Math.min(range[0], min.reduceLanes(VectorOperators.MIN));
+        range[1] = Math.max(range[1], max.reduceLanes(VectorOperators.MAX));
+        SCALAR.minMaxFloat(src, offset + 4L * i, samples - i, range);
+    }
+
+    @Override
+    public void downsample8(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+            int channels) {
+        int i = 0;
+        if (channels == 1) {
+            int bound = BYTE_PAIRS.loopBound(pairs);
+            for (; i < bound; i += BYTE_PAIRS.length()) {
+                ShortVector top = ShortVector.fromMemorySegment(BYTE_PAIRS, src, row0 + 2L * i, ORDER);
+                ShortVector bottom = ShortVector.fromMemorySegment(BYTE_PAIRS, src, row1 + 2L * i, ORDER);
+                ShortVector sum = top.and((short) 0xFF).add(top.lanewise(VectorOperators.LSHR, 8))
+                    .add(bottom.and((short) 0xFF)).add(bottom.lanewise(VectorOperators.LSHR, 8))
+                    .add((short) 2).lanewise(VectorOperators.LSHR, 2);
+                ((ByteVector) sum.convertShape(VectorOperators.S2B, HALF_BYTES, 0))
+                    .intoMemorySegment(dst, dstOffset + i, ORDER);
+            }
+        }
+        SCALAR.downsample8(src, row0 + 2L * i * channels, row1 + 2L * i * channels, dst, dstOffset + (long) i * channels,
+            pairs - i, channels);
+    }
+
+    @Override
+    public void downsample16(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset, int pairs,
+            int channels) {
+        int i = 0;
+        if (channels == 1) {
+            int bound = INTS.loopBound(pairs);
+            for (; i < bound; i += INTS.length()) {
+                IntVector top = IntVector.fromMemorySegment(INTS, src, row0 + 4L * i, ORDER);
+                IntVector bottom = IntVector.fromMemorySegment(INTS, src, row1 + 4L * i, ORDER);
+                IntVector sum = top.and(0xFFFF).add(top.lanewise(VectorOperators.LSHR, 16))
+                    .add(bottom.and(0xFFFF)).add(bottom.lanewise(VectorOperators.LSHR, 16))
+                    .add(2).lanewise(VectorOperators.LSHR, 2);
+                ((ShortVector) sum.convertShape(VectorOperators.I2S, SHORTS, 0))
+                    .intoMemorySegment(dst, dstOffset + 2L * i, ORDER);
+            }
+        }
+        SCALAR.downsample16(src, row0 + 4L * i * channels, row1 + 4L * i * channels, dst,
+            dstOffset + 2L * i * channels, pairs - i, channels);
+    }
+
+    @Override
+    public void downsampleFloat(MemorySegment src, long row0, long row1, MemorySegment dst, long dstOffset,
+            int pairs, int channels) {
+        SCALAR.downsampleFloat(src, row0, row1, dst, dstOffset, pairs, channels);
+    }
+}
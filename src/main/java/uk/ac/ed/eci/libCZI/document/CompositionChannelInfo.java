@@ -0,0 +1,91 @@
+package uk.ac.ed.eci.libCZI.document;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BOOLEAN;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * How one channel is drawn into a colour composite, as derived by libCZI from the channel's
+ * display settings. This record corresponds to the `CompositionChannelInfoInterop` structure
+ * in the libCZI C API.
+ * <p>
+ * A channel's intensity is mapped to 0..255 by the look-up table when there is one, which
+ * carries any gamma or spline curve, and otherwise linearly between the black and white
+ * points. The result is multiplied by the weight and by the tint, or by white when the channel
+ * is not tinted, and added to the composite.
+ * </p>
+ *
+ * @param weight The weight of the channel in the composite.
+ * @param tinted Whether the channel is drawn in its tinting colour rather than in grey.
+ * @param tintR The red component of the tinting colour, from 0 to 255.
+ * @param tintG The green component of the tinting colour, from 0 to 255.
+ * @param tintB The blue component of the tinting colour, from 0 to 255.
+ * @param blackPoint The intensity drawn as black, as a fraction of the pixel type's range.
+ * @param whitePoint The intensity drawn at full brightness, as a fraction of the pixel type's range.
+ * @param lookUpTable The output for each input intensity, or empty to map linearly between the black and white points.
+ */
+public record CompositionChannelInfo(
+    float weight,
+    boolean tinted,
+    int tintR,
+    int tintG,
+    int tintB,
+    float blackPoint,
+    float whitePoint,
+    byte[] lookUpTable) {
+
+    /**
+     * @param weight the weight of the channel in the composite
+     * @param tintR the red component of the tinting colour, from 0 to 255
+     * @param tintG the green component of the tinting colour, from 0 to 255
+     * @param tintB the blue component of the tinting colour, from 0 to 255
+     * @param blackPoint the intensity drawn as black, as a fraction of the pixel type's range
+     * @param whitePoint the intensity drawn at full brightness, as a fraction of the pixel type's range
+     * @return a tinted channel mapped linearly between its black and white points
+     */
+    public static CompositionChannelInfo linear(float weight, int tintR, int tintG, int tintB,
+            float blackPoint, float whitePoint) {
+        return new CompositionChannelInfo(weight, true, tintR, tintG, tintB, blackPoint, whitePoint, new byte[0]);
+    }
+
+    public static MemoryLayout layout() {
+        return MemoryLayout.structLayout(
+            JAVA_FLOAT.withName("weight"),
+            JAVA_BOOLEAN.withName("enable_tinting"),
+            JAVA_BYTE.withName("tinting_color_r"),
+            JAVA_BYTE.withName("tinting_color_g"),
+            JAVA_BYTE.withName("tinting_color_b"),
+            JAVA_FLOAT.withName("black_point"),
+            JAVA_FLOAT.withName("white_point"),
+            JAVA_INT.withName("look_up_table_element_count"),
+            MemoryLayout.paddingLayout(4),
+            ADDRESS.withName("ptr_look_up_table"));
+    }
+
+    /**
+     * Copies the structure, including its look-up table, so the native one can be released.
+     */
+    public static CompositionChannelInfo createFromMemorySegment(MemorySegment segment) {
+        MemoryLayout layout = layout();
+        int count = segment.get(JAVA_INT, layout.byteOffset(PathElement.groupElement("look_up_table_element_count")));
+        MemorySegment table = segment.get(ADDRESS, layout.byteOffset(PathElement.groupElement("ptr_look_up_table")));
+        byte[] lookUpTable = count <= 0 || table.equals(MemorySegment.NULL)
+            ? new byte[0]
+            : table.reinterpret(count).toArray(JAVA_BYTE);
+        return new CompositionChannelInfo(
+            segment.get(JAVA_FLOAT, layout.byteOffset(PathElement.groupElement("weight"))),
+            segment.get(JAVA_BOOLEAN, layout.byteOffset(PathElement.groupElement("enable_tinting"))),
+            Byte.toUnsignedInt(segment.get(JAVA_BYTE, layout.byteOffset(PathElement.groupElement("tinting_color_r")))),
+            Byte.toUnsignedInt(segment.get(JAVA_BYTE, layout.byteOffset(PathElement.groupElement("tinting_color_g")))),
+            Byte.toUnsignedInt(segment.get(JAVA_BYTE, layout.byteOffset(PathElement.groupElement("tinting_color_b")))),
+            segment.get(JAVA_FLOAT, layout.byteOffset(PathElement.groupElement("black_point"))),
+            segment.get(JAVA_FLOAT, layout.byteOffset(PathElement.groupElement("white_point"))),
+            lookUpTable);
+    }
+}
@@ -1,5 +1,68 @@
 package uk.ac.ed.eci.libCZI.document;
 
-public class DisplaySettings {
-    
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import uk.ac.ed.eci.libCZI.LibCziFFM;
+
+/**
+ * The display settings stored in a CZI document: for each channel its tint, black and white
+ * points and gradation curve. Close it once the channel information has been read.
+ *
+ * @see DocumentInfo#displaySettings()
+ */
+public class DisplaySettings implements AutoCloseable {
+    private final MemorySegment displaySettingsHandle;
+    private boolean closed;
+
+    DisplaySettings(MemorySegment displaySettingsHandle) {
+        this.displaySettingsHandle = displaySettingsHandle;
+    }
+
+    /**
+     * Gets how a channel is drawn into a colour composite.
+     *
+     * @param channel the channel index, as used for the C dimension
+     * @param sixteenBitLut whether to build the look-up table for 16-bit pixels rather than 8-bit ones
+     * @return the channel's weight, tint, black and white points and look-up table
+     */
+    public CompositionChannelInfo compositionChannelInfo(int channel, boolean sixteenBitLut) {
+        if (closed) {
+            throw new IllegalStateException("Display settings have already been closed");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pInfo = arena.allocate(CompositionChannelInfo.layout());
+            int errorCode = (int) LibCziFFM.COMPOSITOR_FILL_OUT_COMPOSITION_CHANNEL_INFO.invokeExact(
+                displaySettingsHandle, channel, sixteenBitLut, pInfo);
+            if (errorCode != 0) {
+                throw new RuntimeException("Failed to get composition info for channel " + channel + ". Error code: " + errorCode);
+            }
+            try {
+                return CompositionChannelInfo.createFromMemorySegment(pInfo);
+            } finally {
+                errorCode = (int) LibCziFFM.COMPOSITOR_RELEASE_COMPOSITION_CHANNEL_INFO.invokeExact(pInfo);
+                if (errorCode != 0) {
+                    throw new RuntimeException("Failed to release composition info. Error code: " + errorCode);
+                }
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to call native function libCZI_CompositorFillOutCompositionChannelInfoInterop", e);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            int errorCode = (int) LibCziFFM.RELEASE_DISPLAY_SETTINGS.invokeExact(displaySettingsHandle);
+            if (errorCode != 0) {
+                throw new RuntimeException("Failed to release display settings. Error code: " + errorCode);
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to call native function libCZI_ReleaseDisplaySettings", e);
+        }
+    }
 }
@@ -4,9 +4,7 @@ import static java.lang.foreign.ValueLayout.ADDRESS;
 import static java.lang.foreign.ValueLayout.JAVA_INT;
 
 import java.lang.foreign.Arena;
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
 
 import java.nio.charset.StandardCharsets;
 import uk.ac.ed.eci.libCZI.LibCziFFM;
@@ -16,7 +14,7 @@ public class DocumentInfo {
     private final Arena classArena;
 
     public DocumentInfo(MemorySegment readerHandle) {
-        this.classArena = Arena.ofConfined();
+        this.classArena = Arena.ofShared();
         this.cziDocumentHandle = getCziDocumentHandle(readerHandle);
     }
 
@@ -27,11 +25,9 @@ public class DocumentInfo {
     
     //libCZI_CziDocumentInfoGetGeneralDocumentInfo
     public GeneralDocumentInfo generalDocumentInfo() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getGeneralDocumentInfo = LibCziFFM.getMethodHandle("libCZI_CziDocumentInfoGetGeneralDocumentInfo", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pGeneralDocumentInfo = arena.allocate(ADDRESS);
-            int errorCode = (int) getGeneralDocumentInfo.invokeExact(cziDocumentHandle, pGeneralDocumentInfo);
+            int errorCode = (int) LibCziFFM.CZI_DOCUMENT_INFO_GET_GENERAL_DOCUMENT_INFO.invokeExact(cziDocumentHandle, pGeneralDocumentInfo);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get general document info. Error code: " + errorCode);
             }
@@ -47,11 +43,9 @@ public class DocumentInfo {
     
     //libCZI_CziDocumentInfoGetScalingInfo
     public ScalingInfo scalingInfo() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getScalingInfo = LibCziFFM.getMethodHandle("libCZI_CziDocumentInfoGetScalingInfo", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pScalingInfo = arena.allocate(ScalingInfo.LAYOUT);
-            int errorCode = (int) getScalingInfo.invokeExact(cziDocumentHandle, pScalingInfo);
+            int errorCode = (int) LibCziFFM.CZI_DOCUMENT_INFO_GET_SCALING_INFO.invokeExact(cziDocumentHandle, pScalingInfo);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get scaling info. Error code: " + errorCode);
             }
@@ -63,12 +57,10 @@ public class DocumentInfo {
     
     //libCZI_CziDocumentInfoGetAvailableDimension
     public AvailableDimensions availableDimensions() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS);
-        MethodHandle getAvailableDimension = LibCziFFM.getMethodHandle("libCZI_CziDocumentInfoGetAvailableDimension", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             var availableDimensionsCount = LibCziFFM.K_MAX_DIMENSION_COUNT + 1;
             var array = arena.allocate(JAVA_INT, availableDimensionsCount);
-            int errorCode = (int) getAvailableDimension.invokeExact(cziDocumentHandle, availableDimensionsCount, array);
+            int errorCode = (int) LibCziFFM.CZI_DOCUMENT_INFO_GET_AVAILABLE_DIMENSION.invokeExact(cziDocumentHandle, availableDimensionsCount, array);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get available dimensions. Error code: " + errorCode);
             }
@@ -80,17 +72,24 @@ public class DocumentInfo {
 
     //libCZI_CziDocumentInfoGetDisplaySettings
     public DisplaySettings displaySettings() {
-        throw new UnsupportedOperationException("Not implemented yet.");
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pDisplaySettings = arena.allocate(ADDRESS);
+            int errorCode = (int) LibCziFFM.CZI_DOCUMENT_INFO_GET_DISPLAY_SETTINGS.invokeExact(cziDocumentHandle, pDisplaySettings);
+            if (errorCode != 0) {
+                throw new RuntimeException("Failed to get display settings. Error code: " + errorCode);
+            }
+            return new DisplaySettings(pDisplaySettings.get(ADDRESS, 0));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to call native function libCZI_CziDocumentInfoGetDisplaySettings", e);
+        }
     }
 
 
     //libCZI_CziDocumentInfoGetDimensionInfo
     public DimensionInfo dimensionInfo(int dimension) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS);
-        MethodHandle getAvailableDimension = LibCziFFM.getMethodHandle("libCZI_CziDocumentInfoGetDimensionInfo", descriptor);
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment dataPP = arena.allocate(ADDRESS);
-            int errorCode = (int) getAvailableDimension.invokeExact(cziDocumentHandle, dimension, dataPP);
+            int errorCode = (int) LibCziFFM.CZI_DOCUMENT_INFO_GET_DIMENSION_INFO.invokeExact(cziDocumentHandle, dimension, dataPP);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get dimension info. Error code: " + errorCode);
             }
@@ -112,11 +111,9 @@ public class DocumentInfo {
 
 
     private MemorySegment getCziDocumentHandle(MemorySegment handle) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getDocumentInfo = LibCziFFM.getMethodHandle("libCZI_MetadataSegmentGetCziDocumentInfo", descriptor);
         try {
             MemorySegment pDocumentInfo = classArena.allocate(ADDRESS);
-            int errorCode = (int) getDocumentInfo.invokeExact(handle, pDocumentInfo);
+            int errorCode = (int) LibCziFFM.METADATA_SEGMENT_GET_CZI_DOCUMENT_INFO.invokeExact(handle, pDocumentInfo);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get CZI document info. Error code: " + errorCode);
             }
@@ -128,10 +125,8 @@ public class DocumentInfo {
     }
 
     private void releaseDocumentInfo() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle release = LibCziFFM.getMethodHandle("libCZI_ReleaseCziDocumentInfo", descriptor);
         try {
-            int errorCode = (int) release.invokeExact(cziDocumentHandle);
+            int errorCode = (int) LibCziFFM.RELEASE_CZI_DOCUMENT_INFO.invokeExact(cziDocumentHandle);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to release CZI document info. Error code: " + errorCode);
             }
@@ -0,0 +1,11 @@
+package uk.ac.ed.eci.libCZI.export;
+
+public class CziExportException extends RuntimeException {
+    public CziExportException(String message) {
+        super(message);
+    }
+
+    public CziExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,16 @@
+package uk.ac.ed.eci.libCZI.export;
+
+/**
+ * What an {@link OmeZarrExporter} wrote.
+ *
+ * @param levels The number of resolution levels in the pyramid.
+ * @param chunksWritten The number of chunk files written.
+ * @param chunksSkipped The number of chunks left out because every pixel was the fill value.
+ * @param bytesWritten The total size of the chunk files, after compression.
+ */
+public record ExportStatistics(
+    int levels,
+    long chunksWritten,
+    long chunksSkipped,
+    long bytesWritten) {
+}
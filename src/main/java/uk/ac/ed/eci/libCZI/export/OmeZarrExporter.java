@@ -0,0 +1,651 @@
+package uk.ac.ed.eci.libCZI.export;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.ac.ed.eci.libCZI.AccessorOptions;
+import uk.ac.ed.eci.libCZI.Coordinate;
+import uk.ac.ed.eci.libCZI.CziStreamReader;
+import uk.ac.ed.eci.libCZI.DimBounds;
+import uk.ac.ed.eci.libCZI.IntRect;
+import uk.ac.ed.eci.libCZI.LibCziFFM;
+import uk.ac.ed.eci.libCZI.PixelType;
+import uk.ac.ed.eci.libCZI.SingleChannelTileAccessor;
+import uk.ac.ed.eci.libCZI.SubBlockInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+import uk.ac.ed.eci.libCZI.document.ScalingInfo;
+
+/**
+ * Exports an image, or one scene of it, from a CZI file to an OME-Zarr directory.
+ * <p>
+ * Every channel, Z plane and time point in the file is written to one five-dimensional array
+ * per resolution level, with axes t, c, z, y and x. Level 0 is full resolution and each further
+ * level halves the width and height, by default until the image fits in a single chunk. Chunks
+ * are {@code chunkSize} pixels square and one plane deep; BGR images are split into red, green
+ * and blue channels. Chunks where every pixel is 0, the fill value, are not written.
+ * </p>
+ * <p>
+ * The export runs as a pipeline. Reader threads, each with its own tile accessor, compose one
+ * chunk at a time at the level's zoom, and hand it to encoder threads that compress and write
+ * it. At most {@code maxChunksInFlight} chunks are read but not yet written, which bounds the
+ * memory used however large the image is. The first failure stops the export.
+ * </p>
+ *
+ * <pre>{@code
+ * OmeZarrExporter exporter = OmeZarrExporter.builder(reader).chunkSize(512).version(ZarrVersion.V2).build();
+ * ExportStatistics statistics = exporter.export(Path.of("slide.ome.zarr"));
+ * }</pre>
+ */
+public class OmeZarrExporter {
+    private static final int DIMENSION_Z = 1;
+    private static final int DIMENSION_C = 2;
+    private static final int DIMENSION_T = 4;
+    private static final int DIMENSION_S = 16;
+    private static final double METRES_TO_MICROMETRES = 1e6;
+
+    private final CziStreamReader reader;
+    private final ZarrVersion version;
+    private final int chunkSize;
+    private final int requestedLevels;
+    private final int compressionLevel;
+    private final int readParallelism;
+    private final int encodeParallelism;
+    private final int maxChunksInFlight;
+    private final Integer scene;
+    private final IntRect requestedRegion;
+    private final AccessorOptions accessorOptions;
+    private final ScalingInfo scaling;
+    private final String name;
+
+    private OmeZarrExporter(Builder builder) {
+        this.reader = builder.reader;
+        this.version = builder.version;
+        this.chunkSize = builder.chunkSize;
+        this.requestedLevels = builder.levels;
+        this.compressionLevel = builder.compressionLevel;
+        this.readParallelism = builder.readParallelism;
+        this.encodeParallelism = builder.encodeParallelism;
+        this.maxChunksInFlight = builder.maxChunksInFlight > 0
+            ? builder.maxChunksInFlight : 2 * (builder.readParallelism + builder.encodeParallelism);
+        this.scene = builder.scene;
+        this.requestedRegion = builder.region;
+        this.accessorOptions = builder.accessorOptions;
+        this.scaling = builder.scaling;
+        this.name = builder.name;
+    }
+
+    public static class Builder {
+        private final CziStreamReader reader;
+        private ZarrVersion version = ZarrVersion.V2;
+        private int chunkSize = 512;
+        private int levels = 0;
+        private int compressionLevel = 5;
+        private int readParallelism = Runtime.getRuntime().availableProcessors();
+        private int encodeParallelism = Runtime.getRuntime().availableProcessors();
+        private int maxChunksInFlight = 0;
+        private Integer scene;
+        private IntRect region;
+        // Black, so that the padding of edge chunks matches the fill value.
+        private AccessorOptions accessorOptions = AccessorOptions.builder().background(0).build();
+        private ScalingInfo scaling;
+        private String name = "image";
+
+        private Builder(CziStreamReader reader) {
+            this.reader = reader;
+        }
+
+        public OmeZarrExporter build() {
+            return new OmeZarrExporter(this);
+        }
+
+        public Builder version(ZarrVersion version) {
+            this.version = version;
+
+            return this;
+        }
+        /**
+         * @param chunkSize the width and height of each chunk, in pixels
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be at least 1");
+            }
+            this.chunkSize = chunkSize;
+
+            return this;
+        }
+        /**
+         * @param levels the number of resolution levels, including full resolution; by default
+         * levels are added until the image fits in one chunk
+         */
+        public Builder levels(int levels) {
+            if (levels < 1 || levels > 30) {
+                throw new IllegalArgumentException("Levels must be between 1 and 30");
+            }
+            this.levels = levels;
+
+            return this;
+        }
+        /**
+         * @param level from 0, for uncompressed chunks, to 9, for the smallest
+         */
+        public Builder compressionLevel(int level) {
+            if (level < 0 || level > 9) {
+                throw new IllegalArgumentException("Compression level must be between 0 and 9");
+            }
+            this.compressionLevel = level;
+
+            return this;
+        }
+        /**
+         * @param parallelism the number of chunks read from the file at once
+         */
+        public Builder readParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.readParallelism = parallelism;
+
+            return this;
+        }
+        /**
+         * @param parallelism the number of chunks compressed and written at once
+         */
+        public Builder encodeParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.encodeParallelism = parallelism;
+
+            return this;
+        }
+        /**
+         * @param max the most chunks read but not yet written; defaults to twice the number of threads
+         */
+        public Builder maxChunksInFlight(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("At least one chunk must be allowed in flight");
+            }
+            this.maxChunksInFlight = max;
+
+            return this;
+        }
+        /**
+         * @param scene the scene to export; by default every sub-block is exported as one image
+         */
+        public Builder scene(int scene) {
+            this.scene = scene;
+
+            return this;
+        }
+        /**
+         * @param region the part of the image to export, in layer-0 coordinates; defaults to
+         * the bounding box of the scene, or of the file
+         */
+        public Builder region(IntRect region) {
+            this.region = region;
+
+            return this;
+        }
+        public Builder accessorOptions(AccessorOptions accessorOptions) {
+            this.accessorOptions = accessorOptions;
+
+            return this;
+        }
+        /**
+         * @param scaling the size of a pixel in metres; defaults to the scaling in the file's metadata
+         */
+        public Builder scaling(ScalingInfo scaling) {
+            this.scaling = scaling;
+
+            return this;
+        }
+        /**
+         * @param name the name of the image in the multiscales metadata
+         */
+        public Builder name(String name) {
+            this.name = name;
+
+            return this;
+        }
+    }
+
+    /**
+     * @param reader the reader to export from; it must stay open until the export returns
+     */
+    public static Builder builder(CziStreamReader reader) {
+        return new Builder(reader);
+    }
+
+    /**
+     * Writes the image to a directory, creating it if needed. Files already in the directory
+     * are overwritten where the export writes the same path, and otherwise left alone.
+     *
+     * @param directory the root of the OME-Zarr image
+     * @return what was written
+     * @throws IOException if a file cannot be written
+     */
+    public ExportStatistics export(Path directory) throws IOException {
+        IntRect region = region();
+        if (region.w() <= 0 || region.h() <= 0) {
+            throw new CziExportException("Nothing to export: the region is empty");
+        }
+        PixelType pixelType = pixelType();
+        int samples = samplesPerPixel(pixelType);
+        ZarrWriter.SampleType sampleType = sampleType(pixelType);
+        DimBounds bounds = reader.simpleReaderStatistics().dimBounds();
+        int levels = requestedLevels > 0 ? requestedLevels : levelCount(region.w(), region.h(), chunkSize);
+
+        ZarrWriter writer = new ZarrWriter(directory, version, sampleType, chunkSize, compressionLevel);
+        ScalingInfo pixelSize = scaling != null ? scaling : reader.metadata().documentInfo().scalingInfo();
+        boolean known = pixelSize.scaleX().isPresent() && pixelSize.scaleY().isPresent();
+        double[] size = {
+            pixelSize.scaleZ().orElse(known ? pixelSize.scaleX().get() : 1.0),
+            pixelSize.scaleY().orElse(1.0),
+            pixelSize.scaleX().orElse(1.0)
+        };
+        if (known) {
+            for (int i = 0; i < size.length; i++) {
+                size[i] *= METRES_TO_MICROMETRES;
+            }
+        }
+        writer.writeGroup(name, levels, size, known ? "micrometer" : null);
+        for (int level = 0; level < levels; level++) {
+            writer.writeArray(level, new long[] {
+                bounds.size(DIMENSION_T),
+                (long) bounds.size(DIMENSION_C) * samples,
+                bounds.size(DIMENSION_Z),
+                levelExtent(region.h(), level),
+                levelExtent(region.w(), level)
+            });
+        }
+        return new Pipeline(writer, region, bounds, levels, samples, sampleType.bytes).run();
+    }
+
+    private IntRect region() {
+        if (requestedRegion != null) {
+            return requestedRegion;
+        }
+        if (scene == null) {
+            return reader.simpleReaderStatistics().boundingBoxLayer0();
+        }
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (SubBlockInfo info : reader.subBlockIndex().all()) {
+            if (info.isLayer0() && inScene(info)) {
+                IntRect rect = info.logicalRect();
+                minX = Math.min(minX, rect.x());
+                minY = Math.min(minY, rect.y());
+                maxX = Math.max(maxX, (long) rect.x() + rect.w());
+                maxY = Math.max(maxY, (long) rect.y() + rect.h());
+            }
+        }
+        if (minX == Long.MAX_VALUE) {
+            throw new CziExportException("The file has no sub-blocks in scene " + scene);
+        }
+        return new IntRect((int) minX, (int) minY, (int) (maxX - minX), (int) (maxY - minY));
+    }
+
+    private boolean inScene(SubBlockInfo info) {
+        Coordinate coordinate = info.coordinate();
+        return scene == null || (coordinate.isValid(DIMENSION_S) && coordinate.get(DIMENSION_S) == scene);
+    }
+
+    /**
+     * The arrays hold one data type, so every channel must share a pixel type.
+     */
+    private PixelType pixelType() {
+        PixelType pixelType = null;
+        for (SubBlockInfo info : reader.subBlockIndex().all()) {
+            if (!inScene(info)) {
+                continue;
+            }
+            if (pixelType == null) {
+                pixelType = info.pixelType();
+            } else if (pixelType != info.pixelType()) {
+                throw new CziExportException("Channels with different pixel types cannot be exported to one array: "
+                    + pixelType + " and " + info.pixelType());
+            }
+        }
+        if (pixelType == null) {
+            throw new CziExportException("The file has no sub-blocks to export");
+        }
+        return pixelType;
+    }
+
+    private static int samplesPerPixel(PixelType pixelType) {
+        switch (pixelType) {
+            case Bgr24:
+            case Bgr48:
+            case Bgr96Float:
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+    private static ZarrWriter.SampleType sampleType(PixelType pixelType) {
+        switch (pixelType) {
+            case Gray8:
+            case Bgr24:
+                return ZarrWriter.SampleType.UINT8;
+            case Gray16:
+            case Bgr48:
+                return ZarrWriter.SampleType.UINT16;
+            case Gray32Float:
+            case Bgr96Float:
+                return ZarrWriter.SampleType.FLOAT32;
+            default:
+                throw new CziExportException("Pixel type " + pixelType + " cannot be exported");
+        }
+    }
+
+    /**
+     * @return the number of levels needed for the smallest to fit in one chunk
+     */
+    private static int levelCount(int width, int height, int chunkSize) {
+        int levels = 1;
+        while (levelExtent(Math.max(width, height), levels - 1) > chunkSize) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * @return the extent, in pixels, of a layer-0 length at a level
+     */
+    private static int levelExtent(int length, int level) {
+        return (int) ceilDiv(length, 1L << level);
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * Runs the readers and encoders of one export.
+     */
+    private final class Pipeline {
+        private final ZarrWriter writer;
+        private final IntRect region;
+        private final DimBounds bounds;
+        private final int levels;
+        private final int samples;
+        private final int bytesPerSample;
+        private final int sizeT;
+        private final int sizeC;
+        private final int sizeZ;
+        private final long[] levelStart;
+        private final Semaphore inFlight = new Semaphore(maxChunksInFlight);
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final LongAdder written = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private ExecutorService encoders;
+
+        Pipeline(ZarrWriter writer, IntRect region, DimBounds bounds, int levels, int samples, int bytesPerSample) {
+            this.writer = writer;
+            this.region = region;
+            this.bounds = bounds;
+            this.levels = levels;
+            this.samples = samples;
+            this.bytesPerSample = bytesPerSample;
+            this.sizeT = bounds.size(DIMENSION_T);
+            this.sizeC = bounds.size(DIMENSION_C);
+            this.sizeZ = bounds.size(DIMENSION_Z);
+            // Jobs are numbered level by level, then by t, c, z, chunk row and chunk column.
+            this.levelStart = new long[levels + 1];
+            for (int level = 0; level < levels; level++) {
+                levelStart[level + 1] = levelStart[level]
+                    + (long) sizeT * sizeC * sizeZ * chunkRows(level) * chunkColumns(level);
+            }
+        }
+
+        ExportStatistics run() throws IOException {
+            ExecutorService readers = Executors.newFixedThreadPool(readParallelism, daemon("libczi-zarr-reader"));
+            encoders = Executors.newFixedThreadPool(encodeParallelism, daemon("libczi-zarr-encoder"));
+            boolean interrupted = false;
+            try {
+                List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < readParallelism; i++) {
+                    workers.add(readers.submit(this::read));
+                }
+                for (Future<?> worker : workers) {
+                    while (true) {
+                        try {
+                            worker.get();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                            fail(new CziExportException("Interrupted while exporting", e));
+                        } catch (ExecutionException e) {
+                            fail(e.getCause());
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                // The readers are never interrupted, as an interrupt during a read would close
+                // the file channel the reader shares. Once a failure stops them claiming jobs,
+                // wait for them to finish, then for the chunks they queued.
+                readers.shutdown();
+                interrupted |= awaitTermination(readers);
+                encoders.shutdown();
+                interrupted |= awaitTermination(encoders);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Throwable e = failure.get();
+            if (e instanceof IOException) {
+                throw new IOException("Failed to write chunk", e);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e != null) {
+                throw new CziExportException("Failed to export", e);
+            }
+            return new ExportStatistics(levels, written.sum(), skipped.sum(), bytes.sum());
+        }
+
+        private Void read() throws Exception {
+            try (SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader)) {
+                while (failure.get() == null) {
+                    inFlight.acquire();
+                    long job = next.getAndIncrement();
+                    if (job >= levelStart[levels] || failure.get() != null) {
+                        inFlight.release();
+                        break;
+                    }
+                    readJob(accessor, job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new CziExportException("Interrupted while reading chunks", e));
+            } catch (Throwable e) {
+                fail(e);
+            }
+            return null;
+        }
+
+        /**
+         * Reads the chunks of one job and queues them for writing. The job's permit is
+         * released once they are written, or if they never will be.
+         */
+        private void readJob(SingleChannelTileAccessor accessor, long job) throws Exception {
+            int level = 0;
+            while (job >= levelStart[level + 1]) {
+                level++;
+            }
+            long rest = job - levelStart[level];
+            int chunkColumns = chunkColumns(level);
+            int chunkRows = chunkRows(level);
+            int chunkX = (int) (rest % chunkColumns);
+            rest /= chunkColumns;
+            int chunkY = (int) (rest % chunkRows);
+            rest /= chunkRows;
+            int z = (int) (rest % sizeZ);
+            rest /= sizeZ;
+            int c = (int) (rest % sizeC);
+            int t = (int) (rest / sizeC);
+
+            byte[][] chunks;
+            try {
+                long factor = 1L << level;
+                long x = region.x() + chunkX * chunkSize * factor;
+                long y = region.y() + chunkY * chunkSize * factor;
+                long w = Math.min(chunkSize * factor, region.x() + (long) region.w() - x);
+                long h = Math.min(chunkSize * factor, region.y() + (long) region.h() - y);
+                IntRect roi = new IntRect((int) x, (int) y, (int) w, (int) h);
+                try (Bitmap bitmap = accessor.getBitmapRaw(roi, 1.0f / factor, plane(t, c, z), accessorOptions);
+                        LockedBitmapView view = bitmap.lockData()) {
+                    chunks = split(view);
+                }
+            } catch (Throwable e) {
+                inFlight.release();
+                throw e;
+            }
+            int chunkLevel = level;
+            encoders.execute(() -> {
+                try {
+                    for (int sample = 0; sample < chunks.length; sample++) {
+                        if (failure.get() != null) {
+                            return;
+                        }
+                        if (isEmpty(chunks[sample])) {
+                            skipped.increment();
+                            continue;
+                        }
+                        bytes.add(writer.writeChunk(chunkLevel, t, c * samples + sample, z, chunkY, chunkX, chunks[sample]));
+                        written.increment();
+                    }
+                } catch (Throwable e) {
+                    fail(e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        /**
+         * Copies a composed tile into full-size chunks, one per sample, padding with zeros
+         * where the tile is smaller. BGR pixels are split into red, green and blue.
+         */
+        private byte[][] split(LockedBitmapView view) {
+            int width = Math.min(view.width(), chunkSize);
+            int height = Math.min(view.height(), chunkSize);
+            int pixelBytes = samples * bytesPerSample;
+            int chunkStride = chunkSize * bytesPerSample;
+            byte[][] chunks = new byte[samples][chunkSize * chunkStride];
+            MemorySegment data = view.data();
+            if (samples == 1) {
+                for (int y = 0; y < height; y++) {
+                    MemorySegment.copy(data, JAVA_BYTE, (long) y * view.stride(), chunks[0], y * chunkStride, width * bytesPerSample);
+                }
+                return chunks;
+            }
+            byte[] row = new byte[width * pixelBytes];
+            for (int y = 0; y < height; y++) {
+                MemorySegment.copy(data, JAVA_BYTE, (long) y * view.stride(), row, 0, row.length);
+                for (int sample = 0; sample < samples; sample++) {
+                    // Stored as blue, green, red; written as red, green, blue.
+                    byte[] chunk = chunks[sample];
+                    int source = (samples - 1 - sample) * bytesPerSample;
+                    int target = y * chunkStride;
+                    for (int x = 0; x < width; x++) {
+                        System.arraycopy(row, x * pixelBytes + source, chunk, target + x * bytesPerSample, bytesPerSample);
+                    }
+                }
+            }
+            return chunks;
+        }
+
+        private Coordinate plane(int t, int c, int z) {
+            // Values are stored for valid dimensions only, in bit order.
+            int[] value = new int[LibCziFFM.K_MAX_DIMENSION_COUNT];
+            int dimensionsValid = 0;
+            int count = 0;
+            if (bounds.isValid(DIMENSION_Z)) {
+                dimensionsValid |= DIMENSION_Z;
+                value[count++] = bounds.start(DIMENSION_Z) + z;
+            }
+            if (bounds.isValid(DIMENSION_C)) {
+                dimensionsValid |= DIMENSION_C;
+                value[count++] = bounds.start(DIMENSION_C) + c;
+            }
+            if (bounds.isValid(DIMENSION_T)) {
+                dimensionsValid |= DIMENSION_T;
+                value[count++] = bounds.start(DIMENSION_T) + t;
+            }
+            if (scene != null) {
+                dimensionsValid |= DIMENSION_S;
+                value[count++] = scene;
+            }
+            return new Coordinate(dimensionsValid, value);
+        }
+
+        private int chunkColumns(int level) {
+            return (int) ceilDiv(levelExtent(region.w(), level), chunkSize);
+        }
+
+        private int chunkRows(int level) {
+            return (int) ceilDiv(levelExtent(region.h(), level), chunkSize);
+        }
+
+        private void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+            // Stop the readers claiming more jobs.
+            next.set(levelStart[levels]);
+        }
+
+        /**
+         * @return whether the wait was interrupted
+         */
+        private static boolean awaitTermination(ExecutorService executor) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                        return interrupted;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isEmpty(byte[] chunk) {
+        for (byte b : chunk) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
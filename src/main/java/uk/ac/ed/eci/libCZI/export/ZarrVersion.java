@@ -0,0 +1,17 @@
+package uk.ac.ed.eci.libCZI.export;
+
+/**
+ * The version of the Zarr format to write, and with it the OME-NGFF version of the metadata.
+ */
+public enum ZarrVersion {
+    /**
+     * Zarr v2 with OME-NGFF 0.4 metadata: {@code .zgroup}, {@code .zattrs} and {@code .zarray}
+     * files, and zlib-compressed chunks.
+     */
+    V2,
+    /**
+     * Zarr v3 with OME-NGFF 0.5 metadata: {@code zarr.json} files, and gzip-compressed chunks
+     * under a {@code c} prefix.
+     */
+    V3
+}
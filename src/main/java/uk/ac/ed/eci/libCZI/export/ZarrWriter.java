@@ -0,0 +1,211 @@
+package uk.ac.ed.eci.libCZI.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes the metadata and chunk files of an OME-Zarr image with axes t, c, z, y and x, in
+ * either Zarr version. Chunk writes are safe from any thread.
+ */
+final class ZarrWriter {
+    private static final ObjectWriter JSON = new ObjectMapper().writerWithDefaultPrettyPrinter();
+    private static final List<String> AXES = List.of("t", "c", "z", "y", "x");
+
+    private final Path root;
+    private final ZarrVersion version;
+    private final SampleType sampleType;
+    private final int chunkSize;
+    private final int compressionLevel;
+
+    /**
+     * The type of one sample of a channel, as stored in the arrays.
+     */
+    enum SampleType {
+        UINT8(1, "|u1", "uint8"),
+        UINT16(2, "<u2", "uint16"),
+        FLOAT32(4, "<f4", "float32");
+
+        final int bytes;
+        final String v2Name;
+        final String v3Name;
+
+        SampleType(int bytes, String v2Name, String v3Name) {
+            this.bytes = bytes;
+            this.v2Name = v2Name;
+            this.v3Name = v3Name;
+        }
+    }
+
+    /**
+     * @param compressionLevel from 0, for uncompressed chunks, to 9
+     */
+    ZarrWriter(Path root, ZarrVersion version, SampleType sampleType, int chunkSize, int compressionLevel) {
+        this.root = root;
+        this.version = version;
+        this.sampleType = sampleType;
+        this.chunkSize = chunkSize;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the group and the multiscales metadata.
+     *
+     * @param name the name of the image
+     * @param levels the number of resolution levels
+     * @param pixelSize the size of a layer-0 pixel along z, y and x
+     * @param unit the unit of the pixel size, or null if it is unknown
+     */
+    void writeGroup(String name, int levels, double[] pixelSize, String unit) throws IOException {
+        Files.createDirectories(root);
+        List<Object> axes = new ArrayList<>();
+        for (String axis : AXES) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", axis);
+            entry.put("type", axis.equals("t") ? "time" : axis.equals("c") ? "channel" : "space");
+            if (unit != null && !axis.equals("t") && !axis.equals("c")) {
+                entry.put("unit", unit);
+            }
+            axes.add(entry);
+        }
+        List<Object> datasets = new ArrayList<>();
+        for (int level = 0; level < levels; level++) {
+            double factor = 1L << level;
+            Map<String, Object> scale = new LinkedHashMap<>();
+            scale.put("type", "scale");
+            scale.put("scale", List.of(1.0, 1.0, pixelSize[0], pixelSize[1] * factor, pixelSize[2] * factor));
+            Map<String, Object> dataset = new LinkedHashMap<>();
+            dataset.put("path", Integer.toString(level));
+            dataset.put("coordinateTransformations", List.of(scale));
+            datasets.add(dataset);
+        }
+        Map<String, Object> multiscale = new LinkedHashMap<>();
+        if (version == ZarrVersion.V2) {
+            multiscale.put("version", "0.4");
+        }
+        multiscale.put("name", name);
+        multiscale.put("axes", axes);
+        multiscale.put("datasets", datasets);
+
+        if (version == ZarrVersion.V2) {
+            JSON.writeValue(root.resolve(".zgroup").toFile(), Map.of("zarr_format", 2));
+            JSON.writeValue(root.resolve(".zattrs").toFile(), Map.of("multiscales", List.of(multiscale)));
+        } else {
+            Map<String, Object> ome = new LinkedHashMap<>();
+            ome.put("version", "0.5");
+            ome.put("multiscales", List.of(multiscale));
+            Map<String, Object> group = new LinkedHashMap<>();
+            group.put("zarr_format", 3);
+            group.put("node_type", "group");
+            group.put("attributes", Map.of("ome", ome));
+            JSON.writeValue(root.resolve("zarr.json").toFile(), group);
+        }
+    }
+
+    /**
+     * Writes the metadata of the array for one resolution level.
+     *
+     * @param shape the extent of each axis, in t, c, z, y, x order
+     */
+    void writeArray(int level, long[] shape) throws IOException {
+        Path directory = root.resolve(Integer.toString(level));
+        Files.createDirectories(directory);
+        List<Long> shapeList = new ArrayList<>();
+        for (long extent : shape) {
+            shapeList.add(extent);
+        }
+        List<Integer> chunks = List.of(1, 1, 1, chunkSize, chunkSize);
+        Map<String, Object> array = new LinkedHashMap<>();
+        if (version == ZarrVersion.V2) {
+            array.put("zarr_format", 2);
+            array.put("shape", shapeList);
+            array.put("chunks", chunks);
+            array.put("dtype", sampleType.v2Name);
+            array.put("compressor", compressionLevel == 0 ? null : Map.of("id", "zlib", "level", compressionLevel));
+            array.put("fill_value", 0);
+            array.put("order", "C");
+            array.put("filters", null);
+            array.put("dimension_separator", "/");
+            JSON.writeValue(directory.resolve(".zarray").toFile(), array);
+        } else {
+            List<Object> codecs = new ArrayList<>();
+            codecs.add(Map.of("name", "bytes", "configuration", Map.of("endian", "little")));
+            if (compressionLevel != 0) {
+                codecs.add(Map.of("name", "gzip", "configuration", Map.of("level", compressionLevel)));
+            }
+            array.put("zarr_format", 3);
+            array.put("node_type", "array");
+            array.put("shape", shapeList);
+            array.put("data_type", sampleType.v3Name);
+            array.put("chunk_grid", Map.of("name", "regular", "configuration", Map.of("chunk_shape", chunks)));
+            array.put("chunk_key_encoding", Map.of("name", "default", "configuration", Map.of("separator", "/")));
+            array.put("fill_value", 0);
+            array.put("codecs", codecs);
+            array.put("dimension_names", AXES);
+            JSON.writeValue(directory.resolve("zarr.json").toFile(), array);
+        }
+    }
+
+    /**
+     * Compresses and writes one chunk.
+     *
+     * @param data the samples of the chunk, {@code chunkSize * chunkSize} of them in row order
+     * @return the size of the file written
+     */
+    long writeChunk(int level, int t, int c, int z, int chunkY, int chunkX, byte[] data) throws IOException {
+        Path path = chunkPath(level, t, c, z, chunkY, chunkX);
+        Files.createDirectories(path.getParent());
+        byte[] encoded = encode(data);
+        Files.write(path, encoded);
+        return encoded.length;
+    }
+
+    Path chunkPath(int level, int t, int c, int z, int chunkY, int chunkX) {
+        Path path = root.resolve(Integer.toString(level));
+        if (version == ZarrVersion.V3) {
+            path = path.resolve("c");
+        }
+        return path.resolve(Integer.toString(t)).resolve(Integer.toString(c)).resolve(Integer.toString(z))
+            .resolve(Integer.toString(chunkY)).resolve(Integer.toString(chunkX));
+    }
+
+    private byte[] encode(byte[] data) throws IOException {
+        if (compressionLevel == 0) {
+            return data;
+        }
+        if (version == ZarrVersion.V2) {
+            Deflater deflater = new Deflater(compressionLevel);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        }) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ed.eci.libCZI.internal;
+
+import java.lang.foreign.MemorySegment;
+
+import uk.ac.ed.eci.libCZI.LibCziMetrics;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+
+/**
+ * Lets the wrapper's packages use each other's package-private members without making them
+ * public API. This package is not exported, so applications cannot reach it.
+ * <p>
+ * Each package registers its implementation from a static initialiser; the getters load the
+ * registering class first if it has not been used yet.
+ * </p>
+ */
+public final class Access {
+    private static volatile Bitmaps bitmaps;
+    private static volatile Metrics metrics;
+
+    private Access() {}
+
+    /**
+     * Package-private members of {@code uk.ac.ed.eci.libCZI.bitmaps}.
+     */
+    public interface Bitmaps {
+
+        /**
+         * @return a bitmap with packed rows for the caller to fill; pooled buffers are not cleared
+         */
+        BitmapData allocate(BitmapInfo info, BitmapBufferPool pool);
+
+        MemorySegment writableSegment(BitmapData data);
+
+        /**
+         * Adds {@code values[x] * factor} for each colour to that colour's accumulator, on the
+         * Vector API when {@code BitmapOps} uses it.
+         */
+        void accumulate(int[] values, int count, int factorB, int factorG, int factorR, int[] accB, int[] accG,
+            int[] accR);
+    }
+
+    public static void setBitmaps(Bitmaps access) {
+        bitmaps = access;
+    }
+
+    public static Bitmaps bitmaps() {
+        if (bitmaps == null) {
+            ensureInitialized(BitmapData.class);
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Counters of {@link LibCziMetrics} updated from other packages.
+     */
+    public interface Metrics {
+
+        void recordBytesDecoded(long bytes);
+
+        /**
+         * @param bytes allocated (positive) or freed (negative) by a {@code BitmapData}
+         */
+        void recordBitmapDataBytes(long bytes);
+    }
+
+    public static void setMetrics(Metrics access) {
+        metrics = access;
+    }
+
+    public static Metrics metrics() {
+        if (metrics == null) {
+            ensureInitialized(LibCziMetrics.class);
+        }
+        return metrics;
+    }
+
+    private static void ensureInitialized(Class<?> type) {
+        try {
+            Class.forName(type.getName(), true, type.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package uk.ac.ed.eci.libCZI.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Pixels copied by the wrapper, into a {@code BitmapData} or a caller's buffer.
+ */
+@Name(BitmapCopyEvent.NAME)
+@Label("libCZI Bitmap Copy")
+@Category({ "libCZI" })
+@Description("Pixels copied out of a bitmap by the wrapper")
+@Enabled(false)
+@StackTrace(false)
+public final class BitmapCopyEvent extends Event {
+    public static final String NAME = "uk.ac.ed.eci.libCZI.BitmapCopy";
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Into Caller Buffer")
+    @Description("Whether the pixels went to a caller's buffer rather than a new BitmapData")
+    boolean intoCallerBuffer;
+}
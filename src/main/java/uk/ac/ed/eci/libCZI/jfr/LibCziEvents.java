@@ -0,0 +1,183 @@
+package uk.ac.ed.eci.libCZI.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+
+/**
+ * Java Flight Recorder events for the wrapper: every libCZIAPI call ({@link NativeCallEvent}),
+ * every read libCZI makes through an input stream bridge ({@link StreamReadEvent}), every tile
+ * composed ({@link TileReadEvent}) and every copy of pixels ({@link BitmapCopyEvent}).
+ * <p>
+ * All are off by default, and cost an allocation the JIT can remove and a flag check while
+ * off. To turn them on, start a recording with the settings in {@link #CONFIGURATION_RESOURCE},
+ * which ships in the jar, for example
+ * {@code -XX:StartFlightRecording:settings=default,settings=/path/to/libczi.jfc}, or from code
+ * with {@code new Recording(LibCziEvents.configuration())}. As the events of a tile nest on
+ * one thread, {@code jfr print --events uk.ac.ed.eci.libCZI.*} or the thread view in JDK
+ * Mission Control shows where each tile's time went.
+ * </p>
+ * <p>
+ * The {@code begin} and {@code end} methods are for the wrapper's own use. Each {@code begin}
+ * returns null while its event is off, and each {@code end} accepts that null.
+ * </p>
+ */
+public final class LibCziEvents {
+    /**
+     * The class path resource holding JFR settings that turn on every event in this package.
+     */
+    public static final String CONFIGURATION_RESOURCE = "/jfr/libczi.jfc";
+
+    private static final MethodHandle BEGIN_NATIVE_CALL;
+    private static final MethodHandle END_NATIVE_CALL;
+    private static final MethodHandle END_VOID_NATIVE_CALL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BEGIN_NATIVE_CALL = lookup.findStatic(LibCziEvents.class, "beginNativeCall",
+                MethodType.methodType(NativeCallEvent.class, String.class));
+            END_NATIVE_CALL = lookup.findStatic(LibCziEvents.class, "endNativeCall",
+                MethodType.methodType(int.class, Throwable.class, int.class, NativeCallEvent.class));
+            END_VOID_NATIVE_CALL = lookup.findStatic(LibCziEvents.class, "endNativeCall",
+                MethodType.methodType(void.class, Throwable.class, NativeCallEvent.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LibCziEvents() {}
+
+    /**
+     * @return the settings in {@link #CONFIGURATION_RESOURCE}, for a {@link jdk.jfr.Recording}
+     */
+    public static Configuration configuration() throws IOException, ParseException {
+        InputStream in = LibCziEvents.class.getResourceAsStream(CONFIGURATION_RESOURCE);
+        if (in == null) {
+            throw new IOException("Missing resource " + CONFIGURATION_RESOURCE);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+
+    /**
+     * Wraps a downcall handle so that each call records a {@link NativeCallEvent}. The handle
+     * keeps its type, so {@code invokeExact} call sites are unchanged.
+     *
+     * @param symbol the libCZIAPI function the handle calls
+     * @param downcall a handle returning {@code int} or nothing
+     * @return the wrapped handle; other handles are returned as they are
+     */
+    public static MethodHandle instrument(String symbol, MethodHandle downcall) {
+        Class<?> returnType = downcall.type().returnType();
+        MethodHandle cleanup;
+        if (returnType == int.class) {
+            cleanup = END_NATIVE_CALL;
+        } else if (returnType == void.class) {
+            cleanup = END_VOID_NATIVE_CALL;
+        } else {
+            return downcall;
+        }
+        // begin(symbol) -> event; try { downcall(args) } finally { end(thrown, result, event) }
+        MethodHandle timed = MethodHandles.tryFinally(MethodHandles.dropArguments(downcall, 0, NativeCallEvent.class),
+            cleanup);
+        return MethodHandles.foldArguments(timed, MethodHandles.insertArguments(BEGIN_NATIVE_CALL, 0, symbol));
+    }
+
+    private static NativeCallEvent beginNativeCall(String symbol) {
+        NativeCallEvent event = new NativeCallEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.symbol = symbol;
+        event.begin();
+        return event;
+    }
+
+    private static int endNativeCall(Throwable thrown, int errorCode, NativeCallEvent event) {
+        if (event != null) {
+            event.errorCode = errorCode;
+            event.commit();
+        }
+        return errorCode;
+    }
+
+    private static void endNativeCall(Throwable thrown, NativeCallEvent event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    public static StreamReadEvent beginStreamRead(long offset, long requested) {
+        StreamReadEvent event = new StreamReadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.offset = offset;
+        event.requested = requested;
+        event.failed = true;
+        event.begin();
+        return event;
+    }
+
+    public static void endStreamRead(StreamReadEvent event, long bytesRead) {
+        if (event != null) {
+            event.bytesRead = bytesRead;
+            event.failed = false;
+            event.commit();
+        }
+    }
+
+    public static TileReadEvent beginTileRead(int x, int y, int width, int height, float zoom) {
+        TileReadEvent event = new TileReadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.x = x;
+        event.y = y;
+        event.width = width;
+        event.height = height;
+        event.zoom = zoom;
+        event.begin();
+        return event;
+    }
+
+    public static void endTileRead(TileReadEvent event, long bytes) {
+        if (event != null) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    public static BitmapCopyEvent beginBitmapCopy(int width, int height, long bytes, boolean intoCallerBuffer) {
+        BitmapCopyEvent event = new BitmapCopyEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.width = width;
+        event.height = height;
+        event.bytes = bytes;
+        event.intoCallerBuffer = intoCallerBuffer;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records an event begun by one of the {@code begin} methods, if it was on.
+     */
+    public static void end(Event event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package uk.ac.ed.eci.libCZI.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The time spent in one call from Java into libCZIAPI.
+ */
+@Name(NativeCallEvent.NAME)
+@Label("libCZI Native Call")
+@Category({ "libCZI" })
+@Description("A downcall into a libCZIAPI function")
+@Enabled(false)
+@StackTrace(false)
+public final class NativeCallEvent extends Event {
+    public static final String NAME = "uk.ac.ed.eci.libCZI.NativeCall";
+
+    @Label("Symbol")
+    @Description("The libCZIAPI function called")
+    String symbol;
+
+    @Label("Error Code")
+    @Description("The function's return code, 0 on success; 0 for functions that return nothing")
+    int errorCode;
+}
@@ -0,0 +1,38 @@
+package uk.ac.ed.eci.libCZI.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One read that libCZI asked an {@code InputStreamBridge} for, timed in Java.
+ */
+@Name(StreamReadEvent.NAME)
+@Label("libCZI Stream Read")
+@Category({ "libCZI" })
+@Description("A read callback from libCZI served by the Java input stream bridge")
+@Enabled(false)
+@StackTrace(false)
+public final class StreamReadEvent extends Event {
+    public static final String NAME = "uk.ac.ed.eci.libCZI.StreamRead";
+
+    @Label("Offset")
+    @Description("The position in the file read from")
+    long offset;
+
+    @Label("Requested")
+    @DataAmount
+    long requested;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Failed")
+    boolean failed;
+}
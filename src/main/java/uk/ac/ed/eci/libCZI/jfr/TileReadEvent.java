@@ -0,0 +1,46 @@
+package uk.ac.ed.eci.libCZI.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One tile composed by a tile accessor. The stream reads and native calls it made are nested
+ * within it on the same thread.
+ */
+@Name(TileReadEvent.NAME)
+@Label("libCZI Tile Read")
+@Category({ "libCZI" })
+@Description("A region composed by libCZI_SingleChannelTileAccessorGet")
+@Enabled(false)
+@StackTrace(false)
+public final class TileReadEvent extends Event {
+    public static final String NAME = "uk.ac.ed.eci.libCZI.TileRead";
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Width")
+    @Description("The width of the region, in layer-0 pixels")
+    int width;
+
+    @Label("Height")
+    @Description("The height of the region, in layer-0 pixels")
+    int height;
+
+    @Label("Zoom")
+    float zoom;
+
+    @Label("Bytes")
+    @Description("The size of the composed bitmap")
+    @DataAmount
+    long bytes;
+}
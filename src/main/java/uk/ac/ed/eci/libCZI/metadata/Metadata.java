@@ -1,12 +1,9 @@
 package uk.ac.ed.eci.libCZI.metadata;
 
 import static java.lang.foreign.ValueLayout.ADDRESS;
-import static java.lang.foreign.ValueLayout.JAVA_INT;
 
 import java.lang.foreign.Arena;
-import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
 
 import uk.ac.ed.eci.libCZI.LibCziFFM;
 import uk.ac.ed.eci.libCZI.document.DocumentInfo;
@@ -18,7 +15,7 @@ public class Metadata {
 
 
     public Metadata(MemorySegment reader) {
-        classArena = Arena.ofConfined();
+        classArena = Arena.ofShared();
         handle = getHandleFromReader(reader);
     }
 
@@ -38,11 +35,9 @@ public class Metadata {
     }
 
     private MemorySegment getHandleFromReader(MemorySegment reader) {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
-        MethodHandle getHandle = LibCziFFM.getMethodHandle("libCZI_ReaderGetMetadataSegment", descriptor);
         try {
             MemorySegment pHandle = classArena.allocate(ADDRESS);
-            int errorCode = (int) getHandle.invokeExact(reader, pHandle);
+            int errorCode = (int) LibCziFFM.READER_GET_METADATA_SEGMENT.invokeExact(reader, pHandle);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to get metadata segment. Error code: " + errorCode);
             }
@@ -54,10 +49,8 @@ public class Metadata {
     }
 
     private void releaseMetadata() {
-        FunctionDescriptor descriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS);
-        MethodHandle release = LibCziFFM.getMethodHandle("libCZI_ReleaseMetadataSegment", descriptor);
         try {
-            int errorCode = (int) release.invokeExact(handle);
+            int errorCode = (int) LibCziFFM.RELEASE_METADATA_SEGMENT.invokeExact(handle);
             if (errorCode != 0) {
                 throw new RuntimeException("Failed to release metadata segment. Error code: " + errorCode);
             }
@@ -0,0 +1,188 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+
+public class AsyncTileAccessorTest {
+    private static final IntRect ROI = new IntRect(0, 0, 4, 4);
+
+    /**
+     * Composes blank tiles, each waiting for the gate to open.
+     */
+    private static final class FakeComposers {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        final AtomicInteger composed = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        AsyncTileAccessor.TileComposer create() {
+            return new AsyncTileAccessor.TileComposer() {
+                @Override
+                public BitmapData compose(IntRect roi, float zoom, Coordinate coordinate,
+                        AccessorOptions accessorOptions, BitmapBufferPool pool) {
+                    mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    composed.incrementAndGet();
+                    return BitmapData.sharedCopyOf(new BitmapInfo(roi.w(), roi.h(), PixelType.Gray8), roi.w(),
+                        MemorySegment.ofArray(new byte[roi.w() * roi.h()]), pool);
+                }
+
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        }
+    }
+
+    private static AsyncTileAccessor.Builder builder(FakeComposers composers) {
+        return AsyncTileAccessor.builder(null).composers(composers::create);
+    }
+
+    @Test
+    public void testConcurrencyIsLimited() throws Exception {
+        FakeComposers composers = new FakeComposers();
+        try (AsyncTileAccessor accessor = builder(composers).maxConcurrency(2).build()) {
+            List<CompletableFuture<BitmapData>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(accessor.getBitmapData(ROI, 1.0f));
+            }
+            while (composers.running.get() < 2) {
+                Thread.onSpinWait();
+            }
+            assertEquals(4, accessor.queuedRequests());
+            composers.gate.countDown();
+            for (CompletableFuture<BitmapData> future : futures) {
+                try (BitmapData tile = future.get(10, TimeUnit.SECONDS)) {
+                    assertEquals(4, tile.width());
+                }
+            }
+            assertEquals(2, composers.mostRunning.get());
+        }
+        assertEquals(2, composers.closed.get());
+    }
+
+    @Test
+    public void testCancelledQueuedRequestIsNotComposed() throws Exception {
+        FakeComposers composers = new FakeComposers();
+        try (AsyncTileAccessor accessor = builder(composers).maxConcurrency(1).build()) {
+            CompletableFuture<BitmapData> first = accessor.getBitmapData(ROI, 1.0f);
+            CompletableFuture<BitmapData> second = accessor.getBitmapData(ROI, 1.0f);
+            while (composers.running.get() < 1) {
+                Thread.onSpinWait();
+            }
+            assertTrue(second.cancel(false));
+            assertEquals(0, accessor.queuedRequests());
+            composers.gate.countDown();
+            first.get(10, TimeUnit.SECONDS).close();
+        }
+        assertEquals(1, composers.composed.get());
+    }
+
+    @Test
+    public void testFullQueueRejects() throws Exception {
+        FakeComposers composers = new FakeComposers();
+        try (AsyncTileAccessor accessor = builder(composers).maxConcurrency(1).maxQueuedRequests(1).build()) {
+            CompletableFuture<BitmapData> first = accessor.getBitmapData(ROI, 1.0f);
+            while (composers.running.get() < 1) {
+                Thread.onSpinWait();
+            }
+            CompletableFuture<BitmapData> queued = accessor.getBitmapData(ROI, 1.0f);
+            CompletableFuture<BitmapData> rejected = accessor.getBitmapData(ROI, 1.0f);
+            ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            composers.gate.countDown();
+            first.get(10, TimeUnit.SECONDS).close();
+            queued.get(10, TimeUnit.SECONDS).close();
+        }
+    }
+
+    @Test
+    public void testCloseCancelsQueuedRequests() throws Exception {
+        FakeComposers composers = new FakeComposers();
+        AsyncTileAccessor accessor = builder(composers).maxConcurrency(1).build();
+        CompletableFuture<BitmapData> first = accessor.getBitmapData(ROI, 1.0f);
+        CompletableFuture<BitmapData> queued = accessor.getBitmapData(ROI, 1.0f);
+        while (composers.running.get() < 1) {
+            Thread.onSpinWait();
+        }
+        Thread closer = new Thread(() -> {
+            try {
+                accessor.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        closer.start();
+        while (!queued.isDone()) {
+            Thread.onSpinWait();
+        }
+        assertTrue(queued.isCancelled());
+        composers.gate.countDown();
+        closer.join();
+
+        first.get().close();
+        assertEquals(1, composers.closed.get());
+        assertThrows(ExecutionException.class, () -> accessor.getBitmapData(ROI, 1.0f).get());
+    }
+
+    @Test
+    public void testComposerFailureCompletesFuture() throws Exception {
+        try (AsyncTileAccessor accessor = AsyncTileAccessor.builder(null).maxConcurrency(1)
+                .composers(() -> {
+                    throw new CziReaderException("No accessor");
+                }).build()) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                () -> accessor.getBitmapData(ROI, 1.0f).get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof CziReaderException);
+        }
+    }
+
+    @Test
+    public void testTilesFromVirtualThreads() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                AsyncTileAccessor accessor = AsyncTileAccessor.builder(reader).maxConcurrency(2).build();
+                ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                int x = 32 * i;
+                results.add(executor.submit(() -> {
+                    try (BitmapData tile = accessor.getBitmapData(new IntRect(x, 100, 32, 32), 1.0f).join()) {
+                        return tile.getUnsignedByte(5, 7, 0);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(SyntheticCzi.pixelValue(32 * i + 5, 107, 0), results.get(i).get());
+            }
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package uk.ac.ed.eci.libCZI;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -75,4 +83,60 @@ public class AttachmentReaderTest {
             assertTrue(java.util.Arrays.equals(jpegHeader, dataHeader));
         }
     }
+
+    @Test
+    public void testReadIntoCallerArena() throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(reader, 5);
+                Arena arena = Arena.ofConfined()) {
+            assertEquals(2584, attachment.size());
+            MemorySegment data = attachment.readInto(arena);
+            assertEquals(2584, data.byteSize());
+            assertEquals((byte) 0xFF, data.get(ValueLayout.JAVA_BYTE, 0));
+            assertEquals((byte) 0xD8, data.get(ValueLayout.JAVA_BYTE, 1));
+        }
+    }
+
+    @Test
+    public void testStreamAndChannelMatchRawData() throws Exception {
+        try (AttachmentReader attachment = AttachmentReader.fromReader(reader, 4);
+                Arena arena = Arena.ofConfined()) {
+            byte[] expected = attachment.readInto(arena).toArray(ValueLayout.JAVA_BYTE);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(expected.length, attachment.transferTo(Channels.newChannel(out)));
+            assertArrayEquals(expected, out.toByteArray());
+
+            try (InputStream first = attachment.openStream(); InputStream second = attachment.openStream()) {
+                assertArrayEquals(expected, first.readAllBytes());
+                assertEquals(expected[0] & 0xFF, second.read());
+                assertEquals(expected.length - 1, second.available());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamFailsAfterClose() throws Exception {
+        InputStream stream;
+        try (AttachmentReader attachment = AttachmentReader.fromReader(reader, 5)) {
+            stream = attachment.openStream();
+        }
+        assertThrows(IOException.class, stream::read);
+    }
+
+    @Test
+    public void testLargeAttachmentHasNoSizeLimit() throws Exception {
+        byte[] large = new byte[40 << 20];
+        new Random(1).nextBytes(large);
+        Path path = SyntheticCzi.builder().size(256, 256).tileSize(256).attachment("Label", "BIN", large).build()
+            .writeTempFile();
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader largeReader = CziStreamReader.fromStream(stream);
+                AttachmentReader attachment = AttachmentReader.fromReader(largeReader, 0)) {
+            assertThrows(AttachmentReaderSizeException.class, attachment::getAttachmentRawData);
+            assertEquals(large.length, attachment.size());
+            try (InputStream in = attachment.openStream()) {
+                assertArrayEquals(large, in.readAllBytes());
+            }
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.BufferPoolStatistics;
+
+public class BitmapBufferPoolTest {
+    private static final BitmapInfo TILE = new BitmapInfo(256, 256, PixelType.Gray8);
+
+    private static BitmapData copyTile(BitmapBufferPool pool, byte value) {
+        byte[] pixels = new byte[256 * 256];
+        java.util.Arrays.fill(pixels, value);
+        return BitmapData.copyOf(TILE, 256, MemorySegment.ofArray(pixels), pool);
+    }
+
+    @Test
+    public void testReturnedBufferIsReused() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            try (BitmapData data = copyTile(pool, (byte) 1)) {
+                assertEquals(1, data.getUnsignedByte(10, 10));
+            }
+            try (BitmapData data = copyTile(pool, (byte) 2)) {
+                assertEquals(2, data.getUnsignedByte(10, 10));
+            }
+
+            BufferPoolStatistics stats = pool.statistics();
+            assertEquals(1, stats.misses());
+            assertEquals(1, stats.hits());
+            assertEquals(0, stats.outstanding());
+            assertEquals(64 * 1024, stats.retainedBytes());
+        }
+    }
+
+    @Test
+    public void testUnpooledSegmentIsUnusableAfterClose() throws Exception {
+        MemorySegment segment;
+        try (BitmapData data = copyTile(null, (byte) 1)) {
+            segment = data.segment();
+        }
+        assertThrows(IllegalStateException.class, () -> segment.get(java.lang.foreign.ValueLayout.JAVA_BYTE, 0));
+    }
+
+    @Test
+    public void testPooledDataIsReturnedOnce() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            BitmapData first = copyTile(pool, (byte) 1);
+            first.close();
+            assertThrows(IllegalStateException.class, first::close);
+            try (BitmapData second = copyTile(pool, (byte) 2)) {
+                assertEquals(2, second.getUnsignedByte(10, 10));
+                assertEquals(1, pool.statistics().outstanding());
+            }
+            assertEquals(0, pool.statistics().outstanding());
+        }
+    }
+
+    @Test
+    public void testPooledDataIsUnreadableAfterClose() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            BitmapData first = copyTile(pool, (byte) 1);
+            first.close();
+            try (BitmapData second = copyTile(pool, (byte) 2)) {
+                assertEquals(1, pool.statistics().hits());
+                assertThrows(IllegalStateException.class, () -> first.getUnsignedByte(10, 10));
+                assertThrows(IllegalStateException.class, first::getBytes);
+                assertThrows(IllegalStateException.class, first::segment);
+                assertThrows(IllegalStateException.class, () -> first.copyRowTo(0, new byte[256]));
+                assertThrows(IllegalStateException.class,
+                    () -> first.copyTo(MemorySegment.ofArray(new byte[256 * 256]), 0, 256));
+            }
+        }
+    }
+
+    @Test
+    public void testPooledDataCanBeClosedOnAnotherThread() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            BitmapData data = copyTile(pool, (byte) 3);
+            Thread closer = new Thread(() -> {
+                try {
+                    data.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            closer.start();
+            closer.join();
+            assertEquals(0, pool.statistics().outstanding());
+            assertEquals(64 * 1024, pool.statistics().retainedBytes());
+        }
+    }
+
+    @Test
+    public void testFullSizeClassDiscards() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().buffersPerSizeClass(1).build()) {
+            BitmapData first = copyTile(pool, (byte) 1);
+            BitmapData second = copyTile(pool, (byte) 2);
+            first.close();
+            second.close();
+
+            BufferPoolStatistics stats = pool.statistics();
+            assertEquals(2, stats.misses());
+            assertEquals(1, stats.discards());
+        }
+    }
+
+    @Test
+    public void testBuffersReturnedAfterCloseAreFreedNotDiscarded() throws Exception {
+        BitmapBufferPool pool = BitmapBufferPool.builder().build();
+        BitmapData first = copyTile(pool, (byte) 1);
+        BitmapData second = copyTile(pool, (byte) 2);
+        pool.close();
+        first.close();
+        second.close();
+
+        BufferPoolStatistics stats = pool.statistics();
+        assertEquals(0, stats.discards());
+        assertEquals(0, stats.outstanding());
+        assertEquals(0, stats.retainedBytes());
+    }
+
+    @Test
+    public void testLargeRequestsAreNotPooled() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().maxBufferSize(1024).minBufferSize(1024).build();
+                BitmapData data = copyTile(pool, (byte) 1)) {
+            assertEquals(1, pool.statistics().unpooled());
+        }
+    }
+
+    @Test
+    public void testUnclosedDataIsReportedAsLeak() throws Exception {
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            copyTile(pool, (byte) 1);
+            for (int i = 0; i < 100 && pool.statistics().leaks() == 0; i++) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            assertEquals(1, pool.statistics().leaks());
+            assertEquals(0, pool.statistics().outstanding());
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package uk.ac.ed.eci.libCZI;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import org.junit.jupiter.api.Test;
 import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapBufferPool;
 import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
 
 // Let's assume you created a new test class like this.
 public class BitmapDataTest {
@@ -70,4 +75,136 @@ public class BitmapDataTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTypedAccessorsMatchBytes() throws Exception {
+        IntRect roi = new IntRect(-123000, 30000, 1024, 1024);
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(TEST_IMAGE_PATH.toString());
+            CziStreamReader reader = CziStreamReader.fromStream(stream);
+            SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+            Bitmap bitmap = accessor.getBitmapRaw(roi, 0.25f);
+            BitmapData data = bitmap.getBitmapData()) {
+            assertEquals(256, data.width());
+            assertEquals(256, data.height());
+            assertEquals(3, data.pixelSize());
+
+            byte[] bytes = data.getBytes();
+            byte[] row = new byte[data.width() * 3];
+            data.copyRowTo(10, row);
+            for (int x = 0; x < data.width(); x++) {
+                for (int sample = 0; sample < 3; sample++) {
+                    int expected = Byte.toUnsignedInt(bytes[10 * data.stride() + x * 3 + sample]);
+                    assertEquals(expected, data.getUnsignedByte(x, 10, sample));
+                    assertEquals(expected, Byte.toUnsignedInt(row[x * 3 + sample]));
+                }
+            }
+            assertThrows(UnsupportedOperationException.class, () -> data.getShort(0, 0));
+        }
+    }
+
+    @Test
+    public void testBgr48Accessors() throws Exception {
+        // Two pixels a row, padded to a 16 byte stride.
+        ByteBuffer pixels = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < 2; y++) {
+            pixels.position(y * 16);
+            for (int i = 0; i < 6; i++) {
+                pixels.putShort((short) (1000 * y + i));
+            }
+        }
+        try (BitmapData data = BitmapData.copyOf(new BitmapInfo(2, 2, PixelType.Bgr48), 16,
+                MemorySegment.ofArray(pixels.array()))) {
+            assertEquals(6, data.pixelSize());
+            assertEquals(1004, data.getShort(1, 1, 1));
+            assertEquals(3, data.getShort(1, 0));
+
+            short[] row = new short[6];
+            data.copyRowTo(1, row);
+            assertArrayEquals(new short[] { 1000, 1001, 1002, 1003, 1004, 1005 }, row);
+            assertArrayEquals(new short[] { 0, 1, 2, 3, 4, 5, 1000, 1001, 1002, 1003, 1004, 1005 }, data.toShortArray());
+            assertThrows(IndexOutOfBoundsException.class, () -> data.getShort(2, 0));
+        }
+    }
+
+    @Test
+    public void testGray32FloatAccessors() throws Exception {
+        ByteBuffer pixels = ByteBuffer.allocate(3 * 4 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 6; i++) {
+            pixels.putFloat(i * 0.5f);
+        }
+        try (BitmapData data = BitmapData.copyOf(new BitmapInfo(3, 2, PixelType.Gray32Float), 12,
+                MemorySegment.ofArray(pixels.array()))) {
+            assertEquals(2.5f, data.getFloat(2, 1));
+            assertArrayEquals(new float[] { 0f, 0.5f, 1f, 1.5f, 2f, 2.5f }, data.toFloatArray());
+        }
+    }
+
+    @Test
+    public void testCopyToHonoursDestinationStride() throws Exception {
+        byte[] pixels = { 1, 2, 3, 0, 4, 5, 6, 0 };
+        byte[] dest = new byte[12];
+        try (BitmapData data = BitmapData.copyOf(new BitmapInfo(3, 2, PixelType.Gray8), 4,
+                MemorySegment.ofArray(pixels))) {
+            data.copyTo(MemorySegment.ofArray(dest), 1, 5);
+        }
+        assertArrayEquals(new byte[] { 0, 1, 2, 3, 0, 0, 4, 5, 6, 0, 0, 0 }, dest);
+    }
+
+    @Test
+    public void testCopyToClipsToDestination() throws Exception {
+        ByteBuffer pixels = ByteBuffer.allocate(3 * 3 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 9; i++) {
+            pixels.putShort((short) (i + 1));
+        }
+        short[] mosaic = new short[4 * 4];
+        try (BitmapData data = BitmapData.copyOf(new BitmapInfo(3, 3, PixelType.Gray16), 6,
+                MemorySegment.ofArray(pixels.array()))) {
+            MemorySegment dest = MemorySegment.ofArray(mosaic);
+
+            assertEquals(new IntRect(2, 0, 2, 2), data.copyTo(dest, 0, 8, new IntSize(4, 4), 2, -1));
+            assertEquals(new IntRect(0, 4, 0, 0), data.copyTo(dest, 0, 8, new IntSize(4, 4), 0, 4));
+            assertThrows(IllegalArgumentException.class, () -> data.copyTo(dest, 0, 6, new IntSize(4, 4), 0, 0));
+        }
+        assertArrayEquals(new short[] { 0, 0, 4, 5, 0, 0, 7, 8, 0, 0, 0, 0, 0, 0, 0, 0 }, mosaic);
+    }
+
+    @Test
+    public void testPixelSizeForWideTypes() {
+        assertEquals(6, PixelType.Bgr48.bytesPerPixel());
+        assertEquals(12, PixelType.Bgr96Float.bytesPerPixel());
+        assertEquals(4, PixelType.Bgr96Float.bytesPerSample());
+    }
+
+    @Test
+    public void testSharedCopyCanBeUsedOnAnotherThread() throws Exception {
+        byte[] pixels = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        BitmapData shared = BitmapData.sharedCopyOf(new BitmapInfo(4, 2, PixelType.Gray8), 4,
+            MemorySegment.ofArray(pixels), null);
+        int[] seen = new int[1];
+        Thread other = new Thread(() -> {
+            seen[0] = shared.getUnsignedByte(3, 1, 0);
+            try {
+                shared.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        other.start();
+        other.join();
+        assertEquals(8, seen[0]);
+        assertThrows(IllegalStateException.class, () -> shared.getUnsignedByte(0, 0, 0));
+    }
+
+    @Test
+    public void testFailedCopyIsNotCountedAndReturnsPooledBuffer() {
+        BitmapInfo info = new BitmapInfo(4, 2, PixelType.Gray16);
+        MemorySegment tooShort = MemorySegment.ofArray(new byte[10]);
+        long before = LibCziMetrics.snapshot().bitmapDataBytes();
+        assertThrows(IndexOutOfBoundsException.class, () -> BitmapData.copyOf(info, 8, tooShort));
+        try (BitmapBufferPool pool = BitmapBufferPool.builder().build()) {
+            assertThrows(IndexOutOfBoundsException.class, () -> BitmapData.copyOf(info, 8, tooShort, pool));
+            assertEquals(0, pool.statistics().outstanding());
+        }
+        assertEquals(before, LibCziMetrics.snapshot().bitmapDataBytes());
+    }
+}
@@ -0,0 +1,179 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapOps;
+
+public class BitmapOpsTest {
+    // Wide enough for several vectors plus a tail, and odd to exercise the edge column.
+    private static final int WIDTH = 77;
+    private static final int HEIGHT = 5;
+
+    private static BitmapData bitmap(PixelType pixelType, int width, int height, ByteBuffer pixels) {
+        return BitmapData.copyOf(new BitmapInfo(width, height, pixelType), width * pixelType.bytesPerPixel(),
+            MemorySegment.ofBuffer(pixels.rewind()));
+    }
+
+    private static ByteBuffer buffer(int bytes) {
+        return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer randomBytes(int bytes, long seed) {
+        byte[] data = new byte[bytes];
+        new Random(seed).nextBytes(data);
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testToEightBitGray16() throws Exception {
+        ByteBuffer pixels = buffer(WIDTH * 2);
+        for (int x = 0; x < WIDTH; x++) {
+            pixels.putShort((short) (x * 800));
+        }
+
+        try (BitmapData source = bitmap(PixelType.Gray16, WIDTH, 1, pixels);
+                BitmapData result = BitmapOps.toEightBit(source, 1000, 51000)) {
+            assertEquals(PixelType.Gray8, result.pixelType());
+            assertEquals(WIDTH, result.stride());
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = (int) Math.min(255f, Math.max(0f, (x * 800 - 1000f) * (255f / 50000) + 0.5f));
+                assertEquals(expected, result.getUnsignedByte(x, 0), "x=" + x);
+            }
+            assertEquals(0, result.getUnsignedByte(1, 0));
+            assertEquals(255, result.getUnsignedByte(WIDTH - 1, 0));
+        }
+    }
+
+    @Test
+    public void testWindowLevelIsCentredOnLevel() throws Exception {
+        ByteBuffer pixels = buffer(6).putShort((short) 100).putShort((short) 200).putShort((short) 300);
+
+        try (BitmapData source = bitmap(PixelType.Gray16, 3, 1, pixels);
+                BitmapData result = BitmapOps.windowLevel(source, 200, 200)) {
+            assertEquals(0, result.getUnsignedByte(0, 0));
+            assertEquals(128, result.getUnsignedByte(1, 0));
+            assertEquals(255, result.getUnsignedByte(2, 0));
+        }
+    }
+
+    @Test
+    public void testBgr48ToBgr24KeepsHighByte() throws Exception {
+        ByteBuffer pixels = randomBytes(WIDTH * HEIGHT * 6, 1);
+
+        try (BitmapData source = bitmap(PixelType.Bgr48, WIDTH, HEIGHT, pixels);
+                BitmapData result = BitmapOps.toBgr24(source)) {
+            assertEquals(PixelType.Bgr24, result.pixelType());
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    for (int c = 0; c < 3; c++) {
+                        assertEquals((source.getShort(x, y, c) & 0xFFFF) >>> 8, result.getUnsignedByte(x, y, c));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFloatToGray8StretchesRangeAndIgnoresNaN() throws Exception {
+        ByteBuffer pixels = buffer(WIDTH * 4);
+        for (int x = 0; x < WIDTH; x++) {
+            pixels.putFloat(x == 40 ? Float.NaN : -1 + x * 0.5f);
+        }
+
+        try (BitmapData source = bitmap(PixelType.Gray32Float, WIDTH, 1, pixels);
+                BitmapData result = BitmapOps.toGray8(source)) {
+            float[] range = BitmapOps.minMax(source);
+            assertEquals(-1f, range[0]);
+            assertEquals(-1 + (WIDTH - 1) * 0.5f, range[1]);
+            assertEquals(0, result.getUnsignedByte(0, 0));
+            assertEquals(0, result.getUnsignedByte(40, 0));
+            assertEquals(255, result.getUnsignedByte(WIDTH - 1, 0));
+        }
+    }
+
+    @Test
+    public void testDownsampleGray8() throws Exception {
+        ByteBuffer pixels = randomBytes(WIDTH * HEIGHT, 2);
+
+        try (BitmapData source = bitmap(PixelType.Gray8, WIDTH, HEIGHT, pixels);
+                BitmapData result = BitmapOps.downsample2x(source)) {
+            assertEquals((WIDTH + 1) / 2, result.width());
+            assertEquals((HEIGHT + 1) / 2, result.height());
+            for (int y = 0; y < result.height(); y++) {
+                for (int x = 0; x < result.width(); x++) {
+                    int x1 = Math.min(2 * x + 1, WIDTH - 1);
+                    int y1 = Math.min(2 * y + 1, HEIGHT - 1);
+                    int sum = source.getUnsignedByte(2 * x, 2 * y) + source.getUnsignedByte(x1, 2 * y)
+                        + source.getUnsignedByte(2 * x, y1) + source.getUnsignedByte(x1, y1);
+                    assertEquals((sum + 2) / 4, result.getUnsignedByte(x, y), "x=" + x + " y=" + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDownsampleGray16() throws Exception {
+        ByteBuffer pixels = randomBytes(WIDTH * HEIGHT * 2, 3);
+
+        try (BitmapData source = bitmap(PixelType.Gray16, WIDTH, HEIGHT, pixels);
+                BitmapData result = BitmapOps.downsample2x(source)) {
+            for (int y = 0; y < result.height(); y++) {
+                for (int x = 0; x < result.width(); x++) {
+                    int x1 = Math.min(2 * x + 1, WIDTH - 1);
+                    int y1 = Math.min(2 * y + 1, HEIGHT - 1);
+                    int sum = (source.getShort(2 * x, 2 * y) & 0xFFFF) + (source.getShort(x1, 2 * y) & 0xFFFF)
+                        + (source.getShort(2 * x, y1) & 0xFFFF) + (source.getShort(x1, y1) & 0xFFFF);
+                    assertEquals((sum + 2) / 4, result.getShort(x, y) & 0xFFFF, "x=" + x + " y=" + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDownsampleBgr24KeepsChannelsApart() throws Exception {
+        ByteBuffer pixels = buffer(4 * 3 * 2);
+        for (int i = 0; i < 8; i++) {
+            pixels.put((byte) 10).put((byte) 100).put((byte) (i % 2 == 0 ? 200 : 0));
+        }
+
+        try (BitmapData source = bitmap(PixelType.Bgr24, 4, 2, pixels);
+                BitmapData result = BitmapOps.downsample2x(source)) {
+            assertEquals(2, result.width());
+            assertEquals(1, result.height());
+            assertEquals(10, result.getUnsignedByte(1, 0, 0));
+            assertEquals(100, result.getUnsignedByte(1, 0, 1));
+            assertEquals(100, result.getUnsignedByte(1, 0, 2));
+        }
+    }
+
+    @Test
+    public void testDownsampleFloat() throws Exception {
+        ByteBuffer pixels = buffer(3 * 4).putFloat(1).putFloat(2).putFloat(7);
+
+        try (BitmapData source = bitmap(PixelType.Gray32Float, 3, 1, pixels);
+                BitmapData result = BitmapOps.downsample2x(source)) {
+            assertEquals(1.5f, result.getFloat(0, 0));
+            assertEquals(7f, result.getFloat(1, 0));
+        }
+    }
+
+    @Test
+    public void testUnsupportedTypesAreRejected() throws Exception {
+        try (BitmapData gray8 = bitmap(PixelType.Gray8, 1, 1, buffer(1))) {
+            assertThrows(UnsupportedOperationException.class, () -> BitmapOps.toEightBit(gray8, 0, 1));
+            assertThrows(UnsupportedOperationException.class, () -> BitmapOps.toBgr24(gray8));
+        }
+        try (BitmapData gray16 = bitmap(PixelType.Gray16, 1, 1, buffer(2))) {
+            assertThrows(IllegalArgumentException.class, () -> BitmapOps.toEightBit(gray16, 5, 5));
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package uk.ac.ed.eci.libCZI;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
 
+import java.lang.foreign.MemorySegment;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -10,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
 import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
 import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
 import uk.ac.ed.eci.libCZI.bitmaps.Roi;
 
 public class BitmapTest {
@@ -103,4 +106,50 @@ public class BitmapTest {
             }
         }
     }
+
+    @Test
+    public void testLockedViewMatchesCopiedData() throws Exception {
+        IntRect roi = new IntRect(-123000, 30000, 1024, 1024);
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(TEST_IMAGE_PATH.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+                Bitmap bitmap = accessor.getBitmapRaw(roi, 0.25f)) {
+            byte[] copied;
+            try (BitmapData data = bitmap.getBitmapData()) {
+                copied = data.getBytes();
+            }
+
+            MemorySegment borrowed;
+            try (LockedBitmapView view = bitmap.lockData()) {
+                borrowed = view.data();
+                assertEquals(256, view.width());
+                assertEquals(256, view.height());
+                assertEquals(PixelType.Bgr24, view.pixelType());
+                assertTrue(view.stride() >= view.width() * 3);
+                assertTrue(borrowed.isReadOnly());
+                assertArrayEquals(copied, borrowed.toArray(JAVA_BYTE));
+                assertEquals(view.width() * 3L, view.row(view.height() - 1).byteSize());
+            }
+            final MemorySegment closed = borrowed;
+            assertThrows(IllegalStateException.class, () -> closed.get(JAVA_BYTE, 0),
+                "The view should not be readable once the bitmap is unlocked.");
+        }
+    }
+
+    @Test
+    public void testCloseReleasesOnce() throws Exception {
+        IntRect roi = new IntRect(-123000, 30000, 256, 256);
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(TEST_IMAGE_PATH.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader)) {
+            Bitmap bitmap = accessor.getBitmapRaw(roi, 1.0f);
+            assertFalse(bitmap.isReleased());
+
+            bitmap.close();
+            assertTrue(bitmap.isReleased());
+            bitmap.close();
+            bitmap.release();
+            assertThrows(CziBitmapException.class, bitmap::getBitmapInfo);
+        }
+    }
 }
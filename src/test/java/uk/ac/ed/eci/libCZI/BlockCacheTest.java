@@ -0,0 +1,151 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockCacheTest {
+    private static final Path TEST_IMAGE_PATH = Paths.get("test-images", "test-image.czi");
+    private static final int DATA_SIZE = 100_000;
+
+    private final byte[] data = new byte[DATA_SIZE];
+    private final AtomicInteger sourceReads = new AtomicInteger();
+
+    public BlockCacheTest() {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+    }
+
+    private long readSource(long offset, ByteBuffer dst) {
+        sourceReads.incrementAndGet();
+        if (offset >= data.length) {
+            return 0;
+        }
+        int length = (int) Math.min(dst.remaining(), data.length - offset);
+        dst.put(data, (int) offset, length);
+        return length;
+    }
+
+    private BlockCache createCache(int readAheadBlocks) {
+        BlockCacheOptions options = BlockCacheOptions.builder()
+            .blockSize(1024)
+            .capacityBytes(16 * 1024)
+            .readAheadBlocks(readAheadBlocks)
+            .build();
+        return new BlockCache(options, this::readSource);
+    }
+
+    private void assertMatchesData(long offset, ByteBuffer buffer) {
+        buffer.flip();
+        for (int i = 0; buffer.hasRemaining(); i++) {
+            assertEquals(data[(int) offset + i], buffer.get(), "Byte at " + (offset + i));
+        }
+    }
+
+    @Test
+    public void testRepeatedReadIsServedFromCache() throws Exception {
+        try (BlockCache cache = createCache(0)) {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(100, cache.read(5000, buffer));
+            assertMatchesData(5000, buffer);
+
+            buffer.clear();
+            assertEquals(100, cache.read(5010, buffer));
+            assertMatchesData(5010, buffer);
+
+            assertEquals(1, sourceReads.get());
+            BlockCacheStatistics stats = cache.statistics();
+            assertEquals(1, stats.hits());
+            assertEquals(1, stats.misses());
+        }
+    }
+
+    @Test
+    public void testReadSpanningBlocks() throws Exception {
+        try (BlockCache cache = createCache(0)) {
+            ByteBuffer buffer = ByteBuffer.allocate(3000);
+            assertEquals(3000, cache.read(1000, buffer));
+            assertMatchesData(1000, buffer);
+        }
+    }
+
+    @Test
+    public void testSequentialReadsTriggerReadAhead() throws Exception {
+        try (BlockCache cache = createCache(4)) {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            long offset = 0;
+            for (int i = 0; i < 20; i++) {
+                buffer.clear();
+                assertEquals(512, cache.read(offset, buffer));
+                assertMatchesData(offset, buffer);
+                offset += 512;
+            }
+            BlockCacheStatistics stats = cache.statistics();
+            assertTrue(stats.readAheadBlocks() > 0, "Sequential reads should fetch ahead.");
+            assertTrue(sourceReads.get() < 10, "Read-ahead should reduce the number of source reads.");
+        }
+    }
+
+    @Test
+    public void testEvictionKeepsWithinCapacity() throws Exception {
+        try (BlockCache cache = createCache(0)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            for (long offset = 0; offset + 1024 <= DATA_SIZE; offset += 1024) {
+                buffer.clear();
+                cache.read(offset, buffer);
+                assertMatchesData(offset, buffer);
+            }
+            BlockCacheStatistics stats = cache.statistics();
+            assertTrue(stats.evictions() > 0);
+            assertTrue(stats.cachedBytes() <= stats.capacityBytes());
+        }
+    }
+
+    @Test
+    public void testRandomReadsAfterEvictionsMatchSource() throws Exception {
+        try (BlockCache cache = createCache(0)) {
+            Random random = new Random(7);
+            ByteBuffer buffer = ByteBuffer.allocate(300);
+            for (int i = 0; i < 5000; i++) {
+                // Mostly a few hot blocks, so the table sees hits, misses and removals.
+                long offset = random.nextInt(4) == 0 ? random.nextInt(DATA_SIZE - 300) : random.nextInt(8) * 1024 + 100;
+                buffer.clear();
+                assertEquals(300, cache.read(offset, buffer));
+                assertMatchesData(offset, buffer);
+            }
+            BlockCacheStatistics stats = cache.statistics();
+            assertTrue(stats.hits() > 0);
+            assertTrue(stats.evictions() > 0);
+            assertTrue(stats.cachedBytes() <= stats.capacityBytes());
+        }
+    }
+
+    @Test
+    public void testReadPastEndReturnsShortCount() throws Exception {
+        try (BlockCache cache = createCache(2)) {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(10, cache.read(DATA_SIZE - 10, buffer));
+            buffer.clear();
+            assertEquals(0, cache.read(DATA_SIZE + 10, buffer));
+        }
+    }
+
+    @Test
+    public void testCachedStreamReaderAccess() throws Exception {
+        BlockCacheOptions options = BlockCacheOptions.builder().build();
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromJavaStream(FileChannel.open(TEST_IMAGE_PATH), options);
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            SubBlockStatistics stats = reader.simpleReaderStatistics();
+            assertEquals(26, stats.maxMIndex());
+            assertTrue(stream.cacheStatistics().orElseThrow().hits() > 0);
+        }
+    }
+}
@@ -22,4 +22,19 @@ public class CZIInputStreamTest {
             assertFalse(true, "An exception should not have been thrown.");
         }
     }
+
+    @Test
+    public void testMemoryMappedStreamReaderAccess() throws Exception {
+        assertTrue(Files.exists(TEST_IMAGE_PATH), "Test image should have been downloaded by Maven.");
+
+        try (CZIInputStream stream = CZIInputStream.createMemoryMappedInputStream(TEST_IMAGE_PATH);
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            assertEquals(0, stream.errorCode(), "Should open stream without error.");
+
+            SubBlockStatistics stats = reader.simpleReaderStatistics();
+            assertEquals(150, stats.subBlockCount());
+            assertEquals(0, stats.minMIndex());
+            assertEquals(26, stats.maxMIndex());
+        }
+    }
 }
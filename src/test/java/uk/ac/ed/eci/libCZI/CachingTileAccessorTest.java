@@ -0,0 +1,149 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+public class CachingTileAccessorTest {
+    private static final AccessorOptions OPTIONS = AccessorOptions.builder().build();
+
+    @Test
+    public void testTileKeyComparesValidDimensionsOnly() {
+        Coordinate c0 = new Coordinate(2, new int[] { 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        Coordinate c0WithJunk = new Coordinate(2, new int[] { 0, 5, 7, 0, 0, 0, 0, 0, 0 });
+        Coordinate c1 = new Coordinate(2, new int[] { 1, 0, 0, 0, 0, 0, 0, 0, 0 });
+        IntRect roi = new IntRect(0, 0, 256, 256);
+
+        TileKey key = TileKey.of("a.czi", roi, 0.5f, c0, OPTIONS);
+
+        assertEquals(key, TileKey.of("a.czi", roi, 0.5f, c0WithJunk, AccessorOptions.builder().build()));
+        assertEquals(key.hashCode(), TileKey.of("a.czi", roi, 0.5f, c0WithJunk, OPTIONS).hashCode());
+        assertNotEquals(key, TileKey.of("a.czi", roi, 0.5f, c1, OPTIONS));
+        assertNotEquals(key, TileKey.of("b.czi", roi, 0.5f, c0, OPTIONS));
+        assertNotEquals(key, TileKey.of("a.czi", roi, 0.25f, c0, OPTIONS));
+        assertNotEquals(key, TileKey.of("a.czi", new IntRect(256, 0, 256, 256), 0.5f, c0, OPTIONS));
+        assertNotEquals(key, TileKey.of("a.czi", roi, 0.5f, c0, AccessorOptions.builder().background(0).build()));
+    }
+
+    @Test
+    public void testStatisticsHitRate() {
+        assertEquals(0.0, new TileCacheStatistics(0, 0, 0, 0, 0, 0, 100).hitRate());
+        assertEquals(0.75, new TileCacheStatistics(3, 1, 0, 0, 1, 10, 100).hitRate());
+    }
+
+    @Test
+    public void testRepeatedRequestIsServedFromCache() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                TileCache cache = TileCache.builder().build();
+                CachingTileAccessor accessor = new CachingTileAccessor(reader, cache, path)) {
+            IntRect roi = new IntRect(100, 200, 64, 32);
+            for (int i = 0; i < 3; i++) {
+                try (BitmapData tile = accessor.getBitmapData(roi, 1.0f)) {
+                    assertEquals(64, tile.width());
+                    assertEquals(32, tile.height());
+                    assertEquals(SyntheticCzi.pixelValue(110, 205, 0), tile.getUnsignedByte(10, 5, 0));
+                }
+            }
+
+            TileCacheStatistics statistics = cache.statistics();
+            assertEquals(1, statistics.misses());
+            assertEquals(2, statistics.hits());
+            assertEquals(1, statistics.entries());
+            assertEquals(64 * 32, statistics.cachedBytes());
+
+            cache.invalidate(path);
+            assertEquals(0, cache.statistics().entries());
+        }
+    }
+
+    @Test
+    public void testPrivateTilesAreDroppedOnClose() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                TileCache cache = TileCache.builder().build()) {
+            CachingTileAccessor accessor = new CachingTileAccessor(reader, cache);
+            accessor.getBitmapData(new IntRect(0, 0, 64, 64), 1.0f).close();
+            assertEquals(1, cache.statistics().entries());
+
+            accessor.close();
+            assertEquals(0, cache.statistics().entries());
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                TileCache cache = TileCache.builder().build();
+                CachingTileAccessor accessor = new CachingTileAccessor(reader, cache, path)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try (BitmapData tile = accessor.getBitmapData(new IntRect(0, 0, 512, 512), 1.0f)) {
+                        return tile.getUnsignedByte(300, 400, 0);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(SyntheticCzi.pixelValue(300, 400, 0), result.get());
+            }
+
+            TileCacheStatistics statistics = cache.statistics();
+            assertEquals(1, statistics.misses());
+            assertEquals(threads - 1, statistics.hits() + statistics.coalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSegmentedEvictionKeepsReusedTiles() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+        int tileBytes = 64 * 64;
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                TileCache cache = TileCache.builder().capacityBytes(4L * tileBytes).protectedFraction(0.5).build();
+                CachingTileAccessor accessor = new CachingTileAccessor(reader, cache, path)) {
+            IntRect hot = new IntRect(0, 0, 64, 64);
+            accessor.getBitmapData(hot, 1.0f).close();
+            accessor.getBitmapData(hot, 1.0f).close();
+
+            // A pan over tiles seen only once.
+            for (int i = 1; i <= 6; i++) {
+                accessor.getBitmapData(new IntRect(64 * i, 0, 64, 64), 1.0f).close();
+            }
+
+            Coordinate c0 = Coordinate.createC0();
+            assertTrue(cache.contains(TileKey.of(path, hot, 1.0f, c0, OPTIONS)));
+            assertFalse(cache.contains(TileKey.of(path, new IntRect(64, 0, 64, 64), 1.0f, c0, OPTIONS)));
+            assertTrue(cache.contains(TileKey.of(path, new IntRect(384, 0, 64, 64), 1.0f, c0, OPTIONS)));
+            TileCacheStatistics statistics = cache.statistics();
+            assertEquals(4, statistics.entries());
+            assertEquals(3, statistics.evictions());
+            assertTrue(statistics.cachedBytes() <= statistics.capacityBytes());
+        }
+    }
+}
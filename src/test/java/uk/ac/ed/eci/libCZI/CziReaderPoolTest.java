@@ -0,0 +1,195 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class CziReaderPoolTest {
+    private static final Path TEST_IMAGE_PATH = Paths.get("test-images", "test-image.czi");
+
+    @Test
+    public void testLeaseIsReused() {
+        try (CziReaderPool pool = CziReaderPool.builder().maxReadersPerFile(2).build()) {
+            try (CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH)) {
+                assertEquals(26, lease.reader().simpleReaderStatistics().maxMIndex());
+            }
+            try (CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH)) {
+                assertNotNull(lease.accessor());
+            }
+
+            PoolStatistics stats = pool.statistics();
+            assertEquals(1, stats.open());
+            assertEquals(1, stats.idle());
+            assertEquals(1, stats.hits());
+            assertEquals(1, stats.misses());
+            assertEquals(0.5, stats.hitRate());
+        }
+    }
+
+    @Test
+    public void testReturnedLeaseCannotBeUsed() {
+        try (CziReaderPool pool = CziReaderPool.builder().build()) {
+            CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH);
+            lease.close();
+            assertThrows(IllegalStateException.class, lease::reader);
+        }
+    }
+
+    @Test
+    public void testAcquireTimesOutWhenExhausted() {
+        try (CziReaderPool pool = CziReaderPool.builder()
+                .maxReadersPerFile(1)
+                .acquireTimeout(Duration.ofMillis(50))
+                .build();
+                CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH)) {
+            assertThrows(CziReaderException.class, () -> pool.acquire(TEST_IMAGE_PATH));
+            assertEquals(1, pool.statistics().waits());
+        }
+    }
+
+    @Test
+    public void testIdleReadersAreEvicted() {
+        try (CziReaderPool pool = CziReaderPool.builder().idleTimeout(Duration.ZERO).build()) {
+            pool.acquire(TEST_IMAGE_PATH).close();
+            pool.evictIdle();
+
+            PoolStatistics stats = pool.statistics();
+            assertEquals(0, stats.open());
+            assertEquals(0, stats.files());
+            assertEquals(1, stats.evictions());
+
+            try (CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH)) {
+                assertEquals(1, pool.statistics().files());
+            }
+        }
+    }
+
+    @Test
+    public void testAcquireSweepsIdleReadersOfOtherFiles() {
+        try (CziReaderPool pool = CziReaderPool.builder()
+                .idleTimeout(Duration.ZERO)
+                .streamFactory(path -> CZIInputStream.createInputStreamFromFileUTF8(TEST_IMAGE_PATH.toString()))
+                .build()) {
+            pool.acquire(Paths.get("cold.czi")).close();
+            try (CziReaderPool.Lease lease = pool.acquire(Paths.get("hot.czi"))) {
+                PoolStatistics stats = pool.statistics();
+                assertEquals(1, stats.evictions());
+                assertEquals(1, stats.files());
+                assertEquals(1, stats.open());
+            }
+        }
+    }
+
+    @Test
+    public void testWaitingAcquireFailsWhenPoolCloses() throws Exception {
+        CziReaderPool pool = CziReaderPool.builder().maxReadersPerFile(1).acquireTimeout(Duration.ofMinutes(1)).build();
+        CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                pool.acquire(TEST_IMAGE_PATH).close();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        waiter.start();
+        while (pool.statistics().waits() == 0) {
+            Thread.onSpinWait();
+        }
+        pool.close();
+        lease.close();
+        waiter.join();
+
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals(0, pool.statistics().open());
+        assertEquals(1, pool.statistics().misses());
+    }
+
+    @Test
+    public void testWaiterRetriesWhenOpenFailsWhileWaiting() throws Exception {
+        CountDownLatch firstOpenStarted = new CountDownLatch(1);
+        CountDownLatch failFirstOpen = new CountDownLatch(1);
+        AtomicInteger opens = new AtomicInteger();
+        AtomicReference<FileChannel> secondChannel = new AtomicReference<>();
+        CziReaderPool pool = CziReaderPool.builder()
+            .maxReadersPerFile(1)
+            .acquireTimeout(Duration.ofMinutes(1))
+            .streamFactory(path -> {
+                if (opens.getAndIncrement() == 0) {
+                    firstOpenStarted.countDown();
+                    try {
+                        failFirstOpen.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new CziReaderException("Simulated open failure");
+                }
+                try {
+                    FileChannel channel = FileChannel.open(path);
+                    secondChannel.set(channel);
+                    return CZIInputStream.createInputStreamFromJavaStream(channel);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })
+            .build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> failing = executor.submit(() -> pool.acquire(TEST_IMAGE_PATH).close());
+            firstOpenStarted.await();
+            Future<?> waiting = executor.submit(() -> pool.acquire(TEST_IMAGE_PATH).close());
+            while (pool.statistics().waits() == 0) {
+                Thread.onSpinWait();
+            }
+            failFirstOpen.countDown();
+
+            Exception failure = assertThrows(Exception.class, failing::get);
+            assertTrue(failure.getCause() instanceof CziReaderException);
+            waiting.get();
+            assertEquals(1, pool.statistics().idle());
+
+            pool.close();
+            assertFalse(secondChannel.get().isOpen());
+            assertEquals(0, pool.statistics().open());
+        } finally {
+            executor.shutdown();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentLeases() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (CziReaderPool pool = CziReaderPool.builder().maxReadersPerFile(3).build()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> {
+                    try (CziReaderPool.Lease lease = pool.acquire(TEST_IMAGE_PATH)) {
+                        return lease.accessor().calcTileSize(new IntRect(40960, 4096, 1024, 1024), 0.5f).w();
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(512, result.get());
+            }
+            assertTrue(pool.statistics().open() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -2,11 +2,22 @@ package uk.ac.ed.eci.libCZI;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
 import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
@@ -35,5 +46,120 @@ public class InputStreamBridgeTest {
         assertEquals(0, stats.minMIndex());
         assertEquals(26, stats.maxMIndex());
     }
-        
+
+    @Test
+    public void testConcurrentPositionalReads() throws Exception {
+        try (FileChannel fileChannel = FileChannel.open(TEST_IMAGE_PATH);
+                InputStreamBridge bridge = new InputStreamBridge(fileChannel)) {
+            assertConcurrentReadsMatchFile(bridge);
+        }
+    }
+
+    @Test
+    public void testConcurrentStripedReads() throws Exception {
+        List<SeekableByteChannel> stripes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            stripes.add(new NonPositionalChannel(FileChannel.open(TEST_IMAGE_PATH)));
+        }
+        try (InputStreamBridge bridge = new InputStreamBridge(stripes)) {
+            assertConcurrentReadsMatchFile(bridge);
+            bridge.closeFunctionImplementation(0, 0);
+        }
+    }
+
+    private void assertConcurrentReadsMatchFile(InputStreamBridge bridge) throws Exception {
+        byte[] expected = Files.readAllBytes(TEST_IMAGE_PATH);
+        final int readSize = 4096;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                final long offset = ((long) t * 7919 * readSize) % (expected.length - readSize);
+                results.add(executor.submit(() -> {
+                    try (Arena arena = Arena.ofConfined()) {
+                        MemorySegment buffer = arena.allocate(readSize);
+                        MemorySegment bytesRead = arena.allocate(JAVA_LONG);
+                        int errorCode = bridge.readFunctionImplementation(0, 0, offset, buffer, readSize, bytesRead, MemorySegment.NULL);
+                        if (errorCode != 0 || bytesRead.get(JAVA_LONG, 0) != readSize) {
+                            return false;
+                        }
+                        return MemorySegment.mismatch(buffer, 0, readSize,
+                            MemorySegment.ofArray(expected), offset, offset + readSize) == -1;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(), "Concurrent read should return the file contents at its offset.");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadPastEndReturnsShortCount() throws Exception {
+        long fileSize = Files.size(TEST_IMAGE_PATH);
+        try (FileChannel fileChannel = FileChannel.open(TEST_IMAGE_PATH);
+                InputStreamBridge bridge = new InputStreamBridge(fileChannel);
+                Arena arena = Arena.ofConfined()) {
+            MemorySegment buffer = arena.allocate(100);
+            MemorySegment bytesRead = arena.allocate(JAVA_LONG);
+            int errorCode = bridge.readFunctionImplementation(0, 0, fileSize - 10, buffer, 100, bytesRead, MemorySegment.NULL);
+            assertEquals(0, errorCode);
+            assertEquals(10L, bytesRead.get(JAVA_LONG, 0));
+        }
+    }
+
+    /**
+     * Hides the FileChannel type so the bridge has to fall back to position-then-read.
+     */
+    private static class NonPositionalChannel implements SeekableByteChannel {
+        private final SeekableByteChannel delegate;
+
+        NonPositionalChannel(SeekableByteChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
 }
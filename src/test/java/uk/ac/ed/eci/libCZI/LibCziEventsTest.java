@@ -0,0 +1,120 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.jfr.BitmapCopyEvent;
+import uk.ac.ed.eci.libCZI.jfr.LibCziEvents;
+import uk.ac.ed.eci.libCZI.jfr.NativeCallEvent;
+import uk.ac.ed.eci.libCZI.jfr.StreamReadEvent;
+
+public class LibCziEventsTest {
+
+    static int twice(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative");
+        }
+        return 2 * value;
+    }
+
+    private static MethodHandle twiceHandle() throws Exception {
+        return MethodHandles.lookup().findStatic(LibCziEventsTest.class, "twice",
+            MethodType.methodType(int.class, int.class));
+    }
+
+    @Test
+    public void testInstrumentedHandleKeepsTypeAndBehaviour() throws Throwable {
+        MethodHandle handle = LibCziEvents.instrument("twice", twiceHandle());
+
+        assertEquals(MethodType.methodType(int.class, int.class), handle.type());
+        assertEquals(42, (int) handle.invokeExact(21));
+        assertThrows(IllegalArgumentException.class, () -> {
+            int ignored = (int) handle.invokeExact(-1);
+        });
+    }
+
+    @Test
+    public void testEventsAreOffByDefault() {
+        assertNull(LibCziEvents.beginStreamRead(0, 10));
+        assertNull(LibCziEvents.beginTileRead(0, 0, 1, 1, 1.0f));
+    }
+
+    @Test
+    public void testConfigurationRecordsEvents() throws Throwable {
+        MethodHandle handle = LibCziEvents.instrument("twice", twiceHandle());
+        Path file = Files.createTempFile("libczi-events", ".jfr");
+        try (Recording recording = new Recording(LibCziEvents.configuration())) {
+            recording.start();
+            int ignored = (int) handle.invokeExact(5);
+            LibCziEvents.endStreamRead(LibCziEvents.beginStreamRead(4096, 512), 100);
+            BitmapData.copyOf(new BitmapInfo(4, 2, PixelType.Gray8), 4, MemorySegment.ofArray(new byte[8])).close();
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            RecordedEvent call = only(events, NativeCallEvent.NAME);
+            assertEquals("twice", call.getString("symbol"));
+            assertEquals(10, call.getInt("errorCode"));
+            RecordedEvent read = only(events, StreamReadEvent.NAME);
+            assertEquals(4096, read.getLong("offset"));
+            assertEquals(512, read.getLong("requested"));
+            assertEquals(100, read.getLong("bytesRead"));
+            assertFalse(read.getBoolean("failed"));
+            RecordedEvent copy = only(events, BitmapCopyEvent.NAME);
+            assertEquals(8, copy.getLong("bytes"));
+            assertFalse(copy.getBoolean("intoCallerBuffer"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMemoryMappedReadsRecordEvents() throws Exception {
+        Path data = Files.createTempFile("libczi-mapped", ".bin");
+        Path file = Files.createTempFile("libczi-events", ".jfr");
+        Files.write(data, new byte[1000]);
+        try (FileChannel channel = FileChannel.open(data);
+                MemoryMappedInputStreamBridge bridge = new MemoryMappedInputStreamBridge(channel);
+                Arena arena = Arena.ofConfined();
+                Recording recording = new Recording(LibCziEvents.configuration())) {
+            MemorySegment buffer = arena.allocate(200);
+            MemorySegment bytesRead = arena.allocate(ValueLayout.JAVA_LONG);
+            recording.start();
+            assertEquals(0, bridge.readFunctionImplementation(0, 0, 900, buffer, 200, bytesRead, MemorySegment.NULL));
+            recording.stop();
+            recording.dump(file);
+
+            assertEquals(100, bytesRead.get(ValueLayout.JAVA_LONG, 0));
+            RecordedEvent read = only(RecordingFile.readAllEvents(file), StreamReadEvent.NAME);
+            assertEquals(900, read.getLong("offset"));
+            assertEquals(200, read.getLong("requested"));
+            assertEquals(100, read.getLong("bytesRead"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(data);
+        }
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.ed.eci.libCZI;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.lang.foreign.MemorySegment;
 
@@ -48,4 +49,11 @@ public class LibCziFFMTest {
         assertEquals("main", buildInfo.getRepositoryBranch());
         assertEquals("fe30d63426895b1acef5c8d1ca60235867895e11".length(), buildInfo.getRepositoryTag().length());
     }
+
+    @Test
+    public void testWarmUp() {
+        long calls = LibCziMetrics.snapshot().nativeCalls().getOrDefault("libCZI_SingleChannelTileAccessorGet", 0L);
+        assertTrue(LibCziFFM.warmUp().toNanos() > 0);
+        assertTrue(LibCziMetrics.snapshot().nativeCalls().get("libCZI_SingleChannelTileAccessorGet") > calls);
+    }
 }
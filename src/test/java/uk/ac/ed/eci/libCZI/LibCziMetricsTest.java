@@ -0,0 +1,162 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+import uk.ac.ed.eci.libCZI.bitmaps.LockedBitmapView;
+
+public class LibCziMetricsTest {
+    private static final Path TEST_IMAGE_PATH = Paths.get("test-images", "test-image.czi");
+
+    static int twice(int value) {
+        return 2 * value;
+    }
+
+    @Test
+    public void testHistogramBucketsAndPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(1_500);
+        }
+        histogram.record(3_000_000);
+        histogram.record(60_000_000_000L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count());
+        assertEquals(snapshot.upperBoundsNanos().length + 1, snapshot.counts().length);
+        assertEquals(2_000, snapshot.percentileNanos(50));
+        assertEquals(5_000_000, snapshot.percentileNanos(99));
+        assertEquals(Long.MAX_VALUE, snapshot.percentileNanos(100));
+        assertEquals((98 * 1_500 + 3_000_000 + 60_000_000_000L) / 100.0, snapshot.meanNanos(), 1e-6);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.percentileNanos(99));
+        assertEquals(0, snapshot.meanNanos());
+    }
+
+    @Test
+    public void testBoundaryGoesInLowerBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        assertEquals(1, histogram.snapshot().counts()[0]);
+    }
+
+    @Test
+    public void testInstrumentCountsCalls() throws Throwable {
+        MethodHandle target = MethodHandles.lookup().findStatic(LibCziMetricsTest.class, "twice",
+            MethodType.methodType(int.class, int.class));
+        MethodHandle handle = LibCziMetrics.instrument("test_twice", target);
+
+        assertEquals(target.type(), handle.type());
+        long before = LibCziMetrics.snapshot().nativeCalls().getOrDefault("test_twice", 0L);
+        assertEquals(6, (int) handle.invokeExact(3));
+        assertEquals(8, (int) handle.invokeExact(4));
+        assertEquals(before + 2, (long) LibCziMetrics.snapshot().nativeCalls().get("test_twice"));
+    }
+
+    @Test
+    public void testBitmapDataBytesAreHeldUntilClose() throws Exception {
+        long before = LibCziMetrics.snapshot().bitmapDataBytes();
+        BitmapData data = BitmapData.copyOf(new BitmapInfo(4, 2, PixelType.Gray16), 8,
+            MemorySegment.ofArray(new byte[16]));
+        assertEquals(before + 16, LibCziMetrics.snapshot().bitmapDataBytes());
+        data.close();
+        assertEquals(before, LibCziMetrics.snapshot().bitmapDataBytes());
+    }
+
+    @Test
+    public void testBytesDecodedCountOncePerBitmap() throws Exception {
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(TEST_IMAGE_PATH.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader)) {
+            long before = LibCziMetrics.snapshot().bytesDecoded();
+            Bitmap bitmap = accessor.getBitmapRaw(new IntRect(40960, 4096, 256, 128), 1.0f);
+            try {
+                int bytesPerPixel;
+                try (LockedBitmapView first = bitmap.lockData()) {
+                    bytesPerPixel = first.pixelType().bytesPerPixel();
+                }
+                try (LockedBitmapView second = bitmap.lockData()) {
+                    assertNotNull(second);
+                }
+                bitmap.getBitmapInfo();
+                assertEquals(256L * 128 * bytesPerPixel, LibCziMetrics.snapshot().bytesDecoded() - before);
+            } finally {
+                bitmap.release();
+            }
+        }
+    }
+
+    @Test
+    public void testOpenObjectsFollowRegistrations() {
+        Object owner = new Object();
+        long before = LibCziMetrics.snapshot().openObjects().getOrDefault("TestObject", 0L);
+        NativeResourceTracker.Registration registration = NativeResourceTracker.track(owner, "TestObject");
+        assertEquals(before + 1, (long) LibCziMetrics.snapshot().openObjects().get("TestObject"));
+        assertTrue(registration.release());
+        assertFalse(registration.release());
+        assertEquals(before, (long) LibCziMetrics.snapshot().openObjects().get("TestObject"));
+    }
+
+    @Test
+    public void testMemoryMappedReadsAreCounted() throws Exception {
+        Path data = Files.createTempFile("libczi-mapped", ".bin");
+        Files.write(data, new byte[1000]);
+        try (FileChannel channel = FileChannel.open(data);
+                MemoryMappedInputStreamBridge bridge = new MemoryMappedInputStreamBridge(channel);
+                Arena arena = Arena.ofConfined()) {
+            MemorySegment buffer = arena.allocate(200);
+            MemorySegment bytesRead = arena.allocate(ValueLayout.JAVA_LONG);
+            LibCziMetrics.Snapshot before = LibCziMetrics.snapshot();
+
+            assertEquals(0, bridge.readFunctionImplementation(0, 0, 900, buffer, 200, bytesRead, MemorySegment.NULL));
+            assertEquals(-1, bridge.readFunctionImplementation(0, 0, -1, buffer, 200, bytesRead, MemorySegment.NULL));
+
+            LibCziMetrics.Snapshot after = LibCziMetrics.snapshot();
+            assertEquals(before.bridgeReads() + 2, after.bridgeReads());
+            assertEquals(before.bridgeBytesRead() + 100, after.bridgeBytesRead());
+            assertEquals(before.bridgeReadFailures() + 1, after.bridgeReadFailures());
+        } finally {
+            Files.deleteIfExists(data);
+        }
+    }
+
+    @Test
+    public void testMBeanRegistration() throws Exception {
+        ObjectName name = LibCziMetrics.registerMBean();
+        try {
+            assertEquals(name, LibCziMetrics.registerMBean());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            assertEquals(LibCziMetrics.snapshot().bitmapDataBytes(), server.getAttribute(name, "BitmapDataBytes"));
+            assertNotNull(server.getAttribute(name, "NativeCalls"));
+            assertNotNull(server.getAttribute(name, "TileLatencyP99Micros"));
+        } finally {
+            LibCziMetrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
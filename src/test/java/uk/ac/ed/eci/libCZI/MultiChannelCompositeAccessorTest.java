@@ -0,0 +1,162 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.document.CompositionChannelInfo;
+
+public class MultiChannelCompositeAccessorTest {
+
+    @Test
+    public void testLinearLookUpTable() {
+        int[] table = ChannelBlender.lookUpTable(CompositionChannelInfo.linear(1, 255, 0, 0, 0.25f, 0.75f), 256);
+
+        assertEquals(0, table[0]);
+        assertEquals(0, table[63]);
+        assertEquals(129, table[128]);
+        assertEquals(255, table[192]);
+        assertEquals(255, table[255]);
+    }
+
+    @Test
+    public void testGivenLookUpTableIsResampled() {
+        byte[] inverted = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            inverted[i] = (byte) (255 - i);
+        }
+        CompositionChannelInfo info = new CompositionChannelInfo(1, false, 0, 0, 0, 0, 1, inverted);
+
+        int[] table = ChannelBlender.lookUpTable(info, 65536);
+
+        assertEquals(255, table[0]);
+        assertEquals(0, table[65535]);
+    }
+
+    @Test
+    public void testBlendTintsAndSaturates() {
+        ChannelBlender red = new ChannelBlender(CompositionChannelInfo.linear(1, 255, 0, 0, 0, 1), PixelType.Gray8);
+        ChannelBlender yellow = new ChannelBlender(CompositionChannelInfo.linear(0.5f, 255, 255, 0, 0, 1), PixelType.Gray8);
+        MemorySegment first = MemorySegment.ofArray(new byte[] { 0, 100, (byte) 255 });
+        MemorySegment second = MemorySegment.ofArray(new byte[] { 50, 100, (byte) 255 });
+        int[] accB = new int[3];
+        int[] accG = new int[3];
+        int[] accR = new int[3];
+
+        red.accumulate(first, 3, accB, accG, accR);
+        yellow.accumulate(second, 3, accB, accG, accR);
+        byte[] pixels = new byte[9];
+        ChannelBlender.store(accB, accG, accR, 3, MemorySegment.ofArray(pixels), 0);
+
+        // Bgr24: blue, green, red for each pixel.
+        assertEquals(0, pixels[0]);
+        assertEquals(25, pixels[1] & 0xFF);
+        assertEquals(25, pixels[2] & 0xFF);
+        assertEquals(150, pixels[5] & 0xFF);
+        assertEquals(127, pixels[7] & 0xFF);
+        assertEquals(255, pixels[8] & 0xFF);
+    }
+
+    @Test
+    public void testBlendSixteenBit() {
+        ChannelBlender grey = new ChannelBlender(
+            new CompositionChannelInfo(1, false, 0, 0, 0, 0, 1, new byte[0]), PixelType.Gray16);
+        MemorySegment row = MemorySegment.ofArray(new short[] { 0, (short) 65535 });
+        int[] accB = new int[2];
+        int[] accG = new int[2];
+        int[] accR = new int[2];
+
+        grey.accumulate(row, 2, accB, accG, accR);
+        byte[] pixels = new byte[6];
+        ChannelBlender.store(accB, accG, accR, 2, MemorySegment.ofArray(pixels), 0);
+
+        assertArrayEquals(new byte[] { 0, 0, 0, (byte) 255, (byte) 255, (byte) 255 }, pixels);
+    }
+
+    @Test
+    public void testBlendRowLongerThanAVector() {
+        ChannelBlender cyan = new ChannelBlender(CompositionChannelInfo.linear(1, 0, 255, 255, 0, 1), PixelType.Gray8);
+        int width = 37;
+        byte[] row = new byte[width];
+        for (int x = 0; x < width; x++) {
+            row[x] = (byte) (7 * x);
+        }
+        int[] accB = new int[width];
+        int[] accG = new int[width];
+        int[] accR = new int[width];
+
+        cyan.accumulate(MemorySegment.ofArray(row), width, accB, accG, accR);
+        cyan.accumulate(MemorySegment.ofArray(row), width, accB, accG, accR);
+
+        for (int x = 0; x < width; x++) {
+            assertEquals(2 * (7 * x << ChannelBlender.SHIFT), accB[x]);
+            assertEquals(2 * (7 * x << ChannelBlender.SHIFT), accG[x]);
+            assertEquals(0, accR[x]);
+        }
+    }
+
+    @Test
+    public void testCoordinateWith() {
+        Coordinate zt = new Coordinate(1 | 4, new int[] { 3, 7, 0, 0, 0, 0, 0, 0, 0 });
+
+        Coordinate withC = zt.with(2, 5);
+
+        assertEquals(1 | 2 | 4, withC.dimensionsValid());
+        assertEquals(3, withC.get(1));
+        assertEquals(5, withC.get(2));
+        assertEquals(7, withC.get(4));
+        assertEquals(9, withC.with(2, 9).get(2));
+    }
+
+    @Test
+    public void testCompositeMatchesChannels() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).channels(2).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                MultiChannelCompositeAccessor accessor = MultiChannelCompositeAccessor.builder(reader)
+                    .channelInfo(0, CompositionChannelInfo.linear(1, 255, 0, 0, 0, 1))
+                    .channelInfo(1, CompositionChannelInfo.linear(1, 0, 255, 0, 0, 1))
+                    .build()) {
+            assertArrayEquals(new int[] { 0, 1 }, accessor.channels());
+
+            try (BitmapData rgb = accessor.getBitmapData(new IntRect(100, 200, 300, 40), 1.0f)) {
+                assertEquals(PixelType.Bgr24, rgb.pixelType());
+                assertEquals(300, rgb.width());
+                assertEquals(40, rgb.height());
+                for (int x = 0; x < 300; x += 37) {
+                    assertEquals(0, rgb.getUnsignedByte(x, 10, 0));
+                    assertEquals(SyntheticCzi.pixelValue(100 + x, 210, 1), rgb.getUnsignedByte(x, 10, 1));
+                    assertEquals(SyntheticCzi.pixelValue(100 + x, 210, 0), rgb.getUnsignedByte(x, 10, 2));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedCompositeLeavesReaderUsable() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).channels(2).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                MultiChannelCompositeAccessor accessor = MultiChannelCompositeAccessor.builder(reader).build()) {
+            IntRect roi = new IntRect(0, 0, 512, 512);
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(CziReaderException.class, () -> accessor.getBitmapData(roi, 1.0f));
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+            }
+
+            // The reads ran to the end rather than being interrupted, so the file is still open.
+            try (BitmapData rgb = accessor.getBitmapData(roi, 1.0f)) {
+                assertEquals(512, rgb.width());
+            }
+        }
+    }
+}
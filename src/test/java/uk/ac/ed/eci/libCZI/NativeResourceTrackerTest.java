@@ -0,0 +1,48 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class NativeResourceTrackerTest {
+
+    @Test
+    public void testReleaseRunsOnce() {
+        AtomicInteger releases = new AtomicInteger();
+        NativeResourceTracker.Registration registration =
+            NativeResourceTracker.register(new Object(), "Test", releases::incrementAndGet);
+
+        assertTrue(registration.release());
+        assertFalse(registration.release());
+        assertTrue(registration.isReleased());
+        assertEquals(1, releases.get());
+    }
+
+    @Test
+    public void testCollectedOwnerIsReleased() throws Exception {
+        AtomicInteger releases = new AtomicInteger();
+        long leaksBefore = NativeResourceTracker.leakCount();
+        NativeResourceTracker.register(new Object(), "Test", releases::incrementAndGet);
+
+        for (int i = 0; i < 100 && releases.get() == 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(1, releases.get());
+        assertTrue(NativeResourceTracker.leakCount() > leaksBefore);
+    }
+
+    @Test
+    public void testTrackedOwnerIsOnlyReported() throws Exception {
+        long leaksBefore = NativeResourceTracker.leakCount();
+        NativeResourceTracker.track(new Object(), "Test");
+
+        for (int i = 0; i < 100 && NativeResourceTracker.leakCount() == leaksBefore; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue(NativeResourceTracker.leakCount() > leaksBefore);
+    }
+}
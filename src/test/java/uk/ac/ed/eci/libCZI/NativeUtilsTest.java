@@ -0,0 +1,120 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class NativeUtilsTest {
+
+    @Test
+    public void testSameContentIsExtractedOnce() throws Exception {
+        Path cacheDir = Files.createTempDirectory("libczi-native-test");
+        byte[] library = { 1, 2, 3, 4 };
+        Path first = NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so", cacheDir);
+        FileTime written = Files.getLastModifiedTime(first);
+        Files.setLastModifiedTime(first, FileTime.fromMillis(written.toMillis() - 60_000));
+
+        Path second = NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so", cacheDir);
+
+        assertEquals(first, second);
+        assertEquals("libCZIAPI.so", second.getFileName().toString());
+        assertArrayEquals(library, Files.readAllBytes(second));
+        assertEquals(written.toMillis() - 60_000, Files.getLastModifiedTime(second).toMillis());
+    }
+
+    @Test
+    public void testDifferentContentGetsItsOwnDirectory() throws Exception {
+        Path cacheDir = Files.createTempDirectory("libczi-native-test");
+        Path first = NativeUtils.extract(new ByteArrayInputStream(new byte[] { 1 }), "libCZIAPI.so", cacheDir);
+        Path second = NativeUtils.extract(new ByteArrayInputStream(new byte[] { 2 }), "libCZIAPI.so", cacheDir);
+
+        assertNotEquals(first.getParent(), second.getParent());
+        assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(first));
+    }
+
+    @Test
+    public void testTamperedCopyIsReplaced() throws Exception {
+        Path cacheDir = Files.createTempDirectory("libczi-native-test");
+        byte[] library = { 5, 6, 7 };
+        Path first = NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so", cacheDir);
+        Files.write(first, new byte[] { 9, 9, 9 });
+
+        Path second = NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so", cacheDir);
+
+        assertEquals(first, second);
+        assertArrayEquals(library, Files.readAllBytes(second));
+    }
+
+    @Test
+    public void testConcurrentExtractionLeavesOneCompleteCopy() throws Exception {
+        Path cacheDir = Files.createTempDirectory("libczi-native-test");
+        byte[] library = new byte[1 << 20];
+        new Random(1).nextBytes(library);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Callable<Path> extract = () -> NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so",
+                    cacheDir);
+                results.add(executor.submit(extract));
+            }
+            Set<Path> paths = new HashSet<>();
+            for (Future<Path> result : results) {
+                paths.add(result.get());
+            }
+            assertEquals(1, paths.size());
+            Path extracted = paths.iterator().next();
+            assertArrayEquals(library, Files.readAllBytes(extracted));
+            try (var files = Files.list(extracted.getParent())) {
+                assertEquals(1, files.count(), "No partial files should be left behind");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCacheDirectoriesArePrivate() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path cacheDir = Files.createTempDirectory("libczi-native-test").resolve("cache");
+        Path extracted = NativeUtils.extract(new ByteArrayInputStream(new byte[] { 3 }), "libCZIAPI.so", cacheDir);
+
+        assertEquals(cacheDir, extracted.getParent().getParent());
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDir)));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(extracted.getParent())));
+    }
+
+    @Test
+    public void testCacheWritableByOthersIsNotUsed() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path cacheDir = Files.createTempDirectory("libczi-native-test");
+        Files.setPosixFilePermissions(cacheDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        byte[] library = { 4, 2 };
+
+        Path extracted = NativeUtils.extract(new ByteArrayInputStream(library), "libCZIAPI.so", cacheDir);
+
+        assertFalse(extracted.startsWith(cacheDir));
+        assertArrayEquals(library, Files.readAllBytes(extracted));
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.ac.ed.eci.libCZI.document.ScalingInfo;
+import uk.ac.ed.eci.libCZI.export.ExportStatistics;
+import uk.ac.ed.eci.libCZI.export.OmeZarrExporter;
+import uk.ac.ed.eci.libCZI.export.ZarrVersion;
+
+public class OmeZarrExporterTest {
+    private static final ScalingInfo UNSCALED = new ScalingInfo(Double.NaN, Double.NaN, Double.NaN);
+
+    @Test
+    public void testExportV2MatchesPlane() throws Exception {
+        Path path = SyntheticCzi.builder().size(700, 500).tileSize(256).channels(2).build().writeTempFile();
+        Path output = Files.createTempDirectory("zarr-v2");
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            ExportStatistics statistics = OmeZarrExporter.builder(reader).chunkSize(256).scaling(UNSCALED)
+                .readParallelism(2).encodeParallelism(2).maxChunksInFlight(2).build().export(output);
+
+            assertEquals(3, statistics.levels());
+            // Level 0 has 3 by 2 chunks, level 1 2 by 1 and level 2 one, for each of two channels.
+            assertEquals(18, statistics.chunksWritten());
+            assertEquals(0, statistics.chunksSkipped());
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        assertTrue(Files.exists(output.resolve(".zgroup")));
+        JsonNode attributes = mapper.readTree(output.resolve(".zattrs").toFile());
+        assertEquals(3, attributes.path("multiscales").path(0).path("datasets").size());
+        JsonNode array = mapper.readTree(output.resolve("0").resolve(".zarray").toFile());
+        assertEquals("|u1", array.path("dtype").asText());
+        assertEquals(500, array.path("shape").path(3).asInt());
+        assertEquals(700, array.path("shape").path(4).asInt());
+        assertEquals(2, array.path("shape").path(1).asInt());
+
+        byte[] chunk = inflate(Files.readAllBytes(output.resolve("0/0/1/0/0/1")), 256 * 256);
+        for (int y = 0; y < 256; y += 17) {
+            for (int x = 0; x < 256; x += 13) {
+                assertEquals(SyntheticCzi.pixelValue(256 + x, y, 1), chunk[y * 256 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void testExportV3PadsEdgeChunks() throws Exception {
+        Path path = SyntheticCzi.builder().size(700, 500).tileSize(256).build().writeTempFile();
+        Path output = Files.createTempDirectory("zarr-v3");
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            OmeZarrExporter.builder(reader).version(ZarrVersion.V3).chunkSize(256).levels(1).compressionLevel(0)
+                .scaling(UNSCALED).build().export(output);
+        }
+
+        JsonNode array = new ObjectMapper().readTree(output.resolve("0").resolve("zarr.json").toFile());
+        assertEquals("uint8", array.path("data_type").asText());
+        assertTrue(Files.exists(output.resolve("zarr.json")));
+
+        // The last chunk holds columns 512 to 699 and rows 256 to 499 of the image.
+        byte[] chunk = Files.readAllBytes(output.resolve("0/c/0/0/0/1/2"));
+        assertEquals(256 * 256, chunk.length);
+        assertEquals(SyntheticCzi.pixelValue(699, 499, 0), chunk[243 * 256 + 187] & 0xFF);
+        assertEquals(0, chunk[243 * 256 + 188]);
+        assertEquals(0, chunk[244 * 256]);
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws Exception {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                length += inflater.inflate(result, length, size - length);
+            }
+            assertEquals(size, length);
+            return result;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+public class PlaneTilerTest {
+
+    @Test
+    public void testGridCoversRegionWithOverlap() {
+        List<IntRect> regions = PlaneTiler.grid(new IntRect(100, 200, 1000, 600), 256, 32, false);
+
+        assertEquals(PlaneTiler.gridSize(1000, 256, 32) * PlaneTiler.gridSize(600, 256, 32), regions.size());
+        assertEquals(new IntRect(100, 200, 256, 256), regions.get(0));
+        assertEquals(new IntRect(324, 200, 256, 256), regions.get(1));
+        IntRect last = regions.get(regions.size() - 1);
+        assertTrue(last.x() + last.w() >= 1100);
+        assertTrue(last.y() + last.h() >= 800);
+    }
+
+    @Test
+    public void testGridClipsToRegion() {
+        List<IntRect> regions = PlaneTiler.grid(new IntRect(0, 0, 600, 300), 256, 0, true);
+
+        assertEquals(6, regions.size());
+        assertEquals(new IntRect(512, 0, 88, 256), regions.get(2));
+        assertEquals(new IntRect(512, 256, 88, 44), regions.get(5));
+    }
+
+    @Test
+    public void testSceneBoundsCoverOnlyTheScenesLayer0SubBlocks() {
+        int sc = 2 | 16;
+        SubBlockIndex index = SubBlockIndex.of(List.of(
+            new SubBlockInfo(0, 0, PixelType.Gray8, new Coordinate(sc, new int[] { 0, 0, 0, 0, 0, 0, 0, 0, 0 }),
+                new IntRect(0, 0, 100, 100), new IntSize(100, 100), 0),
+            new SubBlockInfo(1, 0, PixelType.Gray8, new Coordinate(sc, new int[] { 0, 1, 0, 0, 0, 0, 0, 0, 0 }),
+                new IntRect(5000, 3000, 200, 100), new IntSize(200, 100), 0),
+            new SubBlockInfo(2, 0, PixelType.Gray8, new Coordinate(sc, new int[] { 0, 1, 0, 0, 0, 0, 0, 0, 0 }),
+                new IntRect(5200, 3100, 100, 50), new IntSize(100, 50), 1),
+            // A pyramid sub-block reaching past the scene's layer-0 bounds.
+            new SubBlockInfo(3, 0, PixelType.Gray8, new Coordinate(sc, new int[] { 0, 1, 0, 0, 0, 0, 0, 0, 0 }),
+                new IntRect(5000, 3000, 1000, 1000), new IntSize(250, 250), 2)));
+
+        assertEquals(new IntRect(5000, 3000, 300, 150), PlaneTiler.sceneBounds(index, 1));
+        assertEquals(new IntRect(0, 0, 100, 100), PlaneTiler.sceneBounds(index, 0));
+        assertNull(PlaneTiler.sceneBounds(index, 2));
+    }
+
+    @Test
+    public void testGridSize() {
+        assertEquals(0, PlaneTiler.gridSize(0, 256, 0));
+        assertEquals(1, PlaneTiler.gridSize(100, 256, 0));
+        assertEquals(1, PlaneTiler.gridSize(256, 256, 0));
+        assertEquals(2, PlaneTiler.gridSize(257, 256, 0));
+        assertEquals(2, PlaneTiler.gridSize(480, 256, 32));
+        assertEquals(3, PlaneTiler.gridSize(481, 256, 32));
+    }
+
+    @Test
+    public void testOrderedTilesMatchPlane() throws Exception {
+        Path path = SyntheticCzi.builder().size(1000, 700).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            PlaneTiler tiler = PlaneTiler.builder(reader).tileSize(300).overlap(20).clipToRegion(true)
+                .parallelism(3).maxTilesInFlight(2).build();
+
+            int expected = 0;
+            try (Stream<PlaneTile> tiles = tiler.stream()) {
+                for (PlaneTile tile : (Iterable<PlaneTile>) tiles::iterator) {
+                    try (tile; BitmapData data = tile.bitmap().getBitmapData()) {
+                        assertEquals(expected++, tile.index());
+                        assertEquals(tiler.regions().get(tile.index()), tile.region());
+                        int x = tile.region().w() - 1;
+                        int y = tile.region().h() - 1;
+                        assertEquals(SyntheticCzi.pixelValue(tile.region().x() + x, tile.region().y() + y, 0),
+                            data.getUnsignedByte(x, y));
+                    }
+                }
+            }
+            assertEquals(tiler.tileCount(), expected);
+        }
+    }
+
+    @Test
+    public void testUnorderedTilesCoverGrid() throws Exception {
+        Path path = SyntheticCzi.builder().size(1024, 1024).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            PlaneTiler tiler = PlaneTiler.builder(reader).tileSize(128).zoom(0.5f).ordered(false).parallelism(4).build();
+
+            List<Integer> indices;
+            try (Stream<PlaneTile> tiles = tiler.stream()) {
+                indices = tiles.map(tile -> {
+                    try (tile) {
+                        assertEquals(64, tile.bitmap().getBitmapInfo().width());
+                        return tile.index();
+                    }
+                }).sorted().collect(Collectors.toList());
+            }
+            assertEquals(64, indices.size());
+            for (int i = 0; i < indices.size(); i++) {
+                assertEquals(i, indices.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testClosingEarlyReleasesUntakenTiles() throws Exception {
+        Path path = SyntheticCzi.builder().size(2048, 2048).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            PlaneTiler tiler = PlaneTiler.builder(reader).tileSize(256).parallelism(4).build();
+
+            try (Stream<PlaneTile> tiles = tiler.stream()) {
+                try (PlaneTile first = tiles.findFirst().orElseThrow()) {
+                    assertEquals(0, first.index());
+                }
+            }
+        }
+    }
+}
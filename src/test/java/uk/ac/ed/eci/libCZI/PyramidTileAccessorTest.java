@@ -0,0 +1,58 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+
+public class PyramidTileAccessorTest {
+
+    @Test
+    public void testLayersFromStatistics() {
+        ScenePyramidStatistics stats = ScenePyramidStatistics.fromJson("""
+            {"scenePyramidStatistics":{"0":[{"layerInfo":{"minificationFactor":0,"pyramidLayerNo":0},"count":64},{"layerInfo":{"minificationFactor":2,"pyramidLayerNo":1},"count":16},{"layerInfo":{"minificationFactor":2,"pyramidLayerNo":2},"count":4}],"1":[{"layerInfo":{"minificationFactor":0,"pyramidLayerNo":0},"count":64},{"layerInfo":{"minificationFactor":2,"pyramidLayerNo":1},"count":16}]}}
+            """);
+        List<PyramidLayer> layers = PyramidTileAccessor.layersFromStatistics(stats);
+
+        assertEquals(3, layers.size());
+        assertEquals(new PyramidLayer(0, 0, 1.0, 128), layers.get(0));
+        assertEquals(new PyramidLayer(1, 2, 0.5, 32), layers.get(1));
+        assertEquals(new PyramidLayer(2, 2, 0.25, 4), layers.get(2));
+
+        assertEquals(0, PyramidTileAccessor.chooseLayer(layers, 1.0f).layerNo());
+        assertEquals(1, PyramidTileAccessor.chooseLayer(layers, 0.3f).layerNo());
+        assertEquals(1, PyramidTileAccessor.chooseLayer(layers, 0.5f).layerNo());
+        assertEquals(2, PyramidTileAccessor.chooseLayer(layers, 0.25f).layerNo());
+        assertEquals(2, PyramidTileAccessor.chooseLayer(layers, 0.01f).layerNo());
+    }
+
+    @Test
+    public void testFileWithoutPyramidUsesLayerZero() {
+        List<PyramidLayer> layers = PyramidTileAccessor.layersFromStatistics(new ScenePyramidStatistics());
+
+        assertEquals(1, layers.size());
+        assertEquals(0, PyramidTileAccessor.chooseLayer(layers, 0.1f).layerNo());
+    }
+
+    @Test
+    public void testTileServedFromChosenLayer() throws Exception {
+        Path path = SyntheticCzi.builder().size(2048, 2048).tileSize(256).pyramidLayers(2).build().writeTempFile();
+        IntRect roi = new IntRect(512, 512, 1024, 1024);
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                PyramidTileAccessor accessor = new PyramidTileAccessor(reader);
+                PyramidTile tile = accessor.getTile(roi, 0.3f)) {
+            assertEquals(1, tile.layer().layerNo());
+            assertEquals(0.5f, tile.zoom());
+
+            BitmapInfo info = tile.bitmap().getBitmapInfo();
+            assertEquals(512, info.width());
+            assertEquals(512, info.height());
+        }
+    }
+}
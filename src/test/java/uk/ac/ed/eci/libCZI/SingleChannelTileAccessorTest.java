@@ -1,10 +1,18 @@
 package uk.ac.ed.eci.libCZI;
 
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,6 +20,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapInfo;
+
 public class SingleChannelTileAccessorTest {
     private static final Path TEST_IMAGE_PATH = Paths.get("test-images", "test-image.czi");
     private CZIInputStream stream;
@@ -57,4 +69,85 @@ public class SingleChannelTileAccessorTest {
         assertEquals(expectedWidth, size.w());
         assertEquals(expectedHeight, size.h());
     }
+
+    private static List<IntRect> tileRow(int count, int size) {
+        List<IntRect> rois = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rois.add(new IntRect(-123000 + i * size, 30000, size, size * (i + 1)));
+        }
+        return rois;
+    }
+
+    @Test
+    public void testGetBitmapsReturnsRequestOrder() throws Exception {
+        List<IntRect> rois = tileRow(6, 256);
+        List<Bitmap> bitmaps = accessor.getBitmaps(rois, 1.0f, Coordinate.createC0(), AccessorOptions.builder().build());
+
+        try {
+            assertEquals(rois.size(), bitmaps.size());
+            for (int i = 0; i < rois.size(); i++) {
+                BitmapInfo info = bitmaps.get(i).getBitmapInfo();
+                assertEquals(rois.get(i).w(), info.width());
+                assertEquals(rois.get(i).h(), info.height());
+            }
+        } finally {
+            bitmaps.forEach(Bitmap::release);
+        }
+    }
+
+    @Test
+    public void testGetBitmapsInParallel() throws Exception {
+        List<IntRect> rois = tileRow(12, 128);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Bitmap> bitmaps = accessor.getBitmaps(rois, 1.0f, Coordinate.createC0(), AccessorOptions.builder().build(),
+                executor, 3);
+
+            try {
+                assertEquals(rois.size(), bitmaps.size());
+                for (int i = 0; i < rois.size(); i++) {
+                    BitmapInfo info = bitmaps.get(i).getBitmapInfo();
+                    assertEquals(rois.get(i).w(), info.width());
+                    assertEquals(rois.get(i).h(), info.height());
+                }
+            } finally {
+                bitmaps.forEach(Bitmap::release);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetBitmapRawIntoAssemblesMosaic() throws Exception {
+        List<IntRect> rois = List.of(new IntRect(-123000, 30000, 128, 128), new IntRect(-122872, 30000, 128, 128));
+        Coordinate c0 = Coordinate.createC0();
+        AccessorOptions options = AccessorOptions.builder().build();
+        try (Arena arena = Arena.ofConfined()) {
+            int pixelSize;
+            try (Bitmap first = accessor.getBitmapRaw(rois.get(0), 1.0f)) {
+                pixelSize = first.getBitmapInfo().pixelType().bytesPerPixel();
+            }
+            int stride = 2 * 128 * pixelSize;
+            MemorySegment mosaic = arena.allocate((long) stride * 128);
+
+            BitmapInfo written = accessor.getBitmapRawInto(rois.get(0), 1.0f, c0, options, mosaic, 0, stride);
+            IntRect clipped = accessor.getBitmapRawInto(rois.get(1), 1.0f, c0, options, mosaic, 0, stride,
+                new IntSize(2 * 128 - 28, 128), 128, 0);
+
+            assertEquals(128, written.width());
+            assertEquals(new IntRect(128, 0, 100, 128), clipped);
+            for (int i = 0; i < rois.size(); i++) {
+                try (Bitmap bitmap = accessor.getBitmapRaw(rois.get(i), 1.0f);
+                        BitmapData tile = bitmap.getBitmapData()) {
+                    int width = i == 0 ? 128 : 100;
+                    byte[] expected = tile.segment().asSlice(64L * tile.stride(), (long) width * pixelSize)
+                        .toArray(JAVA_BYTE);
+                    byte[] actual = mosaic.asSlice(64L * stride + (long) i * 128 * pixelSize, (long) width * pixelSize)
+                        .toArray(JAVA_BYTE);
+                    assertArrayEquals(expected, actual);
+                }
+            }
+        }
+    }
 }
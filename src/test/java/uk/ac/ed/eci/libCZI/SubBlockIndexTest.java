@@ -0,0 +1,107 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class SubBlockIndexTest {
+
+    private static SubBlockInfo entry(int index, IntRect rect, int zoomDivisor, int channel) {
+        int[] value = new int[LibCziFFM.K_MAX_DIMENSION_COUNT];
+        value[0] = channel;
+        return new SubBlockInfo(index, 0, PixelType.Gray8, new Coordinate(2, value), rect,
+            new IntSize(rect.w() / zoomDivisor, rect.h() / zoomDivisor), index);
+    }
+
+    private static int[] bruteForce(List<SubBlockInfo> entries, IntRect region) {
+        return entries.stream()
+            .filter(e -> e.logicalRect().x() < region.x() + region.w() && region.x() < e.logicalRect().x() + e.logicalRect().w()
+                && e.logicalRect().y() < region.y() + region.h() && region.y() < e.logicalRect().y() + e.logicalRect().h())
+            .mapToInt(SubBlockInfo::index)
+            .toArray();
+    }
+
+    @Test
+    public void testQueryMatchesBruteForce() {
+        Random random = new Random(42);
+        List<SubBlockInfo> entries = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int size = random.nextInt(10) == 0 ? 2048 : 256;
+            entries.add(entry(i, new IntRect(random.nextInt(20000) - 5000, random.nextInt(20000) - 5000, size, size), 1, 0));
+        }
+        SubBlockIndex index = SubBlockIndex.of(entries);
+
+        for (int q = 0; q < 200; q++) {
+            IntRect region = new IntRect(random.nextInt(24000) - 7000, random.nextInt(24000) - 7000,
+                1 + random.nextInt(3000), 1 + random.nextInt(3000));
+            assertArrayEquals(bruteForce(entries, region), index.query(region), "Query " + region);
+        }
+    }
+
+    @Test
+    public void testQueryOutsideAndEmpty() {
+        SubBlockIndex index = SubBlockIndex.of(List.of(entry(0, new IntRect(0, 0, 256, 256), 1, 0)));
+
+        assertEquals(0, index.query(new IntRect(256, 0, 10, 10)).length);
+        assertEquals(0, index.query(new IntRect(10, 10, 0, 10)).length);
+        assertArrayEquals(new int[] { 0 }, index.query(new IntRect(255, 255, 1, 1)));
+        assertEquals(0, SubBlockIndex.of(List.of()).query(new IntRect(0, 0, 10, 10)).length);
+    }
+
+    @Test
+    public void testFiltersPlaneAndLayer() {
+        List<SubBlockInfo> entries = List.of(
+            entry(0, new IntRect(0, 0, 256, 256), 1, 0),
+            entry(1, new IntRect(0, 0, 256, 256), 1, 1),
+            entry(2, new IntRect(0, 0, 512, 512), 2, 0));
+        SubBlockIndex index = SubBlockIndex.of(entries);
+        IntRect region = new IntRect(0, 0, 100, 100);
+
+        assertEquals(3, index.subBlocks(region).size());
+        assertEquals(2, index.subBlocks(region, Coordinate.createC0(), false).size());
+        List<SubBlockInfo> layer0 = index.subBlocks(region, Coordinate.createC0(), true);
+        assertEquals(1, layer0.size());
+        assertEquals(entries.get(0).logicalRect(), layer0.get(0).logicalRect());
+        assertEquals(0.5, entries.get(2).zoom());
+        assertFalse(entries.get(2).isLayer0());
+    }
+
+    @Test
+    public void testCoordinateValuesArePacked() {
+        // Z and T valid, so values hold Z then T.
+        Coordinate coordinate = new Coordinate(1 | 4, new int[] { 3, 7, 0, 0, 0, 0, 0, 0, 0 });
+        assertEquals(3, coordinate.get(1));
+        assertEquals(7, coordinate.get(4));
+        assertFalse(coordinate.isValid(2));
+        assertTrue(coordinate.matches(new Coordinate(4, new int[] { 7, 0, 0, 0, 0, 0, 0, 0, 0 })));
+        assertFalse(coordinate.matches(Coordinate.createC0()));
+    }
+
+    @Test
+    public void testReaderDirectory() throws Exception {
+        SyntheticCzi synthetic = SyntheticCzi.builder().size(2048, 2048).tileSize(256).pyramidLayers(2).build();
+        Path path = synthetic.writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            SubBlockIndex index = reader.subBlockIndex();
+            assertSame(index, reader.subBlockIndex());
+            assertEquals(84, index.size());
+            assertEquals(new IntRect(0, 0, 2048, 2048), index.boundingBox());
+            assertEquals(64, index.all().stream().filter(SubBlockInfo::isLayer0).count());
+
+            // One layer-0 tile, plus the layer-1 and layer-2 tiles covering it.
+            List<SubBlockInfo> hits = index.subBlocks(new IntRect(300, 300, 10, 10));
+            assertEquals(3, hits.size());
+            SubBlockInfo first = reader.subBlockInfo(hits.get(0).index());
+            assertEquals(hits.get(0), first);
+            assertEquals(CompressionMode.UnCompressed, first.compressionMode());
+            assertEquals(PixelType.Gray8, first.pixelType());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+public class SubBlockTest {
+
+    @Test
+    public void testRawPayloadMatchesPattern() throws Exception {
+        Path path = SyntheticCzi.builder().size(1024, 512).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SubBlock subBlock = reader.readSubBlock(5)) {
+            SubBlockInfo info = subBlock.info();
+            assertEquals(reader.subBlockIndex().get(5), info);
+            assertEquals(CompressionMode.UnCompressed, info.compressionMode());
+
+            // Uncompressed Gray8, so the payload is the pixels row by row.
+            MemorySegment raw = subBlock.rawData();
+            assertTrue(raw.isReadOnly());
+            assertEquals(256L * 256, raw.byteSize());
+            IntRect rect = info.logicalRect();
+            for (int y = 0; y < 256; y += 17) {
+                for (int x = 0; x < 256; x += 13) {
+                    assertEquals(SyntheticCzi.pixelValue(rect.x() + x, rect.y() + y, 0),
+                        Byte.toUnsignedInt(raw.get(JAVA_BYTE, y * 256L + x)));
+                }
+            }
+            assertEquals("", subBlock.metadataXml());
+        }
+    }
+
+    @Test
+    public void testDecodedBitmapOutlivesSubBlock() throws Exception {
+        Path path = SyntheticCzi.builder().size(512, 512).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            Bitmap bitmap;
+            IntRect rect;
+            try (SubBlock subBlock = reader.readSubBlock(3)) {
+                bitmap = subBlock.createBitmap();
+                rect = subBlock.info().logicalRect();
+            }
+            try (bitmap; BitmapData data = bitmap.getBitmapData()) {
+                assertEquals(256, data.width());
+                assertEquals(PixelType.Gray8, data.pixelType());
+                assertEquals(SyntheticCzi.pixelValue(rect.x() + 10, rect.y() + 20, 0), data.getUnsignedByte(10, 20));
+            }
+        }
+    }
+
+    @Test
+    public void testClosedSubBlockCannotBeRead() throws Exception {
+        Path path = SyntheticCzi.builder().size(256, 256).tileSize(256).build().writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            SubBlock subBlock = reader.readSubBlock(0);
+            MemorySegment raw = subBlock.rawData();
+            subBlock.close();
+            subBlock.close();
+
+            assertThrows(CziSubBlockException.class, subBlock::createBitmap);
+            assertThrows(IllegalStateException.class, () -> raw.get(JAVA_BYTE, 0));
+            assertThrows(CziSubBlockException.class, () -> reader.readSubBlock(1));
+        }
+    }
+}
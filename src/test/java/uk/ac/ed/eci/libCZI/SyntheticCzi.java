@@ -0,0 +1,415 @@
+package uk.ac.ed.eci.libCZI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes small, uncompressed CZI files with a known pixel pattern, so tests and benchmarks can
+ * run without a real slide. The benchmarks get it from the test jar.
+ * <p>
+ * The image is a single scene of Gray8 tiles laid out as a mosaic from the origin, with an
+ * optional image pyramid where each layer halves the resolution of the one below. Every pixel
+ * of channel {@code c} at layer-0 position (x, y) has the value {@link #pixelValue(int, int, int)};
+ * pyramid tiles sample the same pattern. The file also carries XML metadata with scaling and
+ * display settings, and any attachments that were added.
+ * </p>
+ *
+ * @see <a href="https://zeiss.github.io/libczi/">libCZI</a> for the file format
+ */
+public class SyntheticCzi {
+    private static final int SEGMENT_HEADER_SIZE = 32;
+    private static final int SEGMENT_ALIGNMENT = 32;
+    private static final int FILE_HEADER_SIZE = 512;
+    private static final int SUBBLOCK_HEADER_SIZE = 256;
+    private static final int DIRECTORY_ENTRY_SIZE = 32;
+    private static final int DIMENSION_ENTRY_SIZE = 20;
+    private static final int ATTACHMENT_ENTRY_SIZE = 128;
+    private static final int PIXEL_TYPE_GRAY8 = 0;
+    private static final int COMPRESSION_NONE = 0;
+    private static final byte PYRAMID_NONE = 0;
+    private static final byte PYRAMID_MULTIPLE = 2;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int channels;
+    private final int pyramidLayers;
+    private final List<Attachment> attachments;
+
+    private record Attachment(String name, String contentFileType, byte[] data) {}
+
+    private record Entry(long position, int x, int y, int logicalWidth, int logicalHeight,
+            int storedWidth, int storedHeight, int channel, int mIndex, byte pyramidType) {}
+
+    private SyntheticCzi(Builder builder) {
+        this.width = builder.width;
+        this.height = builder.height;
+        this.tileSize = builder.tileSize;
+        this.channels = builder.channels;
+        this.pyramidLayers = builder.pyramidLayers;
+        this.attachments = List.copyOf(builder.attachments);
+    }
+
+    public static class Builder {
+        private int width = 2048;
+        private int height = 2048;
+        private int tileSize = 512;
+        private int channels = 1;
+        private int pyramidLayers = 0;
+        private final List<Attachment> attachments = new ArrayList<>();
+
+        private Builder() {}
+
+        public SyntheticCzi build() {
+            return new SyntheticCzi(this);
+        }
+
+        public Builder size(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Image size must be positive");
+            }
+            this.width = width;
+            this.height = height;
+
+            return this;
+        }
+        public Builder tileSize(int tileSize) {
+            if (tileSize <= 0) {
+                throw new IllegalArgumentException("Tile size must be positive");
+            }
+            this.tileSize = tileSize;
+
+            return this;
+        }
+        public Builder channels(int channels) {
+            if (channels <= 0) {
+                throw new IllegalArgumentException("Channel count must be positive");
+            }
+            this.channels = channels;
+
+            return this;
+        }
+        /**
+         * @param layers the number of pyramid layers above layer 0, each with a minification factor of 2
+         */
+        public Builder pyramidLayers(int layers) {
+            if (layers < 0 || layers > 16) {
+                throw new IllegalArgumentException("Pyramid layers must be between 0 and 16");
+            }
+            this.pyramidLayers = layers;
+
+            return this;
+        }
+        public Builder attachment(String name, String contentFileType, byte[] data) {
+            this.attachments.add(new Attachment(name, contentFileType, data.clone()));
+
+            return this;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the value written at layer-0 pixel (x, y) of the given channel
+     */
+    public static int pixelValue(int x, int y, int channel) {
+        return (x + y + 64 * channel) & 0xFF;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int tileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return the number of layer-0 tiles per channel, which is also the number of M indices
+     */
+    public int tileCount() {
+        return tilesAcross(width, tileSize) * tilesAcross(height, tileSize);
+    }
+
+    /**
+     * Writes the file into a new temporary file that is deleted when the JVM exits.
+     *
+     * @return the path of the written file
+     * @throws IOException if the file cannot be written
+     */
+    public Path writeTempFile() throws IOException {
+        Path path = Files.createTempFile("synthetic-", ".czi");
+        path.toFile().deleteOnExit();
+        writeTo(path);
+        return path;
+    }
+
+    /**
+     * Writes the file, replacing any existing file at the path.
+     *
+     * @param path where to write the file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(SEGMENT_HEADER_SIZE + FILE_HEADER_SIZE);
+
+            long metadataPosition = writeSegment(channel, "ZISRAWMETADATA", metadataSegment());
+
+            List<Entry> entries = new ArrayList<>();
+            for (int layer = 0; layer <= pyramidLayers; layer++) {
+                writeLayer(channel, layer, entries);
+            }
+
+            List<Long> attachmentPositions = new ArrayList<>();
+            List<UUID> attachmentGuids = new ArrayList<>();
+            for (Attachment attachment : attachments) {
+                UUID guid = UUID.randomUUID();
+                attachmentGuids.add(guid);
+                attachmentPositions.add(writeSegment(channel, "ZISRAWATTACH", attachmentSegment(attachment, guid)));
+            }
+            long attachmentDirectoryPosition = attachments.isEmpty() ? 0
+                : writeSegment(channel, "ZISRAWATTDIR", attachmentDirectorySegment(attachmentPositions, attachmentGuids));
+
+            long directoryPosition = writeSegment(channel, "ZISRAWDIRECTORY", directorySegment(entries));
+
+            channel.position(0);
+            writeSegment(channel, "ZISRAWFILE",
+                fileHeader(directoryPosition, metadataPosition, attachmentDirectoryPosition));
+        }
+    }
+
+    private void writeLayer(FileChannel channel, int layer, List<Entry> entries) throws IOException {
+        int factor = 1 << layer;
+        int logicalTile = tileSize * factor;
+        int mIndex = 0;
+        for (int y = 0; y < height; y += logicalTile) {
+            for (int x = 0; x < width; x += logicalTile) {
+                int logicalWidth = Math.min(logicalTile, width - x);
+                int logicalHeight = Math.min(logicalTile, height - y);
+                int storedWidth = (logicalWidth + factor - 1) / factor;
+                int storedHeight = (logicalHeight + factor - 1) / factor;
+                for (int c = 0; c < channels; c++) {
+                    Entry entry = new Entry(channel.position(), x, y, logicalWidth, logicalHeight,
+                        storedWidth, storedHeight, c, mIndex, layer == 0 ? PYRAMID_NONE : PYRAMID_MULTIPLE);
+                    writeSegment(channel, "ZISRAWSUBBLOCK", subBlockSegment(entry, factor));
+                    entries.add(entry);
+                }
+                mIndex++;
+            }
+        }
+    }
+
+    private ByteBuffer subBlockSegment(Entry entry, int factor) {
+        int dataSize = entry.storedWidth() * entry.storedHeight();
+        ByteBuffer buffer = allocate(SUBBLOCK_HEADER_SIZE + dataSize);
+        buffer.putInt(0);           // metadata size
+        buffer.putInt(0);           // attachment size
+        buffer.putLong(dataSize);
+        putDirectoryEntry(buffer, entry);
+        buffer.position(SUBBLOCK_HEADER_SIZE);
+        for (int py = 0; py < entry.storedHeight(); py++) {
+            for (int px = 0; px < entry.storedWidth(); px++) {
+                buffer.put((byte) pixelValue(entry.x() + px * factor, entry.y() + py * factor, entry.channel()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void putDirectoryEntry(ByteBuffer buffer, Entry entry) {
+        buffer.put((byte) 'D').put((byte) 'V');
+        buffer.putInt(PIXEL_TYPE_GRAY8);
+        buffer.putLong(entry.position());
+        buffer.putInt(0);           // file part
+        buffer.putInt(COMPRESSION_NONE);
+        buffer.put(entry.pyramidType());
+        buffer.put(new byte[5]);
+        buffer.putInt(4);           // dimension count
+        putDimension(buffer, "X", entry.x(), entry.logicalWidth(), entry.storedWidth());
+        putDimension(buffer, "Y", entry.y(), entry.logicalHeight(), entry.storedHeight());
+        putDimension(buffer, "C", entry.channel(), 1, 1);
+        putDimension(buffer, "M", entry.mIndex(), 1, 1);
+    }
+
+    private static void putDimension(ByteBuffer buffer, String dimension, int start, int size, int storedSize) {
+        byte[] name = new byte[4];
+        name[0] = (byte) dimension.charAt(0);
+        buffer.put(name);
+        buffer.putInt(start);
+        buffer.putInt(size);
+        buffer.putFloat(0f);        // start coordinate
+        buffer.putInt(storedSize);
+    }
+
+    private ByteBuffer directorySegment(List<Entry> entries) {
+        int entrySize = DIRECTORY_ENTRY_SIZE + 4 * DIMENSION_ENTRY_SIZE;
+        ByteBuffer buffer = allocate(128 + entries.size() * entrySize);
+        buffer.putInt(entries.size());
+        buffer.position(128);
+        for (Entry entry : entries) {
+            putDirectoryEntry(buffer, entry);
+        }
+        return buffer.flip();
+    }
+
+    private ByteBuffer metadataSegment() {
+        byte[] xml = metadataXml().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = allocate(256 + xml.length);
+        buffer.putInt(xml.length);
+        buffer.putInt(0);           // attachment size
+        buffer.position(256);
+        buffer.put(xml);
+        return buffer.flip();
+    }
+
+    private String metadataXml() {
+        StringBuilder channelInfo = new StringBuilder();
+        StringBuilder displayChannels = new StringBuilder();
+        for (int c = 0; c < channels; c++) {
+            channelInfo.append("<Channel Id=\"Channel:").append(c).append("\" Name=\"Channel ").append(c)
+                .append("\"><PixelType>Gray8</PixelType></Channel>");
+            displayChannels.append("<Channel Id=\"Channel:").append(c).append("\" Name=\"Channel ").append(c)
+                .append("\"><BitCountRange>8</BitCountRange><PixelType>Gray8</PixelType>")
+                .append("<Low>0</Low><High>1</High><Color>").append(channelColor(c)).append("</Color>")
+                .append("<ColorMode>Color</ColorMode><IsSelected>true</IsSelected></Channel>");
+        }
+        return "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<ImageDocument><Metadata>"
+            + "<Information>"
+            + "<Document><Name>synthetic</Name><UserName>libczi-wrapper</UserName>"
+            + "<CreationDate>2024-01-01T00:00:00</CreationDate></Document>"
+            + "<Image><SizeX>" + width + "</SizeX><SizeY>" + height + "</SizeY><SizeC>" + channels + "</SizeC>"
+            + "<SizeM>" + tileCount() + "</SizeM><PixelType>Gray8</PixelType>"
+            + "<Dimensions><Channels>" + channelInfo + "</Channels></Dimensions></Image>"
+            + "</Information>"
+            + "<Scaling><Items>"
+            + "<Distance Id=\"X\"><Value>2.2E-07</Value><DefaultUnitFormat>µm</DefaultUnitFormat></Distance>"
+            + "<Distance Id=\"Y\"><Value>2.2E-07</Value><DefaultUnitFormat>µm</DefaultUnitFormat></Distance>"
+            + "</Items></Scaling>"
+            + "<DisplaySetting><Channels>" + displayChannels + "</Channels></DisplaySetting>"
+            + "</Metadata></ImageDocument>";
+    }
+
+    private static String channelColor(int channel) {
+        String[] colors = { "#FFFFFFFF", "#FFFF0000", "#FF00FF00", "#FF0000FF" };
+        return colors[channel % colors.length];
+    }
+
+    private static ByteBuffer attachmentSegment(Attachment attachment, UUID guid) {
+        ByteBuffer buffer = allocate(256 + attachment.data().length);
+        buffer.putInt(attachment.data().length);
+        buffer.position(16);
+        // The entry's file position is not used when reading the segment itself.
+        putAttachmentEntry(buffer, attachment, guid, 0);
+        buffer.position(256);
+        buffer.put(attachment.data());
+        return buffer.flip();
+    }
+
+    private ByteBuffer attachmentDirectorySegment(List<Long> positions, List<UUID> guids) {
+        ByteBuffer buffer = allocate(256 + attachments.size() * ATTACHMENT_ENTRY_SIZE);
+        buffer.putInt(attachments.size());
+        buffer.position(256);
+        for (int i = 0; i < attachments.size(); i++) {
+            putAttachmentEntry(buffer, attachments.get(i), guids.get(i), positions.get(i));
+        }
+        return buffer.flip();
+    }
+
+    private static void putAttachmentEntry(ByteBuffer buffer, Attachment attachment, UUID guid, long position) {
+        int start = buffer.position();
+        buffer.put((byte) 'A').put((byte) '1');
+        buffer.position(start + 12);
+        buffer.putLong(position);
+        buffer.putInt(0);           // file part
+        putGuid(buffer, guid);
+        putFixedString(buffer, attachment.contentFileType(), 8);
+        putFixedString(buffer, attachment.name(), 80);
+    }
+
+    private static ByteBuffer fileHeader(long directoryPosition, long metadataPosition, long attachmentDirectoryPosition) {
+        ByteBuffer buffer = allocate(FILE_HEADER_SIZE);
+        buffer.putInt(1);           // major
+        buffer.putInt(0);           // minor
+        buffer.putInt(0);
+        buffer.putInt(0);
+        UUID guid = UUID.randomUUID();
+        putGuid(buffer, guid);      // primary file guid
+        putGuid(buffer, guid);      // file guid
+        buffer.putInt(0);           // file part
+        buffer.putLong(directoryPosition);
+        buffer.putLong(metadataPosition);
+        buffer.putInt(0);           // update pending
+        buffer.putLong(attachmentDirectoryPosition);
+        return buffer.clear();
+    }
+
+    /**
+     * Writes a segment at the channel's position, padded to the segment alignment.
+     *
+     * @return the position of the segment header
+     */
+    private static long writeSegment(FileChannel channel, String id, ByteBuffer data) throws IOException {
+        long position = channel.position();
+        long usedSize = data.remaining();
+        long allocatedSize = (usedSize + SEGMENT_ALIGNMENT - 1) / SEGMENT_ALIGNMENT * SEGMENT_ALIGNMENT;
+        ByteBuffer header = allocate(SEGMENT_HEADER_SIZE);
+        putFixedString(header, id, 16);
+        header.putLong(allocatedSize);
+        header.putLong(usedSize);
+        writeFully(channel, header.flip());
+        writeFully(channel, data);
+        writeFully(channel, ByteBuffer.allocate((int) (allocatedSize - usedSize)));
+        return position;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putFixedString(ByteBuffer buffer, String value, int length) {
+        byte[] bytes = new byte[length];
+        byte[] encoded = value.getBytes(StandardCharsets.US_ASCII);
+        // Leave room for the terminating zero.
+        System.arraycopy(encoded, 0, bytes, 0, Math.min(encoded.length, length - 1));
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes a GUID in the Windows layout, with the first three fields little-endian.
+     */
+    private static void putGuid(ByteBuffer buffer, UUID guid) {
+        long msb = guid.getMostSignificantBits();
+        long lsb = guid.getLeastSignificantBits();
+        buffer.putInt((int) (msb >>> 32));
+        buffer.putShort((short) (msb >>> 16));
+        buffer.putShort((short) msb);
+        buffer.order(ByteOrder.BIG_ENDIAN).putLong(lsb).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int tilesAcross(int length, int tile) {
+        return (length + tile - 1) / tile;
+    }
+}
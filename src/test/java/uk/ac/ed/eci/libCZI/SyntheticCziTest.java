@@ -0,0 +1,65 @@
+package uk.ac.ed.eci.libCZI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.ed.eci.libCZI.bitmaps.Bitmap;
+import uk.ac.ed.eci.libCZI.bitmaps.BitmapData;
+
+public class SyntheticCziTest {
+
+    @Test
+    public void testSyntheticFileOpens() throws Exception {
+        SyntheticCzi synthetic = SyntheticCzi.builder()
+            .size(1000, 600)
+            .tileSize(256)
+            .attachment("Label", "TXT", "hello".getBytes())
+            .build();
+        Path path = synthetic.writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            SubBlockStatistics stats = reader.simpleReaderStatistics();
+            assertEquals(synthetic.tileCount(), stats.subBlockCount());
+            assertEquals(0, stats.minMIndex());
+            assertEquals(synthetic.tileCount() - 1, stats.maxMIndex());
+            assertEquals(new IntRect(0, 0, 1000, 600), stats.boundingBox());
+            assertEquals(1, reader.attachmentCount());
+        }
+    }
+
+    @Test
+    public void testSyntheticPixelsMatchPattern() throws Exception {
+        Path path = SyntheticCzi.builder().size(1024, 1024).tileSize(256).build().writeTempFile();
+        IntRect roi = new IntRect(200, 300, 100, 50);
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream);
+                SingleChannelTileAccessor accessor = new SingleChannelTileAccessor(reader);
+                Bitmap bitmap = accessor.getBitmapRaw(roi, 1.0f);
+                BitmapData data = bitmap.getBitmapData()) {
+            byte[] pixels = data.getBytes();
+            for (int y = 0; y < roi.h(); y++) {
+                for (int x = 0; x < roi.w(); x++) {
+                    assertEquals(SyntheticCzi.pixelValue(roi.x() + x, roi.y() + y, 0),
+                        Byte.toUnsignedInt(pixels[y * data.stride() + x]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSyntheticPyramid() throws Exception {
+        SyntheticCzi synthetic = SyntheticCzi.builder().size(2048, 2048).tileSize(256).pyramidLayers(2).build();
+        Path path = synthetic.writeTempFile();
+
+        try (CZIInputStream stream = CZIInputStream.createInputStreamFromFileUTF8(path.toString());
+                CziStreamReader reader = CziStreamReader.fromStream(stream)) {
+            // 64 layer-0 tiles, 16 at layer 1 and 4 at layer 2.
+            assertEquals(84, reader.simpleReaderStatistics().subBlockCount());
+        }
+    }
+}